@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.simplity.json.JSONArray;
+import org.simplity.json.JSONException;
+import org.simplity.json.JSONObject;
+import org.simplity.json.JSONTokener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * verifies signature of JWTs with the public keys of the authorization server,
+ * that are fetched from its JSON Web Key Set url and cached. Only RSA keys are
+ * supported. Tokens that can not be verified with these keys are left to be
+ * checked with the authorization server. A token with a valid signature is
+ * still rejected if it is not issued by the expected issuer, or for the
+ * expected audience.
+ *
+ * @author simplity.org
+ *
+ */
+class JwtVerifier {
+	private static final Logger logger = LoggerFactory.getLogger(JwtVerifier.class);
+	/**
+	 * returned by verify() if the token is not valid
+	 */
+	static final long INVALID = -1;
+	/**
+	 * returned by verify() if the token can not be verified locally
+	 */
+	static final long NOT_VERIFIABLE = -2;
+	/**
+	 * we do not fetch keys more often than this, even if tokens arrive with
+	 * unknown key ids
+	 */
+	private static final long MIN_REFRESH_MILLIS = 30000;
+	private static final String[][] ALGORITHMS = { { "RS256", "SHA256withRSA" }, { "RS384", "SHA384withRSA" },
+			{ "RS512", "SHA512withRSA" } };
+
+	private final String jwksUrl;
+	private final long cacheMillis;
+	private final int timeoutMillis;
+	/**
+	 * null if issuer is not to be checked
+	 */
+	private final String issuer;
+	/**
+	 * null if audience is not to be checked
+	 */
+	private final String audience;
+	/**
+	 * public keys by key id. Replaced, and never modified, on refresh.
+	 */
+	private volatile Map<String, PublicKey> keys = new HashMap<String, PublicKey>();
+	private volatile long keysLoadedAt;
+
+	JwtVerifier(String jwksUrl, int cacheSeconds, int timeoutMillis, String issuer, String audience) {
+		this.jwksUrl = jwksUrl;
+		this.cacheMillis = cacheSeconds * 1000L;
+		this.timeoutMillis = timeoutMillis;
+		this.issuer = issuer;
+		this.audience = audience;
+		if (issuer == null) {
+			logger.warn("No expected issuer is specified. Issuer of tokens is not checked.");
+		}
+	}
+
+	/**
+	 *
+	 * @param token
+	 * @return expiry of the token as epoch seconds, or 0 if the token has no
+	 *         expiry, if it is verified to be valid. INVALID if the token is
+	 *         not valid. NOT_VERIFIABLE if this is not a JWT that can be
+	 *         verified with the keys that we have.
+	 */
+	long verify(String token) {
+		String[] parts = token.split("\\.");
+		if (parts.length != 3) {
+			return NOT_VERIFIABLE;
+		}
+		try {
+			Base64.Decoder decoder = Base64.getUrlDecoder();
+			JSONObject header = new JSONObject(new String(decoder.decode(parts[0]), StandardCharsets.UTF_8));
+			String algorithm = getAlgorithm(header.optString("alg"));
+			if (algorithm == null) {
+				return NOT_VERIFIABLE;
+			}
+			PublicKey key = this.getKey(header.optString("kid"));
+			if (key == null) {
+				return NOT_VERIFIABLE;
+			}
+
+			Signature sig = Signature.getInstance(algorithm);
+			sig.initVerify(key);
+			sig.update((parts[0] + '.' + parts[1]).getBytes(StandardCharsets.US_ASCII));
+			if (sig.verify(decoder.decode(parts[2])) == false) {
+				logger.info("Token signature is not valid");
+				return INVALID;
+			}
+
+			JSONObject claims = new JSONObject(new String(decoder.decode(parts[1]), StandardCharsets.UTF_8));
+			long now = System.currentTimeMillis() / 1000;
+			long nbf = claims.optLong("nbf");
+			if (nbf > now) {
+				return INVALID;
+			}
+			long exp = claims.optLong("exp");
+			if (exp != 0 && exp <= now) {
+				return INVALID;
+			}
+			if (this.issuer != null && this.issuer.equals(claims.optString("iss", null)) == false) {
+				logger.info("Token is not issued by {}", this.issuer);
+				return INVALID;
+			}
+			if (this.audience != null && this.isForAudience(claims.opt("aud")) == false) {
+				logger.info("Token is not meant for audience {}", this.audience);
+				return INVALID;
+			}
+			return exp;
+		} catch (IllegalArgumentException | JSONException | GeneralSecurityException e) {
+			logger.info("Token is not a valid JWT : {}", e.getMessage());
+			return INVALID;
+		}
+	}
+
+	/**
+	 * @param aud
+	 *            aud claim, that is either a string or an array of strings
+	 */
+	private boolean isForAudience(Object aud) {
+		if (aud instanceof JSONArray) {
+			JSONArray arr = (JSONArray) aud;
+			for (int i = 0; i < arr.length(); i++) {
+				if (this.audience.equals(arr.opt(i))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return this.audience.equals(aud);
+	}
+
+	private static String getAlgorithm(String alg) {
+		for (String[] pair : ALGORITHMS) {
+			if (pair[0].equals(alg)) {
+				return pair[1];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param kid
+	 *            key id. empty string if the token does not specify one, in
+	 *            which case the only key is used
+	 */
+	private PublicKey getKey(String kid) {
+		long now = System.currentTimeMillis();
+		long age = now - this.keysLoadedAt;
+		PublicKey key = this.keys.get(kid);
+		if (age > this.cacheMillis || (key == null && age > MIN_REFRESH_MILLIS)) {
+			this.loadKeys(now);
+			key = this.keys.get(kid);
+		}
+		if (key == null && kid.isEmpty() && this.keys.size() == 1) {
+			key = this.keys.values().iterator().next();
+		}
+		return key;
+	}
+
+	private synchronized void loadKeys(long now) {
+		if (now < this.keysLoadedAt) {
+			/*
+			 * another thread loaded them while we were waiting
+			 */
+			return;
+		}
+		HttpURLConnection conn = null;
+		try {
+			conn = (HttpURLConnection) new URL(this.jwksUrl).openConnection();
+			conn.setConnectTimeout(this.timeoutMillis);
+			conn.setReadTimeout(this.timeoutMillis);
+			Map<String, PublicKey> newKeys = new HashMap<String, PublicKey>();
+			try (InputStream stream = conn.getInputStream()) {
+				JSONObject json = new JSONObject(new JSONTokener(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+				JSONArray arr = json.optJSONArray("keys");
+				int n = arr == null ? 0 : arr.length();
+				KeyFactory factory = KeyFactory.getInstance("RSA");
+				Base64.Decoder decoder = Base64.getUrlDecoder();
+				for (int i = 0; i < n; i++) {
+					JSONObject jwk = arr.optJSONObject(i);
+					if (jwk == null || "RSA".equals(jwk.optString("kty")) == false) {
+						continue;
+					}
+					BigInteger modulus = new BigInteger(1, decoder.decode(jwk.optString("n")));
+					BigInteger exponent = new BigInteger(1, decoder.decode(jwk.optString("e")));
+					newKeys.put(jwk.optString("kid"), factory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+				}
+			}
+			this.keys = newKeys;
+			logger.info("{} keys loaded from {}", newKeys.size(), this.jwksUrl);
+		} catch (IOException | IllegalArgumentException | JSONException | GeneralSecurityException e) {
+			logger.error("Unable to load keys from " + this.jwksUrl
+					+ ". Tokens will be checked with the authorization server", e);
+		} finally {
+			/*
+			 * on failure, we retry only after MIN_REFRESH_MILLIS
+			 */
+			this.keysLoadedAt = System.currentTimeMillis();
+		}
+	}
+}
@@ -23,18 +23,13 @@
 package org.simplity.auth;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.bind.DatatypeConverter;
 
 import org.simplity.json.JSONObject;
 import org.simplity.kernel.Application;
 import org.simplity.kernel.ApplicationError;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Handle Oauth2 authentication
@@ -43,7 +38,6 @@ import org.slf4j.LoggerFactory;
  *
  */
 public class OAuth2Agent implements SecurityAgent {
-	private static Logger logger = LoggerFactory.getLogger(OAuth2Agent.class);
 	private static final String ACCESS_TOKEN = "access_token";
 	private static final String SCOPES_ATTR = "scopes";
 	/**
@@ -116,26 +110,7 @@ public class OAuth2Agent implements SecurityAgent {
 
 	private boolean checkForValidToken(String accesstoken) {
 		OAuthParameters oAuthParameters = Application.getOAuthParameters();
-		String url = oAuthParameters.getCheckTokenURL();
-		url += "?token=" + accesstoken;
-		HttpURLConnection conn = null;
-		logger.info("Checking token " + url);
-		try {
-			String userPassword = oAuthParameters.getClientId() + ":" + oAuthParameters.getClientSecret();
-			String encoding = DatatypeConverter.printBase64Binary(userPassword.getBytes());
-
-			conn = (HttpURLConnection) new URL(url).openConnection();
-			conn.setDoOutput(true);
-			conn.setRequestMethod("POST");
-			conn.setRequestProperty("Authorization", "Basic " + encoding);
-
-			if (conn.getResponseCode() == HttpServletResponse.SC_OK) {
-				return true;
-			}
-		} catch (IOException e) {
-			logger.error("Error with token {}", e);
-		}
-		return false;
+		return oAuthParameters.getTokenValidator().isValid(accesstoken);
 	}
 
 	/**
@@ -44,6 +44,53 @@ public class OAuthParameters {
 	 * check token URL
 	 */
 	String checkTokenURL;
+	/**
+	 * max number of seconds for which a token, once found to be valid, is
+	 * trusted without checking again. A token is never trusted beyond its
+	 * expiry time.
+	 */
+	int validTokenCacheSeconds = 300;
+	/**
+	 * number of seconds for which a token, once found to be invalid, is
+	 * rejected without checking again.
+	 */
+	int invalidTokenCacheSeconds = 10;
+	/**
+	 * max number of tokens for which the results are cached
+	 */
+	int maxCachedTokens = 10000;
+	/**
+	 * milliseconds to wait for connecting to, and for response from, the check
+	 * token URL or the jwks URL
+	 */
+	int timeoutMillis = 5000;
+	/**
+	 * if tokens are JWTs signed by the authorization server, url from which
+	 * its public keys are available as a JSON Web Key Set. If specified,
+	 * signature of such tokens is verified locally, and the check token URL is
+	 * used only for other tokens.
+	 */
+	String jwksURL;
+	/**
+	 * number of seconds for which the keys from jwksURL are used before
+	 * fetching them again
+	 */
+	int jwksCacheSeconds = 3600;
+	/**
+	 * issuer (iss) that a JWT must have to be accepted on local verification.
+	 * Not checked if not specified.
+	 */
+	String expectedIssuer;
+	/**
+	 * audience (aud) that a JWT must have to be accepted on local
+	 * verification. Defaults to clientId.
+	 */
+	String expectedAudience;
+
+	/**
+	 * created on first use
+	 */
+	private TokenValidator tokenValidator;
 
 	/**
 	 *
@@ -68,4 +115,15 @@ public class OAuthParameters {
 	public String getClientSecret() {
 		return this.clientSecret;
 	}
+
+	/**
+	 *
+	 * @return validator that checks and caches tokens as per these parameters
+	 */
+	public synchronized TokenValidator getTokenValidator() {
+		if (this.tokenValidator == null) {
+			this.tokenValidator = new TokenValidator(this);
+		}
+		return this.tokenValidator;
+	}
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.auth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.simplity.json.JSONException;
+import org.simplity.json.JSONObject;
+import org.simplity.json.JSONTokener;
+import org.simplity.kernel.ApplicationError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * checks whether an access token is valid, and remembers the result for a
+ * while. Tokens are checked with the check token URL, or, if a jwks URL is
+ * configured, by verifying the signature of JWTs locally.
+ *
+ * Results are cached by a hash of the token, and not the token itself. A
+ * valid token is trusted till its expiry time, or for validTokenCacheSeconds,
+ * whichever is earlier. An invalid token is rejected for
+ * invalidTokenCacheSeconds. If several requests with the same token arrive
+ * together, only one of them checks the token, and others wait for its result.
+ *
+ * @author simplity.org
+ *
+ */
+public class TokenValidator {
+	private static final Logger logger = LoggerFactory.getLogger(TokenValidator.class);
+
+	private final OAuthParameters params;
+	private final String authHeader;
+	private final JwtVerifier jwtVerifier;
+	private final Map<String, Result> cache = new ConcurrentHashMap<String, Result>();
+	private final Map<String, CompletableFuture<Result>> inProgress = new ConcurrentHashMap<String, CompletableFuture<Result>>();
+
+	TokenValidator(OAuthParameters params) {
+		this.params = params;
+		String userPassword = params.clientId + ":" + params.clientSecret;
+		this.authHeader = "Basic " + Base64.getEncoder().encodeToString(userPassword.getBytes(StandardCharsets.UTF_8));
+		if (params.jwksURL == null) {
+			this.jwtVerifier = null;
+		} else {
+			String audience = params.expectedAudience == null ? params.clientId : params.expectedAudience;
+			this.jwtVerifier = new JwtVerifier(params.jwksURL, params.jwksCacheSeconds, params.timeoutMillis,
+					params.expectedIssuer, audience);
+		}
+	}
+
+	/**
+	 *
+	 * @param token
+	 *            non-null access token
+	 * @return true if the token is valid. false otherwise
+	 */
+	public boolean isValid(String token) {
+		String key = hash(token);
+		Result result = this.cache.get(key);
+		if (result != null && result.expiresAt > System.currentTimeMillis()) {
+			return result.valid;
+		}
+
+		CompletableFuture<Result> future = new CompletableFuture<Result>();
+		CompletableFuture<Result> running = this.inProgress.putIfAbsent(key, future);
+		if (running != null) {
+			/*
+			 * another thread is checking this token. wait for its result
+			 */
+			return waitFor(running);
+		}
+
+		try {
+			result = this.check(token);
+			if (result.expiresAt > 0) {
+				this.cacheResult(key, result);
+			}
+			future.complete(result);
+			return result.valid;
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inProgress.remove(key, future);
+		}
+	}
+
+	private static boolean waitFor(CompletableFuture<Result> future) {
+		try {
+			return future.get().valid;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			logger.error("Token could not be checked", e.getCause());
+			return false;
+		}
+	}
+
+	private void cacheResult(String key, Result result) {
+		if (this.cache.size() >= this.params.maxCachedTokens) {
+			long now = System.currentTimeMillis();
+			Iterator<Result> iter = this.cache.values().iterator();
+			while (iter.hasNext()) {
+				if (iter.next().expiresAt <= now) {
+					iter.remove();
+				}
+			}
+			if (this.cache.size() >= this.params.maxCachedTokens) {
+				logger.info("Token cache is full with unexpired tokens, and is cleared.");
+				this.cache.clear();
+			}
+		}
+		this.cache.put(key, result);
+	}
+
+	/**
+	 * check the token, either locally or with the authorization server
+	 *
+	 * @return result. expiresAt is 0 if the result is not to be cached
+	 */
+	private Result check(String token) {
+		long now = System.currentTimeMillis();
+		if (this.jwtVerifier != null) {
+			long exp = this.jwtVerifier.verify(token);
+			if (exp == JwtVerifier.INVALID) {
+				return this.invalid(now);
+			}
+			if (exp != JwtVerifier.NOT_VERIFIABLE) {
+				return this.valid(now, exp);
+			}
+		}
+		return this.introspect(token, now);
+	}
+
+	private Result introspect(String token, long now) {
+		HttpURLConnection conn = null;
+		logger.debug("Checking token with {}", this.params.checkTokenURL);
+		try {
+			String url = this.params.checkTokenURL + "?token=" + URLEncoder.encode(token, "UTF-8");
+			conn = (HttpURLConnection) new URL(url).openConnection();
+			conn.setConnectTimeout(this.params.timeoutMillis);
+			conn.setReadTimeout(this.params.timeoutMillis);
+			conn.setDoOutput(true);
+			conn.setRequestMethod("POST");
+			conn.setRequestProperty("Authorization", this.authHeader);
+			conn.getOutputStream().close();
+
+			int status = conn.getResponseCode();
+			if (status == HttpURLConnection.HTTP_OK) {
+				try (InputStream stream = conn.getInputStream()) {
+					JSONObject json = new JSONObject(
+							new JSONTokener(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+					if (json.optBoolean("active", true) == false) {
+						return this.invalid(now);
+					}
+					return this.valid(now, json.optLong("exp"));
+				} catch (JSONException e) {
+					logger.error("Check token URL returned a malformed response. Token is not accepted. {}",
+							e.getMessage());
+					return this.invalid(now);
+				}
+			}
+			InputStream err = conn.getErrorStream();
+			if (err != null) {
+				err.close();
+			}
+			if (status >= 500) {
+				logger.error("Check token URL returned status {}. Token is not accepted.", status);
+				return new Result(false, 0);
+			}
+			return this.invalid(now);
+		} catch (UnsupportedEncodingException e) {
+			throw new ApplicationError(e, "UTF-8 is not supported!!");
+		} catch (IOException e) {
+			logger.error("Error while checking token", e);
+			return new Result(false, 0);
+		}
+	}
+
+	private Result invalid(long now) {
+		return new Result(false, now + this.params.invalidTokenCacheSeconds * 1000L);
+	}
+
+	/**
+	 * @param exp
+	 *            expiry time of the token as epoch seconds. 0 if not known
+	 */
+	private Result valid(long now, long exp) {
+		long expiresAt = now + this.params.validTokenCacheSeconds * 1000L;
+		if (exp > 0) {
+			long tokenExpiry = exp * 1000L;
+			if (tokenExpiry <= now) {
+				return this.invalid(now);
+			}
+			if (tokenExpiry < expiresAt) {
+				expiresAt = tokenExpiry;
+			}
+		}
+		return new Result(true, expiresAt);
+	}
+
+	private static String hash(String token) {
+		try {
+			byte[] bytes = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new ApplicationError(e, "SHA-256 is not supported!!");
+		}
+	}
+
+	private static class Result {
+		final boolean valid;
+		/**
+		 * epoch millis till which this result can be used
+		 */
+		final long expiresAt;
+
+		Result(boolean valid, long expiresAt) {
+			this.valid = valid;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -25,24 +25,28 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Authenticator;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.PasswordAuthentication;
 import java.net.ProtocolException;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.simplity.kernel.ApplicationError;
 import org.simplity.kernel.comp.ComponentManager;
 import org.simplity.kernel.db.DbDriver;
-import org.simplity.kernel.util.IoUtil;
 import org.simplity.kernel.util.XmlUtil;
 import org.simplity.kernel.value.BooleanValue;
 import org.simplity.kernel.value.Value;
-import org.simplity.sa.JsonReqReader;
 import org.simplity.sa.JsonRespWriter;
+import org.simplity.sa.JsonStreamReqReader;
 import org.simplity.sa.RequestReader;
 import org.simplity.sa.ResponseWriter;
 import org.simplity.sa.XmlReqReader;
@@ -58,12 +62,24 @@ import org.w3c.dom.Document;
 /**
  * Gateway to make HTTP requests for the specified URL.
  *
+ * Connections are re-used across requests with the keep-alive cache of the
+ * JDK. For this to work, response and error streams are always read to the end
+ * and closed. Number of concurrent requests to the server can be capped with
+ * maxConnections, and requests that fail for transient reasons may be retried.
+ *
  * @author simplity.org
  *
  */
 public class HttpGateway extends Gateway {
 	protected static final Logger logger = LoggerFactory.getLogger(HttpGateway.class);
 	static final String DEFAULT_METHOD = "POST";
+	/**
+	 * credentials for proxies used by all http gateways. Authenticator is a
+	 * global setting in the JDK, and hence we register one authenticator that
+	 * serves all gateways
+	 */
+	private static final Map<String, PasswordAuthentication> proxyCredentials = new ConcurrentHashMap<String, PasswordAuthentication>();
+	private static boolean authenticatorRegistered;
 
 	/**
 	 * base url of the server. for example https://www.simplity.org/thisApp/
@@ -101,11 +117,48 @@ public class HttpGateway extends Gateway {
 	 */
 	String proxyPassword;
 
+	/**
+	 * milliseconds to wait for a connection to be established with the
+	 * server. 0 means wait indefinitely
+	 */
+	int connectTimeoutMillis = 10000;
+
+	/**
+	 * milliseconds to wait for data from the server once the connection is
+	 * established. 0 means wait indefinitely
+	 */
+	int readTimeoutMillis = 60000;
+
+	/**
+	 * maximum number of requests that can be in progress at any time with this
+	 * server. Requests beyond this wait for up to connectTimeoutMillis for
+	 * their turn. 0 means no limit.
+	 */
+	int maxConnections;
+
+	/**
+	 * number of times a failed request is retried. Requests with idempotent
+	 * methods like GET are retried on an IO error and on status codes 502, 503
+	 * and 504. Other requests are retried only if the connection could not be
+	 * established.
+	 */
+	int nbrRetries;
+
+	/**
+	 * milliseconds to wait before retrying a failed request
+	 */
+	int retryIntervalMillis = 500;
+
 	private boolean contentIsXml;
 	/**
 	 * instantiated in getReady() for performance
 	 */
-	private Authenticator authenticator;
+	private Proxy proxy;
+
+	/**
+	 * non-null if maxConnections is specified
+	 */
+	private Semaphore permits;
 	/**
 	 * if the service name is to be sent as Http Header. null if it is not to be
 	 * sent as part of header
@@ -123,10 +176,6 @@ public class HttpGateway extends Gateway {
 		return new Assistant(serviceName);
 	}
 
-	Authenticator getAuth() {
-		return this.authenticator;
-	}
-
 	boolean useXml() {
 		return this.contentIsXml;
 	}
@@ -142,19 +191,112 @@ public class HttpGateway extends Gateway {
 			this.contentIsXml = true;
 		}
 		if (this.proxyHostName != null) {
-			/*
-			 * using anonymous class as it is used here and nowhere else
-			 */
-			this.authenticator = new Authenticator() {
-				private PasswordAuthentication auth = new PasswordAuthentication(HttpGateway.this.proxyUserName,
-						HttpGateway.this.proxyPassword.toCharArray());
+			this.proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(this.proxyHostName, this.proxyPort));
+			if (this.proxyUserName != null) {
+				char[] pwd = this.proxyPassword == null ? new char[0] : this.proxyPassword.toCharArray();
+				proxyCredentials.put(this.proxyHostName.toLowerCase() + ':' + this.proxyPort,
+						new PasswordAuthentication(this.proxyUserName, pwd));
+				registerAuthenticator();
+			}
+		}
+		if (this.maxConnections > 0) {
+			this.permits = new Semaphore(this.maxConnections, true);
+		}
+	}
+
+	private static synchronized void registerAuthenticator() {
+		if (authenticatorRegistered) {
+			return;
+		}
+		/*
+		 * using anonymous class as it is used here and nowhere else
+		 */
+		Authenticator.setDefault(new Authenticator() {
 
-				@Override
-				protected PasswordAuthentication getPasswordAuthentication() {
-					return this.auth;
+			@Override
+			protected PasswordAuthentication getPasswordAuthentication() {
+				String host = this.getRequestingHost();
+				if (host == null || this.getRequestorType() != RequestorType.PROXY) {
+					return null;
 				}
+				return proxyCredentials.get(host.toLowerCase() + ':' + this.getRequestingPort());
+			}
+		});
+		authenticatorRegistered = true;
+	}
+
+	HttpURLConnection openConnection(URL url) throws IOException {
+		HttpURLConnection conn;
+		if (this.proxy == null) {
+			conn = (HttpURLConnection) url.openConnection();
+		} else {
+			conn = (HttpURLConnection) url.openConnection(this.proxy);
+		}
+		conn.setConnectTimeout(this.connectTimeoutMillis);
+		conn.setReadTimeout(this.readTimeoutMillis);
+		return conn;
+	}
 
-			};
+	/**
+	 * wait for our turn in case the number of concurrent connections is
+	 * capped
+	 *
+	 * @return true if the request can go ahead. false if we timed out, or were
+	 *         interrupted while waiting.
+	 */
+	boolean acquireConnection() {
+		if (this.permits == null) {
+			return true;
+		}
+		try {
+			if (this.connectTimeoutMillis == 0) {
+				this.permits.acquire();
+				return true;
+			}
+			return this.permits.tryAcquire(this.connectTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	void releaseConnection() {
+		if (this.permits != null) {
+			this.permits.release();
+		}
+	}
+
+	/**
+	 * can this request be re-tried after this failure?
+	 *
+	 * @param method
+	 *            http method of the request
+	 * @param status
+	 *            http status received. 0 if the request failed with an
+	 *            exception
+	 * @param ex
+	 *            exception, if the request failed with an exception
+	 * @return true if a retry is safe and may succeed
+	 */
+	static boolean isRetriable(String method, int status, IOException ex) {
+		if (ex instanceof ConnectException) {
+			/*
+			 * request did not reach the server
+			 */
+			return true;
+		}
+		switch (method.toUpperCase()) {
+		case "GET":
+		case "HEAD":
+		case "PUT":
+		case "DELETE":
+		case "OPTIONS":
+			if (ex != null) {
+				return true;
+			}
+			return status == 502 || status == 503 || status == 504;
+		default:
+			return false;
 		}
 	}
 
@@ -342,47 +484,69 @@ public class HttpGateway extends Gateway {
 				fullPath += this.path;
 			}
 
-			Exception ex = null;
+			if (gateway.acquireConnection() == false) {
+				logger.error("Http call for application " + gateway.getApplicationName() + " with url " + fullPath
+						+ " abandoned as no connection became available in " + gateway.connectTimeoutMillis + "ms");
+				return false;
+			}
 			try {
 				URL url = new URL(fullPath);
-
-				/*
-				 * get connection
-				 */
-				Authenticator auth = gateway.getAuth();
-				if (auth != null) {
-
-					Proxy proxyCon = new Proxy(Proxy.Type.HTTP,
-							new InetSocketAddress(gateway.proxyHostName, gateway.proxyPort));
-					Authenticator.setDefault(auth);
-					this.conn = (HttpURLConnection) url.openConnection(proxyCon);
-				} else {
-					this.conn = (HttpURLConnection) url.openConnection();
-				}
-
-				/*
-				 * despatch request
-				 */
-				this.prepareToConnect();
-				this.setPayload(ctx);
-				/*
-				 * send request and receive response
-				 */
-				int status = this.conn.getResponseCode();
-				/*
-				 * how do you know this is successful? 2xx series is safe
-				 */
-				if (status < 200 || status > 299) {
-					logger.error("Http call failed for application " + gateway.getApplicationName() + " with url " + fullPath
-							+ " with status code " + status);
-					return false;
+				int attempt = 0;
+				while (true) {
+					attempt++;
+					int status = 0;
+					IOException ioe = null;
+					try {
+						/*
+						 * get connection and despatch request
+						 */
+						this.conn = gateway.openConnection(url);
+						this.prepareToConnect();
+						this.setPayload(ctx);
+						/*
+						 * send request and receive response
+						 */
+						status = this.conn.getResponseCode();
+					} catch (IOException e) {
+						ioe = e;
+					}
+					/*
+					 * how do you know this is successful? 2xx series is safe
+					 */
+					if (ioe == null && status >= 200 && status <= 299) {
+						this.getPayload(ctx);
+						return true;
+					}
+					if (ioe == null) {
+						this.discardErrorStream();
+					}
+					if (attempt > gateway.nbrRetries || isRetriable(this.methodToUse, status, ioe) == false) {
+						if (ioe != null) {
+							throw ioe;
+						}
+						logger.error("Http call failed for application " + gateway.getApplicationName() + " with url "
+								+ fullPath + " with status code " + status);
+						return false;
+					}
+					logger.info("Http call for application " + gateway.getApplicationName() + " with url " + fullPath
+							+ " failed with " + (ioe == null ? "status code " + status : ioe.getMessage())
+							+ ". Retrying..");
+					if (gateway.retryIntervalMillis > 0) {
+						Thread.sleep(gateway.retryIntervalMillis);
+					}
 				}
-				this.getPayload(ctx);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.error("Http call for application " + gateway.getApplicationName() + " with url " + fullPath
+						+ " interrupted while waiting to retry");
+				return false;
 			} catch (Exception e) {
-				ex = e;
+				logger.error(" Http call failed for application " + gateway.getApplicationName() + " with url " + fullPath,
+						e);
+				return false;
+			} finally {
+				gateway.releaseConnection();
 			}
-			logger.error(" Http call failed for application " + gateway.getApplicationName() + " with url " + fullPath, ex);
-			return false;
 		}
 
 		/**
@@ -468,25 +632,50 @@ public class HttpGateway extends Gateway {
 					respWriter = new JsonRespWriter(os);
 				}
 				dataTobeSent.write(respWriter, ctx);
+				/*
+				 * close the root object and flush buffered output before the
+				 * stream is closed
+				 */
+				respWriter.writeout(null);
 			}
 		}
 
 		private void getPayload(ServiceContext ctx) throws IOException {
 			InputData dataToBeReceived = this.service.getResponseSpec();
-			if (dataToBeReceived == null) {
-				return;
-			}
-
 			try (InputStream stream = this.conn.getInputStream()) {
-				RequestReader reqReader = null;
+				if (dataToBeReceived == null) {
+					/*
+					 * connection is re-used only if the response is consumed
+					 */
+					this.drain(stream);
+					return;
+				}
 				if (HttpGateway.this.useXml()) {
 					Document doc = XmlUtil.fromStream(stream);
-					reqReader = new XmlReqReader(doc);
-				} else {
-					String json = IoUtil.streamToText(stream);
-					reqReader = new JsonReqReader(json);
+					dataToBeReceived.read(new XmlReqReader(doc), ctx);
+					return;
 				}
+				RequestReader reqReader = new JsonStreamReqReader(stream);
 				dataToBeReceived.read(reqReader, ctx);
+				/*
+				 * streaming reader stops at what the spec asks for. Rest of the
+				 * response is to be consumed for the connection to be re-used
+				 */
+				this.drain(stream);
+			}
+		}
+
+		/**
+		 * read and discard the error response, if any, so that the underlying
+		 * connection can be re-used
+		 */
+		private void discardErrorStream() {
+			try (InputStream stream = this.conn.getErrorStream()) {
+				if (stream != null) {
+					this.drain(stream);
+				}
+			} catch (IOException e) {
+				// connection will not be re-used. nothing else to do
 			}
 		}
 
@@ -515,6 +704,13 @@ public class HttpGateway extends Gateway {
 			return result;
 		}
 
+		private void drain(InputStream stream) throws IOException {
+			byte[] buffer = new byte[4096];
+			while (stream.read(buffer) != -1) {
+				//
+			}
+		}
+
 		/* (non-Javadoc)
 		 * @see org.simplity.gateway.ServiceAssistant#execute(org.simplity.service.ServiceContext, org.simplity.kernel.db.DbDriver, boolean)
 		 */
@@ -23,6 +23,7 @@
 package org.simplity.http;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
@@ -238,7 +239,9 @@ public abstract class HttpClient extends HttpServlet {
 		String serviceName = null;
 		long bigin = System.currentTimeMillis();
 
-		try (Reader reqReader = req.getReader(); Writer respWriter = new PrintWriter(resp.getOutputStream())) {
+		try (Reader reqReader = req.getReader();
+				OutputStream respStream = resp.getOutputStream();
+				Writer respWriter = new PrintWriter(respStream)) {
 
 			String ct = req.getContentType();
 			boolean isJson = ct == null || ct.indexOf("xml") == -1;
@@ -286,9 +289,9 @@ public abstract class HttpClient extends HttpServlet {
 				ServiceResponse response = null;
 				if (this.useStreamingPayload) {
 					request = new ServiceRequest(serviceName, pt, reqReader);
-					response = new ServiceResponse(respWriter, isJson);
+					response = new ServiceResponse(respWriter, respStream, isJson);
 				} else {
-					String json = IoUtil.readerToText(reqReader);
+					String json = IoUtil.readerToText(reqReader, req.getContentLength());
 					request = new ServiceRequest(serviceName, pt, json);
 					response = new ServiceResponse(pt);
 				}
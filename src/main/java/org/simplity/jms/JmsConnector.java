@@ -22,11 +22,27 @@
 
 package org.simplity.jms;
 
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
 import javax.jms.QueueConnectionFactory;
 import javax.jms.Session;
 import javax.naming.Context;
@@ -39,13 +55,31 @@ import org.slf4j.LoggerFactory;
 
 /**
  * class that acts as a wrapper on JMSSession to JMS client classes. This is
- * similar to DbDriver in its functionality
+ * similar to DbDriver in its functionality.
+ *
+ * <p>
+ * Connectors from the non-XA factory share one connection, and are pooled
+ * along with their sessions and cached producers once they are returned.
+ * Connectors for JTA/JCA/XA managed operations have a connection of their own
+ * and are closed on return, as their pooling is the job of the container.
  *
  * @author simplity.org
  */
 public class JmsConnector {
 	private static final Logger logger = LoggerFactory.getLogger(JmsConnector.class);
 
+	/**
+	 * default max number of idle sessions retained in the pool
+	 */
+	private static final int DEFAULT_MAX_IDLE_SESSIONS = 8;
+
+	/**
+	 * correlation ids generated by this instance start with this, so that
+	 * replies on a shared queue can be selected by us
+	 */
+	private static final String CORRELATION_PREFIX = UUID.randomUUID().toString() + '-';
+	private static final AtomicLong correlationSeq = new AtomicLong();
+
 	/**
 	 * for non-jta connection
 	 */
@@ -56,6 +90,40 @@ public class JmsConnector {
 	 */
 	private static ConnectionFactory xaFactory;
 
+	/**
+	 * max number of idle sessions retained in the pool for each of transacted
+	 * and non-transacted sessions
+	 */
+	private static int maxIdleSessions = DEFAULT_MAX_IDLE_SESSIONS;
+
+	/**
+	 * connection from the non-xa factory shared by all connectors. JMS
+	 * connections are thread-safe, and are expensive to create
+	 */
+	private static Connection sharedConnection;
+
+	/**
+	 * incremented every time the shared connection is discarded. Idle
+	 * connectors of an earlier generation are closed rather than re-used.
+	 */
+	private static volatile int connectionGeneration;
+
+	/**
+	 * idle connectors with non-transacted sessions
+	 */
+	private static final Deque<JmsConnector> idleConnectors = new ConcurrentLinkedDeque<JmsConnector>();
+
+	/**
+	 * idle connectors with transacted sessions
+	 */
+	private static final Deque<JmsConnector> idleTransactedConnectors = new ConcurrentLinkedDeque<JmsConnector>();
+
+	/**
+	 * reply dispatchers on the shared connection, by reply destination. null
+	 * key is for the temporary queue of the connection
+	 */
+	private static final Map<Destination, ReplyDispatcher> dispatchers = new HashMap<Destination, ReplyDispatcher>();
+
 	/**
 	 * initial setup. Called by Application on startup
 	 *
@@ -64,12 +132,19 @@ public class JmsConnector {
 	 * @param properties
 	 *            additional properties like user name etc.. that are required
 	 *            to be set to the context for getting the connection
+	 * @param maxIdle
+	 *            max number of idle sessions to be retained in the pool. 0
+	 *            means the default
 	 * @return error message in case of error. null if all OK
 	 * @throws ApplicationError
 	 *             : in case of any issue with the set-up
 	 */
-	public static String setup(String connectionFactory, String xaConnectionFactory, Property[] properties) {
+	public static String setup(String connectionFactory, String xaConnectionFactory, Property[] properties,
+			int maxIdle) {
 		Context ctx = null;
+		if (maxIdle > 0) {
+			maxIdleSessions = maxIdle;
+		}
 
 		try {
 			if (properties == null || properties.length == 0) {
@@ -122,37 +197,132 @@ public class JmsConnector {
 
 	@SuppressWarnings("resource")
 	private static JmsConnector borrow(JmsUsage jmsUsage, boolean multi) {
+		if (jmsUsage == JmsUsage.EXTERNALLY_MANAGED) {
+			if (xaFactory == null) {
+				throw new ApplicationError("Application is not set up for JMS with JTA/JCA/XA");
+			}
+			try {
+				Connection con = xaFactory.createConnection();
+				Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+				/*
+				 * not very well advertised.. but this method is a MUST for
+				 * consuming queues, though production works without that
+				 */
+				con.start();
+				return new JmsConnector(con, session, jmsUsage, multi, false);
+			} catch (Exception e) {
+				throw new ApplicationError(e, "Error while creating jms session");
+			}
+		}
 
-		try {
-			Connection con = null;
-			boolean transacted = false;
-			Session session = null;
-			if (jmsUsage == JmsUsage.EXTERNALLY_MANAGED) {
-				if (xaFactory == null) {
-					throw new ApplicationError("Application is not set up for JMS with JTA/JCA/XA");
-				}
-				con = xaFactory.createConnection();
-			} else {
-				if (factory == null) {
-					throw new ApplicationError("Application is not set up for JMS local session managed operations");
-				}
-				con = factory.createConnection();
-				if (jmsUsage == JmsUsage.SERVICE_MANAGED) {
-					transacted = true;
-				}
+		if (factory == null) {
+			throw new ApplicationError("Application is not set up for JMS local session managed operations");
+		}
+		boolean transacted = jmsUsage == JmsUsage.SERVICE_MANAGED;
+		Deque<JmsConnector> idle = transacted ? idleTransactedConnectors : idleConnectors;
+		JmsConnector connector;
+		while ((connector = idle.pollFirst()) != null) {
+			if (connector.generation == connectionGeneration) {
+				connector.jmsUsage = jmsUsage;
+				connector.forMultiTrans = multi;
+				return connector;
 			}
-			session = con.createSession(transacted, Session.AUTO_ACKNOWLEDGE);
-			/*
-			 * not very well advertised.. but this method is a MUST for
-			 * consuming queues, though production works without that
-			 */
-			con.start();
-			return new JmsConnector(con, session, jmsUsage, multi);
+			connector.closeSession();
+		}
+		return newPooledConnector(jmsUsage, multi, transacted);
+	}
+
+	private static synchronized JmsConnector newPooledConnector(JmsUsage jmsUsage, boolean multi,
+			boolean transacted) {
+		try {
+			Connection con = getSharedConnection();
+			Session session = con.createSession(transacted, Session.AUTO_ACKNOWLEDGE);
+			return new JmsConnector(con, session, jmsUsage, multi, true);
 		} catch (Exception e) {
 			throw new ApplicationError(e, "Error while creating jms session");
 		}
 	}
 
+	/*
+	 * to be called while holding the class lock
+	 */
+	private static Connection getSharedConnection() throws JMSException {
+		if (sharedConnection != null) {
+			return sharedConnection;
+		}
+		final Connection con = factory.createConnection();
+		try {
+			con.setExceptionListener(e -> discardSharedConnection(con, e));
+		} catch (JMSException | IllegalStateException e) {
+			/*
+			 * java-ee containers do not allow this for connections they manage.
+			 * Such a connection is not discarded on a provider error, but
+			 * the container is expected to take care of that.
+			 */
+			logger.warn("Exception listener could not be set on the shared jms connection : {}", e.getMessage());
+		}
+		/*
+		 * not very well advertised.. but this method is a MUST for consuming
+		 * queues, though production works without that
+		 */
+		con.start();
+		logger.info("Shared jms connection created.");
+		sharedConnection = con;
+		return con;
+	}
+
+	/**
+	 * provider has reported a problem with the shared connection. discard it
+	 * along with the sessions on it. Connectors that are borrowed continue
+	 * with their sessions, but are not pooled on return.
+	 */
+	static synchronized void discardSharedConnection(Connection con, JMSException e) {
+		if (sharedConnection != con) {
+			return;
+		}
+		logger.error("Shared jms connection is discarded after an exception : {}", e.getMessage());
+		sharedConnection = null;
+		connectionGeneration++;
+		for (ReplyDispatcher dispatcher : dispatchers.values()) {
+			dispatcher.close();
+		}
+		dispatchers.clear();
+		closeIdle(idleConnectors);
+		closeIdle(idleTransactedConnectors);
+		try {
+			con.close();
+		} catch (Exception ignore) {
+			//
+		}
+	}
+
+	private static void closeIdle(Deque<JmsConnector> idle) {
+		JmsConnector connector;
+		while ((connector = idle.pollFirst()) != null) {
+			connector.closeSession();
+		}
+	}
+
+	private static synchronized ReplyDispatcher getDispatcher(Destination replyQueue, int generation) {
+		if (generation != connectionGeneration || sharedConnection == null) {
+			return null;
+		}
+		ReplyDispatcher dispatcher = dispatchers.get(replyQueue);
+		if (dispatcher == null) {
+			try {
+				dispatcher = new ReplyDispatcher(sharedConnection, replyQueue);
+			} catch (Exception e) {
+				/*
+				 * some containers do not allow message listeners
+				 */
+				logger.info("Replies can not be dispatched from a shared consumer : {}", e.getMessage());
+				return null;
+			}
+			dispatchers.put(replyQueue, dispatcher);
+		}
+		return dispatcher;
+	}
+
 	/**
 	 * @param connector
 	 * @param allOk
@@ -161,10 +331,10 @@ public class JmsConnector {
 		connector.close(allOk);
 	}
 
-	/** jndi name of queueConnection factory non-JTA connection */
+	/** jms connection. shared with other connectors if this is pooled */
 	private final Connection connection;
 
-	/** jndi name of queueConnection factory non-JTA connection */
+	/** session that is used exclusively by this connector */
 	private final Session session;
 
 	/** usage for which this instance is created */
@@ -172,21 +342,39 @@ public class JmsConnector {
 
 	private boolean forMultiTrans;
 
+	/**
+	 * is this connector pooled on return? connection is shared if it is
+	 */
+	private final boolean pooled;
+
+	/**
+	 * generation of the shared connection on which this session is created
+	 */
+	private final int generation;
+
+	/**
+	 * producers created on the session, by destination. They are closed with
+	 * the session
+	 */
+	private final Map<Destination, MessageProducer> producers = new HashMap<Destination, MessageProducer>();
+
 	/**
 	 * @param con
 	 * @param session
 	 * @param jmsUsage
 	 */
-	private JmsConnector(Connection con, Session session, JmsUsage jmsUsage, boolean multi) {
+	private JmsConnector(Connection con, Session session, JmsUsage jmsUsage, boolean multi, boolean pooled) {
 		this.connection = con;
 		this.session = session;
 		this.jmsUsage = jmsUsage;
 		this.forMultiTrans = multi;
+		this.pooled = pooled;
+		this.generation = connectionGeneration;
 	}
 
 	private void close(boolean allOk) {
-		if (this.forMultiTrans == false) {
-			try {
+		try {
+			if (this.forMultiTrans == false) {
 				if (this.jmsUsage == JmsUsage.SERVICE_MANAGED) {
 					if (allOk) {
 
@@ -203,17 +391,54 @@ public class JmsConnector {
 
 					logger.info("non-transactional JMS session closed.");
 				}
-			} catch (Exception e) {
-				throw new ApplicationError(e, "error while closing jms conenction");
+			} else if (this.pooled && this.session.getTransacted()) {
+				/*
+				 * work not committed by the borrower is not to be seen by the
+				 * next one
+				 */
+				this.session.rollback();
 			}
+		} catch (Exception e) {
+			this.discard();
+			throw new ApplicationError(e, "error while closing jms conenction");
 		}
-		try {
-			this.session.close();
-		} catch (Exception ignore) {
-			//
+
+		if (this.pooled && this.generation == connectionGeneration) {
+			Deque<JmsConnector> idle = this.jmsUsage == JmsUsage.SERVICE_MANAGED ? idleTransactedConnectors
+					: idleConnectors;
+			if (idle.size() < maxIdleSessions) {
+				idle.offerFirst(this);
+				return;
+			}
 		}
+		this.discard();
+	}
+
+	/*
+	 * close the session, and the connection if it is our own
+	 */
+	private void discard() {
+		this.closeSession();
+		if (this.pooled == false) {
+			try {
+				this.connection.close();
+			} catch (Exception ignore) {
+				//
+			}
+		}
+	}
+
+	private void closeSession() {
+		for (MessageProducer producer : this.producers.values()) {
+			try {
+				producer.close();
+			} catch (Exception ignore) {
+				//
+			}
+		}
+		this.producers.clear();
 		try {
-			this.connection.close();
+			this.session.close();
 		} catch (Exception ignore) {
 			//
 		}
@@ -254,4 +479,221 @@ public class JmsConnector {
 	public Session getSession() {
 		return this.session;
 	}
+
+	/**
+	 * get a producer for this destination on the session of this connector.
+	 * Producers are cached with the session, and are NOT to be closed by the
+	 * caller
+	 *
+	 * @param destination
+	 *            null for a producer that specifies destination for each
+	 *            message
+	 * @return producer
+	 * @throws JMSException
+	 */
+	public MessageProducer getProducer(Destination destination) throws JMSException {
+		MessageProducer producer = this.producers.get(destination);
+		if (producer == null) {
+			producer = this.session.createProducer(destination);
+			this.producers.put(destination, producer);
+		}
+		return producer;
+	}
+
+	/**
+	 * register for a reply to a message that is about to be sent. Reply is
+	 * received by a consumer that is shared by all connectors, and is handed
+	 * over based on its correlation id. Caller has to set the correlation id
+	 * and reply-to of the message from the returned object. Responder MUST
+	 * set the correlation id of the request to its reply, as replies to all
+	 * requests arrive on the same queue.
+	 *
+	 * @param replyQueue
+	 *            queue on which the reply is expected. null to get the reply
+	 *            on a temporary queue
+	 * @return object on which to wait for the reply. null if replies can not
+	 *         be dispatched this way, in which case the caller has to receive
+	 *         the reply on its own.
+	 */
+	public PendingReply expectReply(Destination replyQueue) {
+		if (this.pooled == false) {
+			return null;
+		}
+		ReplyDispatcher dispatcher = getDispatcher(replyQueue, this.generation);
+		if (dispatcher == null) {
+			return null;
+		}
+		return dispatcher.register();
+	}
+
+	/**
+	 * reply that is expected for a message
+	 *
+	 * @author simplity.org
+	 *
+	 */
+	public static class PendingReply {
+		private final ReplyDispatcher dispatcher;
+		private final String correlationId;
+		/*
+		 * reply message, or ReplyDispatcher.NO_REPLY if the dispatcher is closed
+		 */
+		private final BlockingQueue<Object> reply = new ArrayBlockingQueue<Object>(1);
+
+		PendingReply(ReplyDispatcher dispatcher, String correlationId) {
+			this.dispatcher = dispatcher;
+			this.correlationId = correlationId;
+		}
+
+		/**
+		 * @return correlation id to be set to the message
+		 */
+		public String getCorrelationId() {
+			return this.correlationId;
+		}
+
+		/**
+		 * @return destination to be set as reply-to of the message
+		 */
+		public Destination getReplyTo() {
+			return this.dispatcher.replyTo;
+		}
+
+		/**
+		 * wait for the reply
+		 *
+		 * @param waitSeconds
+		 *            number of seconds to wait for. 0 means wait till the
+		 *            reply arrives, or the connection is lost
+		 * @return reply, or null if there is no reply within the time, the
+		 *         connection is lost, or the wait is interrupted
+		 */
+		public Message await(int waitSeconds) {
+			try {
+				Object obj;
+				if (waitSeconds > 0) {
+					obj = this.reply.poll(waitSeconds, TimeUnit.SECONDS);
+					if (obj == null) {
+						logger.error("No reply received for correlation id {} in {} seconds.", this.correlationId,
+								waitSeconds);
+						return null;
+					}
+				} else {
+					obj = this.reply.take();
+				}
+				if (obj == ReplyDispatcher.NO_REPLY) {
+					logger.error("Reply queue is closed while waiting for reply with correlation id {}.",
+							this.correlationId);
+					return null;
+				}
+				return (Message) obj;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				this.cancel();
+			}
+		}
+
+		/**
+		 * we are not waiting for the reply any more
+		 */
+		public void cancel() {
+			this.dispatcher.waiters.remove(this.correlationId);
+		}
+	}
+
+	/**
+	 * consumer on a reply destination that hands over replies to those who are
+	 * waiting for them
+	 */
+	static class ReplyDispatcher implements MessageListener {
+		/**
+		 * handed over to those who are waiting when the dispatcher is closed
+		 */
+		static final Object NO_REPLY = new Object();
+
+		final Destination replyTo;
+		final Map<String, PendingReply> waiters = new ConcurrentHashMap<String, PendingReply>();
+		private final Session session;
+		private volatile boolean closed;
+
+		/**
+		 * @param con
+		 * @param replyQueue
+		 *            null to use a temporary queue
+		 * @throws JMSException
+		 */
+		@SuppressWarnings("resource")
+		ReplyDispatcher(Connection con, Destination replyQueue) throws JMSException {
+			this.session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			try {
+				MessageConsumer consumer;
+				if (replyQueue == null) {
+					this.replyTo = this.session.createTemporaryQueue();
+					consumer = this.session.createConsumer(this.replyTo);
+				} else {
+					/*
+					 * queue may be shared with other instances. pick only
+					 * those that are meant for us
+					 */
+					this.replyTo = replyQueue;
+					consumer = this.session.createConsumer(replyQueue,
+							"JMSCorrelationID LIKE '" + CORRELATION_PREFIX + "%'");
+				}
+				consumer.setMessageListener(this);
+			} catch (JMSException e) {
+				this.close();
+				throw e;
+			}
+		}
+
+		PendingReply register() {
+			String id = CORRELATION_PREFIX + correlationSeq.incrementAndGet();
+			PendingReply pending = new PendingReply(this, id);
+			this.waiters.put(id, pending);
+			if (this.closed) {
+				/*
+				 * closed while we were registering. no reply is ever going to
+				 * come
+				 */
+				this.waiters.remove(id);
+				pending.reply.offer(NO_REPLY);
+			}
+			return pending;
+		}
+
+		@Override
+		public void onMessage(Message message) {
+			try {
+				String id = message.getJMSCorrelationID();
+				PendingReply pending = id == null ? null : this.waiters.remove(id);
+				if (pending == null) {
+					logger.warn("Reply with correlation id {} is not awaited by anyone, and is discarded.", id);
+					return;
+				}
+				pending.reply.offer(message);
+			} catch (JMSException e) {
+				logger.error("Error while dispatching a reply : {}", e.getMessage());
+			}
+		}
+
+		void close() {
+			this.closed = true;
+			try {
+				this.session.close();
+			} catch (Exception ignore) {
+				//
+			}
+			/*
+			 * those who are waiting would otherwise wait for ever
+			 */
+			Iterator<PendingReply> iter = this.waiters.values().iterator();
+			while (iter.hasNext()) {
+				PendingReply pending = iter.next();
+				iter.remove();
+				pending.reply.offer(NO_REPLY);
+			}
+		}
+	}
 }
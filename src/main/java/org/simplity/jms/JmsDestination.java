@@ -34,10 +34,14 @@ import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.naming.InitialContext;
 
+import org.simplity.jms.JmsConnector.PendingReply;
+import org.simplity.job.ListenerLoad;
 import org.simplity.kernel.ApplicationError;
 import org.simplity.kernel.Messages;
 import org.simplity.kernel.comp.ComponentManager;
@@ -67,6 +71,9 @@ import org.slf4j.LoggerFactory;
 public class JmsDestination {
 	protected static final Logger logger = LoggerFactory.getLogger(JmsDestination.class);
 
+	/** queue is not browsed beyond these many messages to get its depth */
+	private static final int MAX_DEPTH_TO_COUNT = 10000;
+
 	/**
 	 * name of the queue (destination) used for requesting a service. This is
 	 * the jndi name that is available in the context.
@@ -138,6 +145,12 @@ public class JmsDestination {
 	 * on this, or your application uses this.
 	 */
 	String messageType;
+	/**
+	 * number of seconds to wait for a reply on this queue, when it is used as
+	 * the response queue. 0 means wait till the reply arrives, or the
+	 * connection is lost.
+	 */
+	int replyWaitSeconds;
 
 	/** object instance for re-use */
 	private DataFormatter dataFormatter;
@@ -164,7 +177,8 @@ public class JmsDestination {
 	 * @param waitForMessage
 	 *            true means we will wait for at least the first message. If
 	 *            consumeAll is true, then we do not come-out till interrupted,
-	 *            or the queue closes
+	 *            the queue closes, or the listener job that runs us asks us
+	 *            to stop
 	 */
 	@SuppressWarnings("resource")
 	public void consume(ServiceContext ctx, MessageClient processor, JmsDestination responseQ, boolean consumeAll,
@@ -185,10 +199,22 @@ public class JmsDestination {
 			 * hurt as much as creating it repeatedly..
 			 */
 			producer = session.createProducer(null);
+			/*
+			 * if we are run by a listener job, we report our load to it
+			 */
+			ListenerLoad load = ListenerLoad.getCurrent();
+			/*
+			 * job may ask us to stop. We check that between messages, and
+			 * hence we do not block for ever while waiting for one
+			 */
+			boolean stoppable = ListenerLoad.canBeStopped();
 			/*
 			 * wait 0 means blocking-wait, 1 means try and come out.
 			 */
-			long wait = waitForMessage ? 0 : 1;
+			long wait = 1;
+			if (waitForMessage) {
+				wait = stoppable ? ListenerLoad.STOP_CHECK_MILLIS : 0;
+			}
 			/*
 			 * loop for each message.
 			 */
@@ -196,14 +222,30 @@ public class JmsDestination {
 				if (waitForMessage) {
 					logger.info("Looking/waiting for next message on " + nam);
 				}
+				long startedAt = System.nanoTime();
 				Message msg = consumer.receive(wait);
+				while (msg == null && waitForMessage && stoppable && ListenerLoad.isStopRequested() == false) {
+					msg = consumer.receive(wait);
+				}
+				if (msg == null && stoppable && ListenerLoad.isStopRequested()) {
+					logger.info("Consumer for " + nam + " is asked to stop.");
+					break;
+				}
 				if (msg == null) {
+					if (load != null) {
+						load.idlePoll(System.nanoTime() - startedAt);
+					}
 					logger.info("No message in " + this.name + ". Consumer will not continue;");
 					/*
 					 * queue is shut down
 					 */
 					break;
 				}
+				if (load != null) {
+					long receivedAt = System.nanoTime();
+					load.messageReceived(receivedAt - startedAt);
+					startedAt = receivedAt;
+				}
 				/*
 				 * let exception in one message not affect the over-all process
 				 */
@@ -249,9 +291,19 @@ public class JmsDestination {
 				} catch (Exception e) {
 					ctx.addMessage(Messages.INTERNAL_ERROR, "Message processor threw an excpetion. " + e.getMessage());
 				}
+				if (load != null) {
+					load.messageProcessed(System.nanoTime() - startedAt);
+					if (load.isDepthDue()) {
+						load.setQueueDepth(this.getQueueDepth(session, MAX_DEPTH_TO_COUNT));
+					}
+				}
 				if (consumeAll == false) {
 					break;
 				}
+				if (ListenerLoad.isStopRequested()) {
+					logger.info("Consumer for " + nam + " is asked to stop.");
+					break;
+				}
 			} while (processor.toContinue());
 		} catch (Exception e) {
 			throw new ApplicationError(e, "Error while consuming and procesing JMS queue " + this.name);
@@ -274,6 +326,46 @@ public class JmsDestination {
 		}
 	}
 
+	/**
+	 * number of messages waiting in this queue, as seen by a queue browser.
+	 * Counting stops at maxToCount, as a deep queue is expensive to browse.
+	 *
+	 * @param session
+	 *            session to be used to browse the queue
+	 * @param maxToCount
+	 *            count is not continued beyond this number
+	 * @return number of messages in the queue, limited to maxToCount.
+	 *         ListenerLoad.UNKNOWN_DEPTH if this is a topic, or the provider
+	 *         does not support browsing.
+	 */
+	public int getQueueDepth(Session session, int maxToCount) {
+		if (this.destination instanceof Queue == false) {
+			return ListenerLoad.UNKNOWN_DEPTH;
+		}
+		QueueBrowser browser = null;
+		try {
+			browser = session.createBrowser((Queue) this.destination, this.messageSelector);
+			Enumeration<?> messages = browser.getEnumeration();
+			int nbr = 0;
+			while (nbr < maxToCount && messages.hasMoreElements()) {
+				messages.nextElement();
+				nbr++;
+			}
+			return nbr;
+		} catch (Exception e) {
+			logger.info("Unable to browse queue " + this.name + " for its depth. " + e.getMessage());
+			return ListenerLoad.UNKNOWN_DEPTH;
+		} finally {
+			if (browser != null) {
+				try {
+					browser.close();
+				} catch (Exception ignore) {
+					//
+				}
+			}
+		}
+	}
+
 	/**
 	 * produce message on this queue
 	 *
@@ -284,8 +376,60 @@ public class JmsDestination {
 	 *            operation
 	 * @return true if a message indeed was put on the queue. False otherwise
 	 */
-	@SuppressWarnings("resource")
 	public boolean produce(ServiceContext ctx, JmsDestination responseQ) {
+		JmsConnector connector = ctx.getJmsConnector();
+		if (connector == null) {
+			return this.produceOnSession(ctx, responseQ);
+		}
+		PendingReply reply = null;
+		try {
+			if (responseQ != null) {
+				reply = connector.expectReply(responseQ.name == null ? null : responseQ.getDestination());
+				if (reply == null) {
+					/*
+					 * connector can not dispatch replies to us. we have to
+					 * receive it ourselves
+					 */
+					return this.produceOnSession(ctx, responseQ);
+				}
+			}
+			Message msg = this.createMessage(ctx);
+			if (reply != null) {
+				msg.setJMSCorrelationID(reply.getCorrelationId());
+				msg.setJMSReplyTo(reply.getReplyTo());
+			}
+			/*
+			 * producer is cached by the connector, and is not to be closed
+			 */
+			connector.getProducer(this.destination).send(msg);
+			if (reply == null) {
+				return true;
+			}
+			Message message = reply.await(responseQ.replyWaitSeconds);
+			if (message == null) {
+				logger.info("No response message received.");
+				return false;
+			}
+			responseQ.extractMessage(message, ctx);
+			return true;
+		} catch (Exception e) {
+
+			logger.info("Error while putting mesage on to a queue. " + e.getMessage());
+
+			return false;
+		} finally {
+			if (reply != null) {
+				reply.cancel();
+			}
+		}
+	}
+
+	/**
+	 * produce message using the session, without help from a connector.
+	 * producer, and the consumer for the reply, are created for this message
+	 */
+	@SuppressWarnings("resource")
+	private boolean produceOnSession(ServiceContext ctx, JmsDestination responseQ) {
 		MessageProducer producer = null;
 		MessageConsumer consumer = null;
 		Destination response = null;
@@ -321,13 +465,14 @@ public class JmsDestination {
 			 * method
 			 */
 			if (consumer != null && responseQ != null) {
-				Message message = consumer.receive();
+				Message message = responseQ.replyWaitSeconds > 0
+						? consumer.receive(responseQ.replyWaitSeconds * 1000L) : consumer.receive();
 				if (message == null) {
 					/*
 					 * some issue in the queue
 					 */
 
-					logger.info("Response message is null. Probably some issue with the queue provider");
+					logger.info("Response message is null. Either no response within the wait time, or some issue with the queue provider");
 
 					return false;
 				}
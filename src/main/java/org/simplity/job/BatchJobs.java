@@ -26,6 +26,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.simplity.kernel.Application;
@@ -118,6 +120,12 @@ public class BatchJobs implements Component {
 
 	private ScheduledExecutorService executor;
 
+	/**
+	 * dedicated pool for threads of listener jobs, so that they do not hog
+	 * the scheduled executor that is meant for interval and periodic jobs
+	 */
+	private ExecutorService listenerExecutor;
+
 	private Map<String, ScheduledJob> scheduledJobs = new HashMap<String, ScheduledJob>();
 
 	private ScheduledJob[] polledJobs;
@@ -131,6 +139,7 @@ public class BatchJobs implements Component {
 					"Jobs are already getting executed while another attempt is being made to execute them.");
 		}
 		this.executor = Application.getScheduledExecutor();
+		this.listenerExecutor = Executors.newCachedThreadPool(Application::createThread);
 		/*
 		 * we want jobs to run only when the executor is active. That is,
 		 * executor is not just a submitter, but manager
@@ -141,7 +150,7 @@ public class BatchJobs implements Component {
 		Value userId = this.getUserId();
 		List<ScheduledJob> pollers = new ArrayList<ScheduledJob>();
 		for (Job job : this.jobs) {
-			ScheduledJob sj = job.createScheduledJob(userId);
+			ScheduledJob sj = this.createScheduledJob(job, userId);
 			this.scheduledJobs.put(job.name, sj);
 			boolean needPolling = sj.schedule(this.executor);
 			if (needPolling) {
@@ -168,6 +177,17 @@ public class BatchJobs implements Component {
 				// known issue with JBOSS
 			}
 		}
+		if (this.listenerExecutor != null) {
+			this.listenerExecutor.shutdownNow();
+		}
+	}
+
+	private ScheduledJob createScheduledJob(Job job, Value userId) {
+		ScheduledJob sj = job.createScheduledJob(userId);
+		if (sj instanceof ListenerJob) {
+			((ListenerJob) sj).setListenerExecutor(this.listenerExecutor);
+		}
+		return sj;
 	}
 
 	/**
@@ -295,7 +315,7 @@ public class BatchJobs implements Component {
 					+ " is already running. Choose a different name for your job if you insist on running it");
 		}
 		this.appendJob(job);
-		ScheduledJob sjob = job.createScheduledJob(this.getUserId());
+		ScheduledJob sjob = this.createScheduledJob(job, this.getUserId());
 		boolean isPolled = sjob.schedule(this.executor);
 		this.scheduledJobs.put(job.name, sjob);
 		if (isPolled) {
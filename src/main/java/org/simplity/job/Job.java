@@ -73,6 +73,22 @@ public class Job {
 	 */
 	int nbrDedicatedThreads;
 
+	/**
+	 * for a listener job: threads are scaled between nbrDedicatedThreads and
+	 * this number based on the load reported by its consumers. 0 means the
+	 * number of threads is not scaled automatically.
+	 */
+	int maxDedicatedThreads;
+
+	/** number of seconds between two decisions on scaling the threads */
+	int scalingInterval = 30;
+
+	/**
+	 * threads are increased if the messages waiting would take longer than
+	 * these many seconds to be processed with the current threads
+	 */
+	int secondsToClearBacklog = 60;
+
 	/**
 	 * parameters that this service expects as input are supplied with this
 	 * mechanism
@@ -130,6 +146,16 @@ public class Job {
 
 			this.nbrDedicatedThreads = 1;
 		}
+		if (this.maxDedicatedThreads > 0) {
+			if (this.maxDedicatedThreads < this.nbrDedicatedThreads) {
+				throw new ApplicationError("Job " + this.name + " has maxDedicatedThreads=" + this.maxDedicatedThreads
+						+ " that is less than nbrDedicatedThreads=" + this.nbrDedicatedThreads);
+			}
+			if (this.scalingInterval <= 0 || this.secondsToClearBacklog <= 0) {
+				throw new ApplicationError("Job " + this.name
+						+ " should have positive values for scalingInterval and secondsToClearBacklog");
+			}
+		}
 		if (this.userId != null) {
 			if (Application.userIdIsNumeric()) {
 				try {
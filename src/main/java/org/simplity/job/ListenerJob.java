@@ -23,46 +23,120 @@
 package org.simplity.job;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.simplity.kernel.value.Value;
 
 /**
- * A job that is added to a scheduler. manages running jobs for the job that is scheduled
+ * A job that is added to a scheduler. manages running jobs for the job that is scheduled.
+ *
+ * <p>If the job has specified maxDedicatedThreads, number of threads is scaled between
+ * nbrDedicatedThreads and maxDedicatedThreads based on the load reported by the consumers running
+ * in these threads. Threads are increased when the messages waiting in the queue can not be
+ * cleared within secondsToClearBacklog, and are decreased, one at a time, when consumers are idle.
+ * A thread is decreased by asking its consumer to stop after the message in hand. Threads are not
+ * scaled any more once their number is changed by hand.
  *
  * @author simplity.org
  */
 public class ListenerJob extends ScheduledJob {
+  /** above this fraction of time spent on processing, threads are considered to be fully busy */
+  private static final double BUSY_FRACTION = 0.9;
+  /** below this fraction of time spent on processing, threads are considered to be under-used */
+  private static final double IDLE_FRACTION = 0.5;
 
   private RunningJob[] runningJobs;
   private Object[] futures;
 
+  /** dedicated pool for threads of listener jobs. scheduler's executor is used if this is null */
+  private ExecutorService listenerExecutor;
+  /** executor on which our threads are running */
+  private ExecutorService executorInUse;
+  /** load reported by our consumers. null if threads are not scaled automatically */
+  private final ListenerLoad load;
+  /** periodic task that scales threads */
+  private Future<?> scalerFuture;
+  /** last decision on scaling */
+  private volatile String scalingStatus = "";
+  /** threads are not scaled automatically once they are changed by hand */
+  private boolean changedByHand;
+
   ListenerJob(Job job, Value userId) {
     super(job, userId);
     int nbr = job.nbrDedicatedThreads;
     this.runningJobs = new RunningJob[nbr];
     this.futures = new Object[nbr];
+    if (job.maxDedicatedThreads > 0) {
+      /*
+       * depth is to be refreshed at least once between two scaling decisions
+       */
+      this.load = new ListenerLoad((job.scalingInterval + 1) / 2);
+    } else {
+      this.load = null;
+    }
+  }
+
+  /**
+   * run threads of this job on a dedicated pool, rather than on the executor of the scheduler
+   *
+   * @param executor
+   */
+  void setListenerExecutor(ExecutorService executor) {
+    this.listenerExecutor = executor;
   }
 
   /* (non-Javadoc)
    * @see org.simplity.job.ScheduledJob#schedule(java.util.concurrent.ScheduledThreadPoolExecutor)
    */
   @Override
-  public boolean scheduleJobs(ScheduledExecutorService executor) {
+  public synchronized boolean scheduleJobs(ScheduledExecutorService executor) {
+    this.executorInUse = this.listenerExecutor == null ? executor : this.listenerExecutor;
     for (int i = 0; i < this.runningJobs.length; i++) {
-      RunningJob rj = this.scheduledJob.createRunningJob(this.userId);
+      RunningJob rj = this.createRunningJob();
       this.runningJobs[i] = rj;
-      this.futures[i] = executor.submit(rj);
+      this.futures[i] = this.executorInUse.submit(rj);
+    }
+    if (this.load != null) {
+      this.load.takeCounts();
+      long secs = this.scheduledJob.scalingInterval;
+      this.scalerFuture =
+          executor.scheduleWithFixedDelay(
+              new Runnable() {
+                @Override
+                public void run() {
+                  ListenerJob.this.autoScale();
+                }
+              },
+              secs,
+              secs,
+              TimeUnit.SECONDS);
     }
     return false;
   }
 
+  private RunningJob createRunningJob() {
+    RunningJob rj = this.scheduledJob.createRunningJob(this.userId);
+    rj.setListenerLoad(this.load);
+    return rj;
+  }
+
   /* (non-Javadoc)
    * @see org.simplity.job.ScheduledJob#shutDownGracefully(java.util.concurrent.ScheduledThreadPoolExecutor)
    */
   @Override
-  public void cancel() {
+  public synchronized void cancel() {
+    if (this.scalerFuture != null) {
+      this.scalerFuture.cancel(false);
+      this.scalerFuture = null;
+    }
+    for (RunningJob rj : this.runningJobs) {
+      if (rj != null) {
+        rj.requestStop();
+      }
+    }
     for (Object obj : this.futures) {
       if (obj != null) {
         ((Future<?>) obj).cancel(true);
@@ -75,21 +149,26 @@ public class ListenerJob extends ScheduledJob {
    * @see org.simplity.job.ScheduledJob#incrmentThread(java.util.concurrent.ScheduledThreadPoolExecutor)
    */
   @Override
-  public void incrmentThread(ScheduledExecutorService executor) {
+  public synchronized void incrmentThread(ScheduledExecutorService executor) {
     if (!this.isScheduled) {
 
       logger.info("{} is not scheduled",this.scheduledJob.name);
 
       return;
     }
+    this.stopScaling();
+    this.addThread();
+  }
+
+  private void addThread() {
     int nbr = this.runningJobs.length;
     RunningJob[] newJobs = new RunningJob[nbr + 1];
     this.copyJobs(this.runningJobs, newJobs, nbr);
     Object[] newFutures = new Object[nbr + 1];
     this.copyObjects(this.futures, newFutures, nbr);
-    RunningJob rj = this.scheduledJob.createRunningJob(this.userId);
+    RunningJob rj = this.createRunningJob();
     newJobs[nbr] = rj;
-    newFutures[nbr] = executor.submit(rj);
+    newFutures[nbr] = this.executorInUse.submit(rj);
     this.runningJobs = newJobs;
     this.futures = newFutures;
   }
@@ -109,30 +188,161 @@ public class ListenerJob extends ScheduledJob {
    * @see org.simplity.job.ScheduledJob#decrmentThread(java.util.concurrent.ScheduledThreadPoolExecutor)
    */
   @Override
-  public void decrmentThread(ScheduledExecutorService executor) {
+  public synchronized void decrmentThread(ScheduledExecutorService executor) {
     if (!this.isScheduled) {
 
       logger.info("{} is not scheduled",this.scheduledJob.name);
 
       return;
     }
-    int nbr = this.runningJobs.length - 1;
-    if (nbr == 0) {
+    if (this.runningJobs.length == 1) {
 
       logger.info("Job {} has only one thread. Can not reduce it.",this.scheduledJob.name);
 
       return;
     }
+    this.stopScaling();
+    this.removeThread();
+  }
+
+  /** number of threads is changed by hand. We are not to undo that with automatic scaling */
+  private void stopScaling() {
+    this.changedByHand = true;
+    if (this.scalerFuture == null) {
+      return;
+    }
+    this.scalerFuture.cancel(false);
+    this.scalerFuture = null;
+    this.scalingStatus = "threads are not scaled automatically as they were changed by hand";
+    logger.info(
+        "Threads of job {} are changed by hand. They will not be scaled automatically any more.",
+        this.scheduledJob.name);
+  }
+
+  /**
+   * thread is asked to stop after the message it is processing, if any, rather than being
+   * interrupted in the middle of it
+   */
+  private void removeThread() {
+    int nbr = this.runningJobs.length - 1;
     RunningJob[] newJobs = new RunningJob[nbr];
     this.copyJobs(this.runningJobs, newJobs, nbr);
     Object[] newFutures = new Object[nbr];
     this.copyObjects(this.futures, newFutures, nbr);
-    ((Future<?>) this.futures[nbr]).cancel(true);
+    this.runningJobs[nbr].requestStop();
+    /*
+     * does not interrupt. Only ensures that the job does not start if it is yet to
+     */
+    ((Future<?>) this.futures[nbr]).cancel(false);
 
     this.futures = newFutures;
     this.runningJobs = newJobs;
   }
 
+  /** take the load reported since the last call, and scale the threads if required */
+  synchronized void autoScale() {
+    if (!this.isScheduled || this.changedByHand) {
+      return;
+    }
+    int depth = this.load.getQueueDepth();
+    long[] counts = this.load.takeCounts();
+    Job job = this.scheduledJob;
+    int threads = this.runningJobs.length;
+    int needed = getThreadsNeeded(threads, counts, depth, job.secondsToClearBacklog);
+    int min = job.nbrDedicatedThreads < 1 ? 1 : job.nbrDedicatedThreads;
+    if (needed < min) {
+      needed = min;
+    } else if (needed > job.maxDedicatedThreads) {
+      needed = job.maxDedicatedThreads;
+    }
+    String status = getLoadText(counts, depth);
+    if (needed == threads) {
+      this.scalingStatus = threads + " threads retained. " + status;
+      return;
+    }
+    this.scalingStatus = "threads changed from " + threads + " to " + needed + ". " + status;
+    logger.info("Job {} : {}", job.name, this.scalingStatus);
+    while (threads < needed) {
+      this.addThread();
+      threads++;
+    }
+    while (threads > needed) {
+      this.removeThread();
+      threads--;
+    }
+  }
+
+  /**
+   * number of threads that would be right for the load in the last interval
+   *
+   * @param threads current number of threads
+   * @param counts as returned by ListenerLoad.takeCounts()
+   * @param depth messages waiting in the queue. ListenerLoad.UNKNOWN_DEPTH if not known
+   * @param secondsToClearBacklog
+   * @return number of threads required. Caller has to apply the limits
+   */
+  static int getThreadsNeeded(int threads, long[] counts, int depth, int secondsToClearBacklog) {
+    long nbrMessages = counts[0];
+    long busyNanos = counts[1];
+    long idleNanos = counts[2];
+    long idlePolls = counts[3];
+    long total = busyNanos + idleNanos;
+    double busyFraction = total == 0 ? 0 : (double) busyNanos / total;
+    if (depth > 0) {
+      if (nbrMessages == 0) {
+        /*
+         * messages are waiting, but none got processed. Threads are either tied up, or are done
+         */
+        return threads + 1;
+      }
+      double nanosToClear = depth * ((double) busyNanos / nbrMessages);
+      double targetNanos = TimeUnit.SECONDS.toNanos(secondsToClearBacklog);
+      if (nanosToClear > targetNanos * threads) {
+        return (int) Math.ceil(nanosToClear / targetNanos);
+      }
+      return threads;
+    }
+    if (idlePolls > 0 || (total > 0 && busyFraction < IDLE_FRACTION)) {
+      return threads - 1;
+    }
+    if (nbrMessages == 0) {
+      /*
+       * no message is processed, and the queue is empty or its depth is not known. A consumer
+       * blocked for a message reports nothing till it gets one, and hence we treat this as idle
+       */
+      return threads - 1;
+    }
+    if (depth == ListenerLoad.UNKNOWN_DEPTH && busyFraction > BUSY_FRACTION) {
+      return threads + 1;
+    }
+    return threads;
+  }
+
+  private static String getLoadText(long[] counts, int depth) {
+    long nbrMessages = counts[0];
+    long total = counts[1] + counts[2];
+    String text = nbrMessages + " messages processed";
+    if (nbrMessages > 0) {
+      text += " at " + TimeUnit.NANOSECONDS.toMillis(counts[1] / nbrMessages) + "ms each";
+    }
+    if (total > 0) {
+      text += ", " + (counts[1] * 100 / total) + "% busy";
+    }
+    text += ", " + counts[3] + " idle polls, queue depth ";
+    if (depth == ListenerLoad.UNKNOWN_DEPTH) {
+      return text + "unknown";
+    }
+    return text + depth;
+  }
+
+  /* (non-Javadoc)
+   * @see org.simplity.job.ScheduledJob#getScalingStatus()
+   */
+  @Override
+  protected String getScalingStatus() {
+    return this.scalingStatus;
+  }
+
   /* (non-Javadoc)
    * @see org.simplity.job.ScheduledJob#putJobStatusStub(org.simplity.job.JobStatus, java.util.List)
    */
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.job;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * load on the threads of a listener job, as reported by the consumers running
+ * in those threads. All threads of a job share one instance. Consumers, like
+ * the jms consumer, get the instance for the current thread with getCurrent()
+ * and report as they go. Listener job takes the counts every so often to
+ * decide whether its threads are to be increased or decreased. A thread is
+ * decreased by asking its consumer to stop, rather than by interrupting it, so
+ * that a message is not abandoned half way.
+ *
+ * @author simplity.org
+ */
+public class ListenerLoad {
+	private static final ThreadLocal<ListenerLoad> currentLoad = new ThreadLocal<ListenerLoad>();
+	private static final ThreadLocal<RunningJob> currentJob = new ThreadLocal<RunningJob>();
+
+	/** value of queue depth when it is not known */
+	public static final int UNKNOWN_DEPTH = -1;
+
+	/**
+	 * milliseconds for which a consumer that can be stopped waits for a message
+	 * before it checks whether it is asked to stop
+	 */
+	public static final long STOP_CHECK_MILLIS = 1000;
+
+	/**
+	 * @return load to which the consumer running in this thread is to report
+	 *         to. null if this thread is not run by a listener job.
+	 */
+	public static ListenerLoad getCurrent() {
+		return currentLoad.get();
+	}
+
+	/**
+	 * @return true if this thread is run by a job that may ask its consumer to
+	 *         stop. Such a consumer is to check isStopRequested() between
+	 *         messages, and while it waits for one.
+	 */
+	public static boolean canBeStopped() {
+		return currentJob.get() != null;
+	}
+
+	/**
+	 * @return true if the job that runs this thread has asked the consumer to
+	 *         stop after the message it is processing, if any
+	 */
+	public static boolean isStopRequested() {
+		RunningJob job = currentJob.get();
+		return job != null && job.isStopRequested();
+	}
+
+	static void setCurrent(ListenerLoad load, RunningJob job) {
+		if (load == null) {
+			currentLoad.remove();
+		} else {
+			currentLoad.set(load);
+		}
+		if (job == null) {
+			currentJob.remove();
+		} else {
+			currentJob.set(job);
+		}
+	}
+
+	private final AtomicLong nbrMessages = new AtomicLong();
+	private final AtomicLong busyNanos = new AtomicLong();
+	private final AtomicLong idleNanos = new AtomicLong();
+	private final AtomicLong nbrIdlePolls = new AtomicLong();
+	private final AtomicLong depthDueAt = new AtomicLong();
+	private final long depthInterval;
+	private volatile int queueDepth = UNKNOWN_DEPTH;
+
+	/**
+	 * @param depthIntervalSeconds
+	 *            queue depth is to be checked at most once in these many
+	 *            seconds
+	 */
+	ListenerLoad(int depthIntervalSeconds) {
+		this.depthInterval = TimeUnit.SECONDS.toNanos(depthIntervalSeconds);
+		this.depthDueAt.set(System.nanoTime());
+	}
+
+	/**
+	 * a message was received after waiting for it
+	 *
+	 * @param waitedNanos
+	 *            time spent waiting for the message
+	 */
+	public void messageReceived(long waitedNanos) {
+		this.idleNanos.addAndGet(waitedNanos);
+	}
+
+	/**
+	 * poll for message came back empty
+	 *
+	 * @param waitedNanos
+	 *            time spent waiting for a message
+	 */
+	public void idlePoll(long waitedNanos) {
+		this.idleNanos.addAndGet(waitedNanos);
+		this.nbrIdlePolls.incrementAndGet();
+	}
+
+	/**
+	 * a message was processed
+	 *
+	 * @param processedNanos
+	 *            time taken by the service to process the message
+	 */
+	public void messageProcessed(long processedNanos) {
+		this.busyNanos.addAndGet(processedNanos);
+		this.nbrMessages.incrementAndGet();
+	}
+
+	/**
+	 * is it time to check the queue depth? Returns true to only one of the
+	 * threads in an interval, so that the queue is not browsed by all of them.
+	 *
+	 * @return true if the caller should check the queue depth and report it
+	 *         with setQueueDepth()
+	 */
+	public boolean isDepthDue() {
+		long due = this.depthDueAt.get();
+		long now = System.nanoTime();
+		if (now - due < 0) {
+			return false;
+		}
+		return this.depthDueAt.compareAndSet(due, now + this.depthInterval);
+	}
+
+	/**
+	 * @param depth
+	 *            number of messages waiting in the queue, or UNKNOWN_DEPTH
+	 */
+	public void setQueueDepth(int depth) {
+		this.queueDepth = depth;
+	}
+
+	/**
+	 * @return queue depth reported since the last takeCounts(), or
+	 *         UNKNOWN_DEPTH. To be called before takeCounts()
+	 */
+	int getQueueDepth() {
+		return this.queueDepth;
+	}
+
+	/**
+	 * take the counts accumulated since the last call. Queue depth is reset to
+	 * UNKNOWN_DEPTH, so that a depth that is not refreshed in the next interval
+	 * is not taken again.
+	 *
+	 * @return nbrMessages, busyNanos, idleNanos and nbrIdlePolls, in that
+	 *         order
+	 */
+	long[] takeCounts() {
+		this.queueDepth = UNKNOWN_DEPTH;
+		long[] counts = { this.nbrMessages.getAndSet(0), this.busyNanos.getAndSet(0),
+				this.idleNanos.getAndSet(0), this.nbrIdlePolls.getAndSet(0) };
+		return counts;
+	}
+}
@@ -40,6 +40,10 @@ public class RunningJob implements Runnable {
 
 	private final ServiceRequest request;
 	private JobStatus jobStatus = JobStatus.SCHEDULED;
+	/** load to which consumers in this thread report to. null if not tracked */
+	private ListenerLoad listenerLoad;
+	/** set when the listener job wants this thread to stop */
+	private volatile boolean stopRequested;
 
 	/**
 	 * create a job thread to run a service with the input data
@@ -51,6 +55,30 @@ public class RunningJob implements Runnable {
 		this.request = req;
 	}
 
+	/**
+	 * @param load
+	 *            load to which consumers running in this thread are to report
+	 */
+	void setListenerLoad(ListenerLoad load) {
+		this.listenerLoad = load;
+	}
+
+	/**
+	 * ask this job to stop. A consumer running in this thread stops after the
+	 * message it is processing. Has no effect on a service that does not check
+	 * ListenerLoad.isStopRequested()
+	 */
+	void requestStop() {
+		this.stopRequested = true;
+	}
+
+	/**
+	 * @return true if this job is asked to stop
+	 */
+	boolean isStopRequested() {
+		return this.stopRequested;
+	}
+
 	@Override
 	public void run() {
 		/*
@@ -64,6 +92,7 @@ public class RunningJob implements Runnable {
 		String serviceName = this.request.getServiceName();
 		logger.info("Job for service {} started", serviceName);
 
+		ListenerLoad.setCurrent(this.listenerLoad, this);
 		try {
 			ServiceAgent.getAgent().serve(this.request, new ServiceResponse(null));
 			logger.info("Service " + serviceName + " is done..");
@@ -72,6 +101,8 @@ public class RunningJob implements Runnable {
 			this.jobStatus = JobStatus.FAILED;
 			String msg = "Error while running service " + serviceName + " as a batch job.";
 			Application.reportApplicationError(this.request, new ApplicationError(e, msg));
+		} finally {
+			ListenerLoad.setCurrent(null, null);
 		}
 	}
 
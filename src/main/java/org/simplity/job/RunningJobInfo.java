@@ -32,7 +32,9 @@ import org.simplity.kernel.data.MultiRowsSheet;
  */
 public class RunningJobInfo {
   /** column names when this data structure is serialized as data sheet */
-  public static String[] HEADER = {"jobName", "serviceName", "seqNo", "jobStatus", "serviceStatus"};
+  public static String[] HEADER = {
+    "jobName", "serviceName", "seqNo", "jobStatus", "serviceStatus", "scalingStatus"
+  };
 
   /**
    * @param infoList
@@ -60,7 +62,8 @@ public class RunningJobInfo {
       this.serviceName,
       "" + this.seqNo,
       sts.toString().toLowerCase(),
-      this.serviceStatus
+      this.serviceStatus,
+      this.scalingStatus
     };
     return row;
   }
@@ -75,6 +78,11 @@ public class RunningJobInfo {
   public final int seqNo;
   /** any status emitted by the service. */
   public final String serviceStatus;
+  /**
+   * last decision taken on the number of threads, if the job scales its threads automatically.
+   * empty string otherwise.
+   */
+  public final String scalingStatus;
 
   /**
    * constructor to set all values of this data structure
@@ -87,10 +95,31 @@ public class RunningJobInfo {
    */
   public RunningJobInfo(
       String jobName, String serviceName, JobStatus jobStatus, int seqNo, String serviceStatus) {
+    this(jobName, serviceName, jobStatus, seqNo, serviceStatus, "");
+  }
+
+  /**
+   * constructor to set all values of this data structure
+   *
+   * @param jobName
+   * @param serviceName
+   * @param jobStatus
+   * @param seqNo
+   * @param serviceStatus
+   * @param scalingStatus
+   */
+  public RunningJobInfo(
+      String jobName,
+      String serviceName,
+      JobStatus jobStatus,
+      int seqNo,
+      String serviceStatus,
+      String scalingStatus) {
     this.jobName = jobName;
     this.jobStatus = jobStatus;
     this.serviceName = serviceName;
     this.seqNo = seqNo;
     this.serviceStatus = serviceStatus;
+    this.scalingStatus = scalingStatus;
   }
 }
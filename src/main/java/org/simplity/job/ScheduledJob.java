@@ -133,10 +133,20 @@ public abstract class ScheduledJob {
     }
     RunningJobInfo info =
         new RunningJobInfo(
-            this.scheduledJob.name, this.scheduledJob.serviceName, status, seq, serviceStatus);
+            this.scheduledJob.name,
+            this.scheduledJob.serviceName,
+            status,
+            seq,
+            serviceStatus,
+            this.getScalingStatus());
     infoList.add(info);
   }
 
+  /** @return last decision on scaling the threads. empty string if threads are not scaled */
+  protected String getScalingStatus() {
+    return "";
+  }
+
   /**
    * poll wake-up for the scheduled job to check whether it should submit returned value is the
    * number of minutes remaining for this job. This can be used by the caller to optimize polling,
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * pull parser that reads json tokens from a reader on demand. Unlike
+ * JSONTokener, it reads the input in blocks into a buffer of its own, and
+ * converts numbers without going through stringToValue(). Caller navigates
+ * the structure with beginObject()/hasMoreMembers()/nextKey() and
+ * beginArray()/hasMoreElements(), and can either read a value as an object
+ * (nextValue()) or skip it altogether (skipValue()).
+ *
+ * <p>
+ * values are converted the same way as JSONObject(String) does: null is
+ * JSONObject.NULL, integral numbers are Integer or Long, other numbers are
+ * Double, and objects/arrays are JSONObject/JSONArray
+ *
+ * @author simplity.org
+ *
+ */
+public class JSONPullParser {
+	private static final int BUFFER_SIZE = 8 * 1024;
+	/**
+	 * returned by peek() at the end of input
+	 */
+	public static final char EOF = 0;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	/**
+	 * number of chars in buffer
+	 */
+	private int nbrChars;
+	/**
+	 * next char to be read from buffer
+	 */
+	private int idx;
+	/**
+	 * number of chars read before the current buffer, for error messages
+	 */
+	private long offset;
+	/**
+	 * re-used for building strings
+	 */
+	private final StringBuilder sbf = new StringBuilder();
+
+	/**
+	 * @param reader
+	 *            non-null reader. caller is responsible for closing it
+	 */
+	public JSONPullParser(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * skip white spaces, and return the next char without consuming it
+	 *
+	 * @return next non-white-space char, or EOF
+	 * @throws JSONException
+	 *             in case of io error
+	 */
+	public char peek() throws JSONException {
+		while (true) {
+			if (this.idx == this.nbrChars && this.fill() == false) {
+				return EOF;
+			}
+			char c = this.buffer[this.idx];
+			if (c > ' ') {
+				return c;
+			}
+			this.idx++;
+		}
+	}
+
+	/**
+	 * consume the opening brace of an object
+	 *
+	 * @throws JSONException
+	 *             if the next token is not '{'
+	 */
+	public void beginObject() throws JSONException {
+		this.expect('{');
+	}
+
+	/**
+	 * consume the opening bracket of an array
+	 *
+	 * @throws JSONException
+	 *             if the next token is not '['
+	 */
+	public void beginArray() throws JSONException {
+		this.expect('[');
+	}
+
+	/**
+	 * are there more members in the object that is being read? closing brace
+	 * is consumed if there are no more members. separating comma is consumed
+	 * otherwise.
+	 *
+	 * @return true if nextKey() can be called. false if the object is closed
+	 * @throws JSONException
+	 */
+	public boolean hasMoreMembers() throws JSONException {
+		return this.hasMore('}');
+	}
+
+	/**
+	 * are there more elements in the array that is being read? closing bracket
+	 * is consumed if there are no more elements. separating comma is consumed
+	 * otherwise.
+	 *
+	 * @return true if a value can be read. false if the array is closed
+	 * @throws JSONException
+	 */
+	public boolean hasMoreElements() throws JSONException {
+		return this.hasMore(']');
+	}
+
+	/**
+	 * read the name of the next member and the colon that follows it
+	 *
+	 * @return key
+	 * @throws JSONException
+	 */
+	public String nextKey() throws JSONException {
+		if (this.peek() != '"') {
+			throw this.syntaxError("Expected a key");
+		}
+		this.idx++;
+		String key = this.readString();
+		this.expect(':');
+		return key;
+	}
+
+	/**
+	 * read the next value
+	 *
+	 * @return JSONObject.NULL, Boolean, Integer, Long, Double, String,
+	 *         JSONObject or JSONArray
+	 * @throws JSONException
+	 */
+	public Object nextValue() throws JSONException {
+		char c = this.peek();
+		switch (c) {
+		case '"':
+			this.idx++;
+			return this.readString();
+		case '{':
+			this.idx++;
+			JSONObject json = new JSONObject();
+			while (this.hasMore('}')) {
+				String key = this.nextKey();
+				json.put(key, this.nextValue());
+			}
+			return json;
+		case '[':
+			this.idx++;
+			JSONArray arr = new JSONArray();
+			while (this.hasMore(']')) {
+				arr.put(this.nextValue());
+			}
+			return arr;
+		case 't':
+			this.readLiteral("true");
+			return Boolean.TRUE;
+		case 'f':
+			this.readLiteral("false");
+			return Boolean.FALSE;
+		case 'n':
+			this.readLiteral("null");
+			return JSONObject.NULL;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return this.readNumber();
+			}
+			throw this.syntaxError(c == EOF ? "Unexpected end of input" : "Unexpected character '" + c + "'");
+		}
+	}
+
+	/**
+	 * skip the next value without creating any object for it
+	 *
+	 * @throws JSONException
+	 */
+	public void skipValue() throws JSONException {
+		char c = this.peek();
+		switch (c) {
+		case '"':
+			this.idx++;
+			this.skipString();
+			return;
+		case '{':
+			this.idx++;
+			while (this.hasMore('}')) {
+				this.nextKey();
+				this.skipValue();
+			}
+			return;
+		case '[':
+			this.idx++;
+			while (this.hasMore(']')) {
+				this.skipValue();
+			}
+			return;
+		default:
+			this.nextValue();
+		}
+	}
+
+	/**
+	 * create an exception with the current position in it
+	 *
+	 * @param msg
+	 * @return exception
+	 */
+	public JSONException syntaxError(String msg) {
+		return new JSONException(msg + " at " + (this.offset + this.idx));
+	}
+
+	private boolean hasMore(char closer) throws JSONException {
+		char c = this.peek();
+		if (c == closer) {
+			this.idx++;
+			return false;
+		}
+		if (c == ',') {
+			this.idx++;
+			c = this.peek();
+		}
+		if (c == EOF) {
+			throw this.syntaxError("Unexpected end of input");
+		}
+		return true;
+	}
+
+	private void expect(char c) throws JSONException {
+		if (this.peek() != c) {
+			throw this.syntaxError("Expected '" + c + "'");
+		}
+		this.idx++;
+	}
+
+	/*
+	 * next char, without skipping white-space
+	 */
+	private char nextChar() throws JSONException {
+		if (this.idx == this.nbrChars && this.fill() == false) {
+			throw this.syntaxError("Unexpected end of input");
+		}
+		return this.buffer[this.idx++];
+	}
+
+	private void readLiteral(String literal) throws JSONException {
+		int n = literal.length();
+		for (int i = 0; i < n; i++) {
+			if (this.nextChar() != literal.charAt(i)) {
+				throw this.syntaxError("Expected " + literal);
+			}
+		}
+	}
+
+	/*
+	 * opening quote is already consumed
+	 */
+	private String readString() throws JSONException {
+		StringBuilder sb = this.sbf;
+		sb.setLength(0);
+		while (true) {
+			/*
+			 * copy runs of plain characters from the buffer in one go
+			 */
+			int start = this.idx;
+			int i = start;
+			while (i < this.nbrChars) {
+				char c = this.buffer[i];
+				if (c == '"' || c == '\\') {
+					break;
+				}
+				i++;
+			}
+			sb.append(this.buffer, start, i - start);
+			this.idx = i;
+			char c = this.nextChar();
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c == '\\') {
+				sb.append(this.readEscape());
+			} else {
+				sb.append(c);
+			}
+		}
+	}
+
+	private void skipString() throws JSONException {
+		while (true) {
+			char c = this.nextChar();
+			if (c == '"') {
+				return;
+			}
+			if (c == '\\') {
+				this.readEscape();
+			}
+		}
+	}
+
+	/*
+	 * back slash is already consumed
+	 */
+	private char readEscape() throws JSONException {
+		char c = this.nextChar();
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'f':
+			return '\f';
+		case 'r':
+			return '\r';
+		case 'u':
+			int n = 0;
+			for (int i = 0; i < 4; i++) {
+				int d = Character.digit(this.nextChar(), 16);
+				if (d == -1) {
+					throw this.syntaxError("Illegal escape.");
+				}
+				n = (n << 4) + d;
+			}
+			return (char) n;
+		case '"':
+		case '\'':
+		case '\\':
+		case '/':
+			return c;
+		default:
+			throw this.syntaxError("Illegal escape.");
+		}
+	}
+
+	private Object readNumber() throws JSONException {
+		StringBuilder sb = this.sbf;
+		sb.setLength(0);
+		boolean isDecimal = false;
+		long n = 0;
+		boolean negative = false;
+		int nbrDigits = 0;
+		while (this.idx < this.nbrChars || this.fill()) {
+			char c = this.buffer[this.idx];
+			if (c >= '0' && c <= '9') {
+				n = n * 10 + (c - '0');
+				nbrDigits++;
+			} else if (c == '-' && sb.length() == 0) {
+				negative = true;
+			} else if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+				isDecimal = true;
+			} else {
+				break;
+			}
+			sb.append(c);
+			this.idx++;
+		}
+		if (nbrDigits == 0) {
+			throw this.syntaxError("Invalid number " + sb);
+		}
+		if (isDecimal) {
+			Double d;
+			try {
+				d = Double.valueOf(sb.toString());
+			} catch (NumberFormatException e) {
+				throw this.syntaxError("Invalid number " + sb);
+			}
+			if (d.isInfinite() || d.isNaN()) {
+				return sb.toString();
+			}
+			return d;
+		}
+		if (nbrDigits > 18) {
+			/*
+			 * may have overflowed our long. go the long way
+			 */
+			return JSONObject.stringToValue(sb.toString());
+		}
+		if (negative) {
+			n = -n;
+		}
+		if (n == (int) n) {
+			return Integer.valueOf((int) n);
+		}
+		return Long.valueOf(n);
+	}
+
+	/*
+	 * read the next block into buffer
+	 */
+	private boolean fill() throws JSONException {
+		this.offset += this.nbrChars;
+		this.idx = 0;
+		this.nbrChars = 0;
+		try {
+			int n;
+			do {
+				n = this.reader.read(this.buffer, 0, BUFFER_SIZE);
+			} while (n == 0);
+			if (n < 0) {
+				return false;
+			}
+			this.nbrChars = n;
+			return true;
+		} catch (IOException e) {
+			throw new JSONException(e);
+		}
+	}
+}
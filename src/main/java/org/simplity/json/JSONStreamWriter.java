@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.simplity.kernel.util.DateUtil;
+import org.simplity.kernel.value.Value;
+
+/**
+ * JSONWriter that writes UTF-8 bytes directly to an output stream through a
+ * buffer of its own. Unlike JSONWriter, it does not create a JSONObject for
+ * every object that it opens, and does not go through a Writer and its
+ * character encoder.
+ *
+ * <p>
+ * Checking for duplicate keys within an object requires us to keep track of
+ * keys written so far. This is optional, and is typically switched on only
+ * during development. Output is the same as that of JSONWriter otherwise.
+ *
+ * <p>
+ * flush() must be called once writing is complete. This writer does not close
+ * the underlying stream.
+ *
+ * @author simplity.org
+ *
+ */
+public class JSONStreamWriter extends JSONWriter {
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final int INITIAL_DEPTH = 32;
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e',
+			'f' };
+
+	/**
+	 * whether new instances check for duplicate keys
+	 */
+	private static boolean checkKeysByDefault;
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int nbrBytes;
+
+	/**
+	 * for each open object/array, true if it is an object.
+	 */
+	private boolean[] isObject = new boolean[INITIAL_DEPTH];
+	/**
+	 * number of open objects/arrays
+	 */
+	private int top;
+	/**
+	 * should a comma be written before the next value?
+	 */
+	private boolean comma;
+
+	/**
+	 * keys written for each open object. null if keys are not checked
+	 */
+	private final List<Set<String>> keysWritten;
+
+	/**
+	 * should new instances check for duplicate keys? Typically true in
+	 * development, and false in production
+	 *
+	 * @param checkKeys
+	 */
+	public static void setCheckKeysByDefault(boolean checkKeys) {
+		checkKeysByDefault = checkKeys;
+	}
+
+	/**
+	 * writer that checks for duplicate keys as per the default setting
+	 *
+	 * @param out
+	 *            stream to which UTF-8 bytes are written
+	 */
+	public JSONStreamWriter(OutputStream out) {
+		this(out, checkKeysByDefault);
+	}
+
+	/**
+	 * @param out
+	 *            stream to which UTF-8 bytes are written
+	 * @param checkKeys
+	 *            true if an exception is to be thrown if a key is repeated
+	 *            within an object
+	 */
+	public JSONStreamWriter(OutputStream out, boolean checkKeys) {
+		super(null, 0);
+		this.out = out;
+		this.keysWritten = checkKeys ? new ArrayList<Set<String>>() : null;
+	}
+
+	@Override
+	public JSONWriter array() throws JSONException {
+		if (this.mode == 'i' || this.mode == 'o' || this.mode == 'a') {
+			this.push(false);
+			this.beforeValue();
+			this.writeByte('[');
+			this.afterValue();
+			this.comma = false;
+			return this;
+		}
+		throw new JSONException("Misplaced array.");
+	}
+
+	@Override
+	public JSONWriter object() throws JSONException {
+		if (this.mode == 'i') {
+			this.mode = 'o';
+		}
+		if (this.mode == 'o' || this.mode == 'a') {
+			this.beforeValue();
+			this.writeByte('{');
+			this.afterValue();
+			this.push(true);
+			this.comma = false;
+			return this;
+		}
+		throw new JSONException("Misplaced object.");
+	}
+
+	@Override
+	public JSONWriter endArray() throws JSONException {
+		return this.end('a', ']');
+	}
+
+	@Override
+	public JSONWriter endObject() throws JSONException {
+		return this.end('k', '}');
+	}
+
+	@Override
+	public JSONWriter key(String string) throws JSONException {
+		if (string == null) {
+			throw new JSONException("Null key.");
+		}
+		if (this.mode != 'k') {
+			throw new JSONException("Misplaced key.");
+		}
+		if (this.keysWritten != null && this.keysWritten.get(this.keysWritten.size() - 1).add(string) == false) {
+			throw new JSONException("Duplicate key \"" + string + "\"");
+		}
+		if (this.comma) {
+			this.writeByte(',');
+		}
+		this.writeQuoted(string);
+		this.writeByte(':');
+		this.comma = false;
+		this.mode = 'o';
+		return this;
+	}
+
+	@Override
+	public JSONWriter value(boolean b) throws JSONException {
+		this.beforeValue();
+		this.writeAscii(b ? "true" : "false");
+		this.afterValue();
+		return this;
+	}
+
+	@Override
+	public JSONWriter value(double d) throws JSONException {
+		if (Double.isInfinite(d) || Double.isNaN(d)) {
+			throw new JSONException("JSON does not allow non-finite numbers.");
+		}
+		this.beforeValue();
+		this.writeAscii(JSONObject.doubleToString(d));
+		this.afterValue();
+		return this;
+	}
+
+	@Override
+	public JSONWriter value(long l) throws JSONException {
+		this.beforeValue();
+		this.writeLong(l);
+		this.afterValue();
+		return this;
+	}
+
+	@Override
+	public JSONWriter value(Object object) throws JSONException {
+		if (object instanceof JsonWritable) {
+			((JsonWritable) object).writeJsonValue(this);
+			return this;
+		}
+		if (object instanceof String) {
+			this.beforeValue();
+			this.writeQuoted((String) object);
+			this.afterValue();
+			return this;
+		}
+		if (object instanceof Long || object instanceof Integer || object instanceof Short
+				|| object instanceof Byte) {
+			return this.value(((Number) object).longValue());
+		}
+		if (object instanceof Double) {
+			return this.value(((Double) object).doubleValue());
+		}
+		if (object instanceof Boolean) {
+			return this.value(((Boolean) object).booleanValue());
+		}
+		if (object instanceof Date) {
+			this.beforeValue();
+			this.writeQuoted(DateUtil.formatDateTime((Date) object));
+			this.afterValue();
+			return this;
+		}
+		this.beforeValue();
+		this.writeRaw(JSONObject.valueToString(object));
+		this.afterValue();
+		return this;
+	}
+
+	@Override
+	public JSONWriter value(Value value) throws JSONException {
+		if (value == null) {
+			this.beforeValue();
+			this.writeAscii("null");
+			this.afterValue();
+		} else {
+			value.writeJsonValue(this);
+		}
+		return this;
+	}
+
+	/**
+	 * write out whatever is in the buffer, and flush the stream
+	 *
+	 * @throws JSONException
+	 *             in case of any io error
+	 */
+	public void flush() throws JSONException {
+		try {
+			this.flushBuffer();
+			this.out.flush();
+		} catch (IOException e) {
+			throw new JSONException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.out.toString();
+	}
+
+	/*
+	 * value is about to be written. Same rules as JSONWriter.append()
+	 */
+	private void beforeValue() throws JSONException {
+		if (this.mode != 'o' && this.mode != 'a') {
+			throw new JSONException("Value out of sequence.");
+		}
+		if (this.comma && this.mode == 'a') {
+			this.writeByte(',');
+		}
+	}
+
+	/*
+	 * value is written
+	 */
+	private void afterValue() {
+		if (this.mode == 'o') {
+			this.mode = 'k';
+		}
+		this.comma = true;
+	}
+
+	private JSONWriter end(char modeChar, char c) throws JSONException {
+		if (this.mode != modeChar) {
+			throw new JSONException(modeChar == 'a' ? "Misplaced endArray." : "Misplaced endObject.");
+		}
+		if (this.top <= 0) {
+			throw new JSONException("Nesting error.");
+		}
+		this.top--;
+		if (this.keysWritten != null && modeChar == 'k') {
+			this.keysWritten.remove(this.keysWritten.size() - 1);
+		}
+		this.mode = this.top == 0 ? 'd' : this.isObject[this.top - 1] ? 'k' : 'a';
+		this.writeByte(c);
+		this.comma = true;
+		return this;
+	}
+
+	private void push(boolean forObject) {
+		if (this.top == this.isObject.length) {
+			boolean[] arr = new boolean[this.top * 2];
+			System.arraycopy(this.isObject, 0, arr, 0, this.top);
+			this.isObject = arr;
+		}
+		this.isObject[this.top] = forObject;
+		this.top++;
+		if (this.keysWritten != null && forObject) {
+			this.keysWritten.add(new HashSet<String>());
+		}
+		this.mode = forObject ? 'k' : 'a';
+	}
+
+	private void writeByte(int b) throws JSONException {
+		if (this.nbrBytes == BUFFER_SIZE) {
+			this.flushBufferSafely();
+		}
+		this.buffer[this.nbrBytes++] = (byte) b;
+	}
+
+	/*
+	 * text that is known to have only ascii characters
+	 */
+	private void writeAscii(String text) throws JSONException {
+		int n = text.length();
+		for (int i = 0; i < n; i++) {
+			this.writeByte(text.charAt(i));
+		}
+	}
+
+	private void writeLong(long l) throws JSONException {
+		if (l == Long.MIN_VALUE) {
+			this.writeAscii(Long.toString(l));
+			return;
+		}
+		long n = l;
+		if (n < 0) {
+			this.writeByte('-');
+			n = -n;
+		}
+		/*
+		 * 19 digits is the max for a long
+		 */
+		if (this.nbrBytes + 19 > BUFFER_SIZE) {
+			this.flushBufferSafely();
+		}
+		int nbrDigits = 1;
+		for (long m = n / 10; m > 0; m /= 10) {
+			nbrDigits++;
+		}
+		int idx = this.nbrBytes + nbrDigits;
+		this.nbrBytes = idx;
+		do {
+			idx--;
+			this.buffer[idx] = (byte) ('0' + (n % 10));
+			n /= 10;
+		} while (n > 0);
+	}
+
+	/*
+	 * text that may have non-ascii characters, but need not be escaped
+	 */
+	private void writeRaw(String text) throws JSONException {
+		int n = text.length();
+		for (int i = 0; i < n; i++) {
+			i = this.writeChar(text, i);
+		}
+	}
+
+	/*
+	 * same escaping as JSONObject.quote()
+	 */
+	private void writeQuoted(String text) throws JSONException {
+		this.writeByte('"');
+		int n = text.length();
+		char c = 0;
+		for (int i = 0; i < n; i++) {
+			char b = c;
+			c = text.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				this.writeByte('\\');
+				this.writeByte(c);
+				break;
+			case '/':
+				if (b == '<') {
+					this.writeByte('\\');
+				}
+				this.writeByte(c);
+				break;
+			case '\b':
+				this.writeEscape('b');
+				break;
+			case '\t':
+				this.writeEscape('t');
+				break;
+			case '\n':
+				this.writeEscape('n');
+				break;
+			case '\f':
+				this.writeEscape('f');
+				break;
+			case '\r':
+				this.writeEscape('r');
+				break;
+			default:
+				if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+					this.writeByte('\\');
+					this.writeByte('u');
+					this.writeByte(HEX[(c >> 12) & 0xF]);
+					this.writeByte(HEX[(c >> 8) & 0xF]);
+					this.writeByte(HEX[(c >> 4) & 0xF]);
+					this.writeByte(HEX[c & 0xF]);
+				} else {
+					i = this.writeChar(text, i);
+				}
+			}
+		}
+		this.writeByte('"');
+	}
+
+	private void writeEscape(char c) throws JSONException {
+		this.writeByte('\\');
+		this.writeByte(c);
+	}
+
+	/**
+	 * write the char at idx as UTF-8 bytes
+	 *
+	 * @return index of the last char consumed. idx+1 if a surrogate pair was
+	 *         consumed, idx otherwise
+	 */
+	private int writeChar(String text, int idx) throws JSONException {
+		char c = text.charAt(idx);
+		if (c < 0x80) {
+			this.writeByte(c);
+			return idx;
+		}
+		if (c < 0x800) {
+			this.writeByte(0xC0 | (c >> 6));
+			this.writeByte(0x80 | (c & 0x3F));
+			return idx;
+		}
+		if (Character.isSurrogate(c)) {
+			int next = idx + 1;
+			if (Character.isHighSurrogate(c) && next < text.length()
+					&& Character.isLowSurrogate(text.charAt(next))) {
+				int cp = Character.toCodePoint(c, text.charAt(next));
+				this.writeByte(0xF0 | (cp >> 18));
+				this.writeByte(0x80 | ((cp >> 12) & 0x3F));
+				this.writeByte(0x80 | ((cp >> 6) & 0x3F));
+				this.writeByte(0x80 | (cp & 0x3F));
+				return next;
+			}
+			/*
+			 * malformed. replace it, as an encoder would
+			 */
+			this.writeByte('?');
+			return idx;
+		}
+		this.writeByte(0xE0 | (c >> 12));
+		this.writeByte(0x80 | ((c >> 6) & 0x3F));
+		this.writeByte(0x80 | (c & 0x3F));
+		return idx;
+	}
+
+	private void flushBufferSafely() throws JSONException {
+		try {
+			this.flushBuffer();
+		} catch (IOException e) {
+			throw new JSONException(e);
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (this.nbrBytes > 0) {
+			this.out.write(this.buffer, 0, this.nbrBytes);
+			this.nbrBytes = 0;
+		}
+	}
+}
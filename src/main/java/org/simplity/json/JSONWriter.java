@@ -98,6 +98,21 @@ public class JSONWriter {
     this(new StringWriter());
   }
 
+  /**
+   * for a sub-class that takes care of writing and nesting on its own, and hence does not need the
+   * writer or the stack
+   *
+   * @param w writer, possibly null
+   * @param maxDepth size of stack to be allocated
+   */
+  protected JSONWriter(Writer w, int maxDepth) {
+    this.comma = false;
+    this.mode = 'i';
+    this.stack = new JSONObject[maxDepth];
+    this.top = 0;
+    this.writer = w;
+  }
+
   /**
    * Append a value.
    *
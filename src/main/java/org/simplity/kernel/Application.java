@@ -27,9 +27,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.InitialContext;
 import javax.transaction.UserTransaction;
@@ -40,6 +44,7 @@ import org.simplity.gateway.Gateway;
 import org.simplity.gateway.Gateways;
 import org.simplity.jms.JmsConnector;
 import org.simplity.job.BatchJobs;
+import org.simplity.json.JSONStreamWriter;
 import org.simplity.kernel.comp.ComponentManager;
 import org.simplity.kernel.comp.ComponentType;
 import org.simplity.kernel.comp.FieldMetaData;
@@ -104,6 +109,8 @@ public class Application {
 	private static ThreadFactory threadFactory;
 	private static ScheduledExecutorService threadPoolExecutor;
 	private static int batchPoolSize;
+	private static int actionPoolSize;
+	private static ExecutorService parallelActionExecutor;
 
 	/**
 	 *
@@ -200,6 +207,29 @@ public class Application {
 		return threadPoolExecutor;
 	}
 
+	/**
+	 * shared, bounded pool to run actions in parallel, like the child-actions
+	 * of a synchronizer. Tasks are run by the submitting thread when the pool
+	 * and its queue are full. Idle threads are not retained.
+	 *
+	 * @return executor
+	 */
+	public static synchronized ExecutorService getParallelActionExecutor() {
+		if (parallelActionExecutor != null) {
+			return parallelActionExecutor;
+		}
+		int nbr = actionPoolSize;
+		if (nbr == 0) {
+			nbr = 2 * Runtime.getRuntime().availableProcessors();
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(nbr, nbr, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(nbr * 4), Application::createThread,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		parallelActionExecutor = executor;
+		return parallelActionExecutor;
+	}
+
 	/** name of configuration file, including extension */
 	public static final String CONFIG_FILE_NAME = "application.xml";
 
@@ -291,6 +321,18 @@ public class Application {
 	 */
 	boolean cacheComponents;
 
+	/**
+	 * load all components at start-up, rather than on first use. Relevant only
+	 * if cacheComponents is true, and components are on the file system
+	 */
+	boolean warmUpComponents;
+
+	/**
+	 * number of threads used to load components during warm-up. Defaults to
+	 * the number of processors
+	 */
+	int warmUpParallelism;
+
 	/**
 	 * during development/testing,we can simulate service executions with local
 	 * data. service.xml is used for input/output, but the execution is skipped.
@@ -396,6 +438,11 @@ public class Application {
 	 * managed operations
 	 */
 	String xaJmsConnectionFactory;
+	/**
+	 * max number of idle jms sessions to be retained in the pool. defaults
+	 * to 8
+	 */
+	int jmsSessionPoolSize;
 
 	/** batch job to fire after bootstrapping. */
 	@FieldMetaData(isReferenceToComp = true, referredCompType = ComponentType.JOBS)
@@ -423,6 +470,12 @@ public class Application {
 	/** number of threads to keep in the pool even if they are idle */
 	int corePoolSize;
 
+	/**
+	 * max number of threads to run child-actions of synchronizers in parallel.
+	 * defaults to twice the number of processors
+	 */
+	int parallelActionPoolSize;
+
 	RdbDriver rdbDriver;
 
 	private static OAuthParameters oauthparametersInternal;
@@ -606,7 +659,8 @@ public class Application {
 		 * Setup JMS Connection factory
 		 */
 		if (this.jmsConnectionFactory != null || this.xaJmsConnectionFactory != null) {
-			String msg = JmsConnector.setup(this.jmsConnectionFactory, this.xaJmsConnectionFactory, this.jmsProperties);
+			String msg = JmsConnector.setup(this.jmsConnectionFactory, this.xaJmsConnectionFactory, this.jmsProperties,
+					this.jmsSessionPoolSize);
 			if (msg != null) {
 				msgs.add(msg);
 			}
@@ -630,6 +684,10 @@ public class Application {
 		if (this.cacheComponents) {
 			ComponentManager.startCaching();
 		}
+		/*
+		 * checking for duplicate keys in json output is a development aid
+		 */
+		JSONStreamWriter.setCheckKeysByDefault(this.cacheComponents == false);
 
 		/*
 		 * what about file/media/attachment storage assistant?
@@ -663,6 +721,7 @@ public class Application {
 		} else {
 			batchPoolSize = this.corePoolSize;
 		}
+		actionPoolSize = this.parallelActionPoolSize;
 
 		if (this.threadFactoryJndiName != null) {
 			try {
@@ -698,6 +757,16 @@ public class Application {
 			this.externalApplications = null;
 		}
 
+		/*
+		 * components are loaded only after everything they may need is set up
+		 */
+		if (this.cacheComponents && this.warmUpComponents) {
+			int nbrFailed = ComponentManager.warmUp(this.warmUpParallelism);
+			if (nbrFailed > 0) {
+				logger.error("{} components failed to load during warm-up. Refer to error logs.", nbrFailed);
+			}
+		}
+
 		if (msgs.size() > 0) {
 			/*
 			 * we got errors.
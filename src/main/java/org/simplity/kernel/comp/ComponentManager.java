@@ -343,6 +343,20 @@ public class ComponentManager {
 		ComponentType.startCaching();
 	}
 
+	/**
+	 * load all components that are otherwise loaded on demand, so that they
+	 * are ready before the first request arrives. To be called after
+	 * startCaching()
+	 *
+	 * @param parallelism
+	 *            number of threads to be used for loading. 0 means number of
+	 *            processors
+	 * @return number of components that failed to load
+	 */
+	public static int warmUp(int parallelism) {
+		return ComponentType.warmUp(parallelism);
+	}
+
 	/**
 	 * purge cached components, and do not cache any more. USed during development.
 	 */
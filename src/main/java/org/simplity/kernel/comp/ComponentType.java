@@ -22,9 +22,14 @@
 
 package org.simplity.kernel.comp;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.simplity.adapter.DataAdapter;
 import org.simplity.job.BatchJobs;
@@ -34,6 +39,7 @@ import org.simplity.kernel.db.Sql;
 import org.simplity.kernel.db.StoredProcedure;
 import org.simplity.kernel.dm.Record;
 import org.simplity.kernel.dt.DataType;
+import org.simplity.kernel.file.FileManager;
 import org.simplity.kernel.fn.Concat;
 import org.simplity.kernel.fn.Function;
 import org.simplity.kernel.util.XmlUtil;
@@ -78,10 +84,7 @@ public enum ComponentType {
 			}
 			logger.info("Service compName is generated on-the-fly and is used as a regular service");
 			comp.getReady();
-			if (this.cachedOnes != null) {
-				this.cachedOnes.put(compName, comp);
-			}
-			return comp;
+			return this.cacheIt(compName, comp);
 		}
 	},
 	/** Sql */
@@ -118,6 +121,13 @@ public enum ComponentType {
 
 	protected static String[] modules;
 
+	/**
+	 * components that are loaded on demand, in the order in which they are to
+	 * be warmed up. Records are referred to by sqls, stored procedures and
+	 * services, and hence are loaded before them.
+	 */
+	private static final ComponentType[] WARM_UP_ORDER = { REC, SQL, SP, ADAPTER, SERVICE };
+
 	/*
 	 * list of built-in functions
 	 */
@@ -252,11 +262,27 @@ public enum ComponentType {
 		if (comp == null) {
 			return null;
 		}
+		return this.cacheIt(compName, comp);
+	}
 
-		if (this.cachedOnes != null) {
-			this.cachedOnes.put(compName, comp);
+	/**
+	 * cache a component that is loaded on demand. Another thread may have
+	 * loaded the same component in the meantime, in which case that one is
+	 * used, so that all users share the same instance
+	 *
+	 * @param compName
+	 * @param comp
+	 * @return component to be used
+	 */
+	protected Component cacheIt(String compName, Component comp) {
+		if (this.cachedOnes == null) {
+			return comp;
 		}
-		return comp;
+		Object existing = this.cachedOnes.putIfAbsent(compName, comp);
+		if (existing == null) {
+			return comp;
+		}
+		return (Component) existing;
 	}
 
 	/**
@@ -408,13 +434,96 @@ public enum ComponentType {
 	 */
 	static void startCaching() {
 		/*
-		 * component caching happens if the collection exists
+		 * component caching happens if the collection exists. Components are
+		 * loaded on demand by concurrent requests
 		 */
 		for (ComponentType aType : ComponentType.values()) {
 			if (aType.isPreloaded == false) {
-				aType.cachedOnes = new HashMap<String, Object>();
+				aType.cachedOnes = new ConcurrentHashMap<String, Object>();
+			}
+		}
+	}
+
+	/**
+	 * load all components that are otherwise loaded on demand, so that the
+	 * first requests after a start do not pay for it. Components of a type are
+	 * loaded in parallel. Types are loaded one after the other, in an order
+	 * that ensures that components are mostly loaded before others refer to
+	 * them. Components are cached only if caching is on, and hence this is of
+	 * no use otherwise.
+	 *
+	 * Components are located by listing the component folders, and hence this
+	 * works only if the components are on the file system.
+	 *
+	 * @param parallelism
+	 *            number of threads to be used. 0 means number of processors
+	 * @return number of components that failed to load
+	 */
+	static int warmUp(int parallelism) {
+		int nbr = parallelism;
+		if (nbr <= 0) {
+			nbr = Runtime.getRuntime().availableProcessors();
+		}
+		ForkJoinPool pool = new ForkJoinPool(nbr);
+		int nbrFailed = 0;
+		try {
+			for (ComponentType aType : WARM_UP_ORDER) {
+				if (aType.cachedOnes == null) {
+					logger.info("{} are not cached, and hence are not warmed up", aType);
+					continue;
+				}
+				List<String> names = aType.getAllNames();
+				if (names.isEmpty()) {
+					continue;
+				}
+				long start = System.currentTimeMillis();
+				long nbrLoaded = pool.submit(() -> names.parallelStream().filter(aType::loadForWarmUp).count()).get();
+				logger.info("{} of {} {} loaded in {} ms", nbrLoaded, names.size(), aType,
+						System.currentTimeMillis() - start);
+				nbrFailed += names.size() - nbrLoaded;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Warm-up of components interrupted. Remaining components will be loaded on demand.");
+		} catch (ExecutionException e) {
+			logger.error("Warm-up of components failed. Remaining components will be loaded on demand.", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return nbrFailed;
+	}
+
+	private boolean loadForWarmUp(String compName) {
+		try {
+			return this.getComponentOrNull(compName) != null;
+		} catch (Exception e) {
+			logger.error("Component " + compName + " failed to get ready.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return names of all components of this type that are saved in their
+	 *         own files under the component folder
+	 */
+	private List<String> getAllNames() {
+		String root = compRootPath + this.folder;
+		if (root.charAt(root.length() - 1) != FOLDER_CHAR) {
+			root += FOLDER_CHAR;
+		}
+		List<String> names = new ArrayList<String>();
+		String[] files = FileManager.getResources(root);
+		if (files.length == 0) {
+			logger.info("No {} found under {} for warm-up", this, root);
+			return names;
+		}
+		for (String file : files) {
+			if (file.startsWith(root) && file.endsWith(EXTN)) {
+				names.add(file.substring(root.length(), file.length() - EXTN.length()).replace(FOLDER_CHAR,
+						DELIMITER));
 			}
 		}
+		return names;
 	}
 
 	/**
@@ -0,0 +1,1010 @@
+/*
+ * Copyright (c) 2016 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.simplity.kernel.data;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.dm.Field;
+import org.simplity.kernel.util.ArrayUtil;
+import org.simplity.kernel.value.BooleanValue;
+import org.simplity.kernel.value.DateValue;
+import org.simplity.kernel.value.DecimalValue;
+import org.simplity.kernel.value.IntegerValue;
+import org.simplity.kernel.value.TimestampValue;
+import org.simplity.kernel.value.Value;
+import org.simplity.kernel.value.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * data sheet that stores its data column-wise in primitive arrays rather than
+ * as rows of Value objects. Integers, dates and time-stamps are held in a
+ * long[], decimals in a double[], booleans in a bit set and text (including
+ * keys of clob/blob) is dictionary-encoded. Each column has a bit set to mark
+ * null values. Value objects are created only when a cell is accessed through
+ * the DataSheet API, so this is meant for large sheets, typically the output
+ * of an sql that reads a lot of rows. Aggregators and serializers should use
+ * the bulk column accessors like getLongs() and getTexts() instead.
+ *
+ * <p>
+ * Since rows are not stored as arrays, getRow() and getAllRows() return
+ * copies. Changing an element of the returned array has no effect on the
+ * sheet. use setColumnValue() instead.
+ * </p>
+ *
+ * @author simplity.org
+ *
+ */
+public class ColumnarSheet implements DataSheet {
+	private static final Logger logger = LoggerFactory.getLogger(ColumnarSheet.class);
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private String[] columnNames;
+	private ValueType[] columnValueTypes;
+	private Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+	private Column[] columns;
+
+	/**
+	 * number of rows in the sheet
+	 */
+	private int nbrRows;
+
+	/**
+	 * number of rows that the columns can hold before they have to grow
+	 */
+	private int capacity = INITIAL_CAPACITY;
+
+	/**
+	 * create a sheet with structure but no data
+	 *
+	 * @param columnNames
+	 * @param columnValueTypes
+	 */
+	public ColumnarSheet(String[] columnNames, ValueType[] columnValueTypes) {
+		if (columnNames.length != columnValueTypes.length) {
+			throw new ApplicationError("Data sheet can not be created because " + columnValueTypes.length
+					+ " value types are supplied for " + columnNames.length + " columns.");
+		}
+		this.columnNames = columnNames;
+		this.columnValueTypes = columnValueTypes;
+		this.columns = new Column[columnNames.length];
+		int i = 0;
+		for (String columnName : columnNames) {
+			if (this.columnIndexes.containsKey(columnName)) {
+				throw new ApplicationError("Column names can not be duplicate in a data sheet.");
+			}
+			this.columnIndexes.put(columnName, Integer.valueOf(i));
+			this.columns[i] = newColumn(columnValueTypes[i], this.capacity);
+			i++;
+		}
+	}
+
+	/**
+	 * @param fields
+	 *            to be used as columns for the data sheet
+	 */
+	public ColumnarSheet(Field[] fields) {
+		this(getNames(fields), getTypes(fields));
+	}
+
+	/**
+	 * create a columnar copy of another data sheet
+	 *
+	 * @param sheet
+	 *            sheet with the columns and rows to be copied
+	 */
+	public ColumnarSheet(DataSheet sheet) {
+		this(sheet.getColumnNames().clone(), sheet.getValueTypes().clone());
+		this.appendRows(sheet);
+	}
+
+	private static String[] getNames(Field[] fields) {
+		String[] names = new String[fields.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = fields[i].getName();
+		}
+		return names;
+	}
+
+	private static ValueType[] getTypes(Field[] fields) {
+		ValueType[] types = new ValueType[fields.length];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = fields[i].getValueType();
+		}
+		return types;
+	}
+
+	/**
+	 * add a row by reading the current row of a result set. Values are read
+	 * directly into the columns without creating Value objects, except for
+	 * boolean, clob and blob columns that need the conversions in ValueType.
+	 * Columns of the result set are to be in the same order as that of this
+	 * sheet.
+	 *
+	 * @param rs
+	 *            result set positioned at a row
+	 * @throws SQLException
+	 */
+	public void addRow(ResultSet rs) throws SQLException {
+		int row = this.nbrRows;
+		this.ensureCapacity(row + 1);
+		for (int col = 0; col < this.columns.length; col++) {
+			Column column = this.columns[col];
+			ValueType vt = this.columnValueTypes[col];
+			int posn = col + 1;
+			if (column instanceof LongColumn) {
+				long val;
+				if (vt == ValueType.INTEGER) {
+					val = rs.getLong(posn);
+				} else {
+					Timestamp ts = rs.getTimestamp(posn);
+					if (ts == null) {
+						val = 0;
+					} else if (vt == ValueType.DATE) {
+						val = ts.getTime();
+					} else {
+						val = (ts.getTime() / 1000) * 1000000000 + ts.getNanos();
+					}
+				}
+				((LongColumn) column).values[row] = val;
+				if (rs.wasNull()) {
+					column.nulls.set(row);
+				}
+				continue;
+			}
+			if (column instanceof DoubleColumn) {
+				((DoubleColumn) column).values[row] = rs.getDouble(posn);
+				if (rs.wasNull()) {
+					column.nulls.set(row);
+				}
+				continue;
+			}
+			if (column instanceof TextColumn && vt == ValueType.TEXT) {
+				String val = rs.getString(posn);
+				if (val == null) {
+					column.nulls.set(row);
+				} else {
+					((TextColumn) column).setText(row, val);
+				}
+				continue;
+			}
+			this.setCell(col, row, vt.extractFromRs(rs, posn));
+		}
+		this.nbrRows++;
+	}
+
+	/**
+	 * values of an integer, date or time-stamp column. Date is in
+	 * milli-seconds and time-stamp is in nano-seconds since epoch. Use
+	 * getNulls() to know which of these are null
+	 *
+	 * @param columnName
+	 * @return a copy of the values, one per row. 0 for null values.
+	 */
+	public long[] getLongs(String columnName) {
+		Column column = this.getColumn(columnName);
+		if (column instanceof LongColumn) {
+			return Arrays.copyOf(((LongColumn) column).values, this.nbrRows);
+		}
+		throw new ApplicationError("Column " + columnName + " is of type " + this.getType(columnName)
+				+ " and its values can not be fetched as long.");
+	}
+
+	/**
+	 * values of a decimal or integer column. Use getNulls() to know which of
+	 * these are null
+	 *
+	 * @param columnName
+	 * @return a copy of the values, one per row. 0 for null values
+	 */
+	public double[] getDoubles(String columnName) {
+		Column column = this.getColumn(columnName);
+		if (column instanceof DoubleColumn) {
+			return Arrays.copyOf(((DoubleColumn) column).values, this.nbrRows);
+		}
+		if (column instanceof LongColumn && this.getType(columnName) == ValueType.INTEGER) {
+			long[] longs = ((LongColumn) column).values;
+			double[] result = new double[this.nbrRows];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = longs[i];
+			}
+			return result;
+		}
+		throw new ApplicationError("Column " + columnName + " is of type " + this.getType(columnName)
+				+ " and its values can not be fetched as double.");
+	}
+
+	/**
+	 * values of a boolean column
+	 *
+	 * @param columnName
+	 * @return a copy of the values with a bit set for every row with true.
+	 *         Use getNulls() to know which of the rows are null
+	 */
+	public BitSet getBooleans(String columnName) {
+		Column column = this.getColumn(columnName);
+		if (column instanceof BooleanColumn) {
+			return ((BooleanColumn) column).values.get(0, this.nbrRows);
+		}
+		throw new ApplicationError("Column " + columnName + " is of type " + this.getType(columnName)
+				+ " and its values can not be fetched as boolean.");
+	}
+
+	/**
+	 * values of a text column. For clob and blob, these are the keys.
+	 *
+	 * @param columnName
+	 * @return a copy of the values, one per row. null for null values
+	 */
+	public String[] getTexts(String columnName) {
+		Column column = this.getColumn(columnName);
+		if (column instanceof TextColumn) {
+			TextColumn tc = (TextColumn) column;
+			String[] result = new String[this.nbrRows];
+			for (int i = 0; i < result.length; i++) {
+				if (column.nulls.get(i) == false && column.absent.get(i) == false) {
+					result[i] = tc.getText(i);
+				}
+			}
+			return result;
+		}
+		throw new ApplicationError("Column " + columnName + " is of type " + this.getType(columnName)
+				+ " and its values can not be fetched as text.");
+	}
+
+	/**
+	 * rows in which this column has no value
+	 *
+	 * @param columnName
+	 * @return a copy, with a bit set for every row that has a null value
+	 */
+	public BitSet getNulls(String columnName) {
+		Column column = this.getColumn(columnName);
+		BitSet result = column.nulls.get(0, this.nbrRows);
+		result.or(column.absent.get(0, this.nbrRows));
+		if (column instanceof ValueColumn) {
+			Value[] values = ((ValueColumn) column).values;
+			for (int i = 0; i < this.nbrRows; i++) {
+				if (Value.isNull(values[i])) {
+					result.set(i);
+				}
+			}
+		}
+		return result;
+	}
+
+	private Column getColumn(String columnName) {
+		Integer idx = this.columnIndexes.get(columnName);
+		if (idx == null) {
+			throw new ApplicationError(columnName + " is not a column in this data sheet");
+		}
+		return this.columns[idx.intValue()];
+	}
+
+	private ValueType getType(String columnName) {
+		return this.columnValueTypes[this.columnIndexes.get(columnName).intValue()];
+	}
+
+	@Override
+	public String[][] getRawData() {
+		String[][] rawData = new String[this.nbrRows + 1][];
+		rawData[0] = this.columnNames;
+		int nbrCols = this.columnNames.length;
+		for (int row = 0; row < this.nbrRows; row++) {
+			String[] texts = new String[nbrCols];
+			for (int col = 0; col < nbrCols; col++) {
+				Value value = this.getCell(col, row);
+				texts[col] = value == null ? "" : value.toString();
+			}
+			rawData[row + 1] = texts;
+		}
+		return rawData;
+	}
+
+	@Override
+	public int length() {
+		return this.nbrRows;
+	}
+
+	@Override
+	public int width() {
+		return this.columnNames.length;
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return this.columnNames;
+	}
+
+	@Override
+	public ValueType[] getValueTypes() {
+		return this.columnValueTypes;
+	}
+
+	/**
+	 * Note that the returned row is a copy. Changes to this array are not
+	 * reflected in the sheet.
+	 */
+	@Override
+	public Value[] getRow(int zeroBasedRowNumber) {
+		if (zeroBasedRowNumber < 0 || zeroBasedRowNumber >= this.nbrRows) {
+			throw new ApplicationError("Row " + zeroBasedRowNumber + " is requested from a data sheet that has "
+					+ this.nbrRows + " rows");
+		}
+		Value[] row = new Value[this.columns.length];
+		for (int col = 0; col < row.length; col++) {
+			row[col] = this.getCell(col, zeroBasedRowNumber);
+		}
+		return row;
+	}
+
+	/**
+	 * Note that this creates Value objects for all the cells in the sheet, and
+	 * returns a copy of the data.
+	 */
+	@Override
+	public List<Value[]> getAllRows() {
+		List<Value[]> rows = new ArrayList<Value[]>(this.nbrRows);
+		for (int i = 0; i < this.nbrRows; i++) {
+			rows.add(this.getRow(i));
+		}
+		return rows;
+	}
+
+	@Override
+	public Value getColumnValue(String columnName, int zeroBasedRowNumber) {
+		Integer idx = this.columnIndexes.get(columnName);
+		if (idx == null || zeroBasedRowNumber < 0 || zeroBasedRowNumber >= this.nbrRows) {
+
+			logger.info("Request to get value for column" + columnName + " and index " + zeroBasedRowNumber
+					+ " is not valid. going to return null");
+
+			return null;
+		}
+		return this.getCell(idx.intValue(), zeroBasedRowNumber);
+	}
+
+	@Override
+	public void setColumnValue(String columnName, int zeroBasedRowNumber, Value value) {
+		Integer idx = this.columnIndexes.get(columnName);
+		if (idx == null || zeroBasedRowNumber < 0 || zeroBasedRowNumber >= this.nbrRows) {
+			throw new ApplicationError("Request to set value  for column" + columnName + " and index "
+					+ zeroBasedRowNumber + " is not valid.");
+		}
+		this.setCell(idx.intValue(), zeroBasedRowNumber, value);
+	}
+
+	@Override
+	public Iterator<FieldsCollection> iterator() {
+		return new DataRows(this);
+	}
+
+	@Override
+	public Value getValue(String fieldName) {
+		return this.getColumnValue(fieldName, 0);
+	}
+
+	@Override
+	public void setValue(String fieldName, Value value) {
+		this.setColumnValue(fieldName, 0, value);
+	}
+
+	@Override
+	public boolean hasValue(String fieldName) {
+		return this.getColumnValue(fieldName, 0) != null;
+	}
+
+	/** we do not remove column values */
+	@Override
+	public Value removeValue(String fieldName) {
+		return null;
+	}
+
+	@Override
+	public void addRow(Value[] row) {
+		if (row.length != this.columns.length) {
+			throw new ApplicationError("A row with " + row.length + " values is being added to a data sheet with "
+					+ this.columns.length + " columns.");
+		}
+		int rowIdx = this.nbrRows;
+		this.ensureCapacity(rowIdx + 1);
+		this.nbrRows++;
+		for (int col = 0; col < row.length; col++) {
+			this.setCell(col, rowIdx, row[col]);
+		}
+	}
+
+	@Override
+	public Value[] getColumnValues(String columnName) {
+		Integer n = this.columnIndexes.get(columnName);
+		if (n == null) {
+
+			logger.info(columnName
+					+ " is not a column in the sheet and hence null values are returned for getColumnValues()");
+
+			return null;
+		}
+		int idx = n.intValue();
+		Value[] values = new Value[this.nbrRows];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = this.getCell(idx, i);
+		}
+		return values;
+	}
+
+	@Override
+	public void addColumn(String columnName, ValueType valueType, Value[] values) {
+		if (values != null && values.length != this.nbrRows) {
+			throw new ApplicationError("column " + columnName + " is being added with " + values.length
+					+ " values but the sheet has " + this.nbrRows + " rows.");
+		}
+		Column column = newColumn(valueType, this.capacity);
+		Integer key = this.columnIndexes.get(columnName);
+		int idx;
+		if (key == null) {
+			idx = this.columnNames.length;
+			this.columnIndexes.put(columnName, Integer.valueOf(idx));
+			this.columnNames = ArrayUtil.extend(this.columnNames, columnName);
+			this.columnValueTypes = ArrayUtil.extend(this.columnValueTypes, valueType);
+			this.columns = Arrays.copyOf(this.columns, idx + 1);
+		} else {
+			idx = key.intValue();
+			this.columnValueTypes[idx] = valueType;
+		}
+		this.columns[idx] = column;
+		for (int i = 0; i < this.nbrRows; i++) {
+			this.setCell(idx, i, values == null ? null : values[i]);
+		}
+	}
+
+	@Override
+	public void addColumn(String columnName, Value value) {
+		Value[] values = new Value[this.nbrRows];
+		Arrays.fill(values, value);
+		this.addColumn(columnName, value.getValueType(), values);
+	}
+
+	@Override
+	public Set<Entry<String, Value>> getAllFields() {
+		return this.getAllFields(0);
+	}
+
+	@Override
+	public Set<Entry<String, Value>> getAllFields(int rowIdx) {
+		if (rowIdx >= this.nbrRows) {
+			throw new ApplicationError("A request is received to fetch a non-existing row in a data sheet");
+		}
+		Map<String, Value> fields = new HashMap<String, Value>(this.columnNames.length);
+		int i = 0;
+		for (String fieldName : this.columnNames) {
+			fields.put(fieldName, this.getCell(i, rowIdx));
+			i++;
+		}
+		return fields.entrySet();
+	}
+
+	@Override
+	public void trace() {
+
+		logger.info(this.toString("\t", "\n"));
+	}
+
+	/**
+	 * @param fieldSep
+	 * @param rowSep
+	 * @return a printable string for data in this sheet
+	 */
+	public String toString(String fieldSep, String rowSep) {
+		StringBuilder sbf = new StringBuilder();
+		for (String nam : this.columnNames) {
+			sbf.append(nam).append(fieldSep);
+		}
+		for (int row = 0; row < this.nbrRows; row++) {
+			sbf.append(rowSep);
+			for (int col = 0; col < this.columns.length; col++) {
+				sbf.append(this.getCell(col, row)).append(fieldSep);
+			}
+		}
+		return sbf.toString();
+	}
+
+	@Override
+	public int appendRows(DataSheet sheet) {
+		if (sheet == null) {
+			return 0;
+		}
+		int n = sheet.length();
+		if (n == 0) {
+			return 0;
+		}
+		ValueType[] fromTypes = sheet.getValueTypes();
+		int nbrCols = fromTypes.length;
+		if (nbrCols != this.columnValueTypes.length) {
+			throw new ApplicationError("AppendRows is not possible because from sheet has " + nbrCols
+					+ " columns while to sheet has " + this.columnValueTypes.length + " columns");
+		}
+		for (int idx = 0; idx < nbrCols; idx++) {
+			if (this.columnValueTypes[idx] != fromTypes[idx]) {
+				throw new ApplicationError("AppendRows is not possible because from and to sheets have " + nbrCols
+						+ " columns each, but column " + (idx + 1) + " are of different type.");
+			}
+		}
+		this.ensureCapacity(this.nbrRows + n);
+		for (int i = 0; i < n; i++) {
+			this.addRow(sheet.getRow(i));
+		}
+		return n;
+	}
+
+	@Override
+	public int getColIdx(String columnName) {
+		Integer idx = this.columnIndexes.get(columnName);
+		if (idx == null) {
+
+			logger.info("We did not find column " + columnName + " in this columnar sheet");
+
+			return -1;
+		}
+		return idx.intValue();
+	}
+
+	@Override
+	public String toSerializedText(DataSerializationType serializationType) {
+		throw new ApplicationError("Sorry, serialization is not yet implemented for ColumnarSheet");
+	}
+
+	@Override
+	public void fromSerializedText(String text, DataSerializationType serializationType, boolean replaceExistingRows) {
+		throw new ApplicationError("Sorry, de-serialization is not yet implemented for ColumnarSheet");
+	}
+
+	@Override
+	public int appendEmptyRows(int nbrRowsToAdd) {
+		int newLength = this.nbrRows + nbrRowsToAdd;
+		this.ensureCapacity(newLength);
+		for (Column column : this.columns) {
+			column.absent.set(this.nbrRows, newLength);
+		}
+		this.nbrRows = newLength;
+		return newLength;
+	}
+
+	@Override
+	public FieldsCollection getRowAsFields(int rowIdx) {
+		if (rowIdx >= this.nbrRows) {
+			return null;
+		}
+		return new RowAsFields(rowIdx);
+	}
+
+	@Override
+	public int[] getColumnIndexes(String[] names) {
+		int[] result = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			result[i] = this.getColIdx(names[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * materialize the value in a cell
+	 *
+	 * @return null if the cell was never assigned a value
+	 */
+	private Value getCell(int col, int row) {
+		Column column = this.columns[col];
+		if (column.absent.get(row)) {
+			return null;
+		}
+		if (column.nulls.get(row)) {
+			return Value.newUnknownValue(this.columnValueTypes[col]);
+		}
+		return column.get(row);
+	}
+
+	/**
+	 * save value into a cell. If the value can not be held by the primitive
+	 * array of this column, we switch the column to hold Value objects
+	 */
+	private void setCell(int col, int row, Value value) {
+		Column column = this.columns[col];
+		if (value == null) {
+			column.absent.set(row);
+			column.nulls.clear(row);
+			return;
+		}
+		column.absent.clear(row);
+		if (column.set(row, value)) {
+			return;
+		}
+		logger.info("Column " + this.columnNames[col] + " is of type " + this.columnValueTypes[col]
+				+ " but a value of type " + value.getValueType()
+				+ " is being set to it. Values of this column will be kept as objects.");
+		ValueColumn generic = new ValueColumn(this.capacity);
+		for (int i = 0; i < this.nbrRows; i++) {
+			generic.values[i] = this.getCell(col, i);
+		}
+		generic.absent.or(column.absent);
+		generic.values[row] = value;
+		this.columns[col] = generic;
+	}
+
+	private void ensureCapacity(int nbr) {
+		if (nbr <= this.capacity) {
+			return;
+		}
+		int newCapacity = this.capacity * 2;
+		if (newCapacity < nbr) {
+			newCapacity = nbr;
+		}
+		for (Column column : this.columns) {
+			column.grow(newCapacity);
+		}
+		this.capacity = newCapacity;
+	}
+
+	private static Column newColumn(ValueType valueType, int capacity) {
+		switch (valueType) {
+		case INTEGER:
+		case DATE:
+		case TIMESTAMP:
+			return new LongColumn(valueType, capacity);
+		case DECIMAL:
+			return new DoubleColumn(capacity);
+		case BOOLEAN:
+			return new BooleanColumn();
+		case TEXT:
+		case CLOB:
+		case BLOB:
+			return new TextColumn(valueType, capacity);
+		default:
+			return new ValueColumn(capacity);
+		}
+	}
+
+	/**
+	 * storage for values of a column
+	 */
+	private static abstract class Column {
+		/**
+		 * rows with null (unknown) value
+		 */
+		final BitSet nulls = new BitSet();
+		/**
+		 * rows that are not assigned any value. getValue() returns null for
+		 * these rows, as against an unknown value for nulls
+		 */
+		final BitSet absent = new BitSet();
+
+		/**
+		 * extend the storage to hold these many rows
+		 *
+		 * @param newCapacity
+		 */
+		abstract void grow(int newCapacity);
+
+		/**
+		 * @param row
+		 * @param value
+		 *            non-null value
+		 * @return false if the value can not be held in this column
+		 */
+		abstract boolean set(int row, Value value);
+
+		/**
+		 * @param row
+		 *            that is neither null nor absent
+		 * @return value in this row
+		 */
+		abstract Value get(int row);
+	}
+
+	/**
+	 * integer, date (milli-seconds) and time-stamp (nano-seconds)
+	 */
+	private static class LongColumn extends Column {
+		private final ValueType valueType;
+		long[] values;
+
+		LongColumn(ValueType valueType, int capacity) {
+			this.valueType = valueType;
+			this.values = new long[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			this.values = Arrays.copyOf(this.values, newCapacity);
+		}
+
+		@Override
+		boolean set(int row, Value value) {
+			if (value.getValueType() != this.valueType && value.isUnknown() == false) {
+				return false;
+			}
+			if (value.isUnknown()) {
+				this.nulls.set(row);
+				return true;
+			}
+			long val;
+			if (value instanceof IntegerValue) {
+				val = ((IntegerValue) value).getLong();
+			} else if (value instanceof DateValue) {
+				val = ((DateValue) value).getDate();
+			} else if (value instanceof TimestampValue) {
+				val = ((TimestampValue) value).getInteger();
+			} else {
+				return false;
+			}
+			this.values[row] = val;
+			this.nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		Value get(int row) {
+			long val = this.values[row];
+			if (this.valueType == ValueType.INTEGER) {
+				return Value.newIntegerValue(val);
+			}
+			if (this.valueType == ValueType.DATE) {
+				return Value.newDateValue(val);
+			}
+			return Value.newTimestampValue(val);
+		}
+	}
+
+	private static class DoubleColumn extends Column {
+		double[] values;
+
+		DoubleColumn(int capacity) {
+			this.values = new double[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			this.values = Arrays.copyOf(this.values, newCapacity);
+		}
+
+		@Override
+		boolean set(int row, Value value) {
+			if (value.isUnknown()) {
+				this.nulls.set(row);
+				return true;
+			}
+			if (value instanceof DecimalValue == false) {
+				return false;
+			}
+			this.values[row] = ((DecimalValue) value).getDouble();
+			this.nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		Value get(int row) {
+			return Value.newDecimalValue(this.values[row]);
+		}
+	}
+
+	private static class BooleanColumn extends Column {
+		final BitSet values = new BitSet();
+
+		@Override
+		void grow(int newCapacity) {
+			// bit set grows on its own
+		}
+
+		@Override
+		boolean set(int row, Value value) {
+			if (value.isUnknown()) {
+				this.nulls.set(row);
+				return true;
+			}
+			if (value instanceof BooleanValue == false) {
+				return false;
+			}
+			this.values.set(row, ((BooleanValue) value).getBoolean());
+			this.nulls.clear(row);
+			return true;
+		}
+
+		@Override
+		Value get(int row) {
+			return Value.newBooleanValue(this.values.get(row));
+		}
+	}
+
+	/**
+	 * text, or key of clob/blob. Text is dictionary encoded to start with.
+	 * When it turns out that most values are distinct, the dictionary is
+	 * dropped and the texts are kept in an array
+	 */
+	private static class TextColumn extends Column {
+		/**
+		 * we do not give up on the dictionary till it has these many entries
+		 */
+		private static final int MIN_DICTIONARY_SIZE = 1024;
+
+		private final ValueType valueType;
+		private int[] codes;
+		private List<String> dictionary = new ArrayList<String>();
+		private Map<String, Integer> lookup = new HashMap<String, Integer>();
+		/**
+		 * used instead of codes once the dictionary is dropped
+		 */
+		private String[] texts;
+
+		TextColumn(ValueType valueType, int capacity) {
+			this.valueType = valueType;
+			this.codes = new int[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			if (this.texts == null) {
+				this.codes = Arrays.copyOf(this.codes, newCapacity);
+			} else {
+				this.texts = Arrays.copyOf(this.texts, newCapacity);
+			}
+		}
+
+		@Override
+		boolean set(int row, Value value) {
+			if (value.isUnknown()) {
+				this.nulls.set(row);
+				return true;
+			}
+			if (value.getValueType() != this.valueType) {
+				return false;
+			}
+			this.setText(row, value.toString());
+			return true;
+		}
+
+		void setText(int row, String text) {
+			this.nulls.clear(row);
+			if (this.texts != null) {
+				this.texts[row] = text;
+				return;
+			}
+			Integer code = this.lookup.get(text);
+			if (code == null) {
+				int n = this.dictionary.size();
+				if (n >= MIN_DICTIONARY_SIZE && n > this.codes.length / 2) {
+					this.dropDictionary();
+					this.texts[row] = text;
+					return;
+				}
+				code = Integer.valueOf(n);
+				this.dictionary.add(text);
+				this.lookup.put(text, code);
+			}
+			this.codes[row] = code.intValue();
+		}
+
+		String getText(int row) {
+			if (this.texts != null) {
+				return this.texts[row];
+			}
+			return this.dictionary.get(this.codes[row]);
+		}
+
+		private void dropDictionary() {
+			String[] arr = new String[this.codes.length];
+			for (int i = 0; i < arr.length; i++) {
+				arr[i] = this.dictionary.get(this.codes[i]);
+			}
+			this.texts = arr;
+			this.codes = null;
+			this.dictionary = null;
+			this.lookup = null;
+		}
+
+		@Override
+		Value get(int row) {
+			String text = this.getText(row);
+			if (this.valueType == ValueType.CLOB) {
+				return Value.newClobValue(text);
+			}
+			if (this.valueType == ValueType.BLOB) {
+				return Value.newBlobValue(text);
+			}
+			return Value.newTextValue(text);
+		}
+	}
+
+	/**
+	 * fall-back when values of different types are set to a column
+	 */
+	private static class ValueColumn extends Column {
+		Value[] values;
+
+		ValueColumn(int capacity) {
+			this.values = new Value[capacity];
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			this.values = Arrays.copyOf(this.values, newCapacity);
+		}
+
+		@Override
+		boolean set(int row, Value value) {
+			this.values[row] = value;
+			return true;
+		}
+
+		@Override
+		Value get(int row) {
+			return this.values[row];
+		}
+	}
+
+	class RowAsFields implements FieldsCollection {
+		private final int idx;
+
+		RowAsFields(int idx) {
+			this.idx = idx;
+		}
+
+		@Override
+		public Value getValue(String fieldName) {
+			return ColumnarSheet.this.getColumnValue(fieldName, this.idx);
+		}
+
+		@Override
+		public void setValue(String fieldName, Value value) {
+			ColumnarSheet.this.setColumnValue(fieldName, this.idx, value);
+		}
+
+		@Override
+		public boolean hasValue(String fieldName) {
+			return ColumnarSheet.this.getColumnValue(fieldName, this.idx) != null;
+		}
+
+		@Override
+		public Value removeValue(String fieldName) {
+			Value val = ColumnarSheet.this.getColumnValue(fieldName, this.idx);
+			ColumnarSheet.this.setColumnValue(fieldName, this.idx, null);
+			return val;
+		}
+
+		@Override
+		public Set<Entry<String, Value>> getAllFields() {
+			return ColumnarSheet.this.getAllFields(this.idx);
+		}
+	}
+}
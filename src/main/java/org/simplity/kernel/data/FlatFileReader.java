@@ -0,0 +1,610 @@
+/*
+ * Copyright (c) 2016 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.kernel.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.simplity.kernel.util.DateUtil;
+import org.simplity.kernel.value.Value;
+import org.simplity.kernel.value.ValueType;
+
+/**
+ * reads rows of a flat file and splits them into fields by scanning bytes,
+ * without creating a String for the row. File is read in large blocks into a
+ * buffer that is re-used across rows. A field is decoded into text only when
+ * getText() is called, and simple numbers and dates can be parsed directly
+ * from the bytes with getValue().
+ *
+ * <p>
+ * Comma separated rows follow RFC-4180: a field may be enclosed in double
+ * quotes, in which case it may contain commas and line breaks, and a double
+ * quote inside it is escaped with another double quote. Unlike
+ * String.split(), trailing empty fields are counted.
+ * </p>
+ *
+ * <p>
+ * Fixed width rows are split as per the widths of fields, in characters. The
+ * last field takes whatever is left in the row. The charset must be either
+ * UTF-8 or a single-byte charset that is a super-set of ASCII
+ * </p>
+ *
+ * @author simplity.org
+ *
+ */
+public class FlatFileReader implements Closeable {
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final byte CR = '\r';
+	private static final byte LF = '\n';
+	private static final byte COMMA = ',';
+	private static final byte QUOTE = '"';
+	/**
+	 * integers with up to these many digits can not overflow a long
+	 */
+	private static final int MAX_LONG_DIGITS = 18;
+	/**
+	 * decimals with up to these many digits are exactly represented by a
+	 * double before scaling
+	 */
+	private static final int MAX_DOUBLE_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	/**
+	 * characters that we look for as bytes. They have to be encoded the same
+	 * way as in ASCII for us to scan the bytes
+	 */
+	private static final String ASCII_PROBE = "0123456789+-.:TZ ,\"\r\n";
+
+	private final InputStream in;
+	private final FlatFileRowType rowType;
+	private final int[] fieldWidths;
+	private final Charset charset;
+	private final boolean isUtf8;
+
+	private byte[] buffer;
+	/**
+	 * number of bytes in buffer
+	 */
+	private int limit;
+	/**
+	 * start of the next row in buffer
+	 */
+	private int position;
+	private boolean endOfInput;
+	private int lineNumber;
+
+	/*
+	 * current row
+	 */
+	private int rowStart;
+	private int rowEnd;
+	private int nbrFields;
+	private int[] fieldStarts;
+	private int[] fieldEnds;
+	/**
+	 * quoted field with an escaped double-quote in it
+	 */
+	private boolean[] hasEscapes;
+
+	/**
+	 * is this charset one that we can scan as bytes?
+	 *
+	 * @param charset
+	 * @return true if the charset is UTF-8, or a single-byte charset that is a
+	 *         super-set of ASCII
+	 */
+	public static boolean isSupported(Charset charset) {
+		if (charset.canEncode() == false) {
+			return false;
+		}
+		if (StandardCharsets.UTF_8.equals(charset) == false && charset.newEncoder().maxBytesPerChar() != 1) {
+			return false;
+		}
+		return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * open a flat file for reading
+	 *
+	 * @param file
+	 *            file to be read
+	 * @param rowType
+	 *            how fields are organized in a row
+	 * @param fieldWidths
+	 *            width of each field, in characters. Required if rowType is
+	 *            FIXED_WIDTH, ignored otherwise
+	 * @param charset
+	 *            non-null charset in which the file is encoded. Must be one
+	 *            for which isSupported() returns true
+	 * @throws IOException
+	 */
+	public FlatFileReader(File file, FlatFileRowType rowType, int[] fieldWidths, Charset charset)
+			throws IOException {
+		this(file, rowType, fieldWidths, charset, BUFFER_SIZE);
+	}
+
+	/**
+	 * open a flat file for reading with a buffer of the given size. Use this
+	 * when several files are read at the same time, like while merging.
+	 *
+	 * @param file
+	 *            file to be read
+	 * @param rowType
+	 *            how fields are organized in a row
+	 * @param fieldWidths
+	 *            width of each field, in characters. Required if rowType is
+	 *            FIXED_WIDTH, ignored otherwise
+	 * @param charset
+	 *            non-null charset in which the file is encoded. Must be one
+	 *            for which isSupported() returns true
+	 * @param bufferSize
+	 *            initial size of buffer in bytes. It is enlarged if a row does
+	 *            not fit into it
+	 * @throws IOException
+	 */
+	public FlatFileReader(File file, FlatFileRowType rowType, int[] fieldWidths, Charset charset, int bufferSize)
+			throws IOException {
+		this.buffer = new byte[bufferSize];
+		this.rowType = rowType;
+		this.fieldWidths = fieldWidths;
+		this.charset = charset;
+		this.isUtf8 = StandardCharsets.UTF_8.equals(charset);
+		int n = rowType == FlatFileRowType.FIXED_WIDTH ? fieldWidths.length : 16;
+		this.fieldStarts = new int[n];
+		this.fieldEnds = new int[n];
+		this.hasEscapes = new boolean[n];
+		this.in = new FileInputStream(file);
+	}
+
+	/**
+	 * move to the next row
+	 *
+	 * @return true if a row is read. false if there are no more rows
+	 * @throws IOException
+	 */
+	public boolean nextRow() throws IOException {
+		int end;
+		while (true) {
+			end = this.findRowEnd();
+			if (end != -1) {
+				break;
+			}
+			if (this.endOfInput) {
+				if (this.position >= this.limit) {
+					return false;
+				}
+				end = this.limit;
+				break;
+			}
+			this.fill();
+		}
+		this.rowStart = this.position;
+		this.rowEnd = end;
+		this.lineNumber++;
+		/*
+		 * skip the line terminator
+		 */
+		if (end < this.limit) {
+			if (this.buffer[end] == CR && end + 1 < this.limit && this.buffer[end + 1] == LF) {
+				end++;
+			}
+			end++;
+		}
+		this.position = end;
+
+		if (this.rowType == FlatFileRowType.FIXED_WIDTH) {
+			this.splitFixedWidth();
+		} else {
+			this.splitCsv();
+		}
+		return true;
+	}
+
+	/**
+	 * @return how fields are organized in a row of this file
+	 */
+	public FlatFileRowType getRowType() {
+		return this.rowType;
+	}
+
+	/**
+	 * @return 1-based line number of the current row. In case a row has line
+	 *         breaks inside quoted fields, this is the number of the last line
+	 *         of the row.
+	 */
+	public int getLineNumber() {
+		return this.lineNumber;
+	}
+
+	/**
+	 * @return number of fields found in the current row. For a fixed-width
+	 *         row that is too short to reach the last field, this is less than
+	 *         the number of field widths.
+	 */
+	public int getNbrFields() {
+		return this.nbrFields;
+	}
+
+	/**
+	 * @return true if the current row is empty
+	 */
+	public boolean isEmptyRow() {
+		return this.rowStart == this.rowEnd;
+	}
+
+	/**
+	 * @return text of the current row, without the line terminator
+	 */
+	public String getRowText() {
+		return new String(this.buffer, this.rowStart, this.rowEnd - this.rowStart, this.charset);
+	}
+
+	/**
+	 * @param idx
+	 *            0-based index of the field in the current row
+	 * @return text of the field, as it is in the row (not trimmed). Quotes
+	 *         around a comma separated field are removed and escaped quotes
+	 *         are un-escaped.
+	 */
+	public String getText(int idx) {
+		int start = this.fieldStarts[idx];
+		String text = new String(this.buffer, start, this.fieldEnds[idx] - start, this.charset);
+		if (this.hasEscapes[idx]) {
+			return text.replace("\"\"", "\"");
+		}
+		return text;
+	}
+
+	/**
+	 * parse a field directly from the bytes, if it is in a simple form. This
+	 * is meant to avoid creating a String for numbers and dates in large
+	 * files. Leading and trailing spaces are ignored.
+	 *
+	 * @param idx
+	 *            0-based index of the field in the current row
+	 * @param valueType
+	 *            value type of the field
+	 * @return value of the given type, or null if the field is empty, is not
+	 *         in a simple form or is not of a value type that is parsed here.
+	 *         Caller should parse getText() in that case.
+	 */
+	public Value getValue(int idx, ValueType valueType) {
+		if (this.hasEscapes[idx]) {
+			return null;
+		}
+		int start = this.fieldStarts[idx];
+		int end = this.fieldEnds[idx];
+		while (start < end && (this.buffer[start] & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (this.buffer[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return null;
+		}
+		if (valueType == ValueType.INTEGER) {
+			return this.parseInteger(start, end);
+		}
+		if (valueType == ValueType.DECIMAL) {
+			return this.parseDecimal(start, end);
+		}
+		if (valueType == ValueType.DATE) {
+			return this.parseDate(start, end);
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	/**
+	 * [+-]digits
+	 */
+	private Value parseInteger(int start, int end) {
+		byte[] buf = this.buffer;
+		int i = start;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+') {
+			negative = buf[i] == '-';
+			i++;
+		}
+		int nbrDigits = end - i;
+		if (nbrDigits == 0 || nbrDigits > MAX_LONG_DIGITS) {
+			return null;
+		}
+		long val = 0;
+		for (; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return null;
+			}
+			val = val * 10 + digit;
+		}
+		return Value.newIntegerValue(negative ? -val : val);
+	}
+
+	/**
+	 * [+-]digits[.digits]. Digits are accumulated into an exact long, and
+	 * divided by an exact power of ten, which gives the same, correctly
+	 * rounded, result as Double.parseDouble()
+	 */
+	private Value parseDecimal(int start, int end) {
+		byte[] buf = this.buffer;
+		int i = start;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+') {
+			negative = buf[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int nbrDigits = 0;
+		int nbrDecimals = -1;
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b == '.') {
+				if (nbrDecimals != -1) {
+					return null;
+				}
+				nbrDecimals = 0;
+				continue;
+			}
+			int digit = b - '0';
+			if (digit < 0 || digit > 9) {
+				return null;
+			}
+			mantissa = mantissa * 10 + digit;
+			nbrDigits++;
+			if (nbrDecimals != -1) {
+				nbrDecimals++;
+			}
+		}
+		if (nbrDigits == 0 || nbrDigits > MAX_DOUBLE_DIGITS) {
+			return null;
+		}
+		double val = mantissa;
+		if (nbrDecimals > 0) {
+			val = val / POWERS_OF_TEN[nbrDecimals];
+		}
+		return Value.newDecimalValue(negative ? -val : val);
+	}
+
+	/**
+	 * date in one of the formats that DateUtil parses. These are all ASCII.
+	 */
+	private Value parseDate(int start, int end) {
+		String text = new String(this.buffer, start, end - start, StandardCharsets.ISO_8859_1);
+		long millis = DateUtil.parseMillis(text);
+		if (millis == DateUtil.INVALID_DATE) {
+			return null;
+		}
+		return Value.newDateValue(millis);
+	}
+
+	/**
+	 * find the end of the row that starts at position. For comma separated
+	 * rows, line breaks inside quotes are not the end of the row. As in
+	 * splitCsv(), a quote starts a quoted field only if it is the first byte
+	 * of the field. Any other quote outside a quoted field is just data.
+	 *
+	 * @return index of the line terminator, or -1 if the buffer does not have
+	 *         the complete row
+	 */
+	private int findRowEnd() {
+		byte[] buf = this.buffer;
+		boolean checkQuotes = this.rowType == FlatFileRowType.COMMA_SEPARATED;
+		boolean inQuotes = false;
+		boolean atFieldStart = true;
+		for (int i = this.position; i < this.limit; i++) {
+			byte b = buf[i];
+			if (inQuotes) {
+				if (b == QUOTE) {
+					if (i + 1 == this.limit && this.endOfInput == false) {
+						/*
+						 * we need the next byte to know whether this is an
+						 * escaped quote
+						 */
+						return -1;
+					}
+					if (i + 1 < this.limit && buf[i + 1] == QUOTE) {
+						i++;
+					} else {
+						inQuotes = false;
+					}
+				}
+				continue;
+			}
+			if (b == LF || b == CR) {
+				if (b == CR && i + 1 == this.limit && this.endOfInput == false) {
+					/*
+					 * we need the next byte to know whether this is CR-LF
+					 */
+					return -1;
+				}
+				return i;
+			}
+			if (checkQuotes) {
+				if (b == COMMA) {
+					atFieldStart = true;
+					continue;
+				}
+				if (b == QUOTE && atFieldStart) {
+					inQuotes = true;
+				}
+				atFieldStart = false;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * read more bytes into the buffer, after moving the unread bytes to the
+	 * beginning. Buffer is enlarged if a row does not fit into it.
+	 */
+	private void fill() throws IOException {
+		int unread = this.limit - this.position;
+		if (this.position > 0) {
+			System.arraycopy(this.buffer, this.position, this.buffer, 0, unread);
+			this.position = 0;
+			this.limit = unread;
+		} else if (this.limit == this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+		}
+		int n = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+		if (n == -1) {
+			this.endOfInput = true;
+		} else {
+			this.limit += n;
+		}
+	}
+
+	private void splitCsv() {
+		byte[] buf = this.buffer;
+		int end = this.rowEnd;
+		int i = this.rowStart;
+		int n = 0;
+		while (true) {
+			if (n == this.fieldStarts.length) {
+				int newLength = n * 2;
+				this.fieldStarts = Arrays.copyOf(this.fieldStarts, newLength);
+				this.fieldEnds = Arrays.copyOf(this.fieldEnds, newLength);
+				this.hasEscapes = Arrays.copyOf(this.hasEscapes, newLength);
+			}
+			boolean escaped = false;
+			if (i < end && buf[i] == QUOTE) {
+				int start = i + 1;
+				int j = start;
+				while (j < end) {
+					byte b = buf[j];
+					if (b == QUOTE) {
+						if (j + 1 < end && buf[j + 1] == QUOTE) {
+							escaped = true;
+							j += 2;
+							continue;
+						}
+						break;
+					}
+					if (b == LF || (b == CR && (j + 1 == end || buf[j + 1] != LF))) {
+						this.lineNumber++;
+					}
+					j++;
+				}
+				this.fieldStarts[n] = start;
+				this.fieldEnds[n] = j;
+				/*
+				 * anything between the closing quote and the comma is ignored
+				 */
+				i = j;
+				while (i < end && buf[i] != COMMA) {
+					i++;
+				}
+			} else {
+				int j = i;
+				while (j < end && buf[j] != COMMA) {
+					j++;
+				}
+				this.fieldStarts[n] = i;
+				this.fieldEnds[n] = j;
+				i = j;
+			}
+			this.hasEscapes[n] = escaped;
+			n++;
+			if (i >= end) {
+				break;
+			}
+			/*
+			 * skip the comma
+			 */
+			i++;
+		}
+		this.nbrFields = n;
+	}
+
+	private void splitFixedWidth() {
+		int[] widths = this.fieldWidths;
+		int last = widths.length - 1;
+		int pos = this.rowStart;
+		for (int i = 0; i < last; i++) {
+			int start = pos;
+			pos = this.skipChars(pos, widths[i]);
+			if (pos == -1) {
+				this.nbrFields = i;
+				return;
+			}
+			this.fieldStarts[i] = start;
+			this.fieldEnds[i] = pos;
+			this.hasEscapes[i] = false;
+		}
+		this.fieldStarts[last] = pos;
+		this.fieldEnds[last] = this.rowEnd;
+		this.hasEscapes[last] = false;
+		this.nbrFields = widths.length;
+	}
+
+	/**
+	 * @return index of the byte after nbrChars characters from pos. -1 if the
+	 *         row ends before that
+	 */
+	private int skipChars(int pos, int nbrChars) {
+		if (this.isUtf8 == false) {
+			int end = pos + nbrChars;
+			return end <= this.rowEnd ? end : -1;
+		}
+		int i = pos;
+		int toSkip = nbrChars;
+		while (toSkip > 0) {
+			if (i >= this.rowEnd) {
+				return -1;
+			}
+			int b = this.buffer[i] & 0xff;
+			if (b < 0x80) {
+				i++;
+			} else if (b >= 0xF0) {
+				/*
+				 * supplementary character is two chars in a java String
+				 */
+				i += 4;
+				toSkip--;
+			} else if (b >= 0xE0) {
+				i += 3;
+			} else if (b >= 0xC0) {
+				i += 2;
+			} else {
+				/*
+				 * malformed. decoder would replace this with one character
+				 */
+				i++;
+			}
+			toSkip--;
+		}
+		return i <= this.rowEnd ? i : -1;
+	}
+}
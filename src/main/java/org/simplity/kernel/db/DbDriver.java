@@ -23,11 +23,16 @@
 package org.simplity.kernel.db;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Types;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.idb.IDbDriver;
+import org.simplity.kernel.idb.IDbReader;
 import org.simplity.kernel.value.Value;
 import org.simplity.kernel.value.ValueType;
 import org.slf4j.Logger;
@@ -200,4 +205,87 @@ public class DbDriver {
 		this.checkWritable();
 	}
 
+	/**
+	 * read using a read-only handle on the connection of this driver. Unlike
+	 * RdbDriver.doRead(), no new connection is taken, and hence the read is
+	 * part of the current transaction, and uses the schema of this driver. The
+	 * handle is valid only during the call to the reader.
+	 *
+	 * @param reader
+	 * @return false if there is no connection (trace mode), and hence reader
+	 *         was not called. true otherwise
+	 */
+	public boolean doRead(IDbReader reader) {
+		if (this.connection == null) {
+			logger.info("No connection in trace mode. read is skipped.");
+			return false;
+		}
+		IDbDriver rdb = RdbDriver.getDefaultDriver();
+		if (rdb instanceof RdbDriver == false) {
+			throw new ApplicationError("No rdb is set up for this app, but a read-only handle is requested.");
+		}
+		try (ReadonlyHandle handle = new ReadonlyHandle(this.connection, (RdbDriver) rdb)) {
+			reader.read(handle);
+		}
+		return true;
+	}
+
+	/**
+	 * mark a point within the current transaction to which we can roll back
+	 * later without losing the work done before this point. Used when many
+	 * rows are processed within one transaction, and a failed row should be
+	 * undone on its own.
+	 *
+	 * @return save point, or null if there is no connection (trace mode)
+	 */
+	public Savepoint setSavepoint() {
+		if (this.connection == null) {
+			return null;
+		}
+		try {
+			return this.connection.setSavepoint();
+		} catch (SQLException e) {
+			throw new ApplicationError(e, "Unable to set a save point on the db connection");
+		}
+	}
+
+	/**
+	 * roll back work done after the save point, retaining the work done before
+	 * it in the current transaction
+	 *
+	 * @param savepoint
+	 *            as returned by setSavepoint()
+	 */
+	public void rollbackToSavepoint(Savepoint savepoint) {
+		if (this.connection == null || savepoint == null) {
+			return;
+		}
+		try {
+			this.connection.rollback(savepoint);
+		} catch (SQLException e) {
+			throw new ApplicationError(e, "Unable to roll back to a save point on the db connection");
+		}
+	}
+
+	/**
+	 * save point is no more required. Work done after the save point remains
+	 * part of the current transaction
+	 *
+	 * @param savepoint
+	 *            as returned by setSavepoint()
+	 */
+	public void releaseSavepoint(Savepoint savepoint) {
+		if (this.connection == null || savepoint == null) {
+			return;
+		}
+		try {
+			this.connection.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			/*
+			 * some drivers do not support release. Save point is anyway
+			 * released on commit/rollback
+			 */
+			logger.info("Save point could not be released. " + e.getMessage());
+		}
+	}
 }
@@ -65,6 +65,52 @@ public enum DbVendor {
 			};
 		}
 
+		/*
+		 * oracle has no multi-row VALUES. INSERT ALL does the job, except that
+		 * sequence.NEXTVAL is evaluated once for the whole statement, and
+		 * there is no way to get the generated keys back
+		 */
+		@Override
+		public String getMultiRowInsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String keyColumn) {
+			if (keyColumn != null) {
+				return null;
+			}
+			StringBuilder sbf = new StringBuilder("INSERT ALL");
+			for (int i = 0; i < nbrRows; i++) {
+				sbf.append(" INTO ").append(tableName);
+				appendList(sbf.append('('), columns).append(") VALUES");
+				appendList(sbf.append('('), values).append(')');
+			}
+			return sbf.append(" SELECT * FROM dual").toString();
+		}
+
+		/*
+		 * oracle has no table-value constructor either. source rows are
+		 * selected from dual
+		 */
+		@Override
+		public String getMultiRowUpsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String[] keyColumns, String[] updateColumns) {
+			StringBuilder sbf = new StringBuilder("MERGE INTO ");
+			sbf.append(tableName).append(" t USING (");
+			for (int i = 0; i < nbrRows; i++) {
+				if (i > 0) {
+					sbf.append(" UNION ALL ");
+				}
+				sbf.append("SELECT ");
+				for (int j = 0; j < columns.length; j++) {
+					if (j > 0) {
+						sbf.append(COMMA);
+					}
+					sbf.append(values[j]).append(' ').append(columns[j]);
+				}
+				sbf.append(" FROM dual");
+			}
+			sbf.append(") s");
+			return appendMergeClauses(sbf, columns, keyColumns, updateColumns).toString();
+		}
+
 		private OracleConnection toOracleConnection(Connection con) {
 			if (con instanceof OracleConnection) {
 				return (OracleConnection) con;
@@ -81,18 +127,148 @@ public enum DbVendor {
 
 	/** Microsoft Sql Server */
 	,
-	MSSQL("CURRENT_TIMESTAMP", "select schema_name()", "use ", '%', '_', '[', ']')
+	MSSQL("CURRENT_TIMESTAMP", "select schema_name()", "use ", '%', '_', '[', ']') {
+		/*
+		 * a VALUES list can not have more than 1000 rows, and a statement
+		 * can not have more than 2100 parameters
+		 */
+		@Override
+		public int getMaxRowsPerStatement(int nbrParamsPerRow) {
+			return maxRows(1000, 2100, nbrParamsPerRow);
+		}
+
+		/*
+		 * getGeneratedKeys() returns only the last identity, and OUTPUT clause
+		 * does not guarantee the order of rows. Rows are to be inserted one by
+		 * one when keys are to be generated
+		 */
+		@Override
+		public String getMultiRowInsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String keyColumn) {
+			if (keyColumn != null) {
+				return null;
+			}
+			return super.getMultiRowInsertSql(tableName, columns, values, nbrRows, null);
+		}
+
+		/*
+		 * merge statement must be terminated with a semicolon in sql server
+		 */
+		@Override
+		public String getMultiRowUpsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String[] keyColumns, String[] updateColumns) {
+			return super.getMultiRowUpsertSql(tableName, columns, values, nbrRows, keyColumns, updateColumns) + ';';
+		}
+	}
 
 	/** postgres sql */
-	,POSTGRESQL("select current_schema()", "SET schema ")
+	,POSTGRESQL("select current_schema()", "SET schema ") {
+		@Override
+		public String getMultiRowInsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String keyColumn) {
+			String sql = super.getMultiRowInsertSql(tableName, columns, values, nbrRows, null);
+			if (keyColumn == null) {
+				return sql;
+			}
+			return sql + " RETURNING " + keyColumn;
+		}
+
+		@Override
+		public boolean keysReturnedAsResultSet() {
+			return true;
+		}
+
+		/*
+		 * fetch size is ignored, and all rows are read, when auto-commit is on
+		 */
+		@Override
+		public boolean cursorRequiresTransaction() {
+			return true;
+		}
+
+		@Override
+		public String getMultiRowUpsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String[] keyColumns, String[] updateColumns) {
+			StringBuilder sbf = new StringBuilder(
+					super.getMultiRowInsertSql(tableName, columns, values, nbrRows, null));
+			appendList(sbf.append(" ON CONFLICT ("), keyColumns).append(')');
+			if (updateColumns.length == 0) {
+				return sbf.append(" DO NOTHING").toString();
+			}
+			sbf.append(" DO UPDATE SET ");
+			for (int i = 0; i < updateColumns.length; i++) {
+				if (i > 0) {
+					sbf.append(COMMA);
+				}
+				sbf.append(updateColumns[i]).append("=EXCLUDED.").append(updateColumns[i]);
+			}
+			return sbf.toString();
+		}
+	}
 
 	/** my sql */
-	, MYSQL
+	, MYSQL {
+		/*
+		 * connector/j reads all rows into memory unless fetch size is
+		 * MIN_VALUE, in which case rows are streamed one by one
+		 */
+		@Override
+		public int getStreamingFetchSize(int fetchSize) {
+			return Integer.MIN_VALUE;
+		}
+
+		/*
+		 * keys of a multi-row insert are returned by getGeneratedKeys()
+		 */
+		@Override
+		public String getMultiRowUpsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String[] keyColumns, String[] updateColumns) {
+			StringBuilder sbf = new StringBuilder(
+					super.getMultiRowInsertSql(tableName, columns, values, nbrRows, null));
+			sbf.append(" ON DUPLICATE KEY UPDATE ");
+			if (updateColumns.length == 0) {
+				return sbf.append(keyColumns[0]).append('=').append(keyColumns[0]).toString();
+			}
+			for (int i = 0; i < updateColumns.length; i++) {
+				if (i > 0) {
+					sbf.append(COMMA);
+				}
+				sbf.append(updateColumns[i]).append("=VALUES(").append(updateColumns[i]).append(')');
+			}
+			return sbf.toString();
+		}
+	}
 
 	/** H2 data base */
 	,H2("SELECT SCHEMA()", "SET schema ")
 	/** db2 */
-	,DB2("select current_schema from sysibm.sysdummy1", "set schema ");
+	,DB2("select current_schema from sysibm.sysdummy1", "set schema ") {
+		@Override
+		public String getMultiRowInsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+				String keyColumn) {
+			String sql = super.getMultiRowInsertSql(tableName, columns, values, nbrRows, null);
+			if (keyColumn == null) {
+				return sql;
+			}
+			/*
+			 * keys are to be returned in the order in which rows are inserted
+			 */
+			return "SELECT " + keyColumn + " FROM FINAL TABLE (" + sql + ") ORDER BY INPUT SEQUENCE";
+		}
+
+		@Override
+		public boolean keysReturnedAsResultSet() {
+			return true;
+		}
+	};
+
+	private static final char COMMA = ',';
+	/*
+	 * we do not want a single statement to be too long, even if the rdbms
+	 * accepts it
+	 */
+	private static final int MAX_ROWS = 1000;
+	private static final int MAX_PARAMS = 32767;
 
 	/*
 	 * fields default to standard
@@ -173,4 +349,167 @@ public enum DbVendor {
 	public ArrayCreator getArrayCreator() {
 		return (con, data, structName) -> con.createArrayOf(structName, data);
 	}
+
+	/**
+	 * fetch size to be set on a statement to stream rows from a server-side
+	 * cursor, rather than reading all of them into memory
+	 *
+	 * @param fetchSize
+	 *            desired number of rows per round trip
+	 * @return fetch size to be set on the statement
+	 */
+	public int getStreamingFetchSize(int fetchSize) {
+		return fetchSize;
+	}
+
+	/**
+	 * @return true if the connection must not be in auto-commit mode for the
+	 *         jdbc driver to use a cursor
+	 */
+	public boolean cursorRequiresTransaction() {
+		return false;
+	}
+
+	/**
+	 * how many rows can be sent in one multi-row insert/upsert statement
+	 *
+	 * @param nbrParamsPerRow
+	 *            number of parameters in each row of the VALUES list
+	 * @return max number of rows in one statement. always more than zero.
+	 */
+	public int getMaxRowsPerStatement(int nbrParamsPerRow) {
+		return maxRows(MAX_ROWS, MAX_PARAMS, nbrParamsPerRow);
+	}
+
+	/**
+	 * sql to insert several rows with a single statement
+	 *
+	 * @param tableName
+	 * @param columns
+	 *            names of columns to be inserted
+	 * @param values
+	 *            value expression for each column. This is either a "?" for
+	 *            parameter, or a function/sequence
+	 * @param nbrRows
+	 *            number of rows to be inserted
+	 * @param keyColumn
+	 *            non-null if the generated key for each of the inserted row is
+	 *            to be returned. If keysReturnedAsResultSet() is true, the
+	 *            returned sql is to be executed as a query that returns the
+	 *            keys. Else keys are to be got with getGeneratedKeys()
+	 * @return sql, or null if this vendor can not insert these rows with a
+	 *         single statement
+	 */
+	public String getMultiRowInsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+			String keyColumn) {
+		StringBuilder sbf = new StringBuilder("INSERT INTO ");
+		sbf.append(tableName);
+		appendList(sbf.append('('), columns).append(')');
+		return appendRows(sbf.append(" VALUES"), values, nbrRows).toString();
+	}
+
+	/**
+	 * @return true if the multi-row insert sql with a key column is a query
+	 *         that returns generated keys as its result set. false if the keys
+	 *         are to be retrieved with getGeneratedKeys()
+	 */
+	public boolean keysReturnedAsResultSet() {
+		return false;
+	}
+
+	/**
+	 * sql to insert several rows, or update them if they already exist, with a
+	 * single statement
+	 *
+	 * @param tableName
+	 * @param columns
+	 *            names of columns to be inserted
+	 * @param values
+	 *            value expression for each column. This is either a "?" for
+	 *            parameter, or a function. sequence is not allowed
+	 * @param nbrRows
+	 *            number of rows
+	 * @param keyColumns
+	 *            columns of the primary key, that decide whether the row exists
+	 * @param updateColumns
+	 *            columns to be updated if the row exists. These should be part
+	 *            of columns
+	 * @return sql
+	 */
+	public String getMultiRowUpsertSql(String tableName, String[] columns, String[] values, int nbrRows,
+			String[] keyColumns, String[] updateColumns) {
+		StringBuilder sbf = new StringBuilder("MERGE INTO ");
+		sbf.append(tableName).append(" t USING (");
+		appendRows(sbf.append("VALUES"), values, nbrRows).append(") s");
+		appendList(sbf.append('('), columns).append(')');
+		return appendMergeClauses(sbf, columns, keyColumns, updateColumns).toString();
+	}
+
+	protected static int maxRows(int maxRows, int maxParams, int nbrParamsPerRow) {
+		if (nbrParamsPerRow <= 0) {
+			return maxRows;
+		}
+		int nbr = maxParams / nbrParamsPerRow;
+		if (nbr > maxRows) {
+			return maxRows;
+		}
+		if (nbr < 1) {
+			return 1;
+		}
+		return nbr;
+	}
+
+	protected static StringBuilder appendList(StringBuilder sbf, String[] list) {
+		for (int i = 0; i < list.length; i++) {
+			if (i > 0) {
+				sbf.append(COMMA);
+			}
+			sbf.append(list[i]);
+		}
+		return sbf;
+	}
+
+	protected static StringBuilder appendRows(StringBuilder sbf, String[] values, int nbrRows) {
+		for (int i = 0; i < nbrRows; i++) {
+			if (i > 0) {
+				sbf.append(COMMA);
+			}
+			appendList(sbf.append('('), values).append(')');
+		}
+		return sbf;
+	}
+
+	/**
+	 * append ON, WHEN MATCHED and WHEN NOT MATCHED clauses of a merge statement
+	 * with target aliased as t and source as s
+	 */
+	protected static StringBuilder appendMergeClauses(StringBuilder sbf, String[] columns, String[] keyColumns,
+			String[] updateColumns) {
+		sbf.append(" ON (");
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (i > 0) {
+				sbf.append(" AND ");
+			}
+			sbf.append("t.").append(keyColumns[i]).append("=s.").append(keyColumns[i]);
+		}
+		sbf.append(')');
+		if (updateColumns.length > 0) {
+			sbf.append(" WHEN MATCHED THEN UPDATE SET ");
+			for (int i = 0; i < updateColumns.length; i++) {
+				if (i > 0) {
+					sbf.append(COMMA);
+				}
+				sbf.append("t.").append(updateColumns[i]).append("=s.").append(updateColumns[i]);
+			}
+		}
+		sbf.append(" WHEN NOT MATCHED THEN INSERT ");
+		appendList(sbf.append('('), columns).append(") VALUES(");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sbf.append(COMMA);
+			}
+			sbf.append("s.").append(columns[i]);
+		}
+		return sbf.append(')');
+	}
 }
@@ -29,7 +29,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
@@ -114,6 +117,41 @@ public class RdbDriver implements IDbDriver {
 	@FieldMetaData(relevantBasedOnField = "dbVendor")
 	SchemaDetail[] schemaDetails;
 
+	/**
+	 * number of prepared statements to be kept open for re-use on a
+	 * connection. 0 means statements are not re-used, and are closed right
+	 * after their execution.
+	 */
+	@FieldMetaData(relevantBasedOnField = "dbVendor")
+	int statementCacheSize;
+
+	/**
+	 * number of rows to be fetched from the db in one round trip while reading
+	 * a result set. 0 means the default of the jdbc driver. Sql and record can
+	 * over-ride this.
+	 */
+	@FieldMetaData(relevantBasedOnField = "dbVendor")
+	int fetchSize;
+
+	/**
+	 * number of rows beyond which rows read into a data sheet are held in a
+	 * ColumnarSheet rather than as rows of values. 0 means never.
+	 */
+	@FieldMetaData(relevantBasedOnField = "dbVendor")
+	int columnarSheetThreshold;
+
+	/*
+	 * counters for statement cache. updated by StatementCache
+	 */
+	final AtomicLong statementCacheHits = new AtomicLong();
+	final AtomicLong statementCacheMisses = new AtomicLong();
+
+	/**
+	 * statement cache for each physical connection. Caches of connections that
+	 * are closed are removed whenever a cache is added for a new connection
+	 */
+	private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<Connection, StatementCache>();
+
 	private Map<String, DataSource> otherDataSources = null;
 	private Map<String, String> otherConStrings = null;
 
@@ -505,6 +543,85 @@ public class RdbDriver implements IDbDriver {
 		}
 	}
 
+	/**
+	 * get the statement cache of the physical connection behind this
+	 * connection. A pool may lend a different logical connection each time,
+	 * but the cache is kept for the physical connection, and hence it is
+	 * re-used across borrows.
+	 *
+	 * @param con
+	 *            connection lent by the data source, or opened with the
+	 *            driver manager
+	 * @return statement cache for the connection. null if statements are not
+	 *         to be cached
+	 */
+	StatementCache getStatementCache(Connection con) {
+		if (this.statementCacheSize <= 0) {
+			return null;
+		}
+		Connection physical = getPhysicalConnection(con);
+		synchronized (this.statementCaches) {
+			StatementCache cache = this.statementCaches.get(physical);
+			if (cache == null) {
+				this.removeClosedConnections();
+				cache = new StatementCache(this, physical, this.statementCacheSize);
+				this.statementCaches.put(physical, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * a new physical connection typically means that the pool has discarded
+	 * some, or that connections are not pooled at all. Caches of closed
+	 * connections are to be removed
+	 */
+	private void removeClosedConnections() {
+		Iterator<Connection> iter = this.statementCaches.keySet().iterator();
+		while (iter.hasNext()) {
+			Connection con = iter.next();
+			try {
+				if (con.isClosed() == false) {
+					continue;
+				}
+			} catch (SQLException e) {
+				// treat it as closed
+			}
+			iter.remove();
+		}
+	}
+
+	private static Connection getPhysicalConnection(Connection con) {
+		try {
+			if (con.isWrapperFor(Connection.class)) {
+				Connection physical = con.unwrap(Connection.class);
+				if (physical != null) {
+					return physical;
+				}
+			}
+		} catch (SQLException e) {
+			logger.info("Unable to unwrap connection {}. Statements are cached for this connection. {}",
+					con.getClass().getName(), e.getMessage());
+		}
+		return con;
+	}
+
+	/**
+	 * @return number of times a prepared statement was re-used from the
+	 *         statement cache
+	 */
+	public long getStatementCacheHits() {
+		return this.statementCacheHits.get();
+	}
+
+	/**
+	 * @return number of times a statement had to be prepared as it was not
+	 *         found in the statement cache
+	 */
+	public long getStatementCacheMisses() {
+		return this.statementCacheMisses.get();
+	}
+
 	@Override
 	public StructCreator getStructCreator() {
 		return this.structCreator;
@@ -50,11 +50,21 @@ import org.slf4j.LoggerFactory;
 public class ReadonlyHandle implements IReadOnlyHandle {
 	protected static final Logger logger = LoggerFactory.getLogger(ReadonlyHandle.class);
 	private static final String ERROR = "SQLException while extracting data using prepared statement";
+	/**
+	 * fetch size used for streaming, if the driver is not set-up with a fetch
+	 * size
+	 */
+	public static final int DEFAULT_STREAMING_FETCH_SIZE = 1000;
 	/**
 	 * connection object. null if this is closed.
 	 */
 	protected Connection connection;
 	protected final RdbDriver driver;
+	/**
+	 * prepared statements kept open for re-use on the connection. null if the
+	 * driver is not set-up for statement caching
+	 */
+	private final StatementCache statementCache;
 
 	/**
 	 * to be used by RdbDriver only.
@@ -65,49 +75,127 @@ public class ReadonlyHandle implements IReadOnlyHandle {
 	ReadonlyHandle(Connection con, RdbDriver driver) {
 		this.connection = con;
 		this.driver = driver;
+		this.statementCache = driver.getStatementCache(con);
 	}
 
 	@Override
 	public void close() {
+		if (this.statementCache != null) {
+			this.statementCache.releaseAll();
+		}
 		this.connection = null;
 	}
 
+	/**
+	 * get a prepared statement for the sql. It is a cached one if statement
+	 * caching is enabled. Caller MUST call releaseStatement() after its use
+	 * instead of closing it.
+	 *
+	 * @param sql
+	 * @param keyNames
+	 *            names of columns for which generated keys are to be
+	 *            returned. null if not required.
+	 * @return prepared statement
+	 * @throws SQLException
+	 */
+	protected PreparedStatement prepareStatement(String sql, String[] keyNames) throws SQLException {
+		if (this.statementCache != null) {
+			return this.statementCache.prepare(sql, keyNames);
+		}
+		if (keyNames == null) {
+			return this.connection.prepareStatement(sql);
+		}
+		return this.connection.prepareStatement(sql, keyNames);
+	}
+
+	/**
+	 * release a statement that was got using prepareStatement()
+	 *
+	 * @param stmt
+	 *            can be null, in which case this is a no-op
+	 * @param allOk
+	 *            false if the statement ran into an error.
+	 */
+	protected void releaseStatement(PreparedStatement stmt, boolean allOk) {
+		if (stmt == null) {
+			return;
+		}
+		if (this.statementCache != null) {
+			this.statementCache.release(stmt, allOk);
+			return;
+		}
+		StatementCache.closeQuietly(stmt);
+	}
+
 	@Override
 	public boolean isActive() {
 		return this.connection != null;
 	}
 
+	@Override
+	public DbVendor getDbVendor() {
+		return this.driver.getDbVendor();
+	}
+
 	@Override
 	public void readBatch(String sql, Value[][] values, IResultSetReader reader) {
+		this.readBatch(sql, values, this.driver.fetchSize, reader);
+	}
+
+	@Override
+	public void readBatch(String sql, Value[][] values, int fetchSize, IResultSetReader reader) {
 		this.checkActive();
 		if (this.driver.logSqls) {
 			RdbUtil.traceBatchSql(sql, values);
 		}
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
+			/*
+			 * statement may be a cached one. always set it, so that earlier
+			 * setting is not carried forward
+			 */
+			stmt.setFetchSize(fetchSize);
 			for (Value[] vals : values) {
 				setPreparedStatementParams(stmt, vals);
 				ResultSet rs = stmt.executeQuery();
 				reader.read(rs);
 				rs.close();
 			}
+			allOk = true;
 		} catch (SQLException e) {
 			throw new ApplicationError(e, ERROR);
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 	}
 
 	@Override
 	public void read(String sql, Value[] values, IResultSetReader reader) {
+		this.read(sql, values, this.driver.fetchSize, reader);
+	}
+
+	@Override
+	public void read(String sql, Value[] values, int fetchSize, IResultSetReader reader) {
 		this.checkActive();
 		if (this.driver.logSqls) {
 			RdbUtil.traceSql(sql, values);
 		}
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
+			stmt.setFetchSize(fetchSize);
 			setPreparedStatementParams(stmt, values);
 			ResultSet rs = stmt.executeQuery();
 			reader.read(rs);
 			rs.close();
+			allOk = true;
 		} catch (SQLException e) {
 			throw new ApplicationError(e, ERROR);
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 	}
 
@@ -168,19 +256,84 @@ public class ReadonlyHandle implements IReadOnlyHandle {
 
 	@Override
 	public void read(String sql, Value[] values, ValueType[] outputTypes, IDataRowConsumer consumer) {
-		this.read(sql, values, new IResultSetReader() {
+		this.read(sql, values, outputTypes, this.driver.fetchSize, consumer);
+	}
 
-			@Override
-			public void read(ResultSet rs) {
+	@Override
+	public int read(String sql, Value[] values, ValueType[] outputTypes, int fetchSize, IDataRowConsumer consumer) {
+		RowCounter counter = new RowCounter(outputTypes, consumer);
+		this.read(sql, values, fetchSize, counter);
+		return counter.nbrRows;
+	}
+
+	@Override
+	public void stream(String sql, Value[] values, int fetchSize, IResultSetReader reader) {
+		this.checkActive();
+		DbVendor vendor = this.driver.getDbVendor();
+		int rowsToFetch = fetchSize;
+		if (rowsToFetch <= 0) {
+			rowsToFetch = this.driver.fetchSize;
+			if (rowsToFetch <= 0) {
+				rowsToFetch = DEFAULT_STREAMING_FETCH_SIZE;
+			}
+		}
+		rowsToFetch = vendor.getStreamingFetchSize(rowsToFetch);
+		boolean autoCommitToBeReset = false;
+		try {
+			if (vendor.cursorRequiresTransaction() && this.connection.getAutoCommit()) {
+				this.connection.setAutoCommit(false);
+				autoCommitToBeReset = true;
+			}
+			this.read(sql, values, rowsToFetch, reader);
+		} catch (SQLException e) {
+			throw new ApplicationError(e, ERROR);
+		} finally {
+			if (autoCommitToBeReset) {
 				try {
-					while (rs.next()) {
-						consumer.consume(RdbUtil.resultToValueRow(rs, outputTypes));
-					}
+					this.connection.commit();
+					this.connection.setAutoCommit(true);
 				} catch (SQLException e) {
-					throw new ApplicationError(e, "");
+					logger.error("Error while resetting auto-commit after streaming rows. {}", e.getMessage());
 				}
 			}
-		});
+		}
+	}
+
+	@Override
+	public int stream(String sql, Value[] values, ValueType[] outputTypes, int fetchSize,
+			IDataRowConsumer consumer) {
+		RowCounter counter = new RowCounter(outputTypes, consumer);
+		this.stream(sql, values, fetchSize, counter);
+		return counter.nbrRows;
+	}
+
+	/**
+	 * feeds rows of a result set to a consumer till it asks to stop, and
+	 * counts them
+	 */
+	private static class RowCounter implements IResultSetReader {
+		private final ValueType[] outputTypes;
+		private final IDataRowConsumer consumer;
+		int nbrRows;
+
+		RowCounter(ValueType[] outputTypes, IDataRowConsumer consumer) {
+			this.outputTypes = outputTypes;
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void read(ResultSet rs) {
+			try {
+				while (rs.next()) {
+					this.nbrRows++;
+					if (this.consumer.consume(RdbUtil.resultToValueRow(rs, this.outputTypes)) == false) {
+						return;
+					}
+				}
+			} catch (SQLException e) {
+				throw new ApplicationError(e, "");
+			}
+		}
 	}
 
 	@Override
@@ -213,14 +366,20 @@ public class ReadonlyHandle implements IReadOnlyHandle {
 		if (this.driver.logSqls) {
 			RdbUtil.traceSql(sql, values);
 		}
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
 			setPreparedStatementParams(stmt, values);
 			ResultSet rs = stmt.executeQuery();
 			boolean result = rs.next();
 			rs.close();
+			allOk = true;
 			return result;
 		} catch (SQLException e) {
 			throw new ApplicationError(e, ERROR);
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 	}
 
@@ -231,22 +390,21 @@ public class ReadonlyHandle implements IReadOnlyHandle {
 			RdbUtil.traceBatchSql(sql, values);
 		}
 		DataSheet sheet = null;
-		ValueType[] types = null;
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
 			for (Value[] vals : values) {
 				setPreparedStatementParams(stmt, vals);
 				ResultSet rs = stmt.executeQuery();
-				if (sheet == null) {
-					sheet = RdbUtil.getDataSheetForSqlResult(rs);
-					types = sheet.getValueTypes();
-				}
-				while (rs.next()) {
-					sheet.addRow(RdbUtil.resultToValueRow(rs, types));
-				}
+				sheet = RdbUtil.resultToSheet(rs, sheet, this.driver.columnarSheetThreshold);
 				rs.close();
 			}
+			allOk = true;
 		} catch (SQLException e) {
 			throw new ApplicationError(e, ERROR);
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 		return sheet;
 	}
@@ -257,18 +415,20 @@ public class ReadonlyHandle implements IReadOnlyHandle {
 		if (this.driver.logSqls) {
 			RdbUtil.traceSql(sql, values);
 		}
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
 			setPreparedStatementParams(stmt, values);
 			ResultSet rs = stmt.executeQuery();
-			DataSheet sheet = RdbUtil.getDataSheetForSqlResult(rs);
-			ValueType[] types = sheet.getValueTypes();
-			while (rs.next()) {
-				sheet.addRow(RdbUtil.resultToValueRow(rs, types));
-			}
+			DataSheet sheet = RdbUtil.resultToSheet(rs, null, this.driver.columnarSheetThreshold);
 			rs.close();
+			allOk = true;
 			return sheet;
 		} catch (SQLException e) {
 			throw new ApplicationError(e, ERROR);
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 	}
 
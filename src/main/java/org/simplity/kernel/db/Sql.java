@@ -22,6 +22,10 @@
  */
 package org.simplity.kernel.db;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+
 import org.simplity.kernel.ApplicationError;
 import org.simplity.kernel.comp.Component;
 import org.simplity.kernel.comp.ComponentManager;
@@ -36,7 +40,11 @@ import org.simplity.kernel.data.MultiRowsSheet;
 import org.simplity.kernel.data.SingleRowSheet;
 import org.simplity.kernel.dm.Field;
 import org.simplity.kernel.dm.Record;
+import org.simplity.kernel.idb.IDataRowConsumer;
+import org.simplity.kernel.idb.IDataRowSource;
 import org.simplity.kernel.idb.IReadOnlyHandle;
+import org.simplity.kernel.idb.IResultSetReader;
+import org.simplity.kernel.idb.ITransactionHandle;
 import org.simplity.kernel.value.Value;
 import org.simplity.kernel.value.ValueType;
 import org.simplity.sa.ResponseWriter;
@@ -81,6 +89,20 @@ public class Sql implements Component {
 	/** If you already have a record that has the right fields for this sql.. */
 	@FieldMetaData(isReferenceToComp = true, referredCompType = ComponentType.REC)
 	String outputRecordName;
+
+	/**
+	 * number of rows sent to the data base in one batch when this update sql
+	 * is executed for rows of a data sheet. 0 means the default batch size of
+	 * the db handle is used
+	 */
+	int batchSize;
+
+	/**
+	 * number of rows fetched from the data base in one round trip while
+	 * reading the output of this sql. 0 means the fetch size of the driver is
+	 * used
+	 */
+	int fetchSize;
 	/** we need names and types repeatedly. Better cache them */
 	private String[] outputNames;
 
@@ -101,6 +123,14 @@ public class Sql implements Component {
 		return this.moduleName + '.' + this.name;
 	}
 
+	/**
+	 * @return true if this sql takes input values, either as parameters or
+	 *         from its input record
+	 */
+	public boolean hasInputParameters() {
+		return this.inputRecordName != null || (this.inputParameters != null && this.inputParameters.length > 0);
+	}
+
 	/**
 	 * @param inSheet
 	 *            data sheet that has input data base don which prepared
@@ -194,6 +224,39 @@ public class Sql implements Component {
 		return driver.processRows(this.preparedStatement, values, this.outputNames, this.outputTypes, callbackObject);
 	}
 
+	/**
+	 * stream output rows of this sql to the call-back object, as they are
+	 * fetched from the data base. Rows are not accumulated in memory.
+	 *
+	 * @param dataRow
+	 *            source of values for input fields
+	 * @param handle
+	 * @param callbackObject
+	 * @return number of rows processed
+	 */
+	public int processRows(FieldsCollection dataRow, IReadOnlyHandle handle, final DbRowProcessor callbackObject) {
+		if (this.sqlType == SqlType.UPDATE) {
+			throw new ApplicationError(
+					"Sql " + this.getQualifiedName() + " is meant for update, but it is called for data extraction");
+		}
+		Value[] values = this.getInputValues(dataRow);
+		String[] outNames = this.outputNames;
+		ValueType[] types = this.outputTypes;
+		if (outNames == null) {
+			Record record = ComponentManager.getRecord(this.outputRecordName);
+			outNames = record.getFieldNames();
+			types = record.getValueTypes();
+		}
+		final String[] names = outNames;
+		return handle.stream(this.preparedStatement, values, types, this.fetchSize, new IDataRowConsumer() {
+
+			@Override
+			public boolean consume(Value[] row) {
+				return callbackObject.callBackOnDbRow(names, row);
+			}
+		});
+	}
+
 	/**
 	 * @param dataRow
 	 * @param driver
@@ -236,6 +299,54 @@ public class Sql implements Component {
 		return nbrRows;
 	}
 
+	/**
+	 * execute this update sql for each row of the data sheet. Rows are sent to
+	 * the data base in batches of batchSize
+	 *
+	 * @param inSheet
+	 * @param handle
+	 * @param treatErrorAsNoAction
+	 * @return number of affected rows. -1 if the driver is unable to count
+	 *         them
+	 */
+	public int executeBatch(DataSheet inSheet, ITransactionHandle handle, boolean treatErrorAsNoAction) {
+		if (this.sqlType != SqlType.UPDATE) {
+			throw new ApplicationError(
+					"Sql " + this.getQualifiedName() + " is meant for data extraction, but it is called for update");
+		}
+		final Iterator<FieldsCollection> rows = inSheet.iterator();
+		return this.executeBatch(new IDataRowSource() {
+
+			@Override
+			public Value[] nextRow() {
+				if (rows.hasNext()) {
+					return Sql.this.getInputValues(rows.next());
+				}
+				return null;
+			}
+		}, handle, treatErrorAsNoAction);
+	}
+
+	/**
+	 * execute this update sql for each row from the source. Rows are pulled
+	 * from the source and sent to the data base in batches of batchSize, and
+	 * hence the source need not hold all the rows in memory.
+	 *
+	 * @param rows
+	 *            source of input values, in the order of input parameters
+	 * @param handle
+	 * @param treatErrorAsNoAction
+	 * @return number of affected rows. -1 if the driver is unable to count
+	 *         them
+	 */
+	public int executeBatch(IDataRowSource rows, ITransactionHandle handle, boolean treatErrorAsNoAction) {
+		if (this.sqlType != SqlType.UPDATE) {
+			throw new ApplicationError(
+					"Sql " + this.getQualifiedName() + " is meant for data extraction, but it is called for update");
+		}
+		return handle.executeBatch(this.preparedStatement, rows, this.batchSize, treatErrorAsNoAction);
+	}
+
 	/** @return a suitable output sheet */
 	private DataSheet createOutputSheet() {
 		if (this.outputRecordName != null) {
@@ -293,6 +404,7 @@ public class Sql implements Component {
 	private Value[][] getInputRows(DataSheet inSheet) {
 		int nbrRows = inSheet.length();
 		Value[][] values = new Value[nbrRows][];
+		nbrRows = 0;
 		for (FieldsCollection row : inSheet) {
 			values[nbrRows++] = this.getInputValues(row);
 		}
@@ -407,7 +519,7 @@ public class Sql implements Component {
 		/*
 		 * in compact form, we write a header row values
 		 */
-		if (useCompactFormat == false) {
+		if (useCompactFormat) {
 			writer.beginArrayAsArrayElement();
 			for (String nam : names) {
 				writer.addToArray(nam);
@@ -417,4 +529,71 @@ public class Sql implements Component {
 		}
 		driver.sqlToJson(this.preparedStatement, values, types, names, writer);
 	}
+
+	/**
+	 * write elements of a json array directly from the result set of this sql.
+	 * No data sheet or Value is created for the rows.
+	 *
+	 * @param inData
+	 *            source of values for input fields
+	 * @param handle
+	 * @param useCompactFormat
+	 *            if true, a header array is written first with column names,
+	 *            followed by an array of values for each row. If false, an
+	 *            object is written for each row.
+	 * @param fetchSize
+	 *            number of rows to be fetched from the db in one round trip. 0
+	 *            means the fetch size of this sql is used.
+	 * @param writer
+	 * @return number of rows written
+	 */
+	public int sqlToJson(FieldsCollection inData, IReadOnlyHandle handle, boolean useCompactFormat,
+			int fetchSize, final ResponseWriter writer) {
+		Value[] values = this.getInputValues(inData);
+		String[] outNames = this.outputNames;
+		ValueType[] outTypes = this.outputTypes;
+		if (outNames == null) {
+			Record record = ComponentManager.getRecord(this.outputRecordName);
+			outNames = record.getFieldNames();
+			outTypes = record.getValueTypes();
+		}
+		if (useCompactFormat) {
+			writer.beginArrayAsArrayElement();
+			for (String nam : outNames) {
+				writer.addToArray(nam);
+			}
+			writer.endArray();
+		}
+		final String[] names = useCompactFormat ? null : outNames;
+		final ValueType[] types = outTypes;
+		final int[] nbrRows = { 0 };
+		int rowsToFetch = fetchSize > 0 ? fetchSize : this.fetchSize;
+		handle.stream(this.preparedStatement, values, rowsToFetch, new IResultSetReader() {
+
+			@Override
+			public void read(ResultSet rs) {
+				try {
+					while (rs.next()) {
+						if (names == null) {
+							writer.beginArrayAsArrayElement();
+							for (int i = 0; i < types.length; i++) {
+								writer.addToArray(types[i].extractObjectFromRs(rs, i + 1));
+							}
+							writer.endArray();
+						} else {
+							writer.beginObjectAsArrayElement();
+							for (int i = 0; i < types.length; i++) {
+								writer.setField(names[i], types[i].extractObjectFromRs(rs, i + 1));
+							}
+							writer.endObject();
+						}
+						nbrRows[0]++;
+					}
+				} catch (SQLException e) {
+					throw new ApplicationError(e, "Error while writing rows of sql " + Sql.this.getQualifiedName());
+				}
+			}
+		});
+		return nbrRows[0];
+	}
 }
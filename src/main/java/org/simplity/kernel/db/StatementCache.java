@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.kernel.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LRU cache of prepared statements for a physical db connection, keyed by the
+ * sql text and the names of generated key columns, if any. Cache lives as long
+ * as the connection, across the handles that use the connection one after the
+ * other, and hence statements are re-used across service calls when
+ * connections are pooled.
+ *
+ * <p>
+ * Statements are prepared on the physical connection, and not on the logical
+ * connection that the pool lends, so that they are not closed when the logical
+ * connection is returned to the pool. They are closed when they are evicted,
+ * when they run into an error, or when the connection is closed.
+ *
+ * <p>
+ * A statement is lent to one caller at a time. If the same sql is prepared
+ * while its statement is in use, say for a nested read while iterating its
+ * result, a new statement is prepared that is closed on its release.
+ *
+ * Not thread-safe: a connection is used by one thread at a time.
+ *
+ * @author simplity.org
+ *
+ */
+class StatementCache {
+	private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+	private static final char KEY_JOINER = '\0';
+
+	private final RdbDriver driver;
+	private final Connection connection;
+	/**
+	 * access-ordered, and hence the first one is the least recently used one
+	 */
+	private final Map<String, PreparedStatement> statements;
+
+	/** cached statements that are lent, and are not yet released */
+	private final Set<PreparedStatement> inUse = Collections
+			.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+
+	/** statements lent that are not in cache, and are to be closed on release */
+	private final Set<PreparedStatement> toBeClosed = Collections
+			.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+
+	/**
+	 * @param driver
+	 *            to which hits and misses are reported
+	 * @param connection
+	 *            physical connection on which statements are prepared
+	 * @param maxSize
+	 *            max number of statements to be kept open
+	 */
+	StatementCache(RdbDriver driver, Connection connection, final int maxSize) {
+		this.driver = driver;
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (this.size() <= maxSize) {
+					return false;
+				}
+				StatementCache.this.discard(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * get a prepared statement for this sql, re-using one from cache if
+	 * available.
+	 *
+	 * @param sql
+	 * @param keyNames
+	 *            names of columns for which generated keys are to be
+	 *            returned. null if not required
+	 * @return prepared statement. Caller should not close it, but use
+	 *         release() instead
+	 * @throws SQLException
+	 */
+	PreparedStatement prepare(String sql, String[] keyNames) throws SQLException {
+		String key = toKey(sql, keyNames);
+		PreparedStatement stmt = this.statements.get(key);
+		if (stmt != null) {
+			if (this.inUse.contains(stmt)) {
+				/*
+				 * in use by an outer caller. lend a new one for this call
+				 */
+				this.driver.statementCacheMisses.incrementAndGet();
+				stmt = this.newStatement(sql, keyNames);
+				this.toBeClosed.add(stmt);
+				return stmt;
+			}
+			if (stmt.isClosed() == false) {
+				this.driver.statementCacheHits.incrementAndGet();
+				this.inUse.add(stmt);
+				return stmt;
+			}
+			this.statements.remove(key);
+		}
+		this.driver.statementCacheMisses.incrementAndGet();
+		stmt = this.newStatement(sql, keyNames);
+		this.statements.put(key, stmt);
+		this.inUse.add(stmt);
+		return stmt;
+	}
+
+	private PreparedStatement newStatement(String sql, String[] keyNames) throws SQLException {
+		if (keyNames == null) {
+			return this.connection.prepareStatement(sql);
+		}
+		return this.connection.prepareStatement(sql, keyNames);
+	}
+
+	/**
+	 * statement is no more in use by the caller.
+	 *
+	 * @param stmt
+	 *            statement returned by prepare()
+	 * @param allOk
+	 *            false if the statement encountered any error. Such a statement
+	 *            is removed from the cache and closed.
+	 */
+	void release(PreparedStatement stmt, boolean allOk) {
+		if (this.toBeClosed.remove(stmt)) {
+			closeQuietly(stmt);
+			return;
+		}
+		this.inUse.remove(stmt);
+		if (allOk) {
+			return;
+		}
+		this.statements.values().remove(stmt);
+		closeQuietly(stmt);
+	}
+
+	/**
+	 * handle that was using the connection is closed. Statements that it has
+	 * not released are closed, as their state can not be trusted.
+	 */
+	void releaseAll() {
+		if (this.inUse.isEmpty() == false) {
+			logger.warn("{} prepared statements were not released, and are closed.", this.inUse.size());
+			for (PreparedStatement stmt : this.inUse) {
+				this.statements.values().remove(stmt);
+				closeQuietly(stmt);
+			}
+			this.inUse.clear();
+		}
+		for (PreparedStatement stmt : this.toBeClosed) {
+			closeQuietly(stmt);
+		}
+		this.toBeClosed.clear();
+	}
+
+	/**
+	 * evicted from cache. close it now, or on its release if it is in use
+	 */
+	void discard(PreparedStatement stmt) {
+		if (this.inUse.remove(stmt)) {
+			this.toBeClosed.add(stmt);
+		} else {
+			closeQuietly(stmt);
+		}
+	}
+
+	private static String toKey(String sql, String[] keyNames) {
+		if (keyNames == null) {
+			return sql;
+		}
+		StringBuilder sbf = new StringBuilder(sql);
+		for (String name : keyNames) {
+			sbf.append(KEY_JOINER).append(name);
+		}
+		return sbf.toString();
+	}
+
+	static void closeQuietly(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			logger.warn("Error while closing a prepared statement. {}", e.getMessage());
+		}
+	}
+}
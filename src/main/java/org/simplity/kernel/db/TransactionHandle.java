@@ -31,6 +31,7 @@ import java.sql.Statement;
 import org.simplity.kernel.ApplicationError;
 import org.simplity.kernel.data.DataSheet;
 import org.simplity.kernel.data.FieldsCollection;
+import org.simplity.kernel.idb.IDataRowSource;
 import org.simplity.kernel.idb.ITransactionHandle;
 import org.simplity.kernel.util.RdbUtil;
 import org.simplity.kernel.value.Value;
@@ -41,6 +42,11 @@ import org.simplity.service.ServiceContext;
  *
  */
 public class TransactionHandle extends ReadonlyHandle implements ITransactionHandle {
+	/**
+	 * number of rows sent to the data base in one batch, if the caller has not
+	 * specified it
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
 
 	TransactionHandle(Connection con, RdbDriver driver) {
 		super(con, driver);
@@ -53,9 +59,13 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 			RdbUtil.traceSql(sql, values);
 		}
 		int result = 0;
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
 			setPreparedStatementParams(stmt, values);
 			result = stmt.executeUpdate();
+			allOk = true;
 		} catch (SQLException e) {
 			if (treatSqlErrorAsNoAction) {
 				logger.info("SQLException code:" + e.getErrorCode() + " message :" + e.getMessage()
@@ -63,6 +73,8 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 			} else {
 				throw new ApplicationError(e, "Sql Error while executing sql ");
 			}
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 
 		if (result < 0) {
@@ -80,12 +92,16 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 			RdbUtil.traceBatchSql(sql, values);
 		}
 		int[] result = new int[0];
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
 			for (Value[] row : values) {
 				setPreparedStatementParams(stmt, row);
 				stmt.addBatch();
 			}
 			result = stmt.executeBatch();
+			allOk = true;
 		} catch (SQLException e) {
 			if (treatSqlErrorAsNoAction) {
 
@@ -95,6 +111,8 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 			} else {
 				throw new ApplicationError(e, "Sql Error while executing batch ");
 			}
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 
 		int rows = 0;
@@ -113,6 +131,89 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 		return result;
 	}
 
+	@Override
+	public int executeBatch(String sql, IDataRowSource rows, int batchSize, boolean treatSqlErrorAsNoAction) {
+		this.checkActive();
+		if (this.driver.logSqls) {
+			logger.info("SQL :{}", sql);
+		}
+		int chunkSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+		int total = 0;
+		int nbrChunks = 0;
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, null);
+			int nbrInChunk = 0;
+			Value[] row;
+			while ((row = rows.nextRow()) != null) {
+				if (this.driver.logSqls) {
+					RdbUtil.traceSql("SET", row);
+				}
+				setPreparedStatementParams(stmt, row);
+				stmt.addBatch();
+				nbrInChunk++;
+				if (nbrInChunk == chunkSize) {
+					nbrChunks++;
+					total = addCounts(total, stmt.executeBatch(), nbrChunks);
+					nbrInChunk = 0;
+				}
+			}
+			if (nbrInChunk > 0) {
+				nbrChunks++;
+				total = addCounts(total, stmt.executeBatch(), nbrChunks);
+			}
+			allOk = true;
+		} catch (SQLException e) {
+			if (treatSqlErrorAsNoAction) {
+				logger.info("SQLException code:" + e.getErrorCode() + " message :" + e.getMessage()
+						+ " in chunk " + (nbrChunks + 1) + " is treated as zero rows affected for the batch.");
+				/*
+				 * as with executeBatch() on an array of rows, error means no
+				 * action, and not a partial count of the chunks that went
+				 * through
+				 */
+				return 0;
+			} else {
+				throw new ApplicationError(e, "Sql Error while executing batch ");
+			}
+		} finally {
+			this.releaseStatement(stmt, allOk);
+		}
+
+		if (total < 0) {
+			logger.info("Number of affected rows is not reliable for at least one of the {} chunks", nbrChunks);
+		} else {
+			logger.info("{} rows affected in {} chunks.", total, nbrChunks);
+		}
+		return total;
+	}
+
+	/**
+	 * add affected rows of a chunk to the running total
+	 *
+	 * @return new total. -1 if the total is not reliable
+	 */
+	private static int addCounts(int total, int[] counts, int chunkNbr) {
+		int rows = 0;
+		for (int j : counts) {
+			if (j < 0) {
+				rows = -1;
+				break;
+			}
+			rows += j;
+		}
+		if (rows < 0) {
+			logger.info("Number of affected rows is not reliable for chunk {}", chunkNbr);
+			return -1;
+		}
+		logger.info("{} rows affected by chunk {}", rows, chunkNbr);
+		if (total < 0) {
+			return total;
+		}
+		return total + rows;
+	}
+
 	@Override
 	public int insertAndGetKeys(String sql, Value[] values, long[] generatedKeys, String[] keyNames,
 			boolean treatSqlErrorAsNoAction) {
@@ -121,12 +222,16 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 			RdbUtil.traceSql(sql, values);
 		}
 		int result = 0;
-		try (PreparedStatement stmt = this.connection.prepareStatement(sql, keyNames)) {
+		PreparedStatement stmt = null;
+		boolean allOk = false;
+		try {
+			stmt = this.prepareStatement(sql, keyNames);
 			setPreparedStatementParams(stmt, values);
 			result = stmt.executeUpdate();
 			if (result > 0) {
 				this.getGeneratedKeys(stmt, generatedKeys);
 			}
+			allOk = true;
 		} catch (SQLException e) {
 			if (treatSqlErrorAsNoAction) {
 				logger.info("SQLException code:" + e.getErrorCode() + " message :" + e.getMessage()
@@ -134,6 +239,8 @@ public class TransactionHandle extends ReadonlyHandle implements ITransactionHan
 			} else {
 				throw new ApplicationError(e, "Sql Error while executing sql ");
 			}
+		} finally {
+			this.releaseStatement(stmt, allOk);
 		}
 
 		if (result < 0) {
@@ -29,8 +29,10 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Struct;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -56,12 +58,18 @@ import org.simplity.kernel.data.DataPurpose;
 import org.simplity.kernel.data.DataSerializationType;
 import org.simplity.kernel.data.DataSheet;
 import org.simplity.kernel.data.FieldsCollection;
+import org.simplity.kernel.data.FlatFileReader;
 import org.simplity.kernel.data.FlatFileRowType;
 import org.simplity.kernel.data.MultiRowsSheet;
 import org.simplity.kernel.data.SingleRowSheet;
 import org.simplity.kernel.db.DbDriver;
+import org.simplity.kernel.db.DbVendor;
 import org.simplity.kernel.dt.DataType;
 import org.simplity.kernel.dt.DataTypeSuggester;
+import org.simplity.kernel.idb.IDataRowConsumer;
+import org.simplity.kernel.idb.IDataRowSource;
+import org.simplity.kernel.idb.IReadOnlyHandle;
+import org.simplity.kernel.idb.ITransactionHandle;
 import org.simplity.kernel.util.JsonUtil;
 import org.simplity.kernel.util.TextUtil;
 import org.simplity.kernel.util.XmlUtil;
@@ -268,6 +276,20 @@ public class Record implements Component {
 	 * changes.
 	 */
 	String[] recordsToBeNotifiedOnChange;
+
+	/**
+	 * number of rows sent to the data base in one batch while
+	 * inserting/updating/deleting rows of a data sheet. 0 means the default
+	 * batch size of the db handle is used
+	 */
+	@FieldMetaData(leaderField = "tableName")
+	int batchSize;
+
+	/**
+	 * number of rows fetched from the data base in one round trip while
+	 * filtering rows. 0 means the fetch size of the driver is used
+	 */
+	int fetchSize;
 	/*
 	 * following fields are assigned for caching/performance
 	 */
@@ -298,6 +320,21 @@ public class Record implements Component {
 	/** sql ready to insert a row into the table */
 	private String insertSql;
 
+	/** columns of insert sql. used to generate multi-row sqls */
+	private String[] insertColumns;
+
+	/**
+	 * value expression for each of the insert columns. This is "?" for a
+	 * parameter, or the function/sequence that is hard-coded in insert sql
+	 */
+	private String[] insertValues;
+
+	/** columns to be updated when a row being upserted already exists */
+	private String[] upsertColumns;
+
+	/** external names of primary key columns */
+	private String[] keyColumns;
+
 	/** sql to update every field. (Not selective update) */
 	private String updateSql;
 
@@ -1346,6 +1383,449 @@ public class Record implements Component {
 		return result;
 	}
 
+	/**
+	 * insert rows of a data sheet. Rows are sent with multi-row insert
+	 * statements of up to batchSize rows each, if the rdbms supports it.
+	 * Generated keys, if any, are added to the sheet.
+	 *
+	 * @param inSheet
+	 *            rows to be inserted
+	 * @param handle
+	 * @param userId
+	 * @param treatSqlErrorAsNoResult
+	 * @return number of rows inserted. -1 if the driver is unable to count the
+	 *         inserted rows
+	 */
+	public int insert(DataSheet inSheet, ITransactionHandle handle, Value userId, boolean treatSqlErrorAsNoResult) {
+		if (this.readOnly) {
+			this.notWritable();
+		}
+		int nbrRows = inSheet.length();
+		int[] rowIndexes = new int[nbrRows];
+		for (int i = 0; i < nbrRows; i++) {
+			rowIndexes[i] = i;
+		}
+		return this.insertRows(inSheet, rowIndexes, nbrRows, handle, userId, treatSqlErrorAsNoResult);
+	}
+
+	/**
+	 * save rows of a data sheet with as few round trips as possible. Action
+	 * for each row is decided the same way as in saveOne(). Rows to be
+	 * deleted and modified are sent as jdbc batches, and rows to be added with
+	 * multi-row inserts. If the key is not generated, rows with save action
+	 * are sent as multi-row upserts (MERGE/ON CONFLICT.. as per the rdbms).
+	 * An upsert sets all updatable columns of an existing row.
+	 *
+	 * @param inSheet
+	 *            data to be saved.
+	 * @param handle
+	 * @param userId
+	 * @param treatSqlErrorAsNoResult
+	 * @return action taken for each row. SAVE for rows that were upserted, as
+	 *         we do not know whether they were added or modified
+	 */
+	public SaveActionType[] saveMany(DataSheet inSheet, ITransactionHandle handle, Value userId,
+			boolean treatSqlErrorAsNoResult) {
+		if (this.readOnly) {
+			this.notWritable();
+		}
+		if (this.allPrimaryKeys == null) {
+			this.noPrimaryKey();
+		}
+		int nbrRows = inSheet.length();
+		SaveActionType[] actions = new SaveActionType[nbrRows];
+		int[] adds = new int[nbrRows];
+		int[] modifies = new int[nbrRows];
+		int[] deletes = new int[nbrRows];
+		int[] upserts = new int[nbrRows];
+		int nbrAdds = 0;
+		int nbrModifies = 0;
+		int nbrDeletes = 0;
+		int nbrUpserts = 0;
+		String keyName = this.allPrimaryKeys[0].name;
+		for (int i = 0; i < nbrRows; i++) {
+			FieldsCollection row = inSheet.getRowAsFields(i);
+			SaveActionType action = SaveActionType.SAVE;
+			Value value = row.getValue(ServiceProtocol.TABLE_ACTION_FIELD_NAME);
+			if (value != null) {
+				action = SaveActionType.parse(value.toString());
+			}
+			if (action == SaveActionType.SAVE) {
+				if (this.keyToBeGenerated) {
+					action = Value.isNull(row.getValue(keyName)) ? SaveActionType.ADD : SaveActionType.MODIFY;
+				} else if (this.useTimestampForConcurrency) {
+					/*
+					 * upsert can not check time-stamp
+					 */
+					boolean exists = handle.hasData(this.readSql, this.getWhereValues(row, false));
+					action = exists ? SaveActionType.MODIFY : SaveActionType.ADD;
+				}
+			}
+			actions[i] = action;
+			if (action == SaveActionType.ADD) {
+				adds[nbrAdds++] = i;
+			} else if (action == SaveActionType.MODIFY) {
+				modifies[nbrModifies++] = i;
+			} else if (action == SaveActionType.DELETE) {
+				deletes[nbrDeletes++] = i;
+			} else {
+				upserts[nbrUpserts++] = i;
+			}
+		}
+
+		if (nbrDeletes > 0) {
+			final int[] idxes = deletes;
+			final int nbr = nbrDeletes;
+			handle.executeBatch(this.deleteSql, new IDataRowSource() {
+				private int next = 0;
+
+				@Override
+				public Value[] nextRow() {
+					if (this.next >= nbr) {
+						return null;
+					}
+					FieldsCollection row = inSheet.getRowAsFields(idxes[this.next++]);
+					return Record.this.getWhereValues(row, Record.this.useTimestampForConcurrency);
+				}
+			}, this.batchSize, treatSqlErrorAsNoResult);
+		}
+
+		if (nbrModifies > 0) {
+			/*
+			 * getUpdateValues() sets updateSql as well, and hence we get all
+			 * values before using the sql
+			 */
+			Value[][] values = new Value[nbrModifies][];
+			for (int i = 0; i < nbrModifies; i++) {
+				values[i] = this.getUpdateValues(inSheet.getRowAsFields(modifies[i]), userId);
+			}
+			final Iterator<Value[]> rows = Arrays.asList(values).iterator();
+			int nbr = handle.executeBatch(this.updateSql, new IDataRowSource() {
+
+				@Override
+				public Value[] nextRow() {
+					if (rows.hasNext()) {
+						return rows.next();
+					}
+					return null;
+				}
+			}, this.batchSize, treatSqlErrorAsNoResult);
+			if (nbr >= 0 && nbr < nbrModifies) {
+				throw new ApplicationError(
+						"Data was changed by some one else while you were editing it. Please cancel this operation and redo it with latest data.");
+			}
+		}
+
+		if (nbrUpserts > 0) {
+			this.upsertRows(inSheet, upserts, nbrUpserts, handle, userId, treatSqlErrorAsNoResult);
+		}
+
+		if (nbrAdds > 0) {
+			this.insertRows(inSheet, adds, nbrAdds, handle, userId, treatSqlErrorAsNoResult);
+		}
+
+		if (this.recordsToBeNotifiedOnChange != null) {
+			for (int i = 0; i < nbrRows; i++) {
+				if (actions[i] != SaveActionType.ADD) {
+					this.invalidateCache(inSheet.getRowAsFields(i));
+				}
+			}
+		}
+		return actions;
+	}
+
+	/**
+	 * parent record got saved. we are to save rows for this record
+	 *
+	 * @param inSheet
+	 *            data for this record
+	 * @param parentRow
+	 *            data for parent record that is already saved. Generated key
+	 *            of the parent would have been added to this by now
+	 * @param handle
+	 * @param userId
+	 * @return action taken for each row
+	 */
+	public SaveActionType[] saveWithParent(DataSheet inSheet, FieldsCollection parentRow, ITransactionHandle handle,
+			Value userId) {
+		if (this.readOnly) {
+			this.notWritable();
+		}
+		if (this.allParentKeys == null) {
+			this.noParent();
+		}
+		this.copyParentKeys(parentRow, inSheet);
+		return this.saveMany(inSheet, handle, userId, false);
+	}
+
+	/**
+	 * insert selected rows of a sheet using multi-row inserts, and add
+	 * generated keys to the sheet
+	 *
+	 * @param rowIndexes
+	 *            indexes of rows in the sheet to be inserted
+	 * @param nbrRows
+	 *            number of entries in rowIndexes to be used
+	 * @return number of rows inserted, -1 if it can not be determined
+	 */
+	private int insertRows(DataSheet inSheet, int[] rowIndexes, int nbrRows, ITransactionHandle handle,
+			Value userId, boolean treatSqlErrorAsNoResult) {
+		if (nbrRows == 0) {
+			return 0;
+		}
+		DbVendor vendor = handle.getDbVendor();
+		String keyColumn = this.keyToBeGenerated ? this.allPrimaryKeys[0].externalName : null;
+		int chunkSize = this.getChunkSize(vendor);
+		String chunkSql = vendor.getMultiRowInsertSql(this.tableName, this.insertColumns, this.insertValues,
+				chunkSize, keyColumn);
+		long[] keys = keyColumn == null ? null : new long[nbrRows];
+		if (chunkSql == null) {
+			return this.insertRowByRow(inSheet, rowIndexes, nbrRows, handle, userId, keys, treatSqlErrorAsNoResult);
+		}
+
+		int result = 0;
+		for (int start = 0; start < nbrRows; start += chunkSize) {
+			int nbr = Math.min(chunkSize, nbrRows - start);
+			String sql = chunkSql;
+			if (nbr < chunkSize) {
+				sql = vendor.getMultiRowInsertSql(this.tableName, this.insertColumns, this.insertValues, nbr,
+						keyColumn);
+			}
+			Value[] values = this.getChunkValues(inSheet, rowIndexes, start, nbr, userId);
+			int count;
+			if (keys == null) {
+				count = handle.execute(sql, values, treatSqlErrorAsNoResult);
+			} else if (vendor.keysReturnedAsResultSet()) {
+				count = readKeys(handle, sql, values, keys, start);
+			} else {
+				long[] chunkKeys = new long[nbr];
+				String[] keyNames = { keyColumn };
+				count = handle.insertAndGetKeys(sql, values, chunkKeys, keyNames, treatSqlErrorAsNoResult);
+				System.arraycopy(chunkKeys, 0, keys, start, nbr);
+			}
+			result = addCount(result, count);
+		}
+		if (keys != null) {
+			this.setKeys(inSheet, rowIndexes, nbrRows, keys);
+		}
+		return result;
+	}
+
+	/**
+	 * rdbms can not insert these rows with one statement. we use a batch, or
+	 * insert row by row if keys are to be retrieved
+	 */
+	private int insertRowByRow(DataSheet inSheet, int[] rowIndexes, int nbrRows, ITransactionHandle handle,
+			Value userId, long[] keys, boolean treatSqlErrorAsNoResult) {
+		if (keys == null) {
+			return handle.executeBatch(this.insertSql, new IDataRowSource() {
+				private int next = 0;
+
+				@Override
+				public Value[] nextRow() {
+					if (this.next >= nbrRows) {
+						return null;
+					}
+					FieldsCollection row = inSheet.getRowAsFields(rowIndexes[this.next++]);
+					return Record.this.getInsertValues(row, userId);
+				}
+			}, this.batchSize, treatSqlErrorAsNoResult);
+		}
+
+		logger.info("{} does not support multi-row insert with generated keys. Rows are inserted one by one.",
+				handle.getDbVendor());
+		String[] keyNames = { this.allPrimaryKeys[0].externalName };
+		long[] generatedKeys = new long[1];
+		int result = 0;
+		for (int i = 0; i < nbrRows; i++) {
+			Value[] values = this.getInsertValues(inSheet.getRowAsFields(rowIndexes[i]), userId);
+			generatedKeys[0] = 0;
+			result += handle.insertAndGetKeys(this.insertSql, values, generatedKeys, keyNames,
+					treatSqlErrorAsNoResult);
+			keys[i] = generatedKeys[0];
+		}
+		this.setKeys(inSheet, rowIndexes, nbrRows, keys);
+		return result;
+	}
+
+	/**
+	 * insert or update selected rows of a sheet using multi-row upserts
+	 */
+	private void upsertRows(DataSheet inSheet, int[] rowIndexes, int nbrRows, ITransactionHandle handle,
+			Value userId, boolean treatSqlErrorAsNoResult) {
+		DbVendor vendor = handle.getDbVendor();
+		int chunkSize = this.getChunkSize(vendor);
+		String chunkSql = vendor.getMultiRowUpsertSql(this.tableName, this.insertColumns, this.insertValues,
+				chunkSize, this.keyColumns, this.upsertColumns);
+		for (int start = 0; start < nbrRows; start += chunkSize) {
+			int nbr = Math.min(chunkSize, nbrRows - start);
+			String sql = chunkSql;
+			if (nbr < chunkSize) {
+				sql = vendor.getMultiRowUpsertSql(this.tableName, this.insertColumns, this.insertValues, nbr,
+						this.keyColumns, this.upsertColumns);
+			}
+			Value[] values = this.getChunkValues(inSheet, rowIndexes, start, nbr, userId);
+			/*
+			 * rows affected by an upsert is vendor specific, and hence we do
+			 * not use it
+			 */
+			handle.execute(sql, values, treatSqlErrorAsNoResult);
+		}
+	}
+
+	/**
+	 * @return number of rows to be sent in one multi-row statement
+	 */
+	private int getChunkSize(DbVendor vendor) {
+		int max = vendor.getMaxRowsPerStatement(this.nbrInsertFields);
+		if (this.batchSize > 0 && this.batchSize < max) {
+			return this.batchSize;
+		}
+		return max;
+	}
+
+	/**
+	 * insert values of rows, one after the other, for a multi-row statement
+	 */
+	private Value[] getChunkValues(DataSheet inSheet, int[] rowIndexes, int start, int nbrRows, Value userId) {
+		int width = this.nbrInsertFields;
+		Value[] values = new Value[nbrRows * width];
+		for (int i = 0; i < nbrRows; i++) {
+			Value[] row = this.getInsertValues(inSheet.getRowAsFields(rowIndexes[start + i]), userId);
+			System.arraycopy(row, 0, values, i * width, width);
+		}
+		return values;
+	}
+
+	/**
+	 * set generated keys into the key column of the sheet
+	 */
+	private void setKeys(DataSheet inSheet, int[] rowIndexes, int nbrRows, long[] keys) {
+		String keyName = this.allPrimaryKeys[0].name;
+		Value[] keyValues;
+		if (inSheet.getColIdx(keyName) < 0) {
+			keyValues = new Value[inSheet.length()];
+		} else {
+			keyValues = inSheet.getColumnValues(keyName);
+		}
+		for (int i = 0; i < nbrRows; i++) {
+			if (keys[i] != 0) {
+				keyValues[rowIndexes[i]] = Value.newIntegerValue(keys[i]);
+			}
+		}
+		inSheet.addColumn(keyName, ValueType.INTEGER, keyValues);
+	}
+
+	/**
+	 * execute an insert sql that returns generated keys as its result
+	 *
+	 * @return number of rows inserted
+	 */
+	private static int readKeys(ITransactionHandle handle, String sql, Value[] values, final long[] keys,
+			final int start) {
+		final int[] nbr = { 0 };
+		ValueType[] types = { ValueType.INTEGER };
+		handle.read(sql, values, types, new IDataRowConsumer() {
+
+			@Override
+			public boolean consume(Value[] row) {
+				int idx = start + nbr[0];
+				if (idx >= keys.length) {
+					return false;
+				}
+				keys[idx] = ((IntegerValue) row[0]).getLong();
+				nbr[0]++;
+				return true;
+			}
+		});
+		return nbr[0];
+	}
+
+	/**
+	 * @return running count, or -1 if any of the counts is not known
+	 */
+	private static int addCount(int total, int count) {
+		if (total < 0 || count < 0) {
+			return -1;
+		}
+		return total + count;
+	}
+
+	/**
+	 * update rows of a data sheet in batches of batchSize.
+	 *
+	 * @param inSheet
+	 *            rows to be updated
+	 * @param handle
+	 * @param userId
+	 * @param treatSqlErrorAsNoResult
+	 * @return number of rows updated. -1 if the driver is unable to count the
+	 *         updated rows
+	 */
+	public int update(DataSheet inSheet, ITransactionHandle handle, Value userId, boolean treatSqlErrorAsNoResult) {
+		if (this.readOnly) {
+			this.notWritable();
+		}
+		if (this.allPrimaryKeys == null) {
+			this.noPrimaryKey();
+		}
+		final Iterator<FieldsCollection> rows = inSheet.iterator();
+		int result = handle.executeBatch(this.updateSql, new IDataRowSource() {
+
+			@Override
+			public Value[] nextRow() {
+				if (rows.hasNext()) {
+					return Record.this.getUpdateValues(rows.next(), userId);
+				}
+				return null;
+			}
+		}, this.batchSize, treatSqlErrorAsNoResult);
+
+		if (result != 0 && this.recordsToBeNotifiedOnChange != null) {
+			for (FieldsCollection row : inSheet) {
+				this.invalidateCache(row);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * delete rows of a data sheet in batches of batchSize.
+	 *
+	 * @param inSheet
+	 *            rows to be deleted
+	 * @param handle
+	 * @param treatSqlErrorAsNoResult
+	 * @return number of rows deleted. -1 if the driver is unable to count the
+	 *         deleted rows
+	 */
+	public int delete(DataSheet inSheet, ITransactionHandle handle, boolean treatSqlErrorAsNoResult) {
+		if (this.readOnly) {
+			this.notWritable();
+		}
+		if (this.allPrimaryKeys == null) {
+			this.noPrimaryKey();
+		}
+		final Iterator<FieldsCollection> rows = inSheet.iterator();
+		int result = handle.executeBatch(this.deleteSql, new IDataRowSource() {
+
+			@Override
+			public Value[] nextRow() {
+				if (rows.hasNext()) {
+					return Record.this.getWhereValues(rows.next(), Record.this.useTimestampForConcurrency);
+				}
+				return null;
+			}
+		}, this.batchSize, treatSqlErrorAsNoResult);
+
+		if (result != 0 && this.recordsToBeNotifiedOnChange != null) {
+			for (FieldsCollection row : inSheet) {
+				this.invalidateCache(row);
+			}
+		}
+		return result;
+	}
+
 	private void notWritable() {
 		throw new ApplicationError("Record " + this.name
 				+ " is not designed to be writable. Add/Update/Delete operations are not possible.");
@@ -2020,6 +2500,10 @@ public class Record implements Component {
 
 		boolean firstInsertField = true;
 		boolean firstUpdatableField = true;
+		List<String> insertCols = new ArrayList<String>();
+		List<String> insertVals = new ArrayList<String>();
+		List<String> upsertCols = new ArrayList<String>();
+		List<String> keyCols = new ArrayList<String>();
 		for (Field field : this.fields) {
 			/*
 			 * some fields are not updatable
@@ -2052,23 +2536,36 @@ public class Record implements Component {
 				vals.append(Record.COMMA);
 			}
 			insert.append(field.externalName);
+			insertCols.add(field.externalName);
 			/*
 			 * value is hard coded for time stamps
 			 */
 			if (field.fieldType == FieldType.MODIFIED_TIME_STAMP || field.fieldType == FieldType.CREATED_TIME_STAMP) {
 				vals.append(timeStamp);
+				insertVals.add(timeStamp);
 			} else if (FieldType.isPrimaryKey(fieldType) && this.keyToBeGenerated) {
 				vals.append(this.sequence);
+				insertVals.add(this.sequence);
 			} else {
 				vals.append(Record.PARAM);
+				insertVals.add(String.valueOf(Record.PARAM));
 				this.nbrInsertFields++;
 			}
+			if (FieldType.isPrimaryKey(fieldType)) {
+				keyCols.add(field.externalName);
+			} else if (field.canUpdate() || field.fieldType == FieldType.MODIFIED_TIME_STAMP) {
+				upsertCols.add(field.externalName);
+			}
 		}
 		/*
 		 * set insert sql
 		 */
 		insert.append(vals.append(')'));
 		this.insertSql = insert.toString();
+		this.insertColumns = insertCols.toArray(new String[0]);
+		this.insertValues = insertVals.toArray(new String[0]);
+		this.upsertColumns = upsertCols.toArray(new String[0]);
+		this.keyColumns = keyCols.toArray(new String[0]);
 
 		/*
 		 * where clause of delete and update are same, but they are valid only
@@ -3459,6 +3956,26 @@ public class Record implements Component {
 		driver.sqlToJson(temp.sql, temp.values, this.getValueTypes(), names, writer);
 	}
 
+	/**
+	 * filter rows from underlying view/table as per filtering criterion, and
+	 * feed them to the consumer as they are fetched from the db. Unlike
+	 * filter(), rows are not accumulated in a data sheet.
+	 *
+	 * @param inRecord
+	 *            record to be used to input filter fields
+	 * @param inData
+	 *            that has the values for filter fields
+	 * @param handle
+	 * @param consumer
+	 *            receives values of fields of this record for each row.
+	 *            reading stops when it returns false
+	 * @return number of rows read
+	 */
+	public int filter(Record inRecord, FieldsCollection inData, IReadOnlyHandle handle, IDataRowConsumer consumer) {
+		SqlAndValues temp = this.getSqlAndValues(inData, inRecord);
+		return handle.stream(temp.sql, temp.values, this.getValueTypes(), this.fetchSize, consumer);
+	}
+
 	/**
 	 * worker method to create a prepared statement and corresponding values for
 	 * filter method
@@ -3634,6 +4151,84 @@ public class Record implements Component {
 		}
 	}
 
+	/**
+	 * extract values from the current row of a flat-file reader. Fields are
+	 * parsed from the bytes in the reader wherever possible, and text is
+	 * decoded only for the fields that need it.
+	 *
+	 * @param reader
+	 *            reader that is positioned at a row
+	 * @param ctx
+	 * @return array of values, or null in case of any validation error. Error
+	 *         message would have been added to context
+	 */
+	public Value[] extractFromFlatRow(FlatFileReader reader, ServiceContext ctx) {
+		if (reader.getNbrFields() != this.fields.length) {
+			String inText = reader.getRowText();
+			if (reader.getRowType() == FlatFileRowType.FIXED_WIDTH) {
+				this.addShortRowMessage(inText, ctx);
+			} else {
+				FormattedMessage msg = new FormattedMessage("kernel.invalidInputStream", inText);
+				msg.addData(inText);
+				ctx.addMessage(msg);
+			}
+			return null;
+		}
+		Value[] values = new Value[this.fields.length];
+		for (int i = 0; i < this.fields.length; i++) {
+			Field field = this.fields[i];
+			if (field.canExtract() == false) {
+				continue;
+			}
+			Value value = reader.getValue(i, field.getValueType());
+			if (value == null) {
+				values[i] = field.parseText(reader.getText(i), false, ctx);
+			} else {
+				values[i] = field.parseValue(value, false, ctx);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * parse fields from the current row of a flat-file reader into fields, of
+	 * course with validation
+	 *
+	 * @param reader
+	 *            reader that is positioned at a row
+	 * @param fieldValues
+	 * @param ctx
+	 *            any validation errors are added to this
+	 */
+	public void parseFlatFileRow(FlatFileReader reader, FieldsCollection fieldValues, ServiceContext ctx) {
+		Value[] values = this.extractFromFlatRow(reader, ctx);
+
+		if (values != null) {
+			for (int i = 0; i < values.length; i++) {
+				fieldValues.setValue(this.fieldNames[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return width of each field, for reading a fixed-width row
+	 */
+	public int[] getFieldWidths() {
+		int[] widths = new int[this.fields.length];
+		for (int i = 0; i < widths.length; i++) {
+			widths[i] = this.fields[i].fieldWidth;
+		}
+		return widths;
+	}
+
+	private void addShortRowMessage(String inText, ServiceContext ctx) {
+		FormattedMessage msg = new FormattedMessage("kernel.invalidInputStream",
+				"fixed-width input row has " + inText.length() + " chracters while this record " + this.name
+						+ " is designed for a minimum of" + this.minRecordLength + " characters");
+		msg.addData(inText);
+		ctx.addMessage(msg);
+	}
+
 	/**
 	 * split fixed-width row text into its field texts
 	 *
@@ -3642,11 +4237,7 @@ public class Record implements Component {
 	 */
 	private String[] splitFixedWidthInput(String inText, ServiceContext ctx) {
 		if (inText.length() < this.minRecordLength) {
-			FormattedMessage msg = new FormattedMessage("kernel.invalidInputStream",
-					"fixed-width input row has " + inText.length() + " chracters while this record " + this.name
-							+ " is designed for a minimum of" + this.minRecordLength + " characters");
-			msg.addData(inText);
-			ctx.addMessage(msg);
+			this.addShortRowMessage(inText, ctx);
 			return null;
 		}
 		String[] texts = new String[this.fields.length];
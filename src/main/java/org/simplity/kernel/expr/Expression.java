@@ -127,6 +127,12 @@ public class Expression {
    */
   int nbrCommas = 0;
 
+  /**
+   * expression compiled into a tree of nodes for faster evaluation. null if it could not be
+   * compiled, in which case the expression is interpreted.
+   */
+  private ExpressionCompiler.Node compiledTree;
+
   /**
    * this is an immutable instance that is thread-safe. Hence expression is set at the time of
    * construction, and an exception is thrown in case of syntax error
@@ -151,6 +157,7 @@ public class Expression {
     } catch (InternalParseException e) {
       throw new InvalidExpressionException(this.expressionText, e.error, e.errorAt);
     }
+    this.compiledTree = ExpressionCompiler.compile(this);
   }
 
   /**
@@ -177,6 +184,36 @@ public class Expression {
    * @throws InvalidOperationException
    */
   public Value evaluate(FieldsCollection data) throws InvalidOperationException {
+    if (this.compiledTree != null) {
+      return this.compiledTree.evaluate(data);
+    }
+    return this.interpret(data);
+  }
+
+  /**
+   * evaluate this expression as a condition. This is same as
+   * Value.intepretAsBoolean(evaluate(data)), but avoids creating values where possible
+   *
+   * @param data
+   * @return true if the value of this expression is boolean-true, positive-number, date, or
+   *     non-empty text
+   * @throws InvalidOperationException
+   */
+  public boolean evaluateAsBoolean(FieldsCollection data) throws InvalidOperationException {
+    if (this.compiledTree != null) {
+      return this.compiledTree.isTrue(data);
+    }
+    return Value.intepretAsBoolean(this.interpret(data));
+  }
+
+  /**
+   * evaluate this expression by interpreting its steps
+   *
+   * @param data
+   * @return value of this expression
+   * @throws InvalidOperationException
+   */
+  Value interpret(FieldsCollection data) throws InvalidOperationException {
     /*
      * this is just a safety. As per our current design, this should not
      * happen
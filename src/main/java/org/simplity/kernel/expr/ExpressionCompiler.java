@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2015 EXILANT Technologies Private Limited (www.exilant.com)
+ * Copyright (c) 2016 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.simplity.kernel.expr;
+
+import org.simplity.kernel.data.FieldsCollection;
+import org.simplity.kernel.value.DecimalValue;
+import org.simplity.kernel.value.IntegerValue;
+import org.simplity.kernel.value.InvalidValueException;
+import org.simplity.kernel.value.Value;
+import org.simplity.kernel.value.ValueType;
+
+/**
+ * compiles a parsed expression into a tree of nodes, so that it need not be interpreted step by
+ * step on each evaluation. Result of evaluating the tree is the same as that of interpreting the
+ * expression, including for unknown values and invalid operations.
+ *
+ * <p>No array of intermediate values is allocated for an evaluation. Comparisons between integral
+ * or decimal values, and logical operations, are carried out on primitives when the result is
+ * required as a boolean, as is the case with conditions.
+ *
+ * <p>Function calls, along with their argument lists, are not compiled. They continue to be
+ * interpreted as part of the tree.
+ *
+ * @author simplity.org
+ */
+class ExpressionCompiler {
+
+  /**
+   * compile an expression
+   *
+   * @param expression parsed expression
+   * @return root node of the compiled tree, or null if the expression can not be compiled, in
+   *     which case it is to be interpreted
+   */
+  static Node compile(Expression expression) {
+    Operand[] operands = expression.operands;
+    if (operands == null) {
+      return new ConstantNode(Value.newUnknownValue(ValueType.TEXT));
+    }
+    /*
+     * comma operators are for argument list, and are interpreted as part of
+     * function call
+     */
+    if (expression.nbrCommas > 0) {
+      return null;
+    }
+    Node[] nodes = new Node[operands.length];
+    for (int i = 0; i < operands.length; i++) {
+      Node node = compileOperand(operands[i]);
+      if (node == null) {
+        return null;
+      }
+      nodes[i] = node;
+    }
+    /*
+     * each step replaces its left operand with the result of the operation.
+     * We do just that, except that the result is a node rather than a value
+     */
+    if (expression.calculationSteps != null) {
+      for (Step step : expression.calculationSteps) {
+        nodes[step.left] = newOperationNode(step.bop, nodes[step.left], nodes[step.right]);
+      }
+    }
+    return nodes[0];
+  }
+
+  private static Node compileOperand(Operand operand) {
+    switch (operand.operandType) {
+      case Operand.CONSTANT:
+        /*
+         * interpreter ignores uop for a constant. we do the same
+         */
+        return new ConstantNode(operand.value);
+
+      case Operand.FIELD:
+        String fieldName = operand.value.toString();
+        if (operand.uop == UnaryOperator.IsKnown) {
+          return new KnownNode(fieldName, true);
+        }
+        if (operand.uop == UnaryOperator.IsUnknown) {
+          return new KnownNode(fieldName, false);
+        }
+        return wrapUnary(operand.uop, new FieldNode(fieldName));
+
+      case Operand.EXPRESSION:
+        Node node = compile(operand.expression);
+        if (node == null) {
+          return new OperandNode(operand);
+        }
+        return wrapUnary(operand.uop, node);
+
+      default:
+        return new OperandNode(operand);
+    }
+  }
+
+  private static Node wrapUnary(UnaryOperator uop, Node node) {
+    if (uop == null) {
+      return node;
+    }
+    return new UnaryNode(uop, node);
+  }
+
+  private static Node newOperationNode(BinaryOperator bop, Node left, Node right) {
+    switch (bop) {
+      case And:
+        return new AndNode(left, right);
+      case Or:
+        return new OrNode(left, right);
+      case Less:
+      case LessOrEqual:
+      case Greater:
+      case GreaterOrEqual:
+      case Equal:
+      case NotEqual:
+        return new CompareNode(bop, left, right);
+      default:
+        return new OperationNode(bop, left, right);
+    }
+  }
+
+  /**
+   * a node in the compiled tree. Nodes are immutable, and hence the tree is thread-safe
+   *
+   * @author simplity.org
+   */
+  abstract static class Node {
+    /**
+     * evaluate this node
+     *
+     * @param data
+     * @return value, never null
+     * @throws InvalidOperationException
+     */
+    abstract Value evaluate(FieldsCollection data) throws InvalidOperationException;
+
+    /**
+     * evaluate this node and interpret the result as a boolean. Same as
+     * Value.intepretAsBoolean(evaluate(data)). Nodes that produce a boolean override this to avoid
+     * creating a value
+     *
+     * @param data
+     * @return boolean interpretation of the value of this node
+     * @throws InvalidOperationException
+     */
+    boolean isTrue(FieldsCollection data) throws InvalidOperationException {
+      return Value.intepretAsBoolean(this.evaluate(data));
+    }
+  }
+
+  /** constant */
+  private static class ConstantNode extends Node {
+    private final Value value;
+    private final boolean isTrue;
+
+    ConstantNode(Value value) {
+      this.value = value;
+      this.isTrue = Value.intepretAsBoolean(value);
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) {
+      return this.value;
+    }
+
+    @Override
+    boolean isTrue(FieldsCollection data) {
+      return this.isTrue;
+    }
+  }
+
+  /** value of a field */
+  private static class FieldNode extends Node {
+    private final String fieldName;
+
+    FieldNode(String fieldName) {
+      this.fieldName = fieldName;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) {
+      Value value = data.getValue(this.fieldName);
+      if (value == null) {
+        return Value.newUnknownValue(ValueType.TEXT);
+      }
+      return value;
+    }
+  }
+
+  /** ?field or ~field */
+  private static class KnownNode extends Node {
+    private final String fieldName;
+    private final boolean toBeKnown;
+
+    KnownNode(String fieldName, boolean toBeKnown) {
+      this.fieldName = fieldName;
+      this.toBeKnown = toBeKnown;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) {
+      return Value.newBooleanValue(this.isTrue(data));
+    }
+
+    @Override
+    boolean isTrue(FieldsCollection data) {
+      return (data.getValue(this.fieldName) != null) == this.toBeKnown;
+    }
+  }
+
+  /** - or ! on a field or sub-expression */
+  private static class UnaryNode extends Node {
+    private final UnaryOperator uop;
+    private final Node operand;
+
+    UnaryNode(UnaryOperator uop, Node operand) {
+      this.uop = uop;
+      this.operand = operand;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) throws InvalidOperationException {
+      return Operand.applyUnary(this.uop, this.operand.evaluate(data));
+    }
+  }
+
+  /** function, or anything else that the interpreter is to take care of */
+  private static class OperandNode extends Node {
+    private final Operand operand;
+
+    OperandNode(Operand operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) throws InvalidOperationException {
+      return this.operand.getValue(data);
+    }
+  }
+
+  /** arithmetic and other binary operations that produce a value */
+  private static class OperationNode extends Node {
+    protected final BinaryOperator bop;
+    protected final Node left;
+    protected final Node right;
+
+    OperationNode(BinaryOperator bop, Node left, Node right) {
+      this.bop = bop;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) throws InvalidOperationException {
+      Value leftValue = this.left.evaluate(data);
+      return this.bop.operate(leftValue, this.right.evaluate(data));
+    }
+  }
+
+  /** comparison */
+  private static class CompareNode extends OperationNode {
+
+    CompareNode(BinaryOperator bop, Node left, Node right) {
+      super(bop, left, right);
+    }
+
+    @Override
+    boolean isTrue(FieldsCollection data) throws InvalidOperationException {
+      Value leftValue = this.left.evaluate(data);
+      Value rightValue = this.right.evaluate(data);
+      /*
+       * operation with an unknown value results in unknown, which is
+       * interpreted as false
+       */
+      if (Value.isNull(leftValue) || Value.isNull(rightValue)) {
+        return false;
+      }
+      ValueType lt = leftValue.getValueType();
+      ValueType rt = rightValue.getValueType();
+      if (lt == ValueType.INTEGER && rt == ValueType.INTEGER) {
+        long l = ((IntegerValue) leftValue).getLong();
+        long r = ((IntegerValue) rightValue).getLong();
+        switch (this.bop) {
+          case Less:
+            return l < r;
+          case LessOrEqual:
+            return l <= r;
+          case Greater:
+            return l > r;
+          case GreaterOrEqual:
+            return l >= r;
+          case Equal:
+            return l == r;
+          case NotEqual:
+            return l != r;
+          default:
+            break;
+        }
+      } else if (isNumeric(lt) && isNumeric(rt)) {
+        /*
+         * equality of decimals has its own tolerance. That is left to the
+         * operator
+         */
+        double l = toDouble(leftValue);
+        double r = toDouble(rightValue);
+        switch (this.bop) {
+          case Less:
+            return l < r;
+          case LessOrEqual:
+            return l <= r;
+          case Greater:
+            return l > r;
+          case GreaterOrEqual:
+            return l >= r;
+          default:
+            break;
+        }
+      }
+      return Value.intepretAsBoolean(this.bop.operate(leftValue, rightValue));
+    }
+
+    private static boolean isNumeric(ValueType type) {
+      return type == ValueType.INTEGER || type == ValueType.DECIMAL;
+    }
+
+    private static double toDouble(Value value) {
+      if (value.getValueType() == ValueType.INTEGER) {
+        return ((IntegerValue) value).getDouble();
+      }
+      return ((DecimalValue) value).getDouble();
+    }
+  }
+
+  /** logical and, with lazy evaluation of right operand */
+  private static class AndNode extends Node {
+    private final Node left;
+    private final Node right;
+
+    AndNode(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) throws InvalidOperationException {
+      return Value.newBooleanValue(this.isTrue(data));
+    }
+
+    @Override
+    boolean isTrue(FieldsCollection data) throws InvalidOperationException {
+      Value leftValue = this.left.evaluate(data);
+      if (toBoolean(BinaryOperator.And, leftValue, leftValue) == false) {
+        return false;
+      }
+      return toBoolean(BinaryOperator.And, leftValue, this.right.evaluate(data));
+    }
+  }
+
+  /** logical or, with lazy evaluation of right operand */
+  private static class OrNode extends Node {
+    private final Node left;
+    private final Node right;
+
+    OrNode(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Value evaluate(FieldsCollection data) throws InvalidOperationException {
+      return Value.newBooleanValue(this.isTrue(data));
+    }
+
+    @Override
+    boolean isTrue(FieldsCollection data) throws InvalidOperationException {
+      Value leftValue = this.left.evaluate(data);
+      if (toBoolean(BinaryOperator.Or, leftValue, leftValue)) {
+        return true;
+      }
+      return toBoolean(BinaryOperator.Or, leftValue, this.right.evaluate(data));
+    }
+  }
+
+  /**
+   * operand of a logical operator is to be boolean
+   *
+   * @param bop operator
+   * @param leftValue left operand of the operator, for reporting error
+   * @param value operand to be converted
+   * @return boolean
+   * @throws InvalidOperationException if the value is not boolean
+   */
+  static boolean toBoolean(BinaryOperator bop, Value leftValue, Value value)
+      throws InvalidOperationException {
+    try {
+      return value.toBoolean();
+    } catch (InvalidValueException e) {
+      throw new InvalidOperationException(bop, leftValue.getValueType(), value.getValueType());
+    }
+  }
+}
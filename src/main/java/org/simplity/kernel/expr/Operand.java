@@ -66,44 +66,56 @@ class Operand {
     }
 
     Value valueToReturn = null;
-    try {
-      if (this.operandType == Operand.EXPRESSION) {
-        valueToReturn = this.expression.evaluate(data);
+    if (this.operandType == Operand.EXPRESSION) {
+      valueToReturn = this.expression.evaluate(data);
+    } else {
+      String fname = this.value.toString();
+      if (this.operandType == Operand.FIELD) {
+        valueToReturn = data.getValue(fname);
+        if (this.uop == UnaryOperator.IsKnown) {
+          return Value.newBooleanValue(valueToReturn != null);
+        }
+        if (this.uop == UnaryOperator.IsUnknown) {
+          return Value.newBooleanValue(valueToReturn == null);
+        }
+        if (valueToReturn == null) {
+          valueToReturn = Value.newUnknownValue(ValueType.TEXT);
+        }
       } else {
-        String fname = this.value.toString();
-        if (this.operandType == Operand.FIELD) {
-          valueToReturn = data.getValue(fname);
-          if (this.uop == UnaryOperator.IsKnown) {
-            return Value.newBooleanValue(valueToReturn != null);
-          }
-          if (this.uop == UnaryOperator.IsUnknown) {
-            return Value.newBooleanValue(valueToReturn == null);
-          }
-          if (valueToReturn == null) {
-            valueToReturn = Value.newUnknownValue(ValueType.TEXT);
-          }
-        } else {
-          Value[] args = null;
-          if (this.expression != null) {
-            args = this.expression.getValueList(data);
-          }
-          valueToReturn = ComponentManager.evaluate(fname, args, data);
+        Value[] args = null;
+        if (this.expression != null) {
+          args = this.expression.getValueList(data);
         }
+        valueToReturn = ComponentManager.evaluate(fname, args, data);
       }
-      if (this.uop == null || valueToReturn.isUnknown()) {
-        return valueToReturn;
-      }
-      ValueType type = valueToReturn.getValueType();
-      if (this.uop == UnaryOperator.Not) {
+    }
+    return applyUnary(this.uop, valueToReturn);
+  }
+
+  /**
+   * apply a unary operator, - or !, on a value
+   *
+   * @param uop null if there is no operator to be applied
+   * @param value
+   * @return resultant value
+   * @throws InvalidOperationException if the operator is not valid for the value type
+   */
+  static Value applyUnary(UnaryOperator uop, Value value) throws InvalidOperationException {
+    if (uop == null || value.isUnknown()) {
+      return value;
+    }
+    ValueType type = value.getValueType();
+    try {
+      if (uop == UnaryOperator.Not) {
         if (type == ValueType.BOOLEAN) {
-          return Value.newBooleanValue(!valueToReturn.toBoolean());
+          return Value.newBooleanValue(!value.toBoolean());
         }
       } else {
         if (type == ValueType.INTEGER) {
-          return Value.newIntegerValue(-valueToReturn.toInteger());
+          return Value.newIntegerValue(-value.toInteger());
         }
         if (type == ValueType.DECIMAL) {
-          return Value.newDecimalValue(-valueToReturn.toDecimal());
+          return Value.newDecimalValue(-value.toDecimal());
         }
       }
     } catch (InvalidValueException e) {
@@ -111,7 +123,7 @@ class Operand {
       // some design change, this is still valid as we will end up
       // throwing another exception
     }
-    throw new InvalidOperationException(UnaryOperator.Not, valueToReturn.getValueType());
+    throw new InvalidOperationException(UnaryOperator.Not, type);
   }
 
   /**
@@ -86,25 +86,14 @@ public class FileBasedAssistant implements AttachmentAssistantInterface {
       return null;
     }
     String key = UUID.randomUUID().toString();
-    InputStream inStream = null;
     try {
-      inStream = new FileInputStream(file);
-      file = new File(this.storageRoot, key);
-      FileManager.streamToFile(file, inStream);
+      FileManager.copyFile(file, new File(this.storageRoot, key));
       return key;
     } catch (Exception e) {
 
       logger.error("Error while storing temp file " + tempKey, e);
 
       return null;
-    } finally {
-      if (inStream != null) {
-        try {
-          inStream.close();
-        } catch (Exception ignore) {
-          //
-        }
-      }
     }
   }
 
@@ -31,6 +31,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -171,16 +174,23 @@ public class FileManager {
 	 * @return file, never null.
 	 */
 	public static File createTempFile() {
-		File file = getNewFile();
 		try {
-			file.createNewFile();
+			/*
+			 * createNewFile() fails if another thread got the same name
+			 */
+			for (int i = 0; i < MAX_TRY; i++) {
+				File file = getNewFile();
+				if (file.createNewFile()) {
 
-			logger.info("Creating and returning an empty file");
+					logger.info("Creating and returning an empty file");
 
-			return file;
+					return file;
+				}
+			}
 		} catch (IOException e) {
 			throw new ApplicationError(e, MSG);
 		}
+		throw new ApplicationError("Unable to create a temp file even after " + MAX_TRY);
 	}
 
 	/**
@@ -228,8 +238,9 @@ public class FileManager {
 		Writer writer = null;
 		try {
 			writer = new FileWriter(file);
-			for (int ch = reader.read(); ch != -1; ch = reader.read()) {
-				writer.write(ch);
+			char[] buffer = new char[BUFFER_SIZE];
+			for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+				writer.write(buffer, 0, n);
 			}
 			return file;
 		} catch (Exception e) {
@@ -356,12 +367,50 @@ public class FileManager {
 	 *             in case of any io error during copy
 	 */
 	public static void copyOut(InputStream in, OutputStream out) throws IOException {
+		if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+			/*
+			 * file to file. let the os do the copying
+			 */
+			transfer(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+			return;
+		}
 		byte[] buffer = new byte[BUFFER_SIZE];
-		for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+		for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
 			out.write(buffer, 0, n);
 		}
 	}
 
+	/**
+	 * copy contents of a file to another file.
+	 *
+	 * @param fromFile
+	 *            file to copy from
+	 * @param toFile
+	 *            file is created if required. contents over-ridden if file
+	 *            exists.
+	 * @throws IOException
+	 *             in case of any io error during copy
+	 */
+	public static void copyFile(File fromFile, File toFile) throws IOException {
+		try (FileChannel in = new FileInputStream(fromFile).getChannel();
+				FileChannel out = new FileOutputStream(toFile).getChannel()) {
+			transfer(in, out);
+		}
+	}
+
+	/**
+	 * transfer all remaining bytes from in to out. transferTo() may transfer
+	 * less than what is asked for, and hence the loop
+	 */
+	private static void transfer(FileChannel in, FileChannel out) throws IOException {
+		long pos = in.position();
+		long size = in.size();
+		while (pos < size) {
+			pos += in.transferTo(pos, size - pos, out);
+		}
+		in.position(pos);
+	}
+
 	/**
 	 * if the file is small, why the fuss. Just get it as string as UTF-8
 	 *
@@ -369,26 +418,14 @@ public class FileManager {
 	 * @return file content as UTF-8 text
 	 */
 	public static String readFile(File file) {
-		InputStream is = null;
 		try {
-			is = new FileInputStream(file);
 			long len = file.length();
 			if (len > MAX_SIZE) {
 				throw new IOException("File " + file.getAbsolutePath() + " too large, was " + len + " bytes.");
 			}
-			byte[] bytes = new byte[(int) len];
-			is.read(bytes);
-			return new String(bytes, "UTF-8");
+			return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
 		} catch (Exception e) {
 			throw new ApplicationError(e, "Error while reading file " + file.getAbsolutePath());
-		} finally {
-			if (is != null) {
-				try {
-					is.close();
-				} catch (Exception ignore) {
-					//
-				}
-			}
 		}
 	}
 
@@ -29,6 +29,7 @@ import java.sql.Struct;
 
 import org.simplity.kernel.data.DataSheet;
 import org.simplity.kernel.data.FieldsCollection;
+import org.simplity.kernel.db.DbVendor;
 import org.simplity.kernel.db.ProcedureParameter;
 import org.simplity.kernel.value.Value;
 import org.simplity.kernel.value.ValueType;
@@ -50,6 +51,12 @@ public interface IReadOnlyHandle extends Closeable {
 	 */
 	public boolean isActive();
 
+	/**
+	 * @return rdbms vendor of the data base this handle is connected to. Used
+	 *         to generate vendor specific sqls.
+	 */
+	public DbVendor getDbVendor();
+
 	/**
 	 * read data from db using a one prepared statement and several sets of data
 	 *
@@ -64,6 +71,24 @@ public interface IReadOnlyHandle extends Closeable {
 	 */
 	public void readBatch(String sql, Value[][] values, IResultSetReader reader);
 
+	/**
+	 * read data from db using a one prepared statement and several sets of
+	 * data, with a fetch size hint
+	 *
+	 * @param sql
+	 *            non-null. prepared statement to be used to extract data from
+	 *            database
+	 * @param values
+	 *            non-null. each row has an array of values to be used to
+	 *            prepare the prepared statement
+	 * @param fetchSize
+	 *            number of rows to be fetched from the db in one round trip. 0
+	 *            means the default of the jdbc driver
+	 * @param reader
+	 *            non-null. object instance that reads data from result set row.
+	 */
+	public void readBatch(String sql, Value[][] values, int fetchSize, IResultSetReader reader);
+
 	/**
 	 * read data from db using a prepared statement
 	 *
@@ -79,6 +104,24 @@ public interface IReadOnlyHandle extends Closeable {
 	 */
 	public void read(String sql, Value[] values, IResultSetReader reader);
 
+	/**
+	 * read data from db using a prepared statement, with a fetch size hint
+	 *
+	 * @param sql
+	 *            non-null. prepared statement to be used to extract data from
+	 *            database
+	 * @param values
+	 *            can be null if the prepared statement does not expect any
+	 *            values. to be used for the parameters in the prepared
+	 *            statement
+	 * @param fetchSize
+	 *            number of rows to be fetched from the db in one round trip. 0
+	 *            means the default of the jdbc driver
+	 * @param reader
+	 *            non-null. object instance that reads data from result set row.
+	 */
+	public void read(String sql, Value[] values, int fetchSize, IResultSetReader reader);
+
 	/**
 	 * read data from db using a one prepared statement and several sets of data
 	 *
@@ -114,6 +157,76 @@ public interface IReadOnlyHandle extends Closeable {
 	 */
 	public void read(String sql, Value[] values, ValueType[] outputTypes, IDataRowConsumer consumer);
 
+	/**
+	 * read data from db using a prepared statement, with a fetch size hint
+	 *
+	 * @param sql
+	 *            non-null. prepared statement to be used to extract data from
+	 *            database
+	 * @param values
+	 *            can be null if the prepared statement does not expect any
+	 *            values. to be used for the parameters in the prepared
+	 *            statement
+	 * @param outputTypes
+	 *            non-null array of value types corresponding to the parameters
+	 *            in the result-set row
+	 * @param fetchSize
+	 *            number of rows to be fetched from the db in one round trip. 0
+	 *            means the default of the jdbc driver
+	 * @param consumer
+	 *            non-null. object instance that consumes data row. reading
+	 *            stops if it returns false.
+	 * @return number of rows read
+	 */
+	public int read(String sql, Value[] values, ValueType[] outputTypes, int fetchSize, IDataRowConsumer consumer);
+
+	/**
+	 * read data from db using a server-side cursor, so that rows are read as
+	 * they are fetched, and the result set is never held in memory in full.
+	 * Use this for large outputs. The connection can not be used for anything
+	 * else till this method returns.
+	 *
+	 * @param sql
+	 *            non-null. prepared statement to be used to extract data from
+	 *            database
+	 * @param values
+	 *            can be null if the prepared statement does not expect any
+	 *            values. to be used for the parameters in the prepared
+	 *            statement
+	 * @param fetchSize
+	 *            number of rows to be fetched from the db in one round trip. 0
+	 *            means the default set for the driver.
+	 * @param reader
+	 *            non-null. object instance that reads data from result set row.
+	 */
+	public void stream(String sql, Value[] values, int fetchSize, IResultSetReader reader);
+
+	/**
+	 * read data from db using a server-side cursor, so that rows are fed to
+	 * the consumer as they are fetched, and the result set is never held in
+	 * memory in full. Use this for large outputs. The connection can not be
+	 * used for anything else till this method returns.
+	 *
+	 * @param sql
+	 *            non-null. prepared statement to be used to extract data from
+	 *            database
+	 * @param values
+	 *            can be null if the prepared statement does not expect any
+	 *            values. to be used for the parameters in the prepared
+	 *            statement
+	 * @param outputTypes
+	 *            non-null array of value types corresponding to the parameters
+	 *            in the result-set row
+	 * @param fetchSize
+	 *            number of rows to be fetched from the db in one round trip. 0
+	 *            means the default set for the driver.
+	 * @param consumer
+	 *            non-null. object instance that consumes data row. reading
+	 *            stops if it returns false.
+	 * @return number of rows read
+	 */
+	public int stream(String sql, Value[] values, ValueType[] outputTypes, int fetchSize, IDataRowConsumer consumer);
+
 	/**
 	 * read data from db using a one prepared statement and several sets of data
 	 *
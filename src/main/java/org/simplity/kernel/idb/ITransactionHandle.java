@@ -75,6 +75,30 @@ public interface ITransactionHandle extends IReadOnlyHandle {
 	 */
 	public int[] executeBatch(String sql, Value[][] values, boolean treatSqlErrorAsNoAction);
 
+	/**
+	 * execute a sql to write/update data for rows from a source. Rows are sent
+	 * to the data base in chunks, so that neither the rows nor the jdbc batch
+	 * buffer grow beyond the chunk size.
+	 *
+	 * @param sql
+	 *            prepared statement to be used to update the database
+	 * @param rows
+	 *            source of rows of values to be used to prepare the prepared
+	 *            statement
+	 * @param batchSize
+	 *            number of rows to be sent to the data base in one batch. 0 or
+	 *            negative to use the default batch size
+	 * @param treatSqlErrorAsNoAction
+	 *            true if the sql is known to fail on no rows, and that is not
+	 *            an error as per your design. An error in any chunk is then
+	 *            treated as no action for the whole call, and 0 is returned.
+	 *            Chunks that were executed before the error are not undone,
+	 *            and are part of the current transaction.
+	 * @return total number of rows affected. -1 if this number could not be
+	 *         determined for at least one chunk
+	 */
+	public int executeBatch(String sql, IDataRowSource rows, int batchSize, boolean treatSqlErrorAsNoAction);
+
 	/**
 	 * execute an insert statement as a prepared statement
 	 *
@@ -21,15 +21,27 @@
  */
 package org.simplity.kernel.util;
 
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
  * utilities for handling date
  *
+ * <p>
+ * Server formats are parsed and formatted with hand-written code, as this is
+ * done for every date in every row of data. These methods are thread-safe, and
+ * do not use any calendar or formatter instance. Like the default calendar,
+ * dates before the gregorian cut-over on 1582-10-15 are julian dates. These
+ * are rare, and are left to a calendar.
+ *
  * @author simplity.org
  */
 public class DateUtil {
@@ -42,33 +54,39 @@ public class DateUtil {
 	public static final String SERVER_DATE_FORMAT = "yyyy-MM-dd";
 	/** server always uses this format for date-time */
 	public static final String SERVER_DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
-	/** trying to be lenient while parsing date-time coming from clients */
-	private static final String SERVER_DATE_SHORT_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+	/**
+	 * returned by parseMillis() if the text is not a valid date
+	 */
+	public static final long INVALID_DATE = Long.MIN_VALUE;
 
 	private static final int MILLISECS_PER_DAY = 24 * 60 * 60 * 1000;
-	private static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat(SERVER_DATE_FORMAT);
 	private static final int DATE_TIME_LENGTH = 24;
 	private static final int DATE_SHORT_TIME_LENGTH = 20;
 	private static final int DATE_LENGTH = 10;
-	private static final SimpleDateFormat DATE_TIME_FORMATTER = new SimpleDateFormat(SERVER_DATE_TIME_FORMAT);
-	private static final SimpleDateFormat DATE_SHORT_TIME_FORMATTER = new SimpleDateFormat(
-			SERVER_DATE_SHORT_TIME_FORMAT);
-
-	/**
-	 * Dates are time-zone agnostic, and hence are dealt with local calendar.
-	 * time, by that we ALWAYS
-	 * mean date-time, which is an instance of time like 4:30PM on 12-feb-2016,
-	 * is time-zone
-	 * sensitive. We expect date-time to be in UTC, and we send them in UTC
-	 */
-	static {
-		DATE_FORMATTER.setTimeZone(UTC_ZONE);
-		DATE_FORMATTER.setLenient(false);
-		DATE_TIME_FORMATTER.setTimeZone(UTC_ZONE);
-		DATE_TIME_FORMATTER.setLenient(false);
-		DATE_SHORT_TIME_FORMATTER.setTimeZone(UTC_ZONE);
-		DATE_SHORT_TIME_FORMATTER.setLenient(false);
-	}
+	/**
+	 * days from 0000-03-01 to 1970-01-01
+	 */
+	private static final int DAYS_TO_EPOCH = 719468;
+	private static final int DAYS_PER_400_YEARS = 146097;
+	private static final int MAX_YEAR = 9999;
+	private static final int[] DAYS_IN_MONTH = { 0, 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	/**
+	 * start of 1582-10-15, the day gregorian calendar came into effect. Fast
+	 * path is used only for dates from this day, as earlier dates are julian
+	 * dates in the default calendar
+	 */
+	private static final long GREGORIAN_CUTOVER_MILLIS = -12219292800000L;
+	private static final int CUTOVER_YEAR = 1582;
+	private static final int CUTOVER_MONTH = 10;
+	private static final int CUTOVER_DAY = 15;
+
+	/**
+	 * used for dates that are not in server format. It only picks the fields
+	 * of the date. Formatters of java.time are immutable and thread-safe
+	 */
+	private static final DateTimeFormatter LENIENT_DATE_PARSER = DateTimeFormatter.ofPattern("uuuu-M-d");
 
 	/**
 	 * number of days between two dates. time part is ignored from both dates.
@@ -163,16 +181,7 @@ public class DateUtil {
 	 * @return milli seconds that correspond to date with no time
 	 */
 	public static long trimDate(long date) {
-		Calendar cal = Calendar.getInstance(UTC_ZONE);
-		cal.setTimeInMillis(date);
-		cal.set(Calendar.HOUR_OF_DAY, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.MILLISECOND, 0);
-		/*
-		 * set date to this millis
-		 */
-		return cal.getTimeInMillis();
+		return Math.floorDiv(date, MILLISECS_PER_DAY) * MILLISECS_PER_DAY;
 	}
 
 	/**
@@ -186,15 +195,7 @@ public class DateUtil {
 	 *         '2016-08-20T00:00:00.000Z'
 	 */
 	public static Date getToday() {
-		Calendar cal = Calendar.getInstance(UTC_ZONE);
-		cal.set(Calendar.HOUR_OF_DAY, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.MILLISECOND, 0);
-		/*
-		 * set date to this millis
-		 */
-		return cal.getTime();
+		return new Date(trimDate(System.currentTimeMillis()));
 	}
 
 	/**
@@ -202,11 +203,30 @@ public class DateUtil {
 	 * @return date or null if it is not a valid date
 	 */
 	public static Date parseDate(String value) {
-		try {
-			return DateUtil.DATE_FORMATTER.parse(value);
-		} catch (Exception ignore) {
+		if (value.length() == DATE_LENGTH) {
+			long millis = parseDateMillis(value);
+			if (millis != INVALID_DATE) {
+				return new Date(millis);
+			}
+		}
+		/*
+		 * single digit month/day, and trailing text are tolerated
+		 */
+		ParsePosition pos = new ParsePosition(0);
+		TemporalAccessor parsed = LENIENT_DATE_PARSER.parseUnresolved(value, pos);
+		if (parsed == null || pos.getErrorIndex() >= 0) {
+			return null;
+		}
+		long year = parsed.getLong(ChronoField.YEAR);
+		if (year < 0 || year > Integer.MAX_VALUE) {
+			return null;
+		}
+		long millis = dateMillis((int) year, (int) parsed.getLong(ChronoField.MONTH_OF_YEAR),
+				(int) parsed.getLong(ChronoField.DAY_OF_MONTH));
+		if (millis == INVALID_DATE) {
 			return null;
 		}
+		return new Date(millis);
 	}
 
 	/**
@@ -214,16 +234,15 @@ public class DateUtil {
 	 * @return date or null if it is not a valid date
 	 */
 	public static Date parseDateTime(String value) {
-		try {
-			return DateUtil.DATE_TIME_FORMATTER.parse(value);
-		} catch (Exception ignore) {
-			try {
-				return DateUtil.DATE_TIME_FORMATTER.parse(value);
-			} catch (Exception ignoreAgain) {
-				//
-			}
+		int len = value.length();
+		if (len != DATE_TIME_LENGTH && len != DATE_SHORT_TIME_LENGTH) {
+			return null;
 		}
-		return null;
+		long millis = parseMillis(value);
+		if (millis == INVALID_DATE) {
+			return null;
+		}
+		return new Date(millis);
 	}
 
 	/**
@@ -233,21 +252,136 @@ public class DateUtil {
 	 * @return parsed date, null if the string is not a valid date/time
 	 */
 	public static Date parseDateWithOptionalTime(String textToParse) {
-		int len = textToParse.length();
-		try {
-			if (len == DATE_LENGTH) {
-				return DATE_FORMATTER.parse(textToParse);
-			}
-			if (len == DATE_TIME_LENGTH) {
-				return DATE_TIME_FORMATTER.parse(textToParse);
+		long millis = parseMillis(textToParse);
+		if (millis == INVALID_DATE) {
+			return null;
+		}
+		return new Date(millis);
+	}
+
+	/**
+	 * parse a date string in server date format, or date-time string in utc
+	 * format, with or without milliseconds. Use this instead of
+	 * parseDateWithOptionalTime() if you need only the milliseconds.
+	 *
+	 * @param text
+	 *            non-null text to be parsed
+	 * @return milliseconds since epoch. INVALID_DATE if the text is not a valid
+	 *         date/time
+	 */
+	public static long parseMillis(String text) {
+		int len = text.length();
+		if (len != DATE_LENGTH && len != DATE_TIME_LENGTH && len != DATE_SHORT_TIME_LENGTH) {
+			return INVALID_DATE;
+		}
+		long millis = parseDateMillis(text);
+		if (millis == INVALID_DATE || len == DATE_LENGTH) {
+			return millis;
+		}
+		/*
+		 * T HH : mm : ss [. SSS] Z
+		 */
+		if (text.charAt(10) != 'T' || text.charAt(13) != ':' || text.charAt(16) != ':'
+				|| text.charAt(len - 1) != 'Z') {
+			return INVALID_DATE;
+		}
+		int hh = digits(text, 11, 2);
+		int mm = digits(text, 14, 2);
+		int ss = digits(text, 17, 2);
+		int sss = 0;
+		if (len == DATE_TIME_LENGTH) {
+			if (text.charAt(19) != '.') {
+				return INVALID_DATE;
 			}
-			if (len == DATE_SHORT_TIME_LENGTH) {
-				return DATE_SHORT_TIME_FORMATTER.parse(textToParse);
+			sss = digits(text, 20, 3);
+		}
+		if (hh < 0 || hh > 23 || mm < 0 || mm > 59 || ss < 0 || ss > 59 || sss < 0) {
+			return INVALID_DATE;
+		}
+		return millis + ((hh * 60 + mm) * 60 + ss) * 1000L + sss;
+	}
+
+	/**
+	 * parse the first 10 chars as yyyy-MM-dd
+	 */
+	private static long parseDateMillis(String text) {
+		if (text.charAt(4) != '-' || text.charAt(7) != '-') {
+			return INVALID_DATE;
+		}
+		int year = digits(text, 0, 4);
+		if (year < 0) {
+			return INVALID_DATE;
+		}
+		return dateMillis(year, digits(text, 5, 2), digits(text, 8, 2));
+	}
+
+	/**
+	 * @return start of this date in UTC. INVALID_DATE if this is not a valid
+	 *         date
+	 */
+	private static long dateMillis(int year, int month, int day) {
+		if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month]) {
+			return INVALID_DATE;
+		}
+		if (year < CUTOVER_YEAR || (year == CUTOVER_YEAR
+				&& (month < CUTOVER_MONTH || (month == CUTOVER_MONTH && day < CUTOVER_DAY)))) {
+			return julianDateMillis(year, month, day);
+		}
+		if (month == 2 && day == 29 && isLeapYear(year) == false) {
+			return INVALID_DATE;
+		}
+		return epochDay(year, month, day) * MILLISECS_PER_DAY;
+	}
+
+	/**
+	 * dates before the cut-over are left to the calendar
+	 */
+	private static long julianDateMillis(int year, int month, int day) {
+		Calendar cal = new GregorianCalendar(UTC_ZONE);
+		cal.clear();
+		cal.setLenient(false);
+		cal.set(year, month - 1, day);
+		try {
+			return cal.getTimeInMillis();
+		} catch (IllegalArgumentException e) {
+			return INVALID_DATE;
+		}
+	}
+
+	/**
+	 * @return non-negative number, or -1 if any of the chars is not a digit
+	 */
+	private static int digits(String text, int start, int nbr) {
+		int result = 0;
+		for (int i = start; i < start + nbr; i++) {
+			int d = text.charAt(i) - '0';
+			if (d < 0 || d > 9) {
+				return -1;
 			}
-		} catch (Exception ignore) {
-			//
+			result = result * 10 + d;
 		}
-		return null;
+		return result;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	/**
+	 * days since 1970-01-01 for this date in the proleptic gregorian calendar
+	 */
+	private static long epochDay(int year, int month, int day) {
+		/*
+		 * years are counted from March, so that the leap day is the last day
+		 * of the year
+		 */
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		int mp = month > 2 ? month - 3 : month + 9;
+		long dayOfYear = (153 * mp + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_TO_EPOCH;
 	}
 
 	/**
@@ -257,7 +391,11 @@ public class DateUtil {
 	 * @return text
 	 */
 	public static String formatDate(long date) {
-		return DATE_FORMATTER.format(date);
+		char[] chars = new char[DATE_LENGTH];
+		if (putDate(chars, date) == false) {
+			return formatWithCalendar(date, SERVER_DATE_FORMAT);
+		}
+		return new String(chars);
 	}
 
 	/**
@@ -267,7 +405,7 @@ public class DateUtil {
 	 * @return text
 	 */
 	public static String formatDate(Date date) {
-		return DATE_FORMATTER.format(date);
+		return formatDate(date.getTime());
 	}
 
 	/**
@@ -275,7 +413,75 @@ public class DateUtil {
 	 * @return UTC formatted date-time
 	 */
 	public static String formatDateTime(long date) {
-		return DATE_TIME_FORMATTER.format(date);
+		char[] chars = new char[DATE_TIME_LENGTH];
+		if (putDate(chars, date) == false) {
+			return formatWithCalendar(date, SERVER_DATE_TIME_FORMAT);
+		}
+		int millis = (int) Math.floorMod(date, (long) MILLISECS_PER_DAY);
+		chars[10] = 'T';
+		put(chars, 11, millis / 3600000, 2);
+		chars[13] = ':';
+		put(chars, 14, (millis / 60000) % 60, 2);
+		chars[16] = ':';
+		put(chars, 17, (millis / 1000) % 60, 2);
+		chars[19] = '.';
+		put(chars, 20, millis % 1000, 3);
+		chars[23] = 'Z';
+		return new String(chars);
+	}
+
+	/**
+	 * dates before the cut-over, and years beyond 4 digits, are rare, and are
+	 * left to a formatter of their own
+	 */
+	private static String formatWithCalendar(long millis, String pattern) {
+		SimpleDateFormat formatter = new SimpleDateFormat(pattern);
+		formatter.setTimeZone(UTC_ZONE);
+		return formatter.format(new Date(millis));
+	}
+
+	/**
+	 * put yyyy-MM-dd into the first 10 chars
+	 *
+	 * @return false if the date is before the gregorian cut-over, or the year
+	 *         can not be formatted as 4 digits
+	 */
+	private static boolean putDate(char[] chars, long millis) {
+		if (millis < GREGORIAN_CUTOVER_MILLIS) {
+			return false;
+		}
+		long z = Math.floorDiv(millis, MILLISECS_PER_DAY) + DAYS_TO_EPOCH;
+		long era = Math.floorDiv(z, DAYS_PER_400_YEARS);
+		long dayOfEra = z - era * DAYS_PER_400_YEARS;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (int) ((5 * dayOfYear + 2) / 153);
+		int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400;
+		if (month <= 2) {
+			year++;
+		}
+		if (year > MAX_YEAR) {
+			return false;
+		}
+		put(chars, 0, (int) year, 4);
+		chars[4] = '-';
+		put(chars, 5, month, 2);
+		chars[7] = '-';
+		put(chars, 8, day, 2);
+		return true;
+	}
+
+	/**
+	 * put a non-negative number as fixed number of digits
+	 */
+	private static void put(char[] chars, int start, int number, int nbrDigits) {
+		int n = number;
+		for (int i = start + nbrDigits - 1; i >= start; i--) {
+			chars[i] = (char) ('0' + n % 10);
+			n /= 10;
+		}
 	}
 
 	/**
@@ -283,7 +489,7 @@ public class DateUtil {
 	 * @return UTC formatted date-time
 	 */
 	public static String formatDateTime(Date date) {
-		return DATE_TIME_FORMATTER.format(date);
+		return formatDateTime(date.getTime());
 	}
 
 	/**
@@ -300,10 +506,7 @@ public class DateUtil {
 	 * @return text
 	 */
 	public static String format(Date date) {
-		if (hasTime(date)) {
-			return DATE_TIME_FORMATTER.format(date);
-		}
-		return DATE_FORMATTER.format(date);
+		return format(date.getTime());
 	}
 
 	/**
@@ -328,9 +531,9 @@ public class DateUtil {
 	 */
 	public static String format(long date) {
 		if (hasTime(date)) {
-			return DATE_TIME_FORMATTER.format(date);
+			return formatDateTime(date);
 		}
-		return DATE_FORMATTER.format(date);
+		return formatDate(date);
 	}
 
 	/**
@@ -348,10 +551,7 @@ public class DateUtil {
 	 * @return true if this has time component, false otherwise
 	 */
 	public static boolean hasTime(Date date) {
-		Calendar cal = Calendar.getInstance(UTC_ZONE);
-		cal.setTime(date);
-		return (cal.get(Calendar.MILLISECOND) != 0 || cal.get(Calendar.SECOND) != 0 || cal.get(Calendar.MINUTE) != 0
-				|| cal.get(Calendar.HOUR_OF_DAY) != 0);
+		return hasTime(date.getTime());
 	}
 
 	/**
@@ -369,9 +569,6 @@ public class DateUtil {
 	 * @return true if there is time of the day, false if it is a pure date
 	 */
 	public static boolean hasTime(long value) {
-		Calendar cal = Calendar.getInstance(UTC_ZONE);
-		cal.setTimeInMillis(value);
-		return (cal.get(Calendar.MILLISECOND) != 0 || cal.get(Calendar.SECOND) != 0 || cal.get(Calendar.MINUTE) != 0
-				|| cal.get(Calendar.HOUR_OF_DAY) != 0);
+		return Math.floorMod(value, MILLISECS_PER_DAY) != 0;
 	}
 }
@@ -26,6 +26,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +38,12 @@ import org.slf4j.LoggerFactory;
  */
 public class IoUtil {
 	private static final Logger logger = LoggerFactory.getLogger(IoUtil.class);
+	private static final int BUFFER_SIZE = 8 * 1024;
+	/**
+	 * size hint is typically supplied by the client, and can not be trusted
+	 * beyond this. Buffer grows as required beyond this.
+	 */
+	private static final int MAX_INITIAL_SIZE = 1 << 20;
 
 	/**
 	 * read input stream into a string
@@ -44,11 +52,26 @@ public class IoUtil {
 	 * @return content of reader as string
 	 */
 	public static String readerToText(Reader reader) {
-		StringBuilder sbf = new StringBuilder();
+		return readerToText(reader, 0);
+	}
+
+	/**
+	 * read input stream into a string
+	 *
+	 * @param reader
+	 * @param sizeHint
+	 *            expected number of characters, like the content-length of a
+	 *            request. 0 or negative if not known. Only up to 1MB is
+	 *            allocated upfront
+	 * @return content of reader as string
+	 */
+	public static String readerToText(Reader reader, int sizeHint) {
+		StringBuilder sbf = new StringBuilder(getInitialSize(sizeHint));
+		char[] buffer = new char[BUFFER_SIZE];
 		try {
-			int ch;
-			while ((ch = reader.read()) > -1) {
-				sbf.append((char) ch);
+			int n;
+			while ((n = reader.read(buffer)) != -1) {
+				sbf.append(buffer, 0, n);
 			}
 			return sbf.toString();
 		} catch (Exception e) {
@@ -63,20 +86,56 @@ public class IoUtil {
 		}
 	}
 
+	private static int getInitialSize(int sizeHint) {
+		if (sizeHint <= 0) {
+			return BUFFER_SIZE;
+		}
+		return Math.min(sizeHint, MAX_INITIAL_SIZE);
+	}
+
 	/**
-	 * read input stream into a string
+	 * read input stream into a string. bytes are decoded as UTF-8
 	 *
 	 * @param stream
 	 * @return content of reader as string
 	 */
 	public static String streamToText(InputStream stream) {
-		StringBuilder sbf = new StringBuilder();
+		return streamToText(stream, 0);
+	}
+
+	/**
+	 * read input stream into a string. bytes are decoded as UTF-8
+	 *
+	 * @param stream
+	 * @param sizeHint
+	 *            expected number of bytes, like the content-length of a
+	 *            request. 0 or negative if not known. Only up to 1MB is
+	 *            allocated upfront
+	 * @return content of reader as string
+	 */
+	public static String streamToText(InputStream stream, int sizeHint) {
 		try {
-			int ch;
-			while ((ch = stream.read()) > -1) {
-				sbf.append((char) ch);
+			byte[] bytes = new byte[getInitialSize(sizeHint)];
+			int len = 0;
+			while (true) {
+				if (len == bytes.length) {
+					/*
+					 * buffer is full. grow it only if there is more to read
+					 */
+					int b = stream.read();
+					if (b == -1) {
+						break;
+					}
+					bytes = Arrays.copyOf(bytes, len * 2);
+					bytes[len++] = (byte) b;
+				}
+				int n = stream.read(bytes, len, bytes.length - len);
+				if (n == -1) {
+					break;
+				}
+				len += n;
 			}
-			return sbf.toString();
+			return new String(bytes, 0, len, StandardCharsets.UTF_8);
 		} catch (Exception e) {
 			logger.error("Error while reading from stream. {}", e.getMessage());
 			return null;
@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.data.ColumnarSheet;
 import org.simplity.kernel.data.DataSheet;
 import org.simplity.kernel.data.MultiRowsSheet;
 import org.simplity.kernel.idb.IResultSetReader;
@@ -214,10 +215,64 @@ public class RdbUtil {
 	 *         the result set
 	 */
 	public static DataSheet getDataSheetForSqlResult(ResultSet rs) {
+		return getDataSheetForSqlResult(rs, false);
+	}
+
+	/**
+	 * get column names and types of a result set
+	 *
+	 * @param rs
+	 * @param columnar
+	 *            true if a ColumnarSheet is to be created, typically because a
+	 *            large number of rows are expected. false for a MultiRowsSheet
+	 * @return empty data sheet that has the right columns to receive data from
+	 *         the result set
+	 */
+	public static DataSheet getDataSheetForSqlResult(ResultSet rs, boolean columnar) {
 		ColumnMetaData md = new ColumnMetaData(rs);
+		if (columnar) {
+			return new ColumnarSheet(md.getColumnNames(), md.getColumnValueTypes());
+		}
 		return new MultiRowsSheet(md.getColumnNames(), md.getColumnValueTypes());
 	}
 
+	/**
+	 * read all remaining rows of a result set into a data sheet. Rows are
+	 * added to a MultiRowsSheet to start with. Once the sheet has
+	 * columnarThreshold rows, it is switched to a ColumnarSheet, and the rest
+	 * of the rows are read directly into its columns.
+	 *
+	 * @param rs
+	 *            result set to be read
+	 * @param sheet
+	 *            to which rows are to be added. null if a sheet is to be
+	 *            created for the result set
+	 * @param columnarThreshold
+	 *            number of rows beyond which a ColumnarSheet is to be used. 0
+	 *            means never.
+	 * @return sheet with the rows added. This is a different instance than
+	 *         the one that is passed if it is switched to a columnar sheet
+	 * @throws SQLException
+	 */
+	public static DataSheet resultToSheet(ResultSet rs, DataSheet sheet, int columnarThreshold) throws SQLException {
+		DataSheet result = sheet;
+		if (result == null) {
+			result = getDataSheetForSqlResult(rs);
+		}
+		ValueType[] types = result.getValueTypes();
+		while (rs.next()) {
+			if (columnarThreshold > 0 && result instanceof MultiRowsSheet && result.length() >= columnarThreshold) {
+				result = new ColumnarSheet(result);
+			}
+			if (result instanceof ColumnarSheet) {
+				((ColumnarSheet) result).addRow(rs);
+			} else {
+				result.addRow(resultToValueRow(rs, types));
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * class that has the meta data about columns of a sql output
 	 *
@@ -237,7 +292,7 @@ public class RdbUtil {
 				this.types = new ValueType[n];
 				for (int i = 0; i < n; i++) {
 					this.names[i] = md.getColumnName(i + 1);
-					this.types[i] = sqlTypeToValueType(md.getColumnType(i));
+					this.types[i] = sqlTypeToValueType(md.getColumnType(i + 1));
 				}
 			} catch (SQLException e) {
 				throw new ApplicationError(e, "");
@@ -88,7 +88,21 @@ public class ReflectUtil {
 	 * @return all fields for this class
 	 */
 	public static Map<String, Field> getAllFields(Object object, boolean getPrivateAsWell) {
-		Class<?> type = object.getClass();
+		return collectFields(object.getClass(), getPrivateAsWell);
+	}
+
+	/**
+	 * return all non-private fields of this class, including inherited ones.
+	 *
+	 * @param cls
+	 * @return all fields for this class
+	 */
+	public static Map<String, Field> getFieldsOfClass(Class<?> cls) {
+		return collectFields(cls, false);
+	}
+
+	private static Map<String, Field> collectFields(Class<?> cls, boolean getPrivateAsWell) {
+		Class<?> type = cls;
 		Map<String, Field> fields = new HashMap<String, Field>();
 		while (type.equals(Object.class) == false) {
 			for (Field f : type.getDeclaredFields()) {
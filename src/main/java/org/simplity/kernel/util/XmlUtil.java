@@ -34,12 +34,14 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -178,6 +180,18 @@ public class XmlUtil {
 	private static final DocumentBuilderFactory docFactory = instantiateFactory();
 	private static final Transformer transformer = instantiateTransFactory();
 
+	/**
+	 * fields that can be loaded from xml, by class. Classes are loaded
+	 * repeatedly, for each component, and looking up their fields with
+	 * reflection every time is expensive.
+	 */
+	private static final Map<Class<?>, Map<String, Field>> loadableFields = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+
+	/**
+	 * fields that are written out to xml, by class.
+	 */
+	private static final Map<Class<?>, Map<String, Field>> writableFields = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+
 	/**
 	 * @param ele
 	 * @return array of all child node names. This includes all attribute names
@@ -503,7 +517,14 @@ public class XmlUtil {
 		String msg = null;
 
 		try {
-			DocumentBuilder builder = docFactory.newDocumentBuilder();
+			DocumentBuilder builder;
+			/*
+			 * factory is not guaranteed to be thread-safe, while components may
+			 * be loaded in parallel
+			 */
+			synchronized (docFactory) {
+				builder = docFactory.newDocumentBuilder();
+			}
 			doc = builder.parse(stream);
 		} catch (SAXParseException e) {
 			msg = "Error while parsing xml text. " + e.getMessage() + "\n At line " + e.getLineNumber() + " and column "
@@ -638,9 +659,35 @@ public class XmlUtil {
 	 * get all fields for a class
 	 *
 	 * @param type
-	 * @return all fields indexed by their names
+	 * @return all fields indexed by their names. This is a cached instance,
+	 *         and must not be modified.
 	 */
 	private static Map<String, Field> getAllFields(Class<?> type) {
+		Map<String, Field> fields = writableFields.get(type);
+		if (fields == null) {
+			fields = Collections.unmodifiableMap(findAllFields(type));
+			writableFields.put(type, fields);
+		}
+		return fields;
+	}
+
+	/**
+	 * get fields of this class that can be loaded from xml
+	 *
+	 * @param type
+	 * @return fields indexed by their names. This is a cached instance, and
+	 *         must not be modified.
+	 */
+	private static Map<String, Field> getLoadableFields(Class<?> type) {
+		Map<String, Field> fields = loadableFields.get(type);
+		if (fields == null) {
+			fields = Collections.unmodifiableMap(ReflectUtil.getFieldsOfClass(type));
+			loadableFields.put(type, fields);
+		}
+		return fields;
+	}
+
+	private static Map<String, Field> findAllFields(Class<?> type) {
 		Map<String, Field> fields = new HashMap<String, Field>();
 		Class<?> currentType = type;
 		while (!currentType.equals(Object.class)) {
@@ -1312,7 +1359,7 @@ public class XmlUtil {
 	 */
 	public static void elementToObject(Element element, Object object, Map<Object, String> lineNumbers)
 			throws XmlParseException {
-		Map<String, Field> fields = ReflectUtil.getAllFields(object);
+		Map<String, Field> fields = getLoadableFields(object.getClass());
 		if (lineNumbers != null) {
 			addLineNo(object, element, lineNumbers);
 		}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2018 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.kernel.value;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.simplity.kernel.AppDataCacherInterface;
+import org.simplity.kernel.data.DataSheet;
+
+/**
+ * thread-safe, bounded implementation of <code>AppDataCacherInterface</code>
+ * meant for production use.
+ * <ul>
+ * <li>Keys are spread across segments, each with its own lock, so that
+ * threads working on different keys do not contend with each other.</li>
+ * <li>Each segment uses segmented-LRU eviction: a new entry is put in a
+ * probationary area, and is promoted to the protected area when it is
+ * accessed again. Entries are evicted from the probationary area first, so
+ * that a burst of one-time reads does not flush out the frequently used
+ * entries.</li>
+ * <li>Size is bound by weight rather than by number of entries. A data sheet
+ * weighs as many as the number of values it holds, while any other object
+ * weighs 1.</li>
+ * <li>An entry expires after its time-to-live.</li>
+ * </ul>
+ * Objects stored with a primary and a secondary key are invalidated en-mass
+ * by moving the primary key to a new generation. Entries of the older
+ * generation are no more reachable, and are evicted in due course.
+ *
+ * @author simplity.org
+ *
+ */
+public class ConcurrentObjectCacher implements AppDataCacherInterface {
+	/**
+	 * default for maximum weight of all cached objects
+	 */
+	public static final long DEFAULT_MAX_WEIGHT = 1000000;
+	/**
+	 * default time-to-live for a cached entry
+	 */
+	public static final int DEFAULT_TTL_MINUTES = 60;
+
+	private static final int NBR_SEGMENTS = 16;
+	/**
+	 * protected area of a segment is allowed to grow up to this percentage of
+	 * its max weight
+	 */
+	private static final int PROTECTED_PERCENT = 80;
+	private static final char KEY_JOINER = '\0';
+
+	private final Segment[] segments = new Segment[NBR_SEGMENTS];
+	private final long defaultTtlMillis;
+
+	/**
+	 * current generation of a primary key used with secondary keys.
+	 */
+	private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+
+	/**
+	 * cacher with default settings. Used when this class is configured as
+	 * appDataCacherClassName in application
+	 */
+	public ConcurrentObjectCacher() {
+		this(DEFAULT_MAX_WEIGHT, DEFAULT_TTL_MINUTES);
+	}
+
+	/**
+	 * @param maxWeight
+	 *            maximum total weight of all cached objects. A data sheet
+	 *            weighs as many as the number of values it contains, while any
+	 *            other object weighs 1
+	 * @param ttlMinutes
+	 *            minutes after which a cached object expires. 0 means objects
+	 *            do not expire, and are removed only to make room for others
+	 */
+	public ConcurrentObjectCacher(long maxWeight, int ttlMinutes) {
+		this.defaultTtlMillis = ttlMinutes * 60 * 1000L;
+		long segmentWeight = maxWeight / NBR_SEGMENTS;
+		if (segmentWeight < 1) {
+			segmentWeight = 1;
+		}
+		for (int i = 0; i < NBR_SEGMENTS; i++) {
+			this.segments[i] = new Segment(segmentWeight);
+		}
+	}
+
+	@Override
+	public Object get(String key) {
+		return this.segmentFor(key).get(key, System.currentTimeMillis());
+	}
+
+	@Override
+	public void put(String key, Object object) {
+		this.put(key, object, this.defaultTtlMillis);
+	}
+
+	/**
+	 * cache this key-object pair with a specific time-to-live
+	 *
+	 * @param key
+	 * @param object
+	 * @param ttlMillis
+	 *            milli-seconds after which this entry expires. 0 means it does
+	 *            not expire
+	 */
+	public void put(String key, Object object, long ttlMillis) {
+		if (object == null) {
+			this.invalidate(key);
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long expiresAt = ttlMillis > 0 ? now + ttlMillis : 0;
+		this.segmentFor(key).put(key, new CachedEntry(object, weigh(object), expiresAt));
+	}
+
+	@Override
+	public void invalidate(String key) {
+		this.segmentFor(key).remove(key);
+	}
+
+	@Override
+	public Object get(String primaryKey, String secondaryKey) {
+		String key = this.compositeKey(primaryKey, secondaryKey);
+		return this.segmentFor(key).get(key, System.currentTimeMillis());
+	}
+
+	@Override
+	public void put(String primaryKey, String secondaryKey, Object object) {
+		this.put(this.compositeKey(primaryKey, secondaryKey), object, this.defaultTtlMillis);
+	}
+
+	@Override
+	public void invalidate(String primaryKey, String secondaryKey) {
+		if (secondaryKey != null) {
+			this.invalidate(this.compositeKey(primaryKey, secondaryKey));
+			return;
+		}
+		AtomicLong gen = this.generations.get(primaryKey);
+		if (gen != null) {
+			gen.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void clearAll() {
+		for (Segment segment : this.segments) {
+			segment.clear();
+		}
+		this.generations.clear();
+	}
+
+	/**
+	 * @return number of successful look-ups so far
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return number of look-ups that did not find a valid object
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return number of objects removed to make room for others
+	 */
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * @return number of objects removed because they had expired
+	 */
+	public long getExpirationCount() {
+		return this.expirations.get();
+	}
+
+	/**
+	 * @return total weight of objects currently in the cache
+	 */
+	public long getWeight() {
+		long total = 0;
+		for (Segment segment : this.segments) {
+			total += segment.getWeight();
+		}
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + this.hits.get() + " misses=" + this.misses.get() + " evictions=" + this.evictions.get()
+				+ " expirations=" + this.expirations.get() + " weight=" + this.getWeight();
+	}
+
+	private String compositeKey(String primaryKey, String secondaryKey) {
+		AtomicLong gen = this.generations.get(primaryKey);
+		if (gen == null) {
+			gen = new AtomicLong();
+			AtomicLong existing = this.generations.putIfAbsent(primaryKey, gen);
+			if (existing != null) {
+				gen = existing;
+			}
+		}
+		return primaryKey + KEY_JOINER + gen.get() + KEY_JOINER + secondaryKey;
+	}
+
+	private Segment segmentFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return this.segments[h & (NBR_SEGMENTS - 1)];
+	}
+
+	/**
+	 * weight of an object for sizing the cache
+	 */
+	private static long weigh(Object object) {
+		if (object instanceof DataSheet) {
+			DataSheet sheet = (DataSheet) object;
+			return 1 + (long) sheet.length() * sheet.width();
+		}
+		if (object instanceof Object[]) {
+			return 1 + ((Object[]) object).length;
+		}
+		return 1;
+	}
+
+	/**
+	 * cached object with its weight and expiry
+	 */
+	private static class CachedEntry {
+		final Object object;
+		final long weight;
+		/**
+		 * time-stamp after which this is invalid. 0 means no expiry
+		 */
+		final long expiresAt;
+
+		CachedEntry(Object object, long weight, long expiresAt) {
+			this.object = object;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean hasExpired(long now) {
+			return this.expiresAt != 0 && now > this.expiresAt;
+		}
+	}
+
+	/**
+	 * a portion of the cache with its own lock and segmented-LRU eviction.
+	 * Both the maps are access-ordered, and hence the first entry is the least
+	 * recently used one.
+	 */
+	private class Segment {
+		private final LinkedHashMap<String, CachedEntry> probation = new LinkedHashMap<>(16, 0.75f, true);
+		private final LinkedHashMap<String, CachedEntry> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+		private final long maxWeight;
+		private final long maxProtectedWeight;
+		private long probationWeight;
+		private long protectedWeight;
+
+		Segment(long maxWeight) {
+			this.maxWeight = maxWeight;
+			this.maxProtectedWeight = maxWeight * PROTECTED_PERCENT / 100;
+		}
+
+		synchronized Object get(String key, long now) {
+			CachedEntry entry = this.protectedArea.get(key);
+			if (entry != null) {
+				if (entry.hasExpired(now)) {
+					this.protectedArea.remove(key);
+					this.protectedWeight -= entry.weight;
+					return this.expired();
+				}
+				ConcurrentObjectCacher.this.hits.incrementAndGet();
+				return entry.object;
+			}
+
+			entry = this.probation.remove(key);
+			if (entry == null) {
+				ConcurrentObjectCacher.this.misses.incrementAndGet();
+				return null;
+			}
+			this.probationWeight -= entry.weight;
+			if (entry.hasExpired(now)) {
+				return this.expired();
+			}
+			/*
+			 * second access. promote it to protected area, and demote the
+			 * least recently used ones from there if required
+			 */
+			this.protectedArea.put(key, entry);
+			this.protectedWeight += entry.weight;
+			Iterator<Map.Entry<String, CachedEntry>> iter = this.protectedArea.entrySet().iterator();
+			while (this.protectedWeight > this.maxProtectedWeight && iter.hasNext()) {
+				Map.Entry<String, CachedEntry> eldest = iter.next();
+				if (eldest.getValue() == entry) {
+					break;
+				}
+				iter.remove();
+				this.protectedWeight -= eldest.getValue().weight;
+				this.probation.put(eldest.getKey(), eldest.getValue());
+				this.probationWeight += eldest.getValue().weight;
+			}
+			ConcurrentObjectCacher.this.hits.incrementAndGet();
+			return entry.object;
+		}
+
+		synchronized void put(String key, CachedEntry entry) {
+			this.removeEntry(key);
+			if (entry.weight > this.maxWeight) {
+				/*
+				 * too big to be cached
+				 */
+				return;
+			}
+			this.probation.put(key, entry);
+			this.probationWeight += entry.weight;
+			this.evict();
+		}
+
+		synchronized void remove(String key) {
+			this.removeEntry(key);
+		}
+
+		synchronized void clear() {
+			this.probation.clear();
+			this.protectedArea.clear();
+			this.probationWeight = 0;
+			this.protectedWeight = 0;
+		}
+
+		synchronized long getWeight() {
+			return this.probationWeight + this.protectedWeight;
+		}
+
+		private Object expired() {
+			ConcurrentObjectCacher.this.expirations.incrementAndGet();
+			ConcurrentObjectCacher.this.misses.incrementAndGet();
+			return null;
+		}
+
+		private void removeEntry(String key) {
+			CachedEntry entry = this.probation.remove(key);
+			if (entry != null) {
+				this.probationWeight -= entry.weight;
+				return;
+			}
+			entry = this.protectedArea.remove(key);
+			if (entry != null) {
+				this.protectedWeight -= entry.weight;
+			}
+		}
+
+		/**
+		 * evict least recently used entries, from probation area first, till
+		 * we are within our limit
+		 */
+		private void evict() {
+			while (this.probationWeight + this.protectedWeight > this.maxWeight) {
+				LinkedHashMap<String, CachedEntry> victims = this.probation.isEmpty() ? this.protectedArea
+						: this.probation;
+				Iterator<CachedEntry> iter = victims.values().iterator();
+				CachedEntry eldest = iter.next();
+				iter.remove();
+				if (victims == this.probation) {
+					this.probationWeight -= eldest.weight;
+				} else {
+					this.protectedWeight -= eldest.weight;
+				}
+				ConcurrentObjectCacher.this.evictions.incrementAndGet();
+			}
+		}
+	}
+}
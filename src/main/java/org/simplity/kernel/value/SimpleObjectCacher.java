@@ -29,7 +29,8 @@ import org.simplity.kernel.AppDataCacherInterface;
 
 /**
  * a simple implementation of <code>AppDataCaccher</code> for testing purposes.
- * Not meant for production use
+ * Not meant for production use. Use <code>ConcurrentObjectCacher</code>
+ * instead.
  *
  * @author simplity.org
  *
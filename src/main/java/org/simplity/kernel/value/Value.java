@@ -261,11 +261,11 @@ public abstract class Value implements Serializable, JsonWritable {
 				}
 				return null;
 			case DATE:
-				Date date = DateUtil.parseDateWithOptionalTime(text);
-				if (date == null) {
+				long millis = DateUtil.parseMillis(text);
+				if (millis == DateUtil.INVALID_DATE) {
 					return null;
 				}
-				return new DateValue(date.getTime());
+				return new DateValue(millis);
 			case DECIMAL:
 				return new DecimalValue(Double.parseDouble(text));
 			case INTEGER:
@@ -548,9 +548,9 @@ public abstract class Value implements Serializable, JsonWritable {
 		/*
 		 * date?
 		 */
-		Date date = DateUtil.parseDateWithOptionalTime(text);
-		if (date != null) {
-			return Value.newDateValue(date);
+		long millis = DateUtil.parseMillis(text);
+		if (millis != DateUtil.INVALID_DATE) {
+			return Value.newDateValue(millis);
 		}
 
 		return Value.newTextValue(text);
@@ -614,9 +614,9 @@ public abstract class Value implements Serializable, JsonWritable {
 		 * we wouldn't consider well-formed date strings as coincidence
 		 */
 		String val = object.toString();
-		Date date = DateUtil.parseDateWithOptionalTime(val);
-		if (date != null) {
-			return newDateValue(date);
+		long millis = DateUtil.parseMillis(val);
+		if (millis != DateUtil.INVALID_DATE) {
+			return newDateValue(millis);
 		}
 		/*
 		 * when it is not anything else, it is text
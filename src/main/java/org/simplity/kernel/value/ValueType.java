@@ -94,6 +94,15 @@ public enum ValueType {
 			return Value.newIntegerValue(val);
 		}
 
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int idx) throws SQLException {
+			long val = resultSet.getLong(idx);
+			if (resultSet.wasNull()) {
+				return null;
+			}
+			return Long.valueOf(val);
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int idx) throws SQLException {
 			long val = stmt.getLong(idx);
@@ -149,6 +158,15 @@ public enum ValueType {
 			return Value.newDecimalValue(val);
 		}
 
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int idx) throws SQLException {
+			double val = resultSet.getDouble(idx);
+			if (resultSet.wasNull()) {
+				return null;
+			}
+			return Double.valueOf(val);
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int idx) throws SQLException {
 			double val = stmt.getDouble(idx);
@@ -215,6 +233,18 @@ public enum ValueType {
 			return Value.newBooleanValue(val);
 		}
 
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int idx) throws SQLException {
+			Object obj = resultSet.getObject(idx);
+			if (resultSet.wasNull()) {
+				return null;
+			}
+			if (obj instanceof Boolean) {
+				return obj;
+			}
+			return Boolean.valueOf(this.parse(obj));
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int idx) throws SQLException {
 			Object obj = stmt.getObject(idx);
@@ -283,6 +313,19 @@ public enum ValueType {
 			return Value.newDateValue(val);
 		}
 
+		/*
+		 * time stamp is a Date, and is written out the same way as a date
+		 * value
+		 */
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int idx) throws SQLException {
+			Timestamp val = resultSet.getTimestamp(idx);
+			if (resultSet.wasNull()) {
+				return null;
+			}
+			return val;
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int idx) throws SQLException {
 			Timestamp val = stmt.getTimestamp(idx);
@@ -308,9 +351,9 @@ public enum ValueType {
 			}
 
 			String val = dbObject.toString();
-			java.util.Date date = DateUtil.parseDateWithOptionalTime(val);
-			if (date != null) {
-				return Value.newDateValue(date);
+			long millis = DateUtil.parseMillis(val);
+			if (millis != DateUtil.INVALID_DATE) {
+				return Value.newDateValue(millis);
 			}
 			return null;
 		}
@@ -365,6 +408,15 @@ public enum ValueType {
 			return this.saveIt(clob);
 		}
 
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int posn) throws SQLException {
+			Value value = this.extractFromRs(resultSet, posn);
+			if (value.isUnknown()) {
+				return null;
+			}
+			return value.toString();
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int posn) throws SQLException {
 			Clob clob = stmt.getClob(posn);
@@ -417,6 +469,15 @@ public enum ValueType {
 			return this.saveIt(blob);
 		}
 
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int posn) throws SQLException {
+			Value value = this.extractFromRs(resultSet, posn);
+			if (value.isUnknown()) {
+				return null;
+			}
+			return value.toString();
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int posn) throws SQLException {
 			Blob blob = stmt.getBlob(posn);
@@ -460,6 +521,18 @@ public enum ValueType {
 			return new TimestampValue(ts);
 		}
 
+		/*
+		 * nanos since epoch, same as TimestampValue
+		 */
+		@Override
+		public Object extractObjectFromRs(ResultSet resultSet, int idx) throws SQLException {
+			Timestamp ts = resultSet.getTimestamp(idx);
+			if (resultSet.wasNull()) {
+				return null;
+			}
+			return Long.valueOf((ts.getTime() / 1000) * 1000000000 + ts.getNanos());
+		}
+
 		@Override
 		public Value extractFromSp(CallableStatement stmt, int idx) throws SQLException {
 			Timestamp ts = stmt.getTimestamp(idx);
@@ -535,6 +608,25 @@ public enum ValueType {
 	 */
 	public abstract Value extractFromRs(ResultSet resultSet, int posn) throws SQLException;
 
+	/**
+	 * extracts the value from result set at the current index as a plain java
+	 * object, without creating a Value. Used when rows are streamed directly
+	 * to a response.
+	 *
+	 * @param resultSet
+	 * @param posn
+	 * @return String, Long, Double, Boolean or Date as per this value type.
+	 *         null if the column is null
+	 * @throws SQLException
+	 */
+	public Object extractObjectFromRs(ResultSet resultSet, int posn) throws SQLException {
+		String val = resultSet.getString(posn);
+		if (resultSet.wasNull()) {
+			return null;
+		}
+		return val;
+	}
+
 	/**
 	 * extracts the value from result set at the current index
 	 *
@@ -331,6 +331,16 @@ public class JsonReqReader implements RequestReader {
 		return this.currentArray.length();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.simplity.sa.RequestReader#hasElement(int)
+	 */
+	@Override
+	public boolean hasElement(int zeroBasedIdx) {
+		return zeroBasedIdx >= 0 && zeroBasedIdx < this.getNbrElements();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
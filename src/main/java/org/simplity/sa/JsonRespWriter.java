@@ -22,13 +22,14 @@
 
 package org.simplity.sa;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.Map;
 
+import org.simplity.json.JSONStreamWriter;
 import org.simplity.json.JSONWriter;
 import org.simplity.kernel.ApplicationError;
 import org.simplity.kernel.data.DataSheet;
@@ -58,16 +59,16 @@ public class JsonRespWriter implements ResponseWriter {
 	private String responseText;
 
 	/**
-	 * is there an underlying io.writer?
+	 * non-null if we are to accumulate the response text ourselves
 	 */
-	private final StringWriter stringWriter;
+	private final ByteArrayOutputStream bytes;
 
 	/**
 	 * crate a string writer.
 	 */
 	public JsonRespWriter() {
-		this.stringWriter = new StringWriter();
-		this.writer = new JSONWriter(this.stringWriter);
+		this.bytes = new ByteArrayOutputStream();
+		this.writer = new JSONStreamWriter(this.bytes);
 		this.writer.object();
 	}
 
@@ -78,20 +79,21 @@ public class JsonRespWriter implements ResponseWriter {
 	 *            that will receive the output
 	 */
 	public JsonRespWriter(Writer writer) {
-		this.stringWriter = null;
+		this.bytes = null;
 		this.writer = new JSONWriter(writer);
 		this.writer.object();
 	}
 
 	/**
-	 * crate a string writer.
+	 * writer that writes UTF-8 bytes directly to the stream, without going
+	 * through a character writer.
 	 *
 	 * @param stream
 	 *            that will receive the output
 	 */
 	public JsonRespWriter(OutputStream stream) {
-		this.stringWriter = null;
-		this.writer = new JSONWriter(new OutputStreamWriter(stream));
+		this.bytes = null;
+		this.writer = new JSONStreamWriter(stream);
 		this.writer.object();
 	}
 
@@ -115,12 +117,19 @@ public class JsonRespWriter implements ResponseWriter {
 		 * close writer
 		 */
 		this.writer.endObject();
+		if (this.writer instanceof JSONStreamWriter) {
+			((JSONStreamWriter) this.writer).flush();
+		}
 
 		/*
 		 * get final text into responseText
 		 */
-		if (this.stringWriter != null) {
-			this.responseText = this.stringWriter.toString();
+		if (this.bytes != null) {
+			try {
+				this.responseText = this.bytes.toString("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new ApplicationError(e, "UTF-8 is not supported!!");
+			}
 		} else {
 			// we were just a pipe, we do not have the accumulated string. That
 			// is by design, and hence caller should be aware. Prefer empty
@@ -145,6 +154,11 @@ public class JsonRespWriter implements ResponseWriter {
 			return;
 		}
 		if (outWriter == null) {
+			/*
+			 * output is piped. we just have to close the root object and
+			 * flush whatever is buffered
+			 */
+			this.getFinalResponseObject();
 			return;
 		}
 		Object obj = this.getFinalResponseObject().toString();
@@ -238,7 +252,7 @@ public class JsonRespWriter implements ResponseWriter {
 	@Override
 	public void setArray(String arrayName, DataSheet sheet) {
 		this.checkNull();
-		this.writer.array();
+		this.writer.key(arrayName).array();
 		if (sheet != null && sheet.length() > 0 && sheet.width() > 0) {
 			for (Value[] row : sheet.getAllRows()) {
 				Value value = row[0];
@@ -346,19 +360,21 @@ public class JsonRespWriter implements ResponseWriter {
 				continue;
 			}
 
-			this.beginArray(entry.getKey());
-
-			int nbrRows = sheet.length();
+			/*
+			 * rows are written directly to the underlying writer, rather than
+			 * through our own methods, as this is the bulk of the response
+			 */
+			JSONWriter w = this.writer;
+			w.key(entry.getKey()).array();
 			String[] names = sheet.getColumnNames();
-			for (int i = 0; i < nbrRows; i++) {
-				Value[] row = sheet.getRow(i);
-				this.beginObjectAsArrayElement();
+			for (Value[] row : sheet.getAllRows()) {
+				w.object();
 				for (int j = 0; j < names.length; j++) {
-					this.setField(names[j], row[j]);
+					w.key(names[j]).value(row[j]);
 				}
-				this.endObject();
+				w.endObject();
 			}
-			this.endArray();
+			w.endArray();
 		}
 	}
 
@@ -0,0 +1,581 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.sa;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.simplity.json.JSONArray;
+import org.simplity.json.JSONException;
+import org.simplity.json.JSONObject;
+import org.simplity.json.JSONPullParser;
+import org.simplity.kernel.util.JsonUtil;
+import org.simplity.service.ServiceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * request reader for a json payload that is parsed as and when data is
+ * requested, rather than parsing the entire payload into a JSONObject upfront.
+ *
+ * <p>
+ * Members of the root object are parsed in the order in which they appear in
+ * the payload. A member that is skipped over while looking for another member
+ * is parsed into a JSONObject/JSONArray and kept for later requests. But an
+ * array that is opened when the payload is positioned at it is streamed:
+ * its elements are parsed one at a time as they are opened, and are discarded
+ * once they are closed. Such an array is to be read in sequence with
+ * hasElement() and openObject(), and is not available once it is closed. Large
+ * arrays are best sent after the other members of the root object, in the
+ * order of the input specification.
+ *
+ * <p>
+ * Object opened for reading, like an element of the streamed array, is read
+ * with a JsonReqReader.
+ *
+ * @author simplity.org
+ *
+ */
+public class JsonStreamReqReader implements RequestReader {
+	private static final Logger logger = LoggerFactory.getLogger(JsonStreamReqReader.class);
+
+	private final JSONPullParser parser;
+
+	/**
+	 * members of the root object that are parsed so far
+	 */
+	private final JSONObject rootMembers = new JSONObject();
+
+	/**
+	 * name of the member whose value is yet to be parsed. parser is positioned
+	 * at the value of this member. null if no member is pending.
+	 */
+	private String pendingKey;
+
+	/**
+	 * all members of the root object have been read
+	 */
+	private boolean rootDone;
+
+	/**
+	 * true if a streamed array is open
+	 */
+	private boolean inArray;
+
+	/**
+	 * all elements of the streamed array are read, and its closing bracket is
+	 * consumed
+	 */
+	private boolean arrayEnded;
+
+	/**
+	 * hasElement() has confirmed an element and the parser is positioned at
+	 * that element
+	 */
+	private boolean elementPending;
+
+	/**
+	 * index of the next element of the streamed array
+	 */
+	private int nextElementIdx;
+
+	/**
+	 * reader for an object/array that is fully parsed and opened. This could
+	 * be an element of the streamed array, or a member of the root
+	 */
+	private JsonReqReader delegate;
+
+	/**
+	 * number of objects/arrays opened in delegate. delegate is discarded when
+	 * it is closed at depth 0
+	 */
+	private int delegateDepth;
+
+	/**
+	 * @param stream
+	 *            UTF-8 stream with the json payload. caller is responsible for
+	 *            closing it
+	 */
+	public JsonStreamReqReader(InputStream stream) {
+		this(new InputStreamReader(stream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param reader
+	 *            reader with the json payload. caller is responsible for
+	 *            closing it
+	 */
+	public JsonStreamReqReader(Reader reader) {
+		this.parser = new JSONPullParser(reader);
+		try {
+			char c = this.parser.peek();
+			if (c == JSONPullParser.EOF) {
+				logger.info("Input is empty for translator.");
+				this.rootDone = true;
+			} else if (c != '{') {
+				logger.error("Json payload is expected to be an object. Payload is ignored");
+				this.rootDone = true;
+			} else {
+				this.parser.beginObject();
+			}
+		} catch (JSONException e) {
+			logger.error("Error while reading payload : {}", e.getMessage());
+			this.rootDone = true;
+		}
+	}
+
+	/**
+	 * members of the root object. Note that a streamed array is not part of
+	 * it
+	 */
+	@Override
+	public Object getRawInput() {
+		this.readAllMembers();
+		return this.rootMembers;
+	}
+
+	@Override
+	public InputValueType getValueType(String attributeName) {
+		if (this.delegate != null) {
+			return this.delegate.getValueType(attributeName);
+		}
+		if (this.inArray) {
+			return InputValueType.NULL;
+		}
+		Object obj = this.rootMembers.opt(attributeName);
+		if (obj != null) {
+			return getType(obj);
+		}
+		if (this.seekMember(attributeName) == false) {
+			return InputValueType.NULL;
+		}
+		/*
+		 * we know the type from the first char, without parsing the value
+		 */
+		switch (this.parser.peek()) {
+		case '{':
+			return InputValueType.OBJECT;
+		case '[':
+			return InputValueType.ARRAY;
+		case 'n':
+			return InputValueType.NULL;
+		default:
+			return InputValueType.VALUE;
+		}
+	}
+
+	@Override
+	public Object getValue(String attributeName) {
+		if (this.delegate != null) {
+			return this.delegate.getValue(attributeName);
+		}
+		if (this.inArray) {
+			return null;
+		}
+		Object obj = this.rootMembers.opt(attributeName);
+		if (obj != null) {
+			return obj;
+		}
+		if (this.seekMember(attributeName)) {
+			return this.parsePendingMember();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean openObject(String attributeName) {
+		if (this.delegate != null) {
+			if (this.delegate.openObject(attributeName)) {
+				this.delegateDepth++;
+				return true;
+			}
+			return false;
+		}
+		if (this.inArray) {
+			logger.error("There is no current object and hence openObject request for {} is denied.", attributeName);
+			return false;
+		}
+		Object obj = this.getValue(attributeName);
+		if (obj instanceof JSONObject == false) {
+			logger.error("Attribute named {} is not an object. openObject request is denied.", attributeName);
+			return false;
+		}
+		this.setDelegate(new JsonReqReader((JSONObject) obj));
+		return true;
+	}
+
+	@Override
+	public boolean openObject(int zeroBasedIdx) {
+		if (this.delegate != null) {
+			if (this.delegate.openObject(zeroBasedIdx)) {
+				this.delegateDepth++;
+				return true;
+			}
+			return false;
+		}
+		if (this.inArray == false) {
+			logger.error("current object is no an array and hence openObject request for {} is denied.",
+					zeroBasedIdx);
+			return false;
+		}
+		if (zeroBasedIdx != this.nextElementIdx) {
+			logger.error(
+					"Elements of a streamed array are to be read in sequence. openObject request for {} is denied as next element is at {}.",
+					zeroBasedIdx, this.nextElementIdx);
+			return false;
+		}
+		if (this.hasElement(zeroBasedIdx) == false) {
+			logger.error("Current array has no element at {}. openObject request is denied.", zeroBasedIdx);
+			return false;
+		}
+		Object obj;
+		try {
+			obj = this.parser.nextValue();
+		} catch (JSONException e) {
+			this.abandonPayload(e);
+			return false;
+		}
+		this.elementPending = false;
+		this.nextElementIdx++;
+		if (obj instanceof JSONObject == false) {
+			logger.error("Element at index {} is not an object. openObject request is denied.", zeroBasedIdx);
+			return false;
+		}
+		this.setDelegate(new JsonReqReader((JSONObject) obj));
+		return true;
+	}
+
+	@Override
+	public boolean closeObject() {
+		if (this.delegate == null) {
+			logger.error("closeObject() out of sequence with its openObject()");
+			return false;
+		}
+		if (this.delegateDepth == 0) {
+			this.delegate = null;
+			return true;
+		}
+		this.delegateDepth--;
+		return this.delegate.closeObject();
+	}
+
+	@Override
+	public boolean openArray(String attributetName) {
+		if (this.delegate != null) {
+			if (this.delegate.openArray(attributetName)) {
+				this.delegateDepth++;
+				return true;
+			}
+			return false;
+		}
+		if (this.inArray) {
+			return false;
+		}
+		Object obj = this.rootMembers.opt(attributetName);
+		if (obj == null) {
+			if (this.seekMember(attributetName) == false) {
+				return false;
+			}
+			try {
+				if (this.parser.peek() == '[') {
+					/*
+					 * we are right at the array. stream it
+					 */
+					this.parser.beginArray();
+					this.pendingKey = null;
+					this.inArray = true;
+					this.arrayEnded = false;
+					this.elementPending = false;
+					this.nextElementIdx = 0;
+					return true;
+				}
+			} catch (JSONException e) {
+				this.pendingKey = null;
+				this.abandonPayload(e);
+				return false;
+			}
+			obj = this.parsePendingMember();
+		}
+		if (obj instanceof JSONArray == false) {
+			return false;
+		}
+		/*
+		 * json reader can open an array only as a member of an object
+		 */
+		JsonReqReader reader = new JsonReqReader(new JSONObject().put(attributetName, obj));
+		reader.openArray(attributetName);
+		this.setDelegate(reader);
+		return true;
+	}
+
+	@Override
+	public boolean openArray(int zeroBasedIdx) {
+		this.materializeArray();
+		if (this.delegate != null && this.delegate.openArray(zeroBasedIdx)) {
+			this.delegateDepth++;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object getValue(int zeroBasedIdx) {
+		this.materializeArray();
+		if (this.delegate == null) {
+			return null;
+		}
+		return this.delegate.getValue(zeroBasedIdx);
+	}
+
+	@Override
+	public InputValueType getValueType(int zeroBasedIdx) {
+		this.materializeArray();
+		if (this.delegate == null) {
+			return InputValueType.NULL;
+		}
+		return this.delegate.getValueType(zeroBasedIdx);
+	}
+
+	@Override
+	public int getNbrElements() {
+		this.materializeArray();
+		if (this.delegate == null) {
+			return 0;
+		}
+		return this.delegate.getNbrElements();
+	}
+
+	@Override
+	public boolean hasElement(int zeroBasedIdx) {
+		if (this.delegate != null) {
+			return this.delegate.hasElement(zeroBasedIdx);
+		}
+		if (this.inArray == false) {
+			return false;
+		}
+		if (zeroBasedIdx < this.nextElementIdx) {
+			logger.error("Element {} of a streamed array is already read, and is not available any more.",
+					zeroBasedIdx);
+			return false;
+		}
+		if (zeroBasedIdx > this.nextElementIdx) {
+			logger.error("Elements of a streamed array are to be read in sequence. Next element is at {}, not at {}.",
+					this.nextElementIdx, zeroBasedIdx);
+			return false;
+		}
+		if (this.elementPending) {
+			return true;
+		}
+		if (this.arrayEnded) {
+			return false;
+		}
+		try {
+			if (this.parser.hasMoreElements()) {
+				this.elementPending = true;
+				return true;
+			}
+		} catch (JSONException e) {
+			this.abandonPayload(e);
+			return false;
+		}
+		this.arrayEnded = true;
+		return false;
+	}
+
+	@Override
+	public String[] getAttributeNames() {
+		if (this.delegate != null) {
+			return this.delegate.getAttributeNames();
+		}
+		if (this.inArray) {
+			return new String[0];
+		}
+		this.readAllMembers();
+		return JSONObject.getNames(this.rootMembers);
+	}
+
+	@Override
+	public boolean closeArray() {
+		if (this.delegate != null) {
+			if (this.delegateDepth == 0) {
+				this.delegate = null;
+				return true;
+			}
+			this.delegateDepth--;
+			return this.delegate.closeArray();
+		}
+		if (this.inArray == false) {
+			return false;
+		}
+		/*
+		 * skip the elements that were not read
+		 */
+		if (this.arrayEnded == false) {
+			try {
+				if (this.elementPending) {
+					this.parser.skipValue();
+					this.elementPending = false;
+				}
+				while (this.parser.hasMoreElements()) {
+					this.parser.skipValue();
+				}
+			} catch (JSONException e) {
+				this.abandonPayload(e);
+			}
+		}
+		this.inArray = false;
+		return true;
+	}
+
+	@Override
+	public void pushDataToContext(ServiceContext ctx) {
+		this.readAllMembers();
+		JsonUtil.extractAll(this.rootMembers, ctx);
+	}
+
+	@Override
+	public boolean hasInputSpecs() {
+		return true;
+	}
+
+	private static InputValueType getType(Object val) {
+		if (val == null || val == JSONObject.NULL) {
+			return InputValueType.NULL;
+		}
+		if (val instanceof JSONArray) {
+			return InputValueType.ARRAY;
+		}
+		if (val instanceof JSONObject) {
+			return InputValueType.OBJECT;
+		}
+		return InputValueType.VALUE;
+	}
+
+	private void setDelegate(JsonReqReader reader) {
+		this.delegate = reader;
+		this.delegateDepth = 0;
+	}
+
+	/**
+	 * position the parser at the value of this member of the root object,
+	 * parsing and keeping any member that comes before it.
+	 *
+	 * @return true if the parser is positioned at the value of this member.
+	 *         false if there is no such member in the rest of the payload
+	 */
+	private boolean seekMember(String name) {
+		if (this.pendingKey != null) {
+			if (this.pendingKey.equals(name)) {
+				return true;
+			}
+			this.parsePendingMember();
+		}
+		try {
+			while (this.rootDone == false) {
+				if (this.parser.hasMoreMembers() == false) {
+					this.rootDone = true;
+					return false;
+				}
+				String key = this.parser.nextKey();
+				if (key.equals(name)) {
+					this.pendingKey = key;
+					return true;
+				}
+				this.rootMembers.put(key, this.parser.nextValue());
+			}
+		} catch (JSONException e) {
+			logger.error("Error while reading payload : {}. Rest of the payload is ignored.", e.getMessage());
+			this.rootDone = true;
+		}
+		return false;
+	}
+
+	private Object parsePendingMember() {
+		String key = this.pendingKey;
+		this.pendingKey = null;
+		try {
+			Object obj = this.parser.nextValue();
+			this.rootMembers.put(key, obj);
+			return obj;
+		} catch (JSONException e) {
+			logger.error("Error while reading payload : {}. Rest of the payload is ignored.", e.getMessage());
+			this.rootDone = true;
+			return null;
+		}
+	}
+
+	/**
+	 * payload is malformed. Streamed array is treated as ended, and rest of
+	 * the payload is ignored
+	 */
+	private void abandonPayload(JSONException e) {
+		logger.error("Error while reading payload : {}. Rest of the payload is ignored.", e.getMessage());
+		this.elementPending = false;
+		this.arrayEnded = true;
+		this.rootDone = true;
+	}
+
+	private void readAllMembers() {
+		if (this.inArray || this.delegate != null) {
+			logger.error("Payload can not be read fully while an object/array is open.");
+			return;
+		}
+		this.seekMember(null);
+	}
+
+	/**
+	 * random access to a streamed array requires us to parse the rest of it.
+	 * elements that are already read are replaced with nulls to keep their
+	 * indexes intact
+	 */
+	private void materializeArray() {
+		if (this.delegate != null || this.inArray == false) {
+			return;
+		}
+		logger.info("Streamed array is parsed into an array for random access to its elements.");
+		JSONArray arr = new JSONArray();
+		for (int i = 0; i < this.nextElementIdx; i++) {
+			arr.put(JSONObject.NULL);
+		}
+		if (this.arrayEnded == false) {
+			try {
+				if (this.elementPending) {
+					arr.put(this.parser.nextValue());
+					this.elementPending = false;
+				}
+				while (this.parser.hasMoreElements()) {
+					arr.put(this.parser.nextValue());
+				}
+			} catch (JSONException e) {
+				this.abandonPayload(e);
+			}
+		}
+		this.inArray = false;
+		String key = "";
+		JsonReqReader reader = new JsonReqReader(new JSONObject().put(key, arr));
+		reader.openArray(key);
+		this.setDelegate(reader);
+	}
+}
@@ -30,7 +30,7 @@ public enum PayloadType {
 	/**
 	 * json text
 	 */
-	JSON_TEXT(false, false),
+	JSON_TEXT(true, false),
 	/**
 	 * xml text
 	 */
@@ -46,7 +46,7 @@ public enum PayloadType {
 	/**
 	 * json reader/writer
 	 */
-	JSON_STREAM(true, false),
+	JSON_STREAM(true, true),
 	/**
 	 * xml reader/writer
 	 */
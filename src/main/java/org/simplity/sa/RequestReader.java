@@ -126,6 +126,17 @@ public interface RequestReader {
 	 */
 	public int getNbrElements();
 
+	/**
+	 * is there an element at this position in the open array? Readers that
+	 * stream their input do not know the number of elements upfront, and
+	 * their elements are to be read in sequence using this method.
+	 *
+	 * @param zeroBasedIdx
+	 * @return true if the open array has an element at this position. false
+	 *         if this is not an array, or the index is out-of-bound
+	 */
+	public boolean hasElement(int zeroBasedIdx);
+
 	/**
 	 * get names of attributes for this object. valid only if an object is open
 	 *
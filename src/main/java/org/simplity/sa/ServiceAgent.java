@@ -23,7 +23,6 @@
 package org.simplity.sa;
 
 import java.io.IOException;
-import java.io.Writer;
 import java.util.List;
 
 import javax.xml.stream.XMLStreamException;
@@ -181,6 +180,16 @@ public class ServiceAgent {
 		}
 
 		long bigin = System.currentTimeMillis();
+		/*
+		 * is it cached?
+		 */
+		if (this.cacheManager != null && this.useLocalData == false && service.okToCache()) {
+			if (this.cacheManager.respond(request, response)) {
+				response.setExecutionTime((int) (System.currentTimeMillis() - bigin));
+				response.setResult(ServiceResult.ALL_OK);
+				return;
+			}
+		}
 		AppUser user = request.getUser();
 		if (user == null) {
 			logger.info("Service requested with no user. Dummy user is assumed.");
@@ -188,12 +197,19 @@ public class ServiceAgent {
 		}
 		ServiceContext ctx = new ServiceContext(serviceName, user);
 
-		this.callService(ctx, request, response, service);
+		boolean completed = this.callService(ctx, request, response, service);
 		response.setExecutionTime((int) (System.currentTimeMillis() - bigin));
 		List<FormattedMessage> messages = ctx.getMessages();
 		if (messages != null && messages.size() > 0) {
 			response.setMessages(messages.toArray(new FormattedMessage[0]));
 		}
+		/*
+		 * cache only after messages are set, so that they are delivered on a
+		 * cache-hit as well
+		 */
+		if (completed && this.cacheManager != null) {
+			this.manageCache(ctx, request, response);
+		}
 		if (ctx.isInError()) {
 			response.setResult(ServiceResult.INVALID_DATA);
 		} else {
@@ -202,25 +218,29 @@ public class ServiceAgent {
 		return;
 	}
 
-	private void callService(ServiceContext ctx, ServiceRequest request, ServiceResponse response, Service service) {
+	/**
+	 * @return true if the service completed and its response is written. false
+	 *         if it was abandoned, or it ended with errors.
+	 */
+	private boolean callService(ServiceContext ctx, ServiceRequest request, ServiceResponse response, Service service) {
 
 		try {
 			if(this.applicationHook != null) {
 				if(this.applicationHook.beforeInput(request, response, ctx) == false) {
 					logger.info("App specific hook requested that the service be abandoned before iinputting data.");
-					return;
+					return false;
 				}
 			}
 			request.copyToServiceContext(ctx, service);
 			if (ctx.isInError()) {
 				logger.info("Input data had errors. Service not invoked.");
-				return;
+				return false;
 			}
 
 			if(this.applicationHook != null) {
 				if(this.applicationHook.beforeService(request, response, ctx) == false) {
 					logger.info("App specific hook requested that the service be abandoned after inputting data.");
-					return;
+					return false;
 				}
 			}
 			/*
@@ -233,12 +253,6 @@ public class ServiceAgent {
 			 * TODO: batch mode
 			 */
 
-			/*
-			 * TODO : manage cache
-			 *
-			 * is it cached?
-			 */
-
 			if (this.useLocalData) {
 				logger.info("Application is set-up to simulate servcie action using local data. Service actions will be ignored");
 				this.readLocalData(ctx, service);
@@ -248,25 +262,39 @@ public class ServiceAgent {
 			}
 			if (ctx.isInError()) {
 				logger.info("service execution returned with errors");
-				return;
+				return false;
 			}
 			if(this.applicationHook != null) {
 				if(this.applicationHook.afterService(response, ctx) == false) {
 					logger.info("App specific hook aftrer service signalled that we do not output data.");
-					return;
+					return false;
 				}
 			}
 			logger.info("Going to write output data");
 			this.writeResponse(ctx, service, response);
-
-			/*
-			 *
-			 * TODO: cache to be invalidated or this is to be cached.
-			 */
+			return true;
 		} catch (Exception e) {
 			logger.error("Exception thrown by service {}, {}" + service.getQualifiedName(), e.getMessage());
 			Application.reportApplicationError(request, e);
 			ctx.addMessage(Messages.INTERNAL_ERROR, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * cache this response, or invalidate cache for other services as
+	 * requested by the service
+	 */
+	private void manageCache(ServiceContext ctx, ServiceRequest request, ServiceResponse response) {
+		if (ctx.getCachingKey() != null) {
+			this.cacheManager.cache(request, response);
+			return;
+		}
+		String[] invalidations = ctx.getInvalidations();
+		if (invalidations != null) {
+			for (String key : invalidations) {
+				this.cacheManager.invalidate(key);
+			}
 		}
 	}
 
@@ -284,7 +312,7 @@ public class ServiceAgent {
 		PayloadType pt = response.getPayloadType();
 		if (pt.isStream()) {
 			if (pt.isJson()) {
-				writer = new JsonRespWriter(response.getPayloadStream());
+				writer = response.newJsonStreamWriter();
 			} else {
 				throw new ApplicationError(
 						"XML object writer is not yet designed for service to write directly. Use JSON instead.");
@@ -327,12 +355,28 @@ public class ServiceAgent {
 					logger.info("Service would have output response directly to teh stream.");
 					return;
 				}
+				if (this.toBeCached(ctx)) {
+					/*
+					 * we need the text to cache it. write it as text, and then
+					 * push it to the stream
+					 */
+					if (pt.isJson()) {
+						respWriter = new JsonRespWriter();
+					} else {
+						respWriter = new XmlRespWriter();
+					}
+					outSpec.write(respWriter, ctx);
+					if (this.applicationHook != null) {
+						this.applicationHook.afterOutput(response, ctx);
+					}
+					response.setPayloadText(respWriter.getFinalResponseObject().toString());
+					return;
+				}
 
-				Writer writer = response.getPayloadStream();
 				if (pt.isJson()) {
-					respWriter = new JsonRespWriter(writer);
+					respWriter = response.newJsonStreamWriter();
 				} else {
-					respWriter = new XmlRespWriter(writer);
+					respWriter = new XmlRespWriter(response.getPayloadStream());
 				}
 				outSpec.write(respWriter, ctx);
 				if(this.applicationHook != null) {
@@ -356,6 +400,10 @@ public class ServiceAgent {
 		}
 	}
 
+	private boolean toBeCached(ServiceContext ctx) {
+		return this.cacheManager != null && ctx.getCachingKey() != null;
+	}
+
 	/**
 	 *
 	 * @return true if this application uses a numeric userId. false if it uses
@@ -414,6 +462,44 @@ public class ServiceAgent {
 		return Service.createCachingKey(serviceName, vals);
 	}
 
+	/**
+	 * caching key for a request, before the request is read into service
+	 * context. Values for key fields are taken from fields of the request, or
+	 * from the root of its payload.
+	 *
+	 * @param service
+	 *            non-null service being requested
+	 * @param request
+	 *            non-null request for the service
+	 * @return key with which the response for this request may have been
+	 *         cached. null if this is not cached.
+	 */
+	public static String getCachingKey(Service service, ServiceRequest request) {
+		if (service.okToCache() == false) {
+			return null;
+		}
+		String serviceName = service.getQualifiedName();
+		String[] keys = service.getCacheKeyNames();
+		if (keys == null) {
+			return Service.createCachingKey(serviceName, null);
+		}
+		String[] vals = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			String key = keys[i];
+			Object val;
+			if (key.equals(ServiceProtocol.USER_ID)) {
+				AppUser user = request.getUser();
+				val = user == null ? DUMMY_USER : user.getUserId();
+			} else {
+				val = request.getInputValue(key);
+			}
+			if (val != null) {
+				vals[i] = val.toString();
+			}
+		}
+		return Service.createCachingKey(serviceName, vals);
+	}
+
 	/**
 	 * @param ctx
 	 * @param service
@@ -23,6 +23,7 @@
 package org.simplity.sa;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.util.HashSet;
@@ -98,6 +99,13 @@ public class ServiceRequest {
 	 */
 	private Object clientContext;
 
+	/**
+	 * reader created on the payload. Payload is parsed only once, even if
+	 * it is accessed before copying it to the service context, like for
+	 * working out the caching key.
+	 */
+	private RequestReader requestReader;
+
 	/**
 	 *
 	 * @param serviceName
@@ -106,7 +114,8 @@ public class ServiceRequest {
 	 *            null if no payload.
 	 * @param payload
 	 *            appropriate object based on payload type. Reader if
-	 *            JSON_STREAM, XML_STREAM, JsonObject if
+	 *            JSON_STREAM, XML_STREAM, InputStream with UTF-8 text is also
+	 *            accepted for JSON_STREAM. JsonObject if
 	 *            JSON_OBJECT, Document if XML_OBJECT, String for JSON_TEXT or
 	 *            XML_TEXT. Object ignored after logging an error in case of
 	 *            mismatch, but no exception is thrown
@@ -134,6 +143,10 @@ public class ServiceRequest {
 			}
 			break;
 		case JSON_STREAM:
+			if (payload instanceof Reader || payload instanceof InputStream) {
+				return;
+			}
+			break;
 		case XML_STREAM:
 			if (payload instanceof Reader) {
 				return;
@@ -185,7 +198,11 @@ public class ServiceRequest {
 		}
 		String json = null;
 		if (this.payloadType == PayloadType.JSON_STREAM) {
-			json = IoUtil.readerToText((Reader) this.payload);
+			if (this.payload instanceof InputStream) {
+				json = IoUtil.streamToText((InputStream) this.payload);
+			} else {
+				json = IoUtil.readerToText((Reader) this.payload);
+			}
 			if (json == null) {
 				logger.error("payload read failed to get any text. assuming no input from payload");
 				return new JSONObject();
@@ -416,21 +433,60 @@ public class ServiceRequest {
 			return;
 		}
 
-		RequestReader reader = null;
+		RequestReader reader = this.getRequestReader();
+		inSpec.read(reader, ctx);
+	}
+
+	/**
+	 * get a reader for the payload. payload is parsed on the first call, and
+	 * the same reader is returned on subsequent calls.
+	 *
+	 * @return non-null reader. Reader is on an empty object if there is no
+	 *         payload
+	 */
+	public RequestReader getRequestReader() {
+		if (this.requestReader != null) {
+			return this.requestReader;
+		}
 		if (this.payloadType == null || this.payload == null) {
 			logger.warn(
 					"Service is expecting data, but payload is empty. Default values specified in specifications, if any, will be used as input.");
-			reader = new JsonReqReader(new JSONObject());
+			this.requestReader = new JsonReqReader(new JSONObject());
 		} else {
-			if (this.payloadType.isJson()) {
+			if (this.payloadType == PayloadType.JSON_STREAM) {
+				logger.info("Input being streamed as JSON");
+				if (this.payload instanceof InputStream) {
+					this.requestReader = new JsonStreamReqReader((InputStream) this.payload);
+				} else {
+					this.requestReader = new JsonStreamReqReader((Reader) this.payload);
+				}
+			} else if (this.payloadType.isJson()) {
 				logger.info("Input being read as JSON");
-				reader = new JsonReqReader(this.getPayloadJson());
+				this.requestReader = new JsonReqReader(this.getPayloadJson());
 			} else {
 				logger.info("Input being read as XML");
-				reader = new XmlReqReader(this.getPayloadXml());
+				this.requestReader = new XmlReqReader(this.getPayloadXml());
 			}
 		}
-		inSpec.read(reader, ctx);
+		return this.requestReader;
+	}
+
+	/**
+	 * value of an input field, either from the fields, or from the root of
+	 * the payload. Used to get values for key fields before the payload is
+	 * read into service context
+	 *
+	 * @param fieldName
+	 * @return value of the field from fields collection if it is found there.
+	 *         else value of the attribute at the root of the payload. null if
+	 *         it is not found in either place
+	 */
+	public Object getInputValue(String fieldName) {
+		Object val = this.getFieldValue(fieldName);
+		if (val != null) {
+			return val;
+		}
+		return this.getRequestReader().getValue(fieldName);
 	}
 
 	private void setDomFactory() {
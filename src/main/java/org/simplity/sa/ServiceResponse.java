@@ -23,6 +23,7 @@
 package org.simplity.sa;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
@@ -52,6 +53,15 @@ public class ServiceResponse {
 	private ServiceResult result;
 	private FormattedMessage[] messages;
 	private int executionTime;
+	/**
+	 * text that was written out to the payload stream with setPayloadText()
+	 */
+	private String streamedText;
+	/**
+	 * byte stream underlying the payload writer, if the client has provided
+	 * one. json writer writes UTF-8 bytes directly to this stream
+	 */
+	private OutputStream payloadOutputStream;
 
 	/**
 	 * a service response that does not link its response stream
@@ -79,6 +89,23 @@ public class ServiceResponse {
 		this.payload = writer;
 	}
 
+	/**
+	 * construct a response for linking output stream, with the byte stream
+	 * that the writer is based on. json response is written directly to the
+	 * byte stream in UTF-8, avoiding the character encoder of the writer.
+	 *
+	 * @param writer
+	 *            output stream
+	 * @param stream
+	 *            byte stream underlying the writer. Nothing should be buffered
+	 *            in the writer at this time
+	 * @param useJson
+	 */
+	public ServiceResponse(Writer writer, OutputStream stream, boolean useJson) {
+		this(writer, useJson);
+		this.payloadOutputStream = stream;
+	}
+
 	/**
 	 * @return result of this service execution
 	 *
@@ -224,6 +251,25 @@ public class ServiceResponse {
 		return null;
 	}
 
+	/**
+	 * @return byte stream underlying the payload stream. null if the client
+	 *         has not provided one
+	 */
+	public OutputStream getPayloadOutputStream() {
+		return this.payloadOutputStream;
+	}
+
+	/**
+	 * @return json writer that writes to the payload stream. Byte stream is
+	 *         preferred over the character stream if it is available
+	 */
+	JsonRespWriter newJsonStreamWriter() {
+		if (this.payloadOutputStream != null) {
+			return new JsonRespWriter(this.payloadOutputStream);
+		}
+		return new JsonRespWriter(this.getPayloadStream());
+	}
+
 	/**
 	 * @return the payloadType
 	 */
@@ -317,6 +363,7 @@ public class ServiceResponse {
 		case JSON_STREAM:
 			try {
 				((Writer) this.payload).write(text);
+				this.streamedText = text;
 			} catch (IOException e) {
 
 				throw new ApplicationError(e, "Error while writing response text to payload stream");
@@ -331,6 +378,20 @@ public class ServiceResponse {
 		}
 	}
 
+	/**
+	 * text of the response, irrespective of whether it was set as payload, or
+	 * written out to the payload stream. Used for caching the response.
+	 *
+	 * @return response text. null if the response was not set as text, or was
+	 *         written directly to the stream by a response writer
+	 */
+	public String getResponseText() {
+		if (this.payloadIsText()) {
+			return (String) this.payload;
+		}
+		return this.streamedText;
+	}
+
 	/**
 	 * @param millis
 	 *            no of milli seconds taken by service to process this request
@@ -366,7 +427,7 @@ public class ServiceResponse {
 			throw new ApplicationError("non-json responsewriter is not yet ready to be used directky by service.");
 		}
 		if (this.payloadIsStream()) {
-			writer = new JsonRespWriter(this.getPayloadStream());
+			writer = this.newJsonStreamWriter();
 		} else {
 			writer = new JsonRespWriter();
 		}
@@ -290,6 +290,16 @@ public class XmlReqReader implements RequestReader {
 		return 1;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.simplity.sa.RequestReader#hasElement(int)
+	 */
+	@Override
+	public boolean hasElement(int zeroBasedIdx) {
+		return zeroBasedIdx >= 0 && zeroBasedIdx < this.getNbrElements();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
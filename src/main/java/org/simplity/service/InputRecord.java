@@ -578,8 +578,7 @@ public class InputRecord {
 
 		case ARRAY:
 			reader.openArray(this.externalName);
-			int n = reader.getNbrElements();
-			for (int i = 0; i < n; i++) {
+			for (int i = 0; reader.hasElement(i); i++) {
 				if (!reader.openObject(i)) {
 					logger.error("Element at {} of array {} is to be an object, but it is not.", i, this.externalName);
 					ctx.addMessage(Messages.INVALID_DATA, this.externalName);
@@ -646,8 +645,11 @@ public class InputRecord {
 				ctx.putDataSheet(this.name, sheet);
 			}
 			int nbrAdded = 0;
-			int n = reader.getNbrElements();
-			for (int i = 0; i < n; i++) {
+			/*
+			 * elements are read in sequence, as the reader may be streaming
+			 * them
+			 */
+			for (int i = 0; reader.hasElement(i); i++) {
 				if (reader.openObject(i) == false) {
 					this.invalidContent(ctx);
 					return sheet;
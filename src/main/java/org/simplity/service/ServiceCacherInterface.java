@@ -39,10 +39,9 @@ public interface ServiceCacherInterface {
 	/**
 	 * cache a response from server.
 	 *
-	/**
-	 * get a cached response
 	 * @param request
 	 * @param response
+	 *            response with its payload text set
 	 */
 	public void cache(ServiceRequest request, ServiceResponse response);
 
@@ -50,6 +49,9 @@ public interface ServiceCacherInterface {
 	 * remove/invalidate any cache for this service
 	 *
 	 * @param serviceName
+	 *            service name, or a caching key formed with
+	 *            Service.createCachingKey() in which case only the response
+	 *            for that key is to be invalidated
 	 */
 	public void invalidate(String serviceName);
 
@@ -23,9 +23,14 @@
 package org.simplity.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.jms.Session;
 
@@ -42,6 +47,7 @@ import org.simplity.adapter.target.JsonDataTarget;
 import org.simplity.adapter.target.JsonListTarget;
 import org.simplity.adapter.target.PojoDataTarget;
 import org.simplity.adapter.target.PojoListTarget;
+import org.simplity.jms.JmsConnector;
 import org.simplity.json.JSONArray;
 import org.simplity.json.JSONObject;
 import org.simplity.kernel.ApplicationError;
@@ -49,6 +55,7 @@ import org.simplity.kernel.FormattedMessage;
 import org.simplity.kernel.MessageBox;
 import org.simplity.kernel.MessageType;
 import org.simplity.kernel.Messages;
+import org.simplity.kernel.data.ColumnarSheet;
 import org.simplity.kernel.data.CommonData;
 import org.simplity.kernel.data.DataSheet;
 import org.simplity.kernel.data.FieldsCollection;
@@ -121,6 +128,9 @@ public class ServiceContext extends CommonData {
 	/** jms session associated with this service */
 	private Session jmsSession;
 
+	/** jms connector that the session is from. null if not known */
+	private JmsConnector jmsConnector;
+
 	/** message box */
 	private MessageBox messageBox;
 
@@ -145,6 +155,12 @@ public class ServiceContext extends CommonData {
 	 */
 	private String[] invalidations;
 
+	/**
+	 * sheets as given to this context by copyForWorker(). null if this is not
+	 * a worker's context
+	 */
+	private Map<String, DataSheet> sheetsAtFork;
+
 	/**
 	 * @param serviceName
 	 * @param appUser
@@ -323,6 +339,181 @@ public class ServiceContext extends CommonData {
 		}
 	}
 
+	/**
+	 * create a context for a worker that runs in parallel with this one, like
+	 * the one processing a file for a batch processor. Fields, sheets and
+	 * objects are copied by reference into maps of its own, so that the worker
+	 * can set them without affecting this context. Messages, reader, writer
+	 * and jms session are not copied.
+	 *
+	 * @return a new context with the data of this context
+	 */
+	public ServiceContext copyDataForWorker() {
+		ServiceContext ctx = new ServiceContext(this.serviceName, this.appUser);
+		ctx.allFields.putAll(this.allFields);
+		ctx.allSheets.putAll(this.allSheets);
+		ctx.allObjects.putAll(this.allObjects);
+		ctx.clientContext = this.clientContext;
+		return ctx;
+	}
+
+	/**
+	 * create a context for a worker that acts on behalf of this service, like
+	 * a child-action of a synchronizer. Data is copied as in
+	 * copyDataForWorker(), except that multi-row sheets are copied, so that
+	 * workers running in parallel do not modify the same sheet. Worker gets a
+	 * message box of its own, with the message in the box of this context. In
+	 * addition, reader, writer, jms session and caching settings are shared
+	 * with the worker. These resources are not thread-safe: the worker should
+	 * not be run in parallel with this context, or with other such workers, if
+	 * hasSingleThreadedResources() is true.
+	 *
+	 * @return a new context with the data and resources of this context
+	 */
+	public ServiceContext copyForWorker() {
+		ServiceContext ctx = this.copyDataForWorker();
+		for (Entry<String, DataSheet> entry : ctx.allSheets.entrySet()) {
+			entry.setValue(copySheet(entry.getValue()));
+		}
+		ctx.sheetsAtFork = new HashMap<String, DataSheet>(ctx.allSheets);
+		ctx.reqReader = this.reqReader;
+		ctx.respWriter = this.respWriter;
+		ctx.jmsSession = this.jmsSession;
+		ctx.jmsConnector = this.jmsConnector;
+		if (this.messageBox != null) {
+			ctx.putMessageInBox(this.messageBox.getMessage());
+		}
+		ctx.cachingKey = this.cachingKey;
+		ctx.cacheValidityMinutes = this.cacheValidityMinutes;
+		ctx.invalidations = this.invalidations;
+		return ctx;
+	}
+
+	/**
+	 * rows of multi-row sheets are copied. Other sheets are single-row sheets
+	 * that are shared as they are.
+	 */
+	private static DataSheet copySheet(DataSheet sheet) {
+		if (sheet instanceof ColumnarSheet) {
+			return new ColumnarSheet(sheet);
+		}
+		if (sheet instanceof MultiRowsSheet == false) {
+			return sheet;
+		}
+		MultiRowsSheet copy = new MultiRowsSheet(sheet.getColumnNames().clone(), sheet.getValueTypes().clone());
+		int n = sheet.length();
+		for (int i = 0; i < n; i++) {
+			copy.addRow(sheet.getRow(i).clone());
+		}
+		return copy;
+	}
+
+	/**
+	 * @return true if this context has a reader, writer or jms session that
+	 *         can be used by only one thread at a time
+	 */
+	public boolean hasSingleThreadedResources() {
+		return this.reqReader != null || this.respWriter != null || this.jmsSession != null;
+	}
+
+	/**
+	 * merge data from a context that a worker has used. Fields, sheets and
+	 * objects that the worker has set or removed are set or removed in this
+	 * context, and messages added by the worker are added to this context.
+	 * Caching settings changed by the worker are set to this context, and
+	 * invalidations added by it are added to this context.
+	 *
+	 * @param worker
+	 *            context that was created with copyForWorker() of this context
+	 * @param forkedFrom
+	 *            copy of this context at the time the worker's context was
+	 *            created. Used to detect what the worker has changed
+	 */
+	public void mergeFromWorker(ServiceContext worker, ServiceContext forkedFrom) {
+		mergeMap(worker.allFields, forkedFrom.allFields, this.allFields);
+		this.mergeSheets(worker, forkedFrom);
+		mergeMap(worker.allObjects, forkedFrom.allObjects, this.allObjects);
+		for (FormattedMessage msg : worker.messages) {
+			this.addMessage(msg);
+		}
+		Object msg = worker.getMessageFromBox();
+		if (msg != forkedFrom.getMessageFromBox()) {
+			this.putMessageInBox(msg);
+		}
+		if (worker.cachingKey != forkedFrom.cachingKey
+				|| worker.cacheValidityMinutes != forkedFrom.cacheValidityMinutes) {
+			this.setCaching(worker.cachingKey, worker.cacheValidityMinutes);
+		}
+		if (worker.invalidations != forkedFrom.invalidations && worker.invalidations != null) {
+			this.addInvalidations(worker.invalidations);
+		}
+	}
+
+	/**
+	 * a sheet is merged if the worker has replaced it, or has changed the copy
+	 * that it was given
+	 */
+	private void mergeSheets(ServiceContext worker, ServiceContext forkedFrom) {
+		for (Entry<String, DataSheet> entry : worker.allSheets.entrySet()) {
+			String key = entry.getKey();
+			DataSheet sheet = entry.getValue();
+			DataSheet original = forkedFrom.allSheets.get(key);
+			if (original != null) {
+				if (sheet == original) {
+					continue;
+				}
+				if (worker.sheetsAtFork != null && worker.sheetsAtFork.get(key) == sheet
+						&& hasSameRows(sheet, original)) {
+					continue;
+				}
+			}
+			this.allSheets.put(key, sheet);
+		}
+		for (String key : forkedFrom.allSheets.keySet()) {
+			if (worker.allSheets.containsKey(key) == false) {
+				this.allSheets.remove(key);
+			}
+		}
+	}
+
+	private static boolean hasSameRows(DataSheet sheet, DataSheet other) {
+		int n = sheet.length();
+		if (n != other.length() || Arrays.equals(sheet.getColumnNames(), other.getColumnNames()) == false) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (Arrays.equals(sheet.getRow(i), other.getRow(i)) == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addInvalidations(String[] names) {
+		if (this.invalidations == null) {
+			this.invalidations = names;
+			return;
+		}
+		Set<String> all = new LinkedHashSet<String>(Arrays.asList(this.invalidations));
+		all.addAll(Arrays.asList(names));
+		this.invalidations = all.toArray(new String[all.size()]);
+	}
+
+	private static <T> void mergeMap(Map<String, T> changed, Map<String, T> original, Map<String, T> target) {
+		for (Entry<String, T> entry : changed.entrySet()) {
+			String key = entry.getKey();
+			T value = entry.getValue();
+			if (original.get(key) != value || original.containsKey(key) == false) {
+				target.put(key, value);
+			}
+		}
+		for (String key : original.keySet()) {
+			if (changed.containsKey(key) == false) {
+				target.remove(key);
+			}
+		}
+	}
+
 	/** @return summary for tracing */
 	public String getSummaryInfo() {
 		StringBuilder sbf = new StringBuilder("Context has ");
@@ -364,6 +555,14 @@ public class ServiceContext extends CommonData {
 		this.respWriter = writer;
 	}
 
+	/**
+	 * @return true if a writer is assigned to this context. getWriter()
+	 *         creates one if it is not assigned.
+	 */
+	public boolean hasWriter() {
+		return this.respWriter != null;
+	}
+
 	/** @return writer, never null */
 	public ResponseWriter getWriter() {
 		if (this.respWriter == null) {
@@ -395,6 +594,25 @@ public class ServiceContext extends CommonData {
 	 */
 	public void setJmsSession(Session session) {
 		this.jmsSession = session;
+		this.jmsConnector = null;
+	}
+
+	/**
+	 * set the connector, and its session, to be used by this service
+	 *
+	 * @param connector
+	 */
+	public void setJmsConnector(JmsConnector connector) {
+		this.jmsConnector = connector;
+		this.jmsSession = connector.getSession();
+	}
+
+	/**
+	 * @return jms connector associated with this service. null if the service
+	 *         has no connector, or only its session was set
+	 */
+	public JmsConnector getJmsConnector() {
+		return this.jmsConnector;
 	}
 
 	/**
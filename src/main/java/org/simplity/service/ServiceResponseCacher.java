@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.simplity.kernel.FormattedMessage;
+import org.simplity.kernel.comp.ComponentManager;
+import org.simplity.sa.ServiceAgent;
+import org.simplity.sa.ServiceRequest;
+import org.simplity.sa.ServiceResponse;
+import org.simplity.tp.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * in-memory implementation of <code>ServiceCacherInterface</code>. Response
+ * text is cached with the key formed by the service name and values of its
+ * cache-key fields. Cache is bounded by number of entries, and the least
+ * recently used entry is discarded when the limit is reached. An entry
+ * expires after cacheValidityMinutes specified for the service.
+ *
+ * @author simplity.org
+ *
+ */
+public class ServiceResponseCacher implements ServiceCacherInterface {
+	private static final Logger logger = LoggerFactory.getLogger(ServiceResponseCacher.class);
+	/**
+	 * number of responses cached if the max is not specified
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+	/**
+	 * access-ordered map that drops the least-recently-used entry when it
+	 * grows beyond max entries. All access is synchronized on this map.
+	 */
+	private final Map<String, CachedResponse> entries;
+
+	/**
+	 * cacher with default number of max entries. Used when this class is
+	 * configured as serviceCacherClassName in application
+	 */
+	public ServiceResponseCacher() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * cacher that retains at most these many responses
+	 *
+	 * @param maxEntries
+	 *            max number of responses to be cached. Least recently used
+	 *            response is removed to make room for a new one.
+	 */
+	public ServiceResponseCacher(final int maxEntries) {
+		this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+				return this.size() > maxEntries;
+			}
+		};
+	}
+
+	@Override
+	public boolean respond(ServiceRequest request, ServiceResponse response) {
+		String key = getKey(request);
+		if (key == null) {
+			return false;
+		}
+		CachedResponse cached;
+		synchronized (this.entries) {
+			cached = this.entries.get(key);
+			if (cached != null && cached.hasExpired(System.currentTimeMillis())) {
+				this.entries.remove(key);
+				cached = null;
+			}
+		}
+		if (cached == null) {
+			return false;
+		}
+		response.setPayloadText(cached.text);
+		if (cached.messages != null) {
+			response.setMessages(cached.messages);
+		}
+		logger.info("Response for service {} delivered from cache", request.getServiceName());
+		return true;
+	}
+
+	@Override
+	public void cache(ServiceRequest request, ServiceResponse response) {
+		String text = response.getResponseText();
+		if (text == null) {
+			logger.info("Response is not available as text, and hence it is not cached.");
+			return;
+		}
+		String key = getKey(request);
+		if (key == null) {
+			return;
+		}
+		Service service = ComponentManager.getService(request.getServiceName());
+		long expiry = 0;
+		int minutes = service.getCacheRefreshTime();
+		if (minutes > 0) {
+			expiry = System.currentTimeMillis() + minutes * MILLIS_PER_MINUTE;
+		}
+		CachedResponse cached = new CachedResponse(text, response.getMessages(), expiry);
+		synchronized (this.entries) {
+			this.entries.put(key, cached);
+		}
+	}
+
+	/**
+	 * invalidate cached responses.
+	 *
+	 * @param serviceNameOrKey
+	 *            either service name, in which case all responses for this
+	 *            service are invalidated, or a caching key with values for
+	 *            key fields, in which case only that response is invalidated
+	 */
+	@Override
+	public void invalidate(String serviceNameOrKey) {
+		synchronized (this.entries) {
+			if (serviceNameOrKey.indexOf(Service.CACHE_KEY_SEP) != -1) {
+				this.entries.remove(serviceNameOrKey);
+				return;
+			}
+			String prefix = serviceNameOrKey + Service.CACHE_KEY_SEP;
+			Iterator<String> iter = this.entries.keySet().iterator();
+			while (iter.hasNext()) {
+				String key = iter.next();
+				if (key.equals(serviceNameOrKey) || key.startsWith(prefix)) {
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void clearAll() {
+		synchronized (this.entries) {
+			this.entries.clear();
+		}
+	}
+
+	private static String getKey(ServiceRequest request) {
+		Service service = ComponentManager.getServiceOrNull(request.getServiceName());
+		if (service == null) {
+			return null;
+		}
+		return ServiceAgent.getCachingKey(service, request);
+	}
+
+	/**
+	 * response as cached
+	 */
+	private static class CachedResponse {
+		final String text;
+		final FormattedMessage[] messages;
+		/**
+		 * time-stamp after which this is invalid. 0 means no expiry
+		 */
+		final long expiresAt;
+
+		CachedResponse(String text, FormattedMessage[] messages, long expiresAt) {
+			this.text = text;
+			this.messages = messages.length == 0 ? null : messages;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean hasExpired(long now) {
+			return this.expiresAt != 0 && now > this.expiresAt;
+		}
+	}
+}
@@ -121,8 +121,7 @@ public abstract class Action {
 
 		if (this.executeOnCondition != null) {
 			try {
-				Value val = this.executeOnCondition.evaluate(ctx);
-				if (Value.intepretAsBoolean(val)) {
+				if (this.executeOnCondition.evaluateAsBoolean(ctx)) {
 
 					logger.info("Cleared the condition " + this.executeOnCondition + " for action to proceed.");
 
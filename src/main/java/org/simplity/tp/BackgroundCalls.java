@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.tp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.simplity.kernel.Application;
+import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.value.Value;
+import org.simplity.service.ServiceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * external service calls that a service has sent to the background, and that
+ * are yet to be joined. Kept as an object in the service context.
+ *
+ * Each call works on its own copy of the service context. Changes made by the
+ * calls are merged back into the service context, in the order in which they
+ * were made, when they are joined.
+ *
+ * @author simplity.org
+ *
+ */
+class BackgroundCalls {
+	private static final Logger logger = LoggerFactory.getLogger(BackgroundCalls.class);
+	/**
+	 * name with which this is saved as an object in the service context
+	 */
+	static final String OBJECT_NAME = "_backgroundCalls";
+
+	private final List<Call> calls = new ArrayList<Call>();
+
+	/**
+	 * run a call in the background
+	 *
+	 * @param ctx
+	 *            service context
+	 * @param actionName
+	 *            action that is making this call
+	 * @param call
+	 *            function that makes the call with the context that it
+	 *            receives
+	 */
+	static void submit(ServiceContext ctx, String actionName, Function<ServiceContext, Value> call) {
+		BackgroundCalls pending = (BackgroundCalls) ctx.getObject(OBJECT_NAME);
+		if (pending == null) {
+			pending = new BackgroundCalls();
+			ctx.setObject(OBJECT_NAME, pending);
+		}
+		ServiceContext forkedFrom = ctx.copyForWorker();
+		ServiceContext workerCtx = ctx.copyForWorker();
+		Future<Value> future;
+		if (ctx.hasSingleThreadedResources()) {
+			/*
+			 * reader, writer or jms session of the service can not be used
+			 * from another thread. We make the call right away instead
+			 */
+			logger.info("Action {} is run in the foreground as the service uses a reader, writer or jms session",
+					actionName);
+			FutureTask<Value> task = new FutureTask<Value>(() -> call.apply(workerCtx));
+			task.run();
+			future = task;
+		} else {
+			future = Application.getParallelActionExecutor().submit(() -> call.apply(workerCtx));
+		}
+		pending.calls.add(new Call(actionName, future, workerCtx, forkedFrom));
+	}
+
+	/**
+	 * wait for all the calls that are in the background to complete, and merge
+	 * their data into the service context
+	 *
+	 * @param ctx
+	 *            service context
+	 * @param actionName
+	 *            action that is waiting
+	 * @param timeoutSeconds
+	 *            0 means wait for as long as it takes
+	 * @return true if all calls returned true. false otherwise
+	 */
+	static boolean join(ServiceContext ctx, String actionName, int timeoutSeconds) {
+		BackgroundCalls pending = (BackgroundCalls) ctx.getObject(OBJECT_NAME);
+		if (pending == null) {
+			logger.info("Action {} has no background calls to wait for", actionName);
+			return true;
+		}
+		long deadline = 0;
+		if (timeoutSeconds > 0) {
+			deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		}
+		boolean allOk = true;
+		try {
+			for (Call call : pending.calls) {
+				Value result;
+				if (deadline == 0) {
+					result = call.future.get();
+				} else {
+					result = call.future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				}
+				if (Value.intepretAsBoolean(result) == false) {
+					logger.info("Background call made by action {} returned {}", call.actionName, result);
+					allOk = false;
+				}
+				ctx.mergeFromWorker(call.ctx, call.forkedFrom);
+			}
+		} catch (ExecutionException e) {
+			pending.cancelAll();
+			Throwable cause = e.getCause();
+			if (cause instanceof ApplicationError) {
+				throw (ApplicationError) cause;
+			}
+			throw new ApplicationError(e, "Background call failed while action " + actionName + " waited for it");
+		} catch (TimeoutException e) {
+			pending.cancelAll();
+			throw new ApplicationError("Background calls did not complete in " + timeoutSeconds
+					+ " seconds while action " + actionName + " waited for them, and are cancelled.");
+		} catch (InterruptedException e) {
+			pending.cancelAll();
+			Thread.currentThread().interrupt();
+			throw new ApplicationError(e, "Action " + actionName + " interrupted while waiting for background calls");
+		} finally {
+			ctx.removeObject(OBJECT_NAME);
+		}
+		return allOk;
+	}
+
+	private void cancelAll() {
+		for (Call call : this.calls) {
+			call.future.cancel(true);
+		}
+	}
+
+	private static class Call {
+		final String actionName;
+		final Future<Value> future;
+		final ServiceContext ctx;
+		final ServiceContext forkedFrom;
+
+		Call(String actionName, Future<Value> future, ServiceContext ctx, ServiceContext forkedFrom) {
+			this.actionName = actionName;
+			this.future = future;
+			this.ctx = ctx;
+			this.forkedFrom = forkedFrom;
+		}
+	}
+}
@@ -23,6 +23,13 @@
 package org.simplity.tp;
 
 import java.io.File;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.transaction.UserTransaction;
 
@@ -30,6 +37,7 @@ import org.simplity.jms.JmsConnector;
 import org.simplity.jms.JmsUsage;
 import org.simplity.kernel.Application;
 import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.FormattedMessage;
 import org.simplity.kernel.comp.FieldMetaData;
 import org.simplity.kernel.comp.ValidationContext;
 import org.simplity.kernel.db.DbAccessType;
@@ -109,6 +117,48 @@ public class BatchProcessor extends Action {
 	 */
 	boolean callChildEventsOnEof;
 
+	/**
+	 * number of files to be processed in parallel. Each file is processed on
+	 * a thread of its own, with its own copy of service context and its own
+	 * db connection/transaction. 0 or 1 means that files are processed one
+	 * after the other on the caller's thread.
+	 */
+	int nbrParallelFiles;
+
+	/**
+	 * relevant when dbAccessType is READ_WRITE. Default is to commit after
+	 * each row. Set this to commit once for these many rows instead. A row that
+	 * fails is rolled back to a save point taken before that row, and is
+	 * reported exactly as it would have been with commit-per-row. Not used
+	 * with jms or user-managed transactions, as they do not offer save points.
+	 */
+	int commitEvery;
+
+	/**
+	 * relevant when dbAccessType is READ_WRITE. Commit pending rows once
+	 * these many seconds have elapsed since the first of those rows, even if
+	 * commitEvery rows are not yet processed. Checked at the end of each row.
+	 */
+	int commitEverySeconds;
+
+	/**
+	 * number of threads to process rows of an input file. Rows are read on
+	 * the caller's thread and handed over to these workers, each with its own
+	 * copy of service context and its own db connection/transaction. Output,
+	 * if any, is written by a thread of its own. Used only if the input is a
+	 * file with no child processors, aggregators or end-of-file events, and
+	 * jms is not used to manage transactions. 0 or 1 means rows are processed
+	 * one after the other on the caller's thread.
+	 */
+	int nbrRowWorkers;
+
+	/**
+	 * relevant when nbrRowWorkers is used. Should output rows be written in
+	 * the same order as the input rows? Rows are written as and when they are
+	 * processed if this is false.
+	 */
+	boolean preserveRowOrder;
+
 	/** sub-service created for the desired service */
 	private ExecuteService actionOnInvalidInput;
 	/** sub-service created for the desired service */
@@ -213,6 +263,21 @@ public class BatchProcessor extends Action {
 
 			return Value.VALUE_ZERO;
 		}
+		int nbrRows;
+		if (this.nbrParallelFiles > 1 && files.length > 1) {
+			nbrRows = this.processInParallel(files, inFolderName, outFolderName, ctx);
+		} else {
+			nbrRows = this.processFiles(files, inFolderName, outFolderName, ctx);
+		}
+		return Value.newIntegerValue(nbrRows);
+	}
+
+	/**
+	 * process files one after the other on the current thread
+	 *
+	 * @return number of rows processed
+	 */
+	int processFiles(File[] files, String inFolderName, String outFolderName, ServiceContext ctx) {
 		/*
 		 * resources that need to be released without fail..
 		 */
@@ -233,7 +298,7 @@ public class BatchProcessor extends Action {
 			 */
 			if (this.jmsUsage != null) {
 				jmsConnector = JmsConnector.borrowMultiTransConnector(this.jmsUsage);
-				ctx.setJmsSession(jmsConnector.getSession());
+				ctx.setJmsConnector(jmsConnector);
 			}
 
 			/*
@@ -259,11 +324,72 @@ public class BatchProcessor extends Action {
 			JmsConnector.returnConnector(jmsConnector, true);
 		}
 		if (exception == null) {
-			return Value.newIntegerValue(nbrRows);
+			return nbrRows;
 		}
 		throw exception;
 	}
 
+	/**
+	 * process files in parallel on a pool of nbrParallelFiles threads. We use
+	 * a pool of our own rather than the shared scheduled executor, as this
+	 * batch itself may be running on one of its threads.
+	 *
+	 * @return number of rows processed across all files
+	 */
+	private int processInParallel(File[] files, String inFolderName, String outFolderName, ServiceContext ctx) {
+		int nbrThreads = Math.min(this.nbrParallelFiles, files.length);
+
+		actionLogger.info("BatchProcessor {} is processing {} files with {} threads", this.actionName, files.length,
+				nbrThreads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(nbrThreads, Application::createThread);
+		ServiceContext[] contexts = new ServiceContext[files.length];
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>(files.length);
+		try {
+			for (int i = 0; i < files.length; i++) {
+				File[] oneFile = { files[i] };
+				ServiceContext fileCtx = ctx.copyDataForWorker();
+				contexts[i] = fileCtx;
+				futures.add(executor
+						.submit(() -> this.processFiles(oneFile, inFolderName, outFolderName, fileCtx)));
+			}
+
+			int nbrRows = 0;
+			ApplicationError exception = null;
+			for (int i = 0; i < files.length; i++) {
+				try {
+					nbrRows += futures.get(i).get().intValue();
+				} catch (ExecutionException e) {
+					if (exception == null) {
+						Throwable cause = e.getCause();
+						if (cause instanceof ApplicationError) {
+							exception = (ApplicationError) cause;
+						} else {
+							exception = new ApplicationError(e, "Exception while processing file " + files[i]);
+						}
+					}
+				}
+				/*
+				 * messages added while processing a file are to be reported
+				 * as part of this service
+				 */
+				for (FormattedMessage msg : contexts[i].getMessages()) {
+					ctx.addMessage(msg);
+				}
+			}
+			if (exception != null) {
+				throw exception;
+			}
+			return nbrRows;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+			throw new ApplicationError(e, "Batch processor interrupted while waiting for files to be processed");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	private String translateFolderName(String folder, ServiceContext ctx) {
 
 		String folderName = folder;
@@ -352,6 +478,16 @@ public class BatchProcessor extends Action {
 		 * state-attribute
 		 */
 		int nbrRowsProcessed;
+		/*
+		 * rows processed, but not yet committed, when commitEvery is used
+		 */
+		private int nbrRowsInChunk;
+		private long chunkStartedAt;
+		/*
+		 * set if this worker processes rows handed over by a pipeline, rather
+		 * than rows from files
+		 */
+		private BatchRowPipeline.Stage stage;
 
 		/**
 		 * @param inName
@@ -433,10 +569,14 @@ public class BatchProcessor extends Action {
 			 * false in ctx
 			 */
 			this.ctx.setBooleanValue(EOF_FIELD_IN_CTX, false);
+			if (this.stage != null) {
+				this.nbrRowsProcessed = this.stage.processRows(dbDriver);
+				return;
+			}
 			for (File file : this.files) {
 				String actualName = null;
 				if (file != null) {
-					file.getName();
+					actualName = file.getName();
 				}
 				if (BatchProcessor.this.setActualFileNameTo != null) {
 					this.ctx.setTextValue(BatchProcessor.this.setActualFileNameTo, actualName);
@@ -475,6 +615,135 @@ public class BatchProcessor extends Action {
 			}
 		}
 
+		/**
+		 * @return schema to be used for db operations of this batch. null if
+		 *         the default schema is to be used
+		 */
+		String getSchemaName() {
+			return BatchProcessor.this.schemaName;
+		}
+
+		/**
+		 * are rows committed in chunks rather than one at a time?
+		 *
+		 * @return true if rows are to be processed with beginRow()/endRow()
+		 *         and endChunk(), false if with beginTrans()/endTrans()
+		 */
+		boolean commitsInChunks() {
+			BatchProcessor bp = BatchProcessor.this;
+			if (bp.commitEvery <= 1 && bp.commitEverySeconds <= 0) {
+				return false;
+			}
+			return bp.dbAccessType == DbAccessType.READ_WRITE && this.userTransaction == null
+					&& this.jmsConnector == null;
+		}
+
+		/**
+		 * called-back from the primary file processor before processing each
+		 * row when rows are committed in chunks
+		 *
+		 * @param driver
+		 * @return save point to which this row is to be rolled back in case of
+		 *         error
+		 */
+		Savepoint beginRow(DbDriver driver) {
+			if (this.nbrRowsInChunk == 0) {
+				this.chunkStartedAt = System.currentTimeMillis();
+			}
+			return driver.setSavepoint();
+		}
+
+		/**
+		 * called-back from primary file-processor at the end of each row when
+		 * rows are committed in chunks. Work done for this row is undone in case
+		 * of error.
+		 *
+		 * @param exception
+		 * @param driver
+		 * @param savepoint
+		 *            returned by beginRow()
+		 * @return true if the chunk is due to be committed. Caller is to call
+		 *         endChunk()
+		 */
+		boolean endRow(Exception exception, DbDriver driver, Savepoint savepoint) {
+			boolean allOk = exception == null && this.ctx.isInError() == false;
+			if (allOk) {
+				driver.releaseSavepoint(savepoint);
+			} else {
+				driver.rollbackToSavepoint(savepoint);
+			}
+			this.nbrRowsInChunk++;
+			if (exception != null) {
+				this.reportRowError(exception);
+			}
+			BatchProcessor bp = BatchProcessor.this;
+			return (bp.commitEvery > 0 && this.nbrRowsInChunk >= bp.commitEvery) || (bp.commitEverySeconds > 0
+					&& System.currentTimeMillis() - this.chunkStartedAt >= bp.commitEverySeconds * 1000L);
+		}
+
+		/**
+		 * commit rows pending in the current chunk, if any. Must be called when
+		 * the primary file-processor is done with its rows.
+		 *
+		 * @param driver
+		 * @return true if the chunk is committed, or there was nothing to
+		 *         commit. false if the commit failed, in which case the chunk
+		 *         is rolled back, and the caller is to replay its rows one at a
+		 *         time, with endReplayedRow() for each of them
+		 */
+		boolean endChunk(DbDriver driver) {
+			if (this.nbrRowsInChunk == 0) {
+				return true;
+			}
+			int nbrRows = this.nbrRowsInChunk;
+			this.nbrRowsInChunk = 0;
+			try {
+				driver.commit();
+				return true;
+			} catch (Exception e) {
+				actionLogger.error("Error while committing a chunk of " + nbrRows
+						+ " rows. Rows are rolled back, and are to be replayed one at a time.", e);
+				try {
+					driver.rollback();
+				} catch (Exception ignore) {
+					//
+				}
+				return false;
+			}
+		}
+
+		/**
+		 * called-back at the end of each row that is replayed after its chunk
+		 * failed to commit. The row is committed on its own, so that a row that
+		 * fails is reported by itself.
+		 *
+		 * @param exception
+		 * @param driver
+		 */
+		void endReplayedRow(Exception exception, DbDriver driver) {
+			Exception error = exception;
+			boolean allOk = error == null && this.ctx.isInError() == false;
+			try {
+				if (allOk) {
+					driver.commit();
+				} else {
+					driver.rollback();
+				}
+			} catch (Exception e) {
+				if (error == null) {
+					error = e;
+				}
+				try {
+					driver.rollback();
+				} catch (Exception ignore) {
+					//
+				}
+			}
+			if (error != null) {
+				this.reportRowError(error);
+			}
+		}
+
 		/**
 		 * called-back from primary file-processor at the end of each row.
 		 * Essentially handle commit/rollBack and exception reporting
@@ -522,10 +791,17 @@ public class BatchProcessor extends Action {
 					}
 				}
 			}
-			if (exception == null) {
-				return;
+			if (exception != null) {
+				this.reportRowError(exception);
 			}
+		}
 
+		/**
+		 * report error while processing a row
+		 *
+		 * @param exception
+		 */
+		private void reportRowError(Exception exception) {
 			/*
 			 * invalid data in a row
 			 */
@@ -583,5 +859,38 @@ public class BatchProcessor extends Action {
 		public boolean doEof() {
 			return BatchProcessor.this.callChildEventsOnEof;
 		}
+
+		/**
+		 * @return number of threads to process rows of a file. 0 or 1 if rows
+		 *         are to be processed on the caller's thread
+		 */
+		int getNbrRowWorkers() {
+			return BatchProcessor.this.nbrRowWorkers;
+		}
+
+		/**
+		 * @return true if output rows are to be written in the order of input
+		 *         rows when rows are processed by a pipeline
+		 */
+		boolean preservesRowOrder() {
+			return BatchProcessor.this.preserveRowOrder;
+		}
+
+		/**
+		 * get a worker for a stage of a row pipeline. The worker has its own
+		 * context, and gets its own db driver when work() is invoked, but
+		 * processes rows from the pipeline instead of files.
+		 *
+		 * @param stageCtx
+		 *            service context for the exclusive use of this stage
+		 * @param rowStage
+		 *            that is called back with the db driver
+		 * @return worker
+		 */
+		Worker newStageWorker(ServiceContext stageCtx, BatchRowPipeline.Stage rowStage) {
+			Worker worker = new Worker(this.inFolderName, this.outFolderName, null, null, null, stageCtx);
+			worker.stage = rowStage;
+			return worker;
+		}
 	}
 }
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.tp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.simplity.kernel.Application;
+import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.FormattedMessage;
+import org.simplity.kernel.db.DbDriver;
+import org.simplity.kernel.value.Value;
+import org.simplity.service.ServiceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * processes rows of an input file in parallel. Rows are read by the driver
+ * process on the caller's thread, and submitted to this pipeline. A set of
+ * stages, each on a thread of its own with its own service context and db
+ * driver, process these rows. Rows to be written out are handed over to a
+ * writer on yet another thread, so that output channels are used by one
+ * thread only. Queues between these are bounded, so that a fast reader waits
+ * for the stages rather than reading the whole file into memory.
+ *
+ * @author simplity.org
+ */
+class BatchRowPipeline {
+	private static final Logger logger = LoggerFactory.getLogger(BatchRowPipeline.class);
+
+	/**
+	 * number of rows that may wait in a queue for each stage
+	 */
+	private static final int ROWS_PER_STAGE = 64;
+
+	/**
+	 * marks the end of rows in a queue
+	 */
+	private static final Row END_OF_ROWS = new Row(-1, null);
+
+	private final BatchRowProcessor processor;
+	private final BatchProcessor.Worker batchWorker;
+	private final ServiceContext ctx;
+	private final BatchOutput[] outputs;
+	private final int nbrStages;
+	private final boolean preserveOrder;
+
+	/*
+	 * contexts of the stages, followed by that of the writer. Messages are
+	 * merged back into the driver context once they are done
+	 */
+	private final ServiceContext[] workerContexts;
+
+	/*
+	 * when order is to be preserved, rows that are submitted but not yet
+	 * written are limited to these many, so that a slow row does not make
+	 * the rows after it pile up with the writer. null otherwise
+	 */
+	private final Semaphore rowsInWindow;
+
+	private final BlockingQueue<Row> rowsToProcess;
+	private final BlockingQueue<Row> rowsToWrite;
+	private final AtomicInteger nbrRowsProcessed = new AtomicInteger();
+
+	private ExecutorService executor;
+	private long nbrRowsSubmitted;
+	/*
+	 * first error that stopped a stage or the writer. We stop reading once this
+	 * is set
+	 */
+	private volatile Exception failure;
+
+	/**
+	 * @param processor
+	 *            whose rows are to be processed
+	 * @param batchWorker
+	 *            of the batch processor that is running
+	 * @param ctx
+	 *            service context of the driver process
+	 * @param fileOutput
+	 *            null if rows are not written to a file
+	 * @param jmsOutput
+	 *            null if rows are not written to a queue
+	 */
+	BatchRowPipeline(BatchRowProcessor processor, BatchProcessor.Worker batchWorker, ServiceContext ctx,
+			BatchOutput fileOutput, BatchOutput jmsOutput) {
+		this.processor = processor;
+		this.batchWorker = batchWorker;
+		this.ctx = ctx;
+		if (fileOutput == null) {
+			this.outputs = jmsOutput == null ? new BatchOutput[0] : new BatchOutput[] { jmsOutput };
+		} else {
+			this.outputs = jmsOutput == null ? new BatchOutput[] { fileOutput }
+					: new BatchOutput[] { fileOutput, jmsOutput };
+		}
+		this.nbrStages = batchWorker.getNbrRowWorkers();
+		this.preserveOrder = batchWorker.preservesRowOrder();
+		int capacity = this.nbrStages * ROWS_PER_STAGE;
+		this.rowsToProcess = new ArrayBlockingQueue<Row>(capacity);
+		this.rowsToWrite = new ArrayBlockingQueue<Row>(capacity);
+		this.rowsInWindow = this.preserveOrder ? new Semaphore(capacity) : null;
+		this.workerContexts = new ServiceContext[this.nbrStages + 1];
+	}
+
+	/**
+	 * start stages and the writer
+	 */
+	void start() {
+
+		logger.info("Processing rows with {} row workers", this.nbrStages);
+
+		this.executor = Executors.newFixedThreadPool(this.nbrStages + 1, Application::createThread);
+		for (int i = 0; i < this.nbrStages; i++) {
+			Stage stage = new Stage();
+			ServiceContext stageCtx = this.ctx.copyDataForWorker();
+			this.workerContexts[i] = stageCtx;
+			BatchProcessor.Worker worker = this.batchWorker.newStageWorker(stageCtx, stage);
+			stage.worker = worker;
+			this.executor.execute(stage::run);
+		}
+		ServiceContext writerCtx = this.ctx.copyDataForWorker();
+		this.workerContexts[this.nbrStages] = writerCtx;
+		this.executor.execute(() -> this.write(writerCtx));
+	}
+
+	/**
+	 * @return false if a stage or the writer has failed, in which case no more
+	 *         rows should be submitted
+	 */
+	boolean isHealthy() {
+		return this.failure == null;
+	}
+
+	/**
+	 * hand over the row that is read into the context for processing. Waits
+	 * if stages are busy with rows submitted earlier.
+	 *
+	 * @param rowCtx
+	 *            context into which the row is read
+	 */
+	void submit(ServiceContext rowCtx) {
+		if (this.rowsInWindow != null) {
+			this.waitForWindow();
+		}
+		this.put(this.rowsToProcess, new Row(this.nbrRowsSubmitted, copyFields(rowCtx)));
+		this.nbrRowsSubmitted++;
+	}
+
+	/**
+	 * no more rows. wait for all submitted rows to be processed and written
+	 * out.
+	 *
+	 * @throws ApplicationError
+	 *             if a stage or the writer failed
+	 */
+	void finish() {
+		/*
+		 * reader may have stopped on an interrupt. We still have to hand over
+		 * end-of-rows to the stages, and hence the flag is cleared till then
+		 */
+		boolean interrupted = Thread.interrupted();
+		boolean allDone = false;
+		try {
+			for (int i = 0; i < this.nbrStages; i++) {
+				this.put(this.rowsToProcess, END_OF_ROWS);
+			}
+			this.executor.shutdown();
+			while (this.executor.awaitTermination(1, TimeUnit.MINUTES) == false) {
+				logger.info("Waiting for row workers to complete. {} rows processed so far.",
+						this.nbrRowsProcessed.get());
+			}
+			allDone = true;
+		} catch (InterruptedException e) {
+			interrupted = true;
+			throw new ApplicationError(e, "Interrupted while waiting for row workers to complete");
+		} finally {
+			if (allDone == false) {
+				/*
+				 * stages may be waiting for rows that will never come
+				 */
+				this.executor.shutdownNow();
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		/*
+		 * messages added while processing rows are to be reported as part of
+		 * this service
+		 */
+		for (ServiceContext workerCtx : this.workerContexts) {
+			for (FormattedMessage msg : workerCtx.getMessages()) {
+				this.ctx.addMessage(msg);
+			}
+		}
+		Exception e = this.failure;
+		if (e == null) {
+			return;
+		}
+		if (e instanceof ApplicationError) {
+			throw (ApplicationError) e;
+		}
+		throw new ApplicationError(e, "Error while processing rows in parallel");
+	}
+
+	/**
+	 * @return number of rows processed by all the stages
+	 */
+	int getNbrRowsProcessed() {
+		return this.nbrRowsProcessed.get();
+	}
+
+	/**
+	 * writer : write rows as and when they arrive, or in the order in which
+	 * they were submitted
+	 */
+	private void write(ServiceContext writerCtx) {
+		Map<Long, Row> waitingRows = this.preserveOrder ? new HashMap<Long, Row>() : null;
+		long nextIdx = 0;
+		int nbrStagesDone = 0;
+		while (nbrStagesDone < this.nbrStages) {
+			Row row = this.take(this.rowsToWrite);
+			if (row == END_OF_ROWS) {
+				nbrStagesDone++;
+				continue;
+			}
+			if (waitingRows == null) {
+				this.writeRow(row, writerCtx);
+				continue;
+			}
+			waitingRows.put(row.idx, row);
+			while ((row = waitingRows.remove(nextIdx)) != null) {
+				this.writeRow(row, writerCtx);
+				nextIdx++;
+				this.rowsInWindow.release();
+			}
+		}
+	}
+
+	private void writeRow(Row row, ServiceContext writerCtx) {
+		if (row.fields == null || this.failure != null) {
+			return;
+		}
+		for (Map.Entry<String, Value> entry : row.fields.entrySet()) {
+			writerCtx.setValue(entry.getKey(), entry.getValue());
+		}
+		try {
+			for (BatchOutput output : this.outputs) {
+				output.outputARow(writerCtx);
+			}
+		} catch (Exception e) {
+			/*
+			 * we continue to drain the queue so that the stages are not
+			 * blocked, but write nothing more
+			 */
+			this.failure = e;
+		}
+	}
+
+	/**
+	 * wait till the writer has caught up with the rows submitted earlier. We
+	 * stop waiting if a stage has failed, as the rows it dropped are never
+	 * going to be written
+	 */
+	private void waitForWindow() {
+		try {
+			while (this.rowsInWindow.tryAcquire(1, TimeUnit.SECONDS) == false) {
+				if (this.failure != null) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationError(e, "Interrupted while waiting for rows to be written in row pipeline");
+		}
+	}
+
+	private <T> void put(BlockingQueue<T> queue, T item) {
+		try {
+			queue.put(item);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationError(e, "Interrupted while handing over a row in row pipeline");
+		}
+	}
+
+	private <T> T take(BlockingQueue<T> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationError(e, "Interrupted while waiting for a row in row pipeline");
+		}
+	}
+
+	/**
+	 * @param fromCtx
+	 * @return copy of all the fields in the context
+	 */
+	static Map<String, Value> copyFields(ServiceContext fromCtx) {
+		Map<String, Value> fields = new HashMap<String, Value>();
+		for (Map.Entry<String, Value> entry : fromCtx.getAllFields()) {
+			fields.put(entry.getKey(), entry.getValue());
+		}
+		return fields;
+	}
+
+	/**
+	 * a row as it moves through the pipeline
+	 */
+	private static class Row {
+		/** 0-based index of this row in the input */
+		final long idx;
+		/** null if there is nothing to be written out for this row */
+		final Map<String, Value> fields;
+
+		Row(long idx, Map<String, Value> fields) {
+			this.idx = idx;
+			this.fields = fields;
+		}
+	}
+
+	/**
+	 * a stage processes rows on a thread of its own, with its own context and
+	 * db driver
+	 *
+	 * @author simplity.org
+	 */
+	class Stage {
+		BatchProcessor.Worker worker;
+		/*
+		 * has this stage taken its end-of-rows marker from the queue?
+		 */
+		private boolean allRowsTaken;
+
+		void run() {
+			try {
+				/*
+				 * worker gets the db driver as per the batch processor, and
+				 * calls us back on processRows()
+				 */
+				this.worker.work();
+			} catch (Exception e) {
+				BatchRowPipeline.this.failure = e;
+				/*
+				 * drain rows meant for us so that the reader is not blocked
+				 */
+				while (this.allRowsTaken == false) {
+					this.allRowsTaken = BatchRowPipeline.this.take(BatchRowPipeline.this.rowsToProcess) == END_OF_ROWS;
+				}
+			} finally {
+				BatchRowPipeline.this.put(BatchRowPipeline.this.rowsToWrite, END_OF_ROWS);
+			}
+		}
+
+		/**
+		 * called back by the batch worker with the db driver
+		 *
+		 * @param dbDriver
+		 * @return number of rows processed by this stage
+		 */
+		int processRows(DbDriver dbDriver) {
+			BatchRowPipeline pipeline = BatchRowPipeline.this;
+			BatchRowProcessor.PipelinedProcess process = pipeline.processor.getPipelinedProcess(dbDriver,
+					this.worker.ctx, this.worker, pipeline.outputs.length > 0);
+			int nbrRows = 0;
+			try {
+				while (true) {
+					Row row = pipeline.take(pipeline.rowsToProcess);
+					if (row == END_OF_ROWS) {
+						this.allRowsTaken = true;
+						return nbrRows;
+					}
+					Map<String, Value> outputRow = process.processRow(row.fields);
+					nbrRows++;
+					pipeline.nbrRowsProcessed.incrementAndGet();
+					pipeline.put(pipeline.rowsToWrite, new Row(row.idx, outputRow));
+				}
+			} finally {
+				process.endRows();
+			}
+		}
+	}
+}
@@ -24,6 +24,13 @@ package org.simplity.tp;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.jms.JMSException;
 
@@ -31,16 +38,21 @@ import org.simplity.aggr.AggregationWorker;
 import org.simplity.aggr.AggregatorInterface;
 import org.simplity.jms.JmsDestination;
 import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.FormattedMessage;
+import org.simplity.kernel.MessageType;
 import org.simplity.kernel.Messages;
 import org.simplity.kernel.comp.ComponentManager;
 import org.simplity.kernel.comp.ValidationContext;
 import org.simplity.kernel.db.DbDriver;
 import org.simplity.kernel.db.DbRowProcessor;
+import org.simplity.kernel.db.RdbDriver;
 import org.simplity.kernel.db.Sql;
 import org.simplity.kernel.expr.Expression;
 import org.simplity.kernel.expr.InvalidOperationException;
+import org.simplity.kernel.idb.IDbDriver;
 import org.simplity.kernel.value.Value;
 import org.simplity.service.ServiceContext;
+import org.simplity.service.ServiceProtocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +65,12 @@ public class BatchRowProcessor {
 
 	protected static final Logger actionLogger = LoggerFactory.getLogger(BatchRowProcessor.class);
 
+	/**
+	 * fields that an input sets for each row, but are not part of the row
+	 */
+	private static final String[] ROW_LEVEL_FIELDS = { ServiceProtocol.ROW_TEXT, ServiceProtocol.LINE_NUM,
+			ServiceProtocol.FIlE_BATCH };
+
 	/** if the rows are from a SQL */
 	String inputSql;
 
@@ -100,6 +118,40 @@ public class BatchRowProcessor {
 	/** optional queue on which responses to be sent on */
 	JmsDestination outputDestination;
 
+	/**
+	 * relevant for a child processor. Rows of this processor are read/queried
+	 * once, and indexed on the link fields. Rows for a parent row are looked up
+	 * from this index, instead of running the sql, or reading the input, for
+	 * each parent row. inputSql, if used, is run only once, and hence it must
+	 * return the whole set of child rows. It can not take any input
+	 * parameters, like fields of the parent row.
+	 */
+	boolean hashJoin;
+
+	/**
+	 * for hashJoin : link fields in the rows of this processor. Not required
+	 * if the input file has specified its link fields
+	 */
+	String[] linkFieldsInThisRow;
+
+	/**
+	 * for hashJoin : fields in the parent row that correspond to
+	 * linkFieldsInThisRow
+	 */
+	String[] linkFieldsInParentRow;
+
+	/**
+	 * for hashJoin : number of rows to be indexed in memory. Beyond this, rows
+	 * are spilled into partitioned temp files.
+	 */
+	int maxRowsToJoinInMemory = 500000;
+
+	/*
+	 * link fields resolved at getReady() for hashJoin
+	 */
+	private String[] childKeyNames;
+	private String[] parentKeyNames;
+
 	/**
 	 * @param service
 	 */
@@ -144,6 +196,33 @@ public class BatchRowProcessor {
 				child.getReady(service);
 			}
 		}
+		if (this.hashJoin) {
+			this.getReadyForHashJoin();
+		}
+	}
+
+	private void getReadyForHashJoin() {
+		this.childKeyNames = this.linkFieldsInThisRow;
+		this.parentKeyNames = this.linkFieldsInParentRow;
+		if (this.childKeyNames == null && this.inputFile != null) {
+			this.childKeyNames = this.inputFile.linkFieldsInThisRow;
+			this.parentKeyNames = this.inputFile.linkFieldsInParentRow;
+		}
+		if (this.childKeyNames == null || this.parentKeyNames == null
+				|| this.childKeyNames.length != this.parentKeyNames.length) {
+			throw new ApplicationError(
+					"A batch row processor with hashJoin should specify linkFieldsInThisRow and matching linkFieldsInParentRow");
+		}
+		if (this.maxRowsToJoinInMemory <= 0) {
+			throw new ApplicationError("maxRowsToJoinInMemory should be a positive number");
+		}
+		if (this.inputSql != null) {
+			Sql sql = ComponentManager.getSqlOrNull(this.inputSql);
+			if (sql != null && sql.hasInputParameters()) {
+				throw new ApplicationError("Sql " + this.inputSql
+						+ " takes input parameters, and hence it can not be used for hashJoin. Sql for hashJoin is run only once, and should return all the child rows.");
+			}
+		}
 	}
 
 	private void throwError() {
@@ -199,6 +278,12 @@ public class BatchRowProcessor {
 		return new DriverProcess(dbDriver, ctx, inturrutible);
 	}
 
+	/** invoked by a row pipeline for each of its stages */
+	protected PipelinedProcess getPipelinedProcess(DbDriver dbDriver, ServiceContext ctx,
+			BatchProcessor.Worker batchWorker, boolean captureOutput) {
+		return new PipelinedProcess(dbDriver, ctx, batchWorker, captureOutput);
+	}
+
 	/** recursively invoked by a parent DriverProcess */
 	protected ChildProcess getChildProcess(DbDriver dbDriver, ServiceContext ctx) {
 		return new ChildProcess(dbDriver, ctx);
@@ -235,6 +320,12 @@ public class BatchRowProcessor {
 		 */
 		protected Exception excpetionOnCallBack;
 
+		/**
+		 * set while a row is replayed after its chunk failed to commit. Output
+		 * for the row is already written, and is not written again.
+		 */
+		protected boolean isReplaying;
+
 		/** instantiate with core(non-state) attributes */
 		protected AbstractProcess(DbDriver dbDriver, ServiceContext ctx) {
 			this.dbDriver = dbDriver;
@@ -389,6 +480,7 @@ public class BatchRowProcessor {
 				// process if not eof
 				if (this.children != null) {
 					for (ChildProcess child : this.children) {
+						child.isReplaying = this.isReplaying;
 						child.callFromParent();
 					}
 				}
@@ -398,6 +490,18 @@ public class BatchRowProcessor {
 			if (action != null) {
 				action.act(this.ctx, this.dbDriver);
 			}
+			this.outputARow();
+		}
+
+		/**
+		 * write out the row that is just processed
+		 *
+		 * @throws Exception
+		 */
+		protected void outputARow() throws Exception {
+			if (this.isReplaying) {
+				return;
+			}
 			if (this.fileOutput != null) {
 				this.fileOutput.outputARow(this.ctx);
 			}
@@ -415,8 +519,7 @@ public class BatchRowProcessor {
 			Expression condition = BatchRowProcessor.this.conditionToAggregate;
 			if (condition != null) {
 				try {
-					Value value = condition.evaluate(this.ctx);
-					if (Value.intepretAsBoolean(value) == false) {
+					if (condition.evaluateAsBoolean(this.ctx) == false) {
 						return;
 					}
 				} catch (InvalidOperationException e) {
@@ -457,8 +560,13 @@ public class BatchRowProcessor {
 
 	protected class DriverProcess extends AbstractProcess {
 		private static final String VALIDATION_ERROR = "Input row has validation errors.";
-		private BatchProcessor.Worker batchWorker;
+		protected BatchProcessor.Worker batchWorker;
 		private boolean isInterruptible;
+		/**
+		 * input fields of rows in the current chunk that went through. They
+		 * are replayed one at a time if the chunk fails to commit
+		 */
+		private List<Map<String, Value>> rowsInChunk = new ArrayList<Map<String, Value>>();
 
 		/**
 		 * @param dbDriver
@@ -477,6 +585,26 @@ public class BatchRowProcessor {
 			this.isInterruptible = interruptible;
 		}
 
+		/**
+		 * driver sql may return a huge number of rows. We read them with a
+		 * cursor on a read-only connection of its own, so that rows are
+		 * processed as they are fetched, and the result set is never in memory
+		 * in full. The connection is for the schema of the batch, as with the
+		 * non-streaming path.
+		 */
+		private int streamSqlRows() {
+			IDbDriver rdbDriver = RdbDriver.getDefaultDriver();
+			if (rdbDriver == null) {
+				return this.sql.processRows(this.ctx, this.dbDriver, this);
+			}
+			String schema = this.batchWorker == null ? null : this.batchWorker.getSchemaName();
+			int[] nbrRows = { 0 };
+			rdbDriver.doRead(handle -> {
+				nbrRows[0] = this.sql.processRows(this.ctx, handle, this);
+			}, schema);
+			return nbrRows[0];
+		}
+
 		@Override
 		protected void setInputFile(BatchProcessor.Worker boss, String folderIn, String parentFileName, File file,
 				ServiceContext ctxt) throws IOException {
@@ -498,6 +626,24 @@ public class BatchRowProcessor {
 		 */
 		@Override
 		protected int callFromParent() throws Exception {
+			if (this.batchWorker == null || this.batchWorker.commitsInChunks() == false) {
+				return this.processRows();
+			}
+			try {
+				return this.processRows();
+			} finally {
+				/*
+				 * rows processed so far are to be committed, just as they would
+				 * have been had we committed after each row
+				 */
+				this.endChunk();
+			}
+		}
+
+		private int processRows() throws Exception {
+			if (this.canPipeline()) {
+				return this.pipelineRows();
+			}
 			if (this.sql != null) {
 				/*
 				 * tricky design. looks like a neat return, but it is not.
@@ -507,7 +653,7 @@ public class BatchRowProcessor {
 				 * So, read this statement as "call prcoessRow() for each row in
 				 * result set of this sql
 				 */
-				return this.sql.processRows(this.ctx, this.dbDriver, this);
+				return this.streamSqlRows();
 			}
 
 			/*
@@ -549,6 +695,63 @@ public class BatchRowProcessor {
 			return nbrRows;
 		}
 
+		/**
+		 * can the rows be processed in parallel by a pipeline? Only if rows are
+		 * independent of each other : no child rows, no aggregation across rows
+		 * and no end-of-file event. jms-managed transactions are tied to the
+		 * session of the caller, and hence rule this out as well. Only rows from
+		 * an input file are pipelined. Other inputs, like a queue or a custom
+		 * class, may depend on the thread that reads them.
+		 */
+		private boolean canPipeline() {
+			BatchProcessor.Worker boss = this.batchWorker;
+			if (boss == null || boss.getNbrRowWorkers() <= 1) {
+				return false;
+			}
+			return this.batchInput instanceof InputFile.Worker && this.children == null && this.aggWorkers == null
+					&& boss.doEof() == false && boss.jmsConnector == null && boss.userTransaction == null;
+		}
+
+		/**
+		 * read rows on this thread, and hand them over to a pipeline that
+		 * processes them on its worker threads
+		 *
+		 * @return number of rows processed
+		 * @throws Exception
+		 */
+		private int pipelineRows() throws Exception {
+			BatchRowPipeline pipeline = new BatchRowPipeline(BatchRowProcessor.this, this.batchWorker, this.ctx,
+					this.fileOutput, this.jmsOutput);
+			pipeline.start();
+			try {
+				while (pipeline.isHealthy()) {
+					try {
+						if (this.batchInput.inputARow(this.ctx) == false) {
+							break;
+						}
+					} catch (IOException e) {
+						throw new ApplicationError(e, "Error while processing batch files");
+					}
+					if (this.ctx.isInError()) {
+						this.batchWorker.errorOnInputValidation(new InvalidRowException(VALIDATION_ERROR));
+						this.ctx.clearMessages();
+					} else {
+						pipeline.submit(this.ctx);
+					}
+					if (this.isInterruptible && Thread.interrupted()) {
+
+						actionLogger.info("Detected an interrupt. Going to stop processing rows from input");
+
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+			} finally {
+				pipeline.finish();
+			}
+			return pipeline.getNbrRowsProcessed();
+		}
+
 		@Override
 		public boolean callBackOnDbRow(String[] outputNames, Value[] values) {
 			/*
@@ -573,7 +776,11 @@ public class BatchRowProcessor {
 		}
 
 		/** process one row under a transaction */
-		private void doOneTransaction() {
+		protected void doOneTransaction() {
+			if (this.batchWorker.commitsInChunks()) {
+				this.doOneRowInChunk();
+				return;
+			}
 			this.batchWorker.beginTrans();
 			this.ctx.resetMessages();
 			Exception exception = null;
@@ -587,6 +794,144 @@ public class BatchRowProcessor {
 			}
 			this.batchWorker.endTrans(exception, this.dbDriver);
 		}
+
+		/**
+		 * process one row as part of a chunk of rows that are committed
+		 * together. Work done for a row that fails is undone without
+		 * disturbing the other rows in the chunk
+		 */
+		private void doOneRowInChunk() {
+			Map<String, Value> fields = BatchRowPipeline.copyFields(this.ctx);
+			Savepoint savepoint = this.batchWorker.beginRow(this.dbDriver);
+			this.ctx.resetMessages();
+			Exception exception = null;
+			try {
+				this.processARow();
+				this.writeAggregators();
+			} catch (Exception e) {
+				exception = e;
+				this.ctx.addMessage(Messages.ERROR,
+						"Error while processing a row from batch driver input. " + e.getMessage());
+			}
+			if (exception == null && this.ctx.isInError() == false) {
+				/*
+				 * failed rows are undone and reported already. Only the rest
+				 * are to be replayed if the chunk fails
+				 */
+				this.rowsInChunk.add(fields);
+			}
+			if (this.batchWorker.endRow(exception, this.dbDriver, savepoint)) {
+				this.endChunk();
+			}
+		}
+
+		/**
+		 * commit rows of the current chunk. If the commit fails, rows of the
+		 * chunk are replayed, each in a transaction of its own, so that a row
+		 * that fails is still reported by itself
+		 */
+		protected void endChunk() {
+			List<Map<String, Value>> rows = this.rowsInChunk;
+			this.rowsInChunk = new ArrayList<Map<String, Value>>();
+			if (this.batchWorker.endChunk(this.dbDriver)) {
+				return;
+			}
+			actionLogger.info("Replaying {} rows of the chunk that failed to commit", rows.size());
+			this.isReplaying = true;
+			try {
+				for (Map<String, Value> fields : rows) {
+					for (Map.Entry<String, Value> entry : fields.entrySet()) {
+						this.ctx.setValue(entry.getKey(), entry.getValue());
+					}
+					this.ctx.resetMessages();
+					Exception exception = null;
+					try {
+						this.processARow();
+					} catch (Exception e) {
+						exception = e;
+						this.ctx.addMessage(Messages.ERROR,
+								"Error while replaying a row from batch driver input. " + e.getMessage());
+					}
+					this.batchWorker.endReplayedRow(exception, this.dbDriver);
+				}
+			} finally {
+				this.isReplaying = false;
+			}
+		}
+
+		/**
+		 * rows that are replayed were accumulated when they were processed the
+		 * first time
+		 */
+		@Override
+		protected void accumulateAggregators() {
+			if (this.isReplaying == false) {
+				super.accumulateAggregators();
+			}
+		}
+	}
+
+	/**
+	 * processes rows handed over to a stage of a row pipeline. It has no input
+	 * or output of its own. Fields to be written out are captured instead, for
+	 * the writer stage of the pipeline to write them.
+	 *
+	 * @author simplity.org
+	 */
+	protected class PipelinedProcess extends DriverProcess {
+		private final boolean captureOutput;
+		private Map<String, Value> outputRow;
+
+		/**
+		 * @param dbDriver
+		 * @param ctx
+		 *            for the exclusive use of this process
+		 * @param batchWorker
+		 *            to be used for transaction management and error reporting
+		 * @param captureOutput
+		 *            whether the pipeline has any output to be written
+		 */
+		protected PipelinedProcess(DbDriver dbDriver, ServiceContext ctx, BatchProcessor.Worker batchWorker,
+				boolean captureOutput) {
+			super(dbDriver, ctx);
+			this.batchWorker = batchWorker;
+			this.captureOutput = captureOutput;
+		}
+
+		/**
+		 * process a row under a transaction, just as the driver process would
+		 * have done on its own
+		 *
+		 * @param fields
+		 *            values read from input for this row
+		 * @return fields to be written out for this row, or null if nothing is
+		 *         to be written out
+		 */
+		Map<String, Value> processRow(Map<String, Value> fields) {
+			for (Map.Entry<String, Value> entry : fields.entrySet()) {
+				this.ctx.setValue(entry.getKey(), entry.getValue());
+			}
+			this.outputRow = null;
+			this.doOneTransaction();
+			return this.outputRow;
+		}
+
+		/**
+		 * commit rows that are pending, if the transaction is managed in
+		 * chunks
+		 */
+		void endRows() {
+			if (this.batchWorker.commitsInChunks()) {
+				this.endChunk();
+			}
+		}
+
+		@Override
+		protected void outputARow() {
+			if (this.captureOutput && this.isReplaying == false) {
+				this.outputRow = BatchRowPipeline.copyFields(this.ctx);
+			}
+		}
 	}
 
 	/**
@@ -604,6 +949,11 @@ public class BatchRowProcessor {
 			super(dbDriver, ctx);
 		}
 
+		/** index being loaded for hashJoin */
+		private ChildRowIndex rowIndex;
+		/** index loaded for hashJoin */
+		private ChildRowIndex joinIndex;
+
 		@Override
 		protected void setInputFile(org.simplity.tp.BatchProcessor.Worker boss, String folderIn, String parentFileName,
 				File file, ServiceContext ctxt) throws IOException {
@@ -618,6 +968,13 @@ public class BatchRowProcessor {
 
 		@Override
 		public boolean callBackOnDbRow(String[] outputNames, Value[] values) {
+			if (this.rowIndex != null) {
+				/*
+				 * we are loading the index for hash join
+				 */
+				this.addToIndex(outputNames, values.clone());
+				return true;
+			}
 			/*
 			 * this is the callback from sql.processRows for each row in the sql
 			 * result. We should do the same thing that we would do after
@@ -646,6 +1003,9 @@ public class BatchRowProcessor {
 		 */
 		@Override
 		protected int callFromParent() throws Exception {
+			if (BatchRowProcessor.this.hashJoin) {
+				return this.joinFromIndex();
+			}
 			if (this.sql != null) {
 				this.sql.processRows(this.ctx, this.dbDriver, this);
 				/*
@@ -701,5 +1061,115 @@ public class BatchRowProcessor {
 			this.writeAggregators();
 			return nbr;
 		}
+
+		/**
+		 * process rows for the current parent row by looking them up in the
+		 * index. Index is loaded on the first call.
+		 *
+		 * @throws Exception
+		 */
+		private int joinFromIndex() throws Exception {
+			if (this.joinIndex == null) {
+				this.loadIndex();
+			}
+			String[] parentNames = BatchRowProcessor.this.parentKeyNames;
+			Value[] keyValues = new Value[parentNames.length];
+			for (int i = 0; i < parentNames.length; i++) {
+				Value value = this.ctx.getValue(parentNames[i]);
+				if (Value.isNull(value)) {
+					this.ctx.addMessage(new FormattedMessage("missingKeyColumn", MessageType.ERROR,
+							"value for link field " + parentNames[i] + " is missing in parent row"));
+					throw new InvalidRowException();
+				}
+				keyValues[i] = value;
+			}
+			int nbr = 0;
+			for (ChildRowIndex.ChildRow row : this.joinIndex.get(keyValues)) {
+				for (int i = 0; i < row.names.length; i++) {
+					this.ctx.setValue(row.names[i], row.values[i]);
+				}
+				this.processARow();
+				nbr++;
+			}
+			this.writeAggregators();
+			return nbr;
+		}
+
+		/**
+		 * read/query all rows of this processor into the index
+		 *
+		 * @throws Exception
+		 */
+		private void loadIndex() throws Exception {
+			this.rowIndex = new ChildRowIndex(BatchRowProcessor.this.childKeyNames,
+					BatchRowProcessor.this.maxRowsToJoinInMemory);
+			try {
+				if (this.sql != null) {
+					this.sql.processRows(this.ctx, this.dbDriver, this);
+					if (this.excpetionOnCallBack != null) {
+						Exception e = this.excpetionOnCallBack;
+						this.excpetionOnCallBack = null;
+						throw e;
+					}
+				} else {
+					this.loadIndexFromInput();
+				}
+				this.rowIndex.endOfRows();
+			} catch (Exception e) {
+				this.rowIndex.close();
+				this.rowIndex = null;
+				throw e;
+			}
+			this.joinIndex = this.rowIndex;
+			this.rowIndex = null;
+		}
+
+		/**
+		 * rows are read into a context of their own, so that fields of the
+		 * parent row do not get mixed up with the child row
+		 */
+		private void loadIndexFromInput() throws Exception {
+			ServiceContext rowCtx = new ServiceContext(this.ctx.getServiceName(), this.ctx.getAppUser());
+			while (this.batchInput.inputARow(rowCtx)) {
+				if (rowCtx.isInError()) {
+					for (FormattedMessage msg : rowCtx.getMessages()) {
+						this.ctx.addMessage(msg);
+					}
+					throw new InvalidRowException();
+				}
+				for (String name : ROW_LEVEL_FIELDS) {
+					rowCtx.removeValue(name);
+				}
+				Set<Entry<String, Value>> fields = rowCtx.getAllFields();
+				String[] names = new String[fields.size()];
+				Value[] values = new Value[names.length];
+				int i = 0;
+				for (Entry<String, Value> entry : fields) {
+					names[i] = entry.getKey();
+					values[i] = entry.getValue();
+					i++;
+				}
+				this.addToIndex(names, values);
+				for (String name : names) {
+					rowCtx.removeValue(name);
+				}
+			}
+		}
+
+		private void addToIndex(String[] names, Value[] values) {
+			if (this.rowIndex.add(names, values) == false) {
+				actionLogger.error("A child row is missing value for one of its link fields "
+						+ Arrays.toString(BatchRowProcessor.this.childKeyNames) + " and is ignored for join");
+			}
+		}
+
+		@Override
+		void closeShop() {
+			super.closeShop();
+			if (this.joinIndex != null) {
+				this.joinIndex.close();
+				this.joinIndex = null;
+			}
+		}
 	}
 }
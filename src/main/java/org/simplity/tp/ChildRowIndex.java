@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.tp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.file.FileManager;
+import org.simplity.kernel.value.BooleanValue;
+import org.simplity.kernel.value.DateValue;
+import org.simplity.kernel.value.DecimalValue;
+import org.simplity.kernel.value.IntegerValue;
+import org.simplity.kernel.value.TimestampValue;
+import org.simplity.kernel.value.Value;
+import org.simplity.kernel.value.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * rows of a child processor, loaded once and indexed on the link fields, so
+ * that rows for a parent row can be looked up instead of being read/queried
+ * for each parent row.
+ *
+ * <p>
+ * Keys are matched on their values: numbers are matched numerically
+ * irrespective of whether they are integral or decimal, and text is matched
+ * ignoring case.
+ *
+ * <p>
+ * Rows are kept in memory till maxRowsInMemory. Beyond that, all rows are
+ * partitioned on the hash of their key into temp files, and a partition is
+ * loaded into memory when a parent row looks for a key in it. Loaded
+ * partitions are retained on a least-recently-used basis within the same limit
+ * of rows. This is slower than the in-memory index, but it does not run out of
+ * memory. Parent rows that arrive sorted on the key make good use of the
+ * loaded partitions.
+ *
+ * @author simplity.org
+ */
+class ChildRowIndex {
+	private static final Logger logger = LoggerFactory.getLogger(ChildRowIndex.class);
+
+	/** number of partitions into which rows are spilled */
+	private static final int NBR_PARTITIONS = 256;
+	private static final char KEY_SEPARATOR = '\u0000';
+	private static final byte NULL_VALUE = -1;
+	private static final ValueType[] VALUE_TYPES = ValueType.values();
+
+	private final String[] keyNames;
+	private final int maxRowsInMemory;
+
+	/** in-memory index. null once rows are spilled to partitions */
+	private Map<String, List<ChildRow>> index = new HashMap<String, List<ChildRow>>();
+	private int nbrRows;
+
+	/*
+	 * names and key positions of the last row added. Rows from the same source
+	 * have the same names, and we share the array across them
+	 */
+	private String[] lastNames;
+	private int[] lastKeyPositions;
+
+	/*
+	 * spill related
+	 */
+	private File[] partitionFiles;
+	private DataOutputStream[] partitionWriters;
+	private Map<Integer, Map<String, List<ChildRow>>> loadedPartitions;
+	private int nbrLoadedRows;
+
+	/**
+	 * @param keyNames
+	 *            names of link fields in the child row
+	 * @param maxRowsInMemory
+	 *            rows beyond which the index is spilled into partitioned temp
+	 *            files
+	 */
+	ChildRowIndex(String[] keyNames, int maxRowsInMemory) {
+		this.keyNames = keyNames;
+		this.maxRowsInMemory = maxRowsInMemory;
+	}
+
+	/**
+	 * add a child row to the index
+	 *
+	 * @param names
+	 *            field names
+	 * @param values
+	 *            corresponding values
+	 * @return false if the row has no value for any of the link fields, and
+	 *         hence is not added to the index
+	 */
+	boolean add(String[] names, Value[] values) {
+		if (this.lastNames != names && Arrays.equals(this.lastNames, names) == false) {
+			this.lastNames = names;
+			this.lastKeyPositions = new int[this.keyNames.length];
+			for (int i = 0; i < this.keyNames.length; i++) {
+				this.lastKeyPositions[i] = getPosition(names, this.keyNames[i]);
+			}
+		}
+		Value[] keyValues = new Value[this.keyNames.length];
+		for (int i = 0; i < keyValues.length; i++) {
+			int pos = this.lastKeyPositions[i];
+			if (pos == -1 || Value.isNull(values[pos])) {
+				return false;
+			}
+			keyValues[i] = values[pos];
+		}
+		String key = getKey(keyValues);
+		ChildRow row = new ChildRow(this.lastNames, values);
+		if (this.index == null) {
+			this.spill(key, row);
+			return true;
+		}
+		addToIndex(this.index, key, row);
+		this.nbrRows++;
+		if (this.nbrRows >= this.maxRowsInMemory) {
+			this.startSpilling();
+		}
+		return true;
+	}
+
+	/**
+	 * all rows are added. Index is ready for look-ups
+	 */
+	void endOfRows() {
+		if (this.partitionWriters == null) {
+			logger.info(this.nbrRows + " child rows indexed in memory.");
+			return;
+		}
+		try {
+			for (DataOutputStream writer : this.partitionWriters) {
+				writer.close();
+			}
+		} catch (IOException e) {
+			throw new ApplicationError(e, "Error while writing child rows to temp files");
+		}
+		this.partitionWriters = null;
+		logger.info(this.nbrRows + " child rows indexed in " + NBR_PARTITIONS + " partitions in temp files.");
+	}
+
+	/**
+	 * @param keyValues
+	 *            values of link fields from the parent row. None of them
+	 *            should be null
+	 * @return child rows for this key. empty list if there are none.
+	 */
+	List<ChildRow> get(Value[] keyValues) {
+		String key = getKey(keyValues);
+		List<ChildRow> rows;
+		if (this.index != null) {
+			rows = this.index.get(key);
+		} else {
+			rows = this.getPartition(getPartitionIndex(key)).get(key);
+		}
+		if (rows == null) {
+			return Collections.emptyList();
+		}
+		return rows;
+	}
+
+	/**
+	 * release memory and delete temp files, if any
+	 */
+	void close() {
+		this.index = null;
+		this.loadedPartitions = null;
+		if (this.partitionWriters != null) {
+			for (DataOutputStream writer : this.partitionWriters) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					//
+				}
+			}
+			this.partitionWriters = null;
+		}
+		if (this.partitionFiles != null) {
+			for (File file : this.partitionFiles) {
+				if (file != null) {
+					file.delete();
+				}
+			}
+			this.partitionFiles = null;
+		}
+	}
+
+	/**
+	 * key with which the values are indexed
+	 */
+	private static String getKey(Value[] values) {
+		if (values.length == 1) {
+			return getKeyText(values[0]);
+		}
+		StringBuilder sbf = new StringBuilder();
+		for (Value value : values) {
+			sbf.append(getKeyText(value)).append(KEY_SEPARATOR);
+		}
+		return sbf.toString();
+	}
+
+	/**
+	 * canonical text of a value, so that values that are to match have the
+	 * same text
+	 */
+	private static String getKeyText(Value value) {
+		if (value instanceof IntegerValue) {
+			return Long.toString(((IntegerValue) value).getLong());
+		}
+		if (value instanceof DecimalValue) {
+			double d = ((DecimalValue) value).getDouble();
+			if (d == Math.rint(d) && Math.abs(d) < Long.MAX_VALUE) {
+				return Long.toString((long) d);
+			}
+			return BigDecimal.valueOf(d).stripTrailingZeros().toPlainString();
+		}
+		return value.toString().toLowerCase(Locale.ROOT);
+	}
+
+	private static int getPosition(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (name.equals(names[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static void addToIndex(Map<String, List<ChildRow>> map, String key, ChildRow row) {
+		List<ChildRow> rows = map.get(key);
+		if (rows == null) {
+			rows = new ArrayList<ChildRow>(1);
+			map.put(key, rows);
+		}
+		rows.add(row);
+	}
+
+	private static int getPartitionIndex(String key) {
+		return (key.hashCode() & Integer.MAX_VALUE) % NBR_PARTITIONS;
+	}
+
+	/**
+	 * in-memory limit is reached. Move rows to partitions
+	 */
+	private void startSpilling() {
+		logger.info("Child rows exceed " + this.maxRowsInMemory
+				+ " and are being spilled to partitioned temp files.");
+		this.partitionFiles = new File[NBR_PARTITIONS];
+		this.partitionWriters = new DataOutputStream[NBR_PARTITIONS];
+		this.loadedPartitions = new LinkedHashMap<Integer, Map<String, List<ChildRow>>>(16, 0.75f, true);
+		try {
+			for (int i = 0; i < NBR_PARTITIONS; i++) {
+				File file = FileManager.createTempFile();
+				this.partitionFiles[i] = file;
+				this.partitionWriters[i] = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(file), 8 * 1024));
+			}
+		} catch (IOException e) {
+			this.close();
+			throw new ApplicationError(e, "Error while creating temp files to spill child rows");
+		}
+		Map<String, List<ChildRow>> map = this.index;
+		this.index = null;
+		this.nbrRows = 0;
+		for (Map.Entry<String, List<ChildRow>> entry : map.entrySet()) {
+			String key = entry.getKey();
+			for (ChildRow row : entry.getValue()) {
+				this.spill(key, row);
+			}
+		}
+	}
+
+	private void spill(String key, ChildRow row) {
+		DataOutputStream out = this.partitionWriters[getPartitionIndex(key)];
+		try {
+			writeText(out, key);
+			out.writeInt(row.names.length);
+			for (int i = 0; i < row.names.length; i++) {
+				writeText(out, row.names[i]);
+				writeValue(out, row.values[i]);
+			}
+		} catch (IOException e) {
+			throw new ApplicationError(e, "Error while writing child rows to temp files");
+		}
+		this.nbrRows++;
+	}
+
+	/**
+	 * get a partition, loading it if required.
+	 */
+	private Map<String, List<ChildRow>> getPartition(int idx) {
+		Integer id = Integer.valueOf(idx);
+		Map<String, List<ChildRow>> map = this.loadedPartitions.get(id);
+		if (map != null) {
+			return map;
+		}
+		map = new HashMap<String, List<ChildRow>>();
+		int nbr = 0;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(this.partitionFiles[idx]), 64 * 1024))) {
+			String[] names = null;
+			while (true) {
+				String key;
+				try {
+					key = readText(in);
+				} catch (EOFException e) {
+					break;
+				}
+				int nbrFields = in.readInt();
+				String[] rowNames = new String[nbrFields];
+				Value[] values = new Value[nbrFields];
+				for (int i = 0; i < nbrFields; i++) {
+					rowNames[i] = readText(in);
+					values[i] = readValue(in);
+				}
+				if (Arrays.equals(names, rowNames)) {
+					rowNames = names;
+				} else {
+					names = rowNames;
+				}
+				addToIndex(map, key, new ChildRow(rowNames, values));
+				nbr++;
+			}
+		} catch (IOException e) {
+			throw new ApplicationError(e, "Error while reading child rows from temp file");
+		}
+		/*
+		 * make room, but retain at least this partition
+		 */
+		Iterator<Map<String, List<ChildRow>>> iter = this.loadedPartitions.values().iterator();
+		while (this.nbrLoadedRows + nbr > this.maxRowsInMemory && iter.hasNext()) {
+			Map<String, List<ChildRow>> old = iter.next();
+			for (List<ChildRow> rows : old.values()) {
+				this.nbrLoadedRows -= rows.size();
+			}
+			iter.remove();
+		}
+		this.loadedPartitions.put(id, map);
+		this.nbrLoadedRows += nbr;
+		return map;
+	}
+
+	private static void writeText(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readText(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeValue(DataOutputStream out, Value value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL_VALUE);
+			return;
+		}
+		ValueType vt = value.getValueType();
+		out.writeByte(vt.ordinal());
+		if (value.isUnknown()) {
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		switch (vt) {
+		case INTEGER:
+			out.writeLong(((IntegerValue) value).getLong());
+			return;
+		case DECIMAL:
+			out.writeDouble(((DecimalValue) value).getDouble());
+			return;
+		case BOOLEAN:
+			out.writeBoolean(((BooleanValue) value).getBoolean());
+			return;
+		case DATE:
+			out.writeLong(((DateValue) value).getDate());
+			return;
+		case TIMESTAMP:
+			out.writeLong(((TimestampValue) value).getInteger());
+			return;
+		default:
+			writeText(out, value.toString());
+		}
+	}
+
+	private static Value readValue(DataInputStream in) throws IOException {
+		byte b = in.readByte();
+		if (b == NULL_VALUE) {
+			return null;
+		}
+		ValueType vt = VALUE_TYPES[b];
+		if (in.readBoolean() == false) {
+			return Value.newUnknownValue(vt);
+		}
+		switch (vt) {
+		case INTEGER:
+			return Value.newIntegerValue(in.readLong());
+		case DECIMAL:
+			return Value.newDecimalValue(in.readDouble());
+		case BOOLEAN:
+			return Value.newBooleanValue(in.readBoolean());
+		case DATE:
+			return Value.newDateValue(in.readLong());
+		case TIMESTAMP:
+			return Value.newTimestampValue(in.readLong());
+		case CLOB:
+			return Value.newClobValue(readText(in));
+		case BLOB:
+			return Value.newBlobValue(readText(in));
+		default:
+			return Value.newTextValue(readText(in));
+		}
+	}
+
+	/**
+	 * a child row
+	 */
+	static class ChildRow {
+		final String[] names;
+		final Value[] values;
+
+		ChildRow(String[] names, Value[] values) {
+			this.names = names;
+			this.values = values;
+		}
+	}
+}
@@ -24,6 +24,8 @@ package org.simplity.tp;
 import org.simplity.gateway.Gateways;
 import org.simplity.gateway.ServiceAssistant;
 import org.simplity.kernel.comp.FieldMetaData;
+import org.simplity.kernel.comp.ValidationContext;
+import org.simplity.kernel.comp.ValidationMessage;
 import org.simplity.kernel.db.DbAccessType;
 import org.simplity.kernel.db.DbDriver;
 import org.simplity.kernel.value.BooleanValue;
@@ -50,6 +52,16 @@ public class ExecuteExternalService extends Action {
 	@FieldMetaData(isRequired = true)
 	String serviceName;
 
+	/**
+	 * if true, the call is made in the background and this action returns
+	 * true right away. Use waitForExternalServices action to wait for the call
+	 * to complete and get its data into the service context. This allows a
+	 * service to call several external services at the same time. Call works
+	 * on its own copy of the service context, and does not use the db
+	 * connection of the service.
+	 */
+	boolean runInBackground;
+
 	/**
 	 * set at boot time
 	 */
@@ -57,6 +69,11 @@ public class ExecuteExternalService extends Action {
 
 	@Override
 	protected Value delegate(ServiceContext ctx, DbDriver driver) {
+		if (this.runInBackground) {
+			BackgroundCalls.submit(ctx, this.actionName, workerCtx -> Gateways
+					.getAssistant(this.applictionName, this.serviceName, workerCtx).execute(workerCtx, null, false));
+			return Value.VALUE_TRUE;
+		}
 		ServiceAssistant assistant = Gateways.getAssistant(this.applictionName, this.serviceName, ctx);
 		BooleanValue result = assistant.execute(ctx, driver, this.transactionIsDelegated);
 		return result;
@@ -74,4 +91,14 @@ public class ExecuteExternalService extends Action {
 			this.transactionIsDelegated = true;
 		}
 	}
+
+	@Override
+	public void validateSpecific(ValidationContext vtx, Service service) {
+		super.validateSpecific(vtx, service);
+		if (this.runInBackground && service.dbAccessType == DbAccessType.SUB_SERVICE) {
+			vtx.message(new ValidationMessage(this, ValidationMessage.SEVERITY_ERROR,
+					"a call that is run in the background can not take part in the transaction of its service",
+					"runInBackground"));
+		}
+	}
 }
@@ -22,14 +22,22 @@
 package org.simplity.tp;
 
 import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.comp.ComponentManager;
 import org.simplity.kernel.comp.ComponentType;
 import org.simplity.kernel.comp.FieldMetaData;
 import org.simplity.kernel.db.DbAccessType;
 import org.simplity.kernel.db.DbDriver;
+import org.simplity.kernel.db.Sql;
+import org.simplity.sa.ResponseWriter;
 import org.simplity.service.ServiceContext;
 
 /**
- * Read a row/s from as output of a prepared statement/sql
+ * Read rows from the output of a prepared statement/sql, and write them
+ * directly to the response writer of the service as an array. Rows are read
+ * on the db connection of the service, and are written as they are read from
+ * the result set. They are not kept in memory.
+ * Service is to be designed with outputFromWriter="true" for the response to
+ * be streamed out.
  *
  * @author simplity.org
  */
@@ -42,22 +50,49 @@ public class ExtractDirectlyToResponse extends DbAction {
 	String sqlName;
 
 	/**
-	 * qualified name of the field this result is going to be assigned to. For
-	 * example if this is orderDetails of an order for a customer, (and customer
-	 * is the root object) then orders.orderDetails is the qualified field nme.
+	 * name of the array to which rows are written. Since the writer streams
+	 * the response, the array is written at the current position of the
+	 * writer. Defaults to the simple name of the sql.
 	 */
 	String qualifiedFieldName;
 
+	/**
+	 * if true, a header array is written first with column names, followed by
+	 * an array of values for each row. If false, an object is written for each
+	 * row.
+	 */
+	boolean useCompactFormat;
+
+	/**
+	 * number of rows to be fetched from the db in one round trip. Rows are
+	 * written out as they are fetched. 0 means the fetch size of the sql is
+	 * used.
+	 */
+	int fetchSize;
+
 	@Override
 	protected int doDbAct(ServiceContext ctx, DbDriver driver) {
-		throw new ApplicationError("ExtractDirectlyToResponse action is not yet implemented");
-		// Sql sql = ComponentManager.getSql(this.sqlName);
-		// JSONWriter writer = new JSONWriter();
-		// writer.object().key(this.jsonName).array();
-		// sql.sqlToJson(ctx, driver, this.useCompactFormat, writer);
-		// writer.endArray().endObject();
-		// ctx.setObject(this.jsonName, writer.toString());
-		// return 1;
+		if (ctx.hasWriter() == false) {
+			throw new ApplicationError("Action " + this.actionName
+					+ " writes rows directly to the response writer, but no writer is assigned to the service context. Service is to be designed with outputFromWriter=\"true\"");
+		}
+		Sql sql = ComponentManager.getSql(this.sqlName);
+		String arrayName = this.qualifiedFieldName;
+		if (arrayName == null) {
+			arrayName = this.sqlName.substring(this.sqlName.lastIndexOf('.') + 1);
+		}
+		ResponseWriter writer = ctx.getWriter();
+		writer.beginArray(arrayName);
+		int[] nbrRows = { 0 };
+		/*
+		 * read on the connection of the service, so that we are part of its
+		 * transaction and schema
+		 */
+		driver.doRead(handle -> {
+			nbrRows[0] = sql.sqlToJson(ctx, handle, this.useCompactFormat, this.fetchSize, writer);
+		});
+		writer.endArray();
+		return nbrRows[0];
 	}
 
 	@Override
@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.tp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.simplity.kernel.data.FlatFileReader;
+import org.simplity.kernel.data.FlatFileRowType;
+import org.simplity.kernel.dm.Record;
+import org.simplity.kernel.file.FileManager;
+import org.simplity.kernel.value.BooleanValue;
+import org.simplity.kernel.value.DateValue;
+import org.simplity.kernel.value.DecimalValue;
+import org.simplity.kernel.value.IntegerValue;
+import org.simplity.kernel.value.TimestampValue;
+import org.simplity.kernel.value.Value;
+import org.simplity.kernel.value.ValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * sorts rows of a flat file on its key fields, with bounded memory. Rows are
+ * read in chunks that are sorted in memory and written out as runs to temp
+ * files. Runs are then merged into a sorted temp file, in more than one pass if
+ * there are too many runs to be opened at once. Sort is stable: rows with the
+ * same key retain their order in the input file.
+ *
+ * <p>
+ * Rows are read as per RFC-4180 for comma separated files, as with bulkRead
+ * of InputFile. Reading stops at the first empty row, as it marks the end of
+ * data for a child file.
+ * </p>
+ *
+ * @author simplity.org
+ *
+ */
+class FlatFileSorter {
+	private static final Logger logger = LoggerFactory.getLogger(FlatFileSorter.class);
+
+	/**
+	 * buffer size for each run that is read while merging
+	 */
+	private static final int MERGE_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * maximum number of runs that are open at a time while merging. Each of
+	 * them has a buffer of MERGE_BUFFER_SIZE
+	 */
+	private static final int MAX_RUNS_TO_MERGE = 64;
+
+	/**
+	 * compares keys field by field, as per their value types
+	 */
+	static final Comparator<Value[]> KEY_COMPARATOR = new Comparator<Value[]>() {
+
+		@Override
+		public int compare(Value[] keys1, Value[] keys2) {
+			for (int i = 0; i < keys1.length; i++) {
+				int cmp = compareValues(keys1[i], keys2[i]);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return 0;
+		}
+	};
+
+	private final FlatFileRowType rowType;
+	private final int[] fieldWidths;
+	private final Charset charset;
+	private final int[] keyIndexes;
+	private final ValueType[] keyTypes;
+	private final int maxRowsInMemory;
+
+	/**
+	 * @param record
+	 *            that describes the rows of the file
+	 * @param rowType
+	 * @param charset
+	 *            supported by FlatFileReader
+	 * @param keyIndexes
+	 *            index of key fields in the record
+	 * @param maxRowsInMemory
+	 *            number of rows to be sorted in memory before they are
+	 *            written out as a run
+	 */
+	FlatFileSorter(Record record, FlatFileRowType rowType, Charset charset, int[] keyIndexes, int maxRowsInMemory) {
+		this.rowType = rowType;
+		this.fieldWidths = rowType == FlatFileRowType.FIXED_WIDTH ? record.getFieldWidths() : null;
+		this.charset = charset;
+		this.keyIndexes = keyIndexes;
+		ValueType[] allTypes = record.getValueTypes();
+		this.keyTypes = new ValueType[keyIndexes.length];
+		for (int i = 0; i < keyIndexes.length; i++) {
+			this.keyTypes[i] = allTypes[keyIndexes[i]];
+		}
+		this.maxRowsInMemory = maxRowsInMemory;
+	}
+
+	/**
+	 * sort a file
+	 *
+	 * @param file
+	 *            to be sorted. It is not modified.
+	 * @return temp file with the sorted rows. Caller should delete it after
+	 *         use
+	 * @throws IOException
+	 */
+	File sort(File file) throws IOException {
+		long startedAt = System.currentTimeMillis();
+		List<File> runs = new ArrayList<File>();
+		List<SortableRow> rows = new ArrayList<SortableRow>();
+		int nbrRows = 0;
+		try (FlatFileReader reader = new FlatFileReader(file, this.rowType, this.fieldWidths, this.charset)) {
+			while (reader.nextRow() && reader.isEmptyRow() == false) {
+				rows.add(new SortableRow(this.extractKeys(reader), reader.getRowText()));
+				nbrRows++;
+				if (rows.size() >= this.maxRowsInMemory) {
+					runs.add(this.writeRun(rows));
+					rows.clear();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			deleteFiles(runs);
+			throw e;
+		}
+		int nbrRuns = runs.size();
+		File sortedFile;
+		try {
+			if (runs.isEmpty()) {
+				sortedFile = this.writeRun(rows);
+			} else {
+				if (rows.isEmpty() == false) {
+					runs.add(this.writeRun(rows));
+					nbrRuns++;
+				}
+				rows = null;
+				sortedFile = this.merge(runs);
+			}
+		} finally {
+			deleteFiles(runs);
+		}
+
+		logger.info(nbrRows + " rows of " + file.getName() + " sorted using " + nbrRuns + " runs in "
+				+ (System.currentTimeMillis() - startedAt) + " ms");
+
+		return sortedFile;
+	}
+
+	/**
+	 * key values of the current row of the reader. We do not validate here,
+	 * as the rows are validated when they are read from the sorted file.
+	 */
+	private Value[] extractKeys(FlatFileReader reader) {
+		Value[] keys = new Value[this.keyIndexes.length];
+		for (int i = 0; i < keys.length; i++) {
+			int idx = this.keyIndexes[i];
+			if (idx >= reader.getNbrFields()) {
+				continue;
+			}
+			Value value = reader.getValue(idx, this.keyTypes[i]);
+			if (value == null) {
+				String text = reader.getText(idx).trim();
+				if (text.isEmpty() == false) {
+					value = Value.parseValue(text, this.keyTypes[i]);
+				}
+			}
+			keys[i] = value;
+		}
+		return keys;
+	}
+
+	/**
+	 * sort rows and write them to a temp file
+	 */
+	private File writeRun(List<SortableRow> rows) throws IOException {
+		Collections.sort(rows);
+		File file = FileManager.createTempFile();
+		try (Writer writer = this.newWriter(file)) {
+			for (SortableRow row : rows) {
+				writer.write(row.rowText);
+				writer.write('\n');
+			}
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		return file;
+	}
+
+	/**
+	 * merge sorted runs into a temp file. At most MAX_RUNS_TO_MERGE runs are
+	 * open at a time. If there are more runs, consecutive runs are merged in
+	 * groups into fewer, longer runs, in as many passes as required. Groups are
+	 * merged in the order of runs, and hence the sort remains stable.
+	 *
+	 * @param runs
+	 *            sorted runs, in the order of the input. Caller is to delete
+	 *            them after this call.
+	 */
+	private File merge(List<File> runs) throws IOException {
+		List<File> files = runs;
+		while (files.size() > MAX_RUNS_TO_MERGE) {
+			List<File> merged = new ArrayList<File>();
+			try {
+				for (int i = 0; i < files.size(); i += MAX_RUNS_TO_MERGE) {
+					int end = Math.min(i + MAX_RUNS_TO_MERGE, files.size());
+					merged.add(this.mergeRuns(files.subList(i, end)));
+				}
+			} catch (IOException | RuntimeException e) {
+				deleteFiles(merged);
+				throw e;
+			} finally {
+				if (files != runs) {
+					deleteFiles(files);
+				}
+			}
+			logger.info(files.size() + " runs merged into " + merged.size() + " runs");
+			files = merged;
+		}
+		try {
+			return this.mergeRuns(files);
+		} finally {
+			if (files != runs) {
+				deleteFiles(files);
+			}
+		}
+	}
+
+	/**
+	 * k-way merge of sorted runs into a temp file
+	 */
+	private File mergeRuns(List<File> runs) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runs.size());
+		List<FlatFileReader> readers = new ArrayList<FlatFileReader>(runs.size());
+		File file = FileManager.createTempFile();
+		try (Writer writer = this.newWriter(file)) {
+			int runIdx = 0;
+			for (File run : runs) {
+				FlatFileReader flatReader = new FlatFileReader(run, this.rowType, this.fieldWidths, this.charset,
+						MERGE_BUFFER_SIZE);
+				readers.add(flatReader);
+				RunReader reader = new RunReader(runIdx++, flatReader);
+				if (reader.advance()) {
+					queue.add(reader);
+				} else {
+					flatReader.close();
+				}
+			}
+			while (queue.isEmpty() == false) {
+				RunReader reader = queue.poll();
+				writer.write(reader.reader.getRowText());
+				writer.write('\n');
+				if (reader.advance()) {
+					queue.add(reader);
+				} else {
+					reader.reader.close();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			throw e;
+		} finally {
+			/*
+			 * close is harmless on a reader that is already closed
+			 */
+			for (FlatFileReader reader : readers) {
+				try {
+					reader.close();
+				} catch (Exception ignore) {
+					//
+				}
+			}
+		}
+		return file;
+	}
+
+	private Writer newWriter(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), this.charset),
+				MERGE_BUFFER_SIZE);
+	}
+
+	private static void deleteFiles(List<File> files) {
+		for (File file : files) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * compare two values of a key. Null (or unknown) value is less than any
+	 * other value. Numbers, dates and booleans are compared as per their
+	 * values, while text is compared ignoring case.
+	 *
+	 * @param value1
+	 * @param value2
+	 * @return negative if value1 is less than value2, 0 if they are equal
+	 *         and positive otherwise
+	 */
+	static int compareValues(Value value1, Value value2) {
+		boolean null1 = Value.isNull(value1);
+		boolean null2 = Value.isNull(value2);
+		if (null1 || null2) {
+			if (null1 && null2) {
+				return 0;
+			}
+			return null1 ? -1 : 1;
+		}
+		if (value1 instanceof IntegerValue && value2 instanceof IntegerValue) {
+			return Long.compare(((IntegerValue) value1).getLong(), ((IntegerValue) value2).getLong());
+		}
+		if ((value1 instanceof IntegerValue || value1 instanceof DecimalValue)
+				&& (value2 instanceof IntegerValue || value2 instanceof DecimalValue)) {
+			return Double.compare(getDouble(value1), getDouble(value2));
+		}
+		if (value1 instanceof DateValue && value2 instanceof DateValue) {
+			return Long.compare(((DateValue) value1).getDate(), ((DateValue) value2).getDate());
+		}
+		if (value1 instanceof TimestampValue && value2 instanceof TimestampValue) {
+			return Long.compare(((TimestampValue) value1).getInteger(), ((TimestampValue) value2).getInteger());
+		}
+		if (value1 instanceof BooleanValue && value2 instanceof BooleanValue) {
+			return Boolean.compare(((BooleanValue) value1).getBoolean(), ((BooleanValue) value2).getBoolean());
+		}
+		return value1.toString().compareToIgnoreCase(value2.toString());
+	}
+
+	private static double getDouble(Value value) {
+		if (value instanceof IntegerValue) {
+			return ((IntegerValue) value).getDouble();
+		}
+		return ((DecimalValue) value).getDouble();
+	}
+
+	/**
+	 * a row that is held in memory for sorting
+	 */
+	private static class SortableRow implements Comparable<SortableRow> {
+		final Value[] keys;
+		final String rowText;
+
+		SortableRow(Value[] keys, String rowText) {
+			this.keys = keys;
+			this.rowText = rowText;
+		}
+
+		@Override
+		public int compareTo(SortableRow other) {
+			return KEY_COMPARATOR.compare(this.keys, other.keys);
+		}
+	}
+
+	/**
+	 * reads a run while merging. Ties are broken on the order of runs to keep
+	 * the sort stable
+	 */
+	private class RunReader implements Comparable<RunReader> {
+		final int runIdx;
+		final FlatFileReader reader;
+		Value[] keys;
+
+		RunReader(int runIdx, FlatFileReader reader) {
+			this.runIdx = runIdx;
+			this.reader = reader;
+		}
+
+		boolean advance() throws IOException {
+			if (this.reader.nextRow() == false) {
+				return false;
+			}
+			this.keys = FlatFileSorter.this.extractKeys(this.reader);
+			return true;
+		}
+
+		@Override
+		public int compareTo(RunReader other) {
+			int cmp = KEY_COMPARATOR.compare(this.keys, other.keys);
+			if (cmp != 0) {
+				return cmp;
+			}
+			return Integer.compare(this.runIdx, other.runIdx);
+		}
+	}
+}
@@ -23,14 +23,17 @@
 package org.simplity.tp;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.nio.charset.Charset;
 
 import org.simplity.kernel.ApplicationError;
 import org.simplity.kernel.FormattedMessage;
 import org.simplity.kernel.MessageType;
 import org.simplity.kernel.comp.ComponentManager;
+import org.simplity.kernel.data.FlatFileReader;
 import org.simplity.kernel.data.FlatFileRowType;
 import org.simplity.kernel.dm.Record;
 import org.simplity.kernel.expr.Expression;
@@ -83,6 +86,36 @@ public class InputFile {
 
 	Expression conditionToProcess;
 
+	/**
+	 * read the file in large blocks and parse fields directly from the bytes,
+	 * instead of reading it line by line into strings. Meant for large files.
+	 * Comma separated rows may have fields in double quotes as per RFC-4180.
+	 * rowText is not set to the service context in this mode.
+	 */
+	boolean bulkRead;
+
+	/**
+	 * charset in which the file is encoded. Defaults to that of the platform.
+	 * With bulkRead, it has to be UTF-8 or a single-byte charset that is a
+	 * super-set of ASCII
+	 */
+	String charset;
+
+	/**
+	 * in case this is a child input file, should it be sorted on
+	 * linkFieldsInThisRow before it is read? Set this to true if the file is
+	 * not already sorted in the same order as the parent file.
+	 */
+	boolean sortOnLinkFields;
+
+	/**
+	 * number of rows sorted in memory at a time when sortOnLinkFields is set.
+	 * Larger files are sorted in chunks that are merged.
+	 */
+	int maxRowsToSortInMemory = 100000;
+
+	private Charset fileCharset;
+
 	/**
 	 * @param service
 	 */
@@ -90,6 +123,29 @@ public class InputFile {
 		if (this.fileName == null) {
 			throw new ApplicationError("file name is required for inputFile");
 		}
+		if (this.charset == null) {
+			this.fileCharset = Charset.defaultCharset();
+		} else {
+			try {
+				this.fileCharset = Charset.forName(this.charset);
+			} catch (Exception e) {
+				throw new ApplicationError(e, this.charset + " is not a valid charset for input file " + this.fileName);
+			}
+		}
+		if (this.sortOnLinkFields) {
+			if (this.linkFieldsInThisRow == null) {
+				throw new ApplicationError("Input file " + this.fileName
+						+ " has set sortOnLinkFields but has not specified linkFieldsInThisRow");
+			}
+			if (this.maxRowsToSortInMemory <= 0) {
+				throw new ApplicationError("Input file " + this.fileName + " has an invalid maxRowsToSortInMemory of "
+						+ this.maxRowsToSortInMemory);
+			}
+		}
+		if ((this.bulkRead || this.sortOnLinkFields) && FlatFileReader.isSupported(this.fileCharset) == false) {
+			throw new ApplicationError("Input file " + this.fileName + " uses bulkRead/sort, but its charset "
+					+ this.fileCharset.name() + " is not UTF-8 or a single-byte charset based on ASCII.");
+		}
 		if (this.linkFieldsInParentRow == null) {
 			if (this.linkFieldsInThisRow != null) {
 				this.throwError();
@@ -125,7 +181,11 @@ public class InputFile {
 		private File realFile;
 
 		private LineNumberReader reader;
+		/** used instead of reader if bulkRead is set */
+		private FlatFileReader flatReader;
 		private File newFile;
+		/** temp file with sorted rows, in case we sort the file */
+		private File sortedFile;
 		/*
 		 * in case we are a child file, and we have to read matching rows
 		 */
@@ -137,6 +197,12 @@ public class InputFile {
 		private String[] fieldNames;
 		/** computed/concatenated string of key fields */
 		private String keyValue;
+		/** values of key fields in the row that is read ahead */
+		private Value[] keyValues;
+		/** key that was last returned by getParentKeyValue() */
+		private String parentKey;
+		/** values of the parent key fields for parentKey */
+		private Value[] parentKeyValues;
 
 		/** did we hit the wall while trying to read? */
 		private boolean endOfFile;
@@ -179,35 +245,55 @@ public class InputFile {
 		public void openShop(ServiceContext ctxt) throws IOException {
 			this.record = ComponentManager.getRecord(InputFile.this.recordName);
 
-			this.reader = new LineNumberReader(new FileReader(this.realFile));
-
 			String newName = InputFile.this.renameInfileTo;
 			if (newName != null) {
 				this.newFile = new File(this.rootFolder + TextUtil.getFileName(newName, this.getFileName(), ctxt));
 			}
 
 			String[] names = InputFile.this.linkFieldsInThisRow;
-			if (names == null || names.length == 0) {
-				return;
+			if (names != null && names.length > 0) {
+				this.keyIndexes = new int[names.length];
+				for (int i = 0; i < names.length; i++) {
+					int idx = this.record.getFieldIndex(names[i]);
+					if (idx == -1) {
+						throw new ApplicationError(
+								names[i]
+										+ " is not a field in record "
+										+ InputFile.this.recordName
+										+ " but it is being referred as a key field to match");
+					}
+					this.keyIndexes[i] = idx;
+				}
+				this.fieldNames = this.record.getFieldNames();
 			}
-			this.keyIndexes = new int[names.length];
-			for (int i = 0; i < names.length; i++) {
-				int idx = this.record.getFieldIndex(names[i]);
-				if (idx == -1) {
-					throw new ApplicationError(
-							names[i]
-									+ " is not a field in record "
-									+ InputFile.this.recordName
-									+ " but it is being referred as a key field to match");
+
+			File fileToRead = this.realFile;
+			if (InputFile.this.sortOnLinkFields && this.keyIndexes != null) {
+				FlatFileSorter sorter = new FlatFileSorter(this.record, InputFile.this.dataFormat,
+						InputFile.this.fileCharset, this.keyIndexes, InputFile.this.maxRowsToSortInMemory);
+				this.sortedFile = sorter.sort(this.realFile);
+				fileToRead = this.sortedFile;
+			}
+
+			if (InputFile.this.bulkRead) {
+				int[] widths = null;
+				if (InputFile.this.dataFormat == FlatFileRowType.FIXED_WIDTH) {
+					widths = this.record.getFieldWidths();
 				}
-				this.keyIndexes[i] = idx;
+				this.flatReader = new FlatFileReader(fileToRead, InputFile.this.dataFormat, widths,
+						InputFile.this.fileCharset);
+			} else {
+				this.reader = new LineNumberReader(
+						new InputStreamReader(new FileInputStream(fileToRead), InputFile.this.fileCharset));
 			}
-			this.fieldNames = this.record.getFieldNames();
 		}
 
 		@Override
 		public boolean inputARow(ServiceContext ctx)
 				throws IOException {
+			if (this.flatReader != null) {
+				return this.inputAFlatRow(ctx);
+			}
 
 			/*
 			 * we loop in case there is some condition for row to be processed
@@ -235,6 +321,21 @@ public class InputFile {
 			}
 		}
 
+		/**
+		 * input a row using flat reader
+		 */
+		private boolean inputAFlatRow(ServiceContext ctx) throws IOException {
+			while (this.flatReader.nextRow()) {
+				ctx.setLongValue(ServiceProtocol.LINE_NUM, this.flatReader.getLineNumber());
+				ctx.setTextValue(ServiceProtocol.FIlE_BATCH, this.realFile.getName());
+				this.record.parseFlatFileRow(this.flatReader, ctx, ctx);
+				if (this.okToProceed(ctx)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		/**
 		 * should the rows from this file be read for matching keys?
 		 *
@@ -251,6 +352,7 @@ public class InputFile {
 				return null;
 			}
 			String parentKey = "";
+			Value[] values = new Value[this.keyIndexes.length];
 			for (int i = 0; i < this.keyIndexes.length; i++) {
 				Value value = ctx.getValue(InputFile.this.linkFieldsInParentRow[i]);
 				if (Value.isNull(value)) {
@@ -265,10 +367,26 @@ public class InputFile {
 					return null;
 				}
 				parentKey += value.toString();
+				values[i] = value;
 			}
+			this.parentKey = parentKey;
+			this.parentKeyValues = values;
 			return parentKey;
 		}
 
+		/**
+		 * compare key of the row that is read ahead with the parent key. Keys
+		 * are compared field-by-field as per their types if the parent key is
+		 * the one we returned from getParentKeyValue(). Else we compare the
+		 * concatenated text.
+		 */
+		private int compareWithParent(String keyToMatch) {
+			if (this.parentKeyValues != null && keyToMatch.equals(this.parentKey)) {
+				return FlatFileSorter.KEY_COMPARATOR.compare(this.keyValues, this.parentKeyValues);
+			}
+			return this.keyValue.compareToIgnoreCase(keyToMatch);
+		}
+
 		/**
 		 * read a line from reader, provided there is something to be read
 		 *
@@ -303,7 +421,7 @@ public class InputFile {
 					/*
 					 * check whether this row is for this parent
 					 */
-					int cmp = this.keyValue.compareToIgnoreCase(keyToMatch);
+					int cmp = this.compareWithParent(keyToMatch);
 					if (cmp > 0) {
 						/*
 						 * we have moved ahead of the parent
@@ -359,9 +477,8 @@ public class InputFile {
 			if (condition == null) {
 				return true;
 			}
-			Value val;
 			try {
-				val = condition.evaluate(ctxt);
+				return condition.evaluateAsBoolean(ctxt);
 			} catch (InvalidOperationException e) {
 				throw new ApplicationError(
 						e,
@@ -369,17 +486,31 @@ public class InputFile {
 								+ condition
 								+ " but this expression probably has improper data types/operators.");
 			}
-			return Value.intepretAsBoolean(val);
 		}
 
 		private boolean readChildRow(ServiceContext ctx)
 				throws IOException, InvalidRowException {
-			String rowText = this.readLine();
-			if (rowText == null) {
-				return false;
+			String rowText = null;
+			if (this.flatReader == null) {
+				rowText = this.readLine();
+				if (rowText == null) {
+					return false;
+				}
+				this.dataRow = this.record.extractFromFlatRow(rowText, InputFile.this.dataFormat, ctx);
+			} else {
+				/*
+				 * an empty row marks the end of data, as in readLine()
+				 */
+				if (this.endOfFile || this.flatReader.nextRow() == false || this.flatReader.isEmptyRow()) {
+					this.endOfFile = true;
+					return false;
+				}
+				this.dataRow = this.record.extractFromFlatRow(this.flatReader, ctx);
 			}
-			this.dataRow = this.record.extractFromFlatRow(rowText, InputFile.this.dataFormat, ctx);
 			if (this.dataRow == null) {
+				if (rowText == null) {
+					rowText = this.flatReader.getRowText();
+				}
 
 				actionLogger.info(
 						"Validation errors found during extracting a row from flat file using record "
@@ -391,6 +522,7 @@ public class InputFile {
 			 * set key value
 			 */
 			this.keyValue = "";
+			this.keyValues = new Value[this.keyIndexes.length];
 			for (int i = 0; i < this.keyIndexes.length; i++) {
 				Value value = this.dataRow[this.keyIndexes[i]];
 				if (Value.isNull(value)) {
@@ -405,6 +537,7 @@ public class InputFile {
 					throw new InvalidRowException("Validation errors found in input file");
 				}
 				this.keyValue += value.toString();
+				this.keyValues[i] = value;
 			}
 			return true;
 		}
@@ -412,10 +545,17 @@ public class InputFile {
 		@Override
 		public void closeShop(ServiceContext ctx) {
 			try {
-				this.reader.close();
+				if (this.flatReader != null) {
+					this.flatReader.close();
+				} else {
+					this.reader.close();
+				}
 			} catch (Exception ignore) {
 				//
 			}
+			if (this.sortedFile != null) {
+				this.sortedFile.delete();
+			}
 			if (this.newFile != null) {
 				this.realFile.renameTo(this.newFile);
 			} else if (InputFile.this.deleteFile) {
@@ -34,7 +34,6 @@ import org.simplity.kernel.dm.Record;
 import org.simplity.kernel.expr.Expression;
 import org.simplity.kernel.expr.InvalidOperationException;
 import org.simplity.kernel.util.TextUtil;
-import org.simplity.kernel.value.Value;
 import org.simplity.service.ServiceContext;
 
 /**
@@ -105,7 +104,7 @@ public class OutputFile {
 		public boolean outputARow(ServiceContext ctx) throws IOException {
 			Expression expr = OutputFile.this.conditionToOutput;
 			try {
-				if (expr == null || Value.intepretAsBoolean(expr.evaluate(ctx))) {
+				if (expr == null || expr.evaluateAsBoolean(ctx)) {
 					this.writer.write((this.record.formatFlatRow(OutputFile.this.dataFormat, ctx)));
 					this.writer.newLine();
 					return true;
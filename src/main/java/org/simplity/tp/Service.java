@@ -251,7 +251,7 @@ public class Service implements Component {
 			 */
 			if (this.jmsUsage != null) {
 				jmsConnector = JmsConnector.borrowConnector(this.jmsUsage);
-				ctx.setJmsSession(jmsConnector.getSession());
+				ctx.setJmsConnector(jmsConnector);
 			}
 
 			DbAccessType access = this.dbAccessType;
@@ -685,7 +685,7 @@ public class Service implements Component {
 			throw err;
 		}
 		if (this.okToCache()) {
-			String key = createCachingKey(this.getQualifiedName(), this.cacheKeyNames, ctx);
+			String key = createCachingKey(this.getQualifiedName(), this.parsedCacheKeys, ctx);
 			ctx.setCaching(key, this.cacheValidityMinutes);
 		} else if (this.serviceCachesToInvalidate != null) {
 			ctx.setInvalidations(this.getInvalidations(ctx));
@@ -758,10 +758,12 @@ public class Service implements Component {
 
 	/**
 	 *
-	 * @return names of keys on which this service can be cached. Null either if
-	 *         this service is never cached, or it is cched with no keys
+	 * @return names of keys on which this service can be cached. These are
+	 *         inferred from input fields if cacheKeyNames is not specified.
+	 *         Null either if this service is never cached, or it is cched with
+	 *         no keys
 	 */
 	public String[] getCacheKeyNames() {
-		return this.cacheKeyNames;
+		return this.parsedCacheKeys;
 	}
 }
@@ -98,6 +98,14 @@ public class ServiceOverHttp extends Action {
 	 * type specified on the gateway
 	 */
 	String contentType;
+
+	/**
+	 * if true, the request is sent in the background and this action returns
+	 * true right away. Use waitForExternalServices action to wait for the
+	 * response and get its data into the service context.
+	 */
+	boolean runInBackground;
+
 	/**
 	 * in case url has variables in it, cache its parts for efficiency at run
 	 * time. If url has n fields, then urlParts will have n+1 elements. In case
@@ -114,6 +122,14 @@ public class ServiceOverHttp extends Action {
 		HttpGateway.Assistant assistant = (HttpGateway.Assistant) Gateways.getAssistant(this.applicationName,
 				this.serviceName, ctx);
 		this.putThem(assistant, ctx);
+		if (this.runInBackground) {
+			BackgroundCalls.submit(ctx, this.actionName, workerCtx -> this.sendAndGet(assistant, workerCtx));
+			return Value.VALUE_TRUE;
+		}
+		return this.sendAndGet(assistant, ctx);
+	}
+
+	private Value sendAndGet(HttpGateway.Assistant assistant, ServiceContext ctx) {
 		boolean allOk = assistant.sendAndReceive(ctx);
 		if (allOk) {
 			this.getThem(assistant, ctx);
@@ -204,7 +220,7 @@ public class ServiceOverHttp extends Action {
 			 */
 			return;
 		}
-		String[] parts = this.urlString.split("{");
+		String[] parts = this.urlString.split("\\{");
 		/*
 		 * there will be at least 2 parts. if there are n fields, there will be
 		 * n+1 parts
@@ -215,7 +231,7 @@ public class ServiceOverHttp extends Action {
 		 * delimited b y'}'
 		 */
 		for (int i = 1; i < parts.length; i++) {
-			String[] pair = parts[i].split("}");
+			String[] pair = parts[i].split("\\}", -1);
 			if (pair.length != 2) {
 				/*
 				 * error. assume that design time validations have taken care of
@@ -22,11 +22,22 @@
 
 package org.simplity.tp;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.simplity.kernel.Application;
-
+import org.simplity.kernel.ApplicationError;
+import org.simplity.kernel.db.DbAccessType;
+import org.simplity.kernel.db.DbClientInterface;
 import org.simplity.kernel.db.DbDriver;
 import org.simplity.kernel.value.Value;
 import org.simplity.service.ServiceContext;
@@ -36,11 +47,27 @@ import org.simplity.service.ServiceContext;
  * this block. That is, this block action, as seen by its parent, is synchronous, but it allows its
  * child-actions to work in parallel
  *
+ * <p>child-actions run on the shared pool of the application. Each child-action works on its own
+ * copy of the service context, and changes made by them are merged back into the service context
+ * in the order in which the actions are specified, after all of them complete. A read-only
+ * child-action gets a connection of its own. Child-actions that update the db, or call
+ * sub-services, need the connection, and the transaction, of this action. These are run in
+ * sequence on the caller's thread, while the others run on the pool. All child-actions are run in
+ * sequence if the service uses a reader, writer or jms session, as these can not be shared across
+ * threads. If a child-action fails, or the time-out is reached, child-actions that are still
+ * running are interrupted, and this action waits for them to stop before it fails.
+ *
  * @author simplity.org
  */
 public class Synchronizer extends Action {
 private static final Logger actionLogger = LoggerFactory.getLogger(Synchronizer.class);
 
+  /**
+   * set while a child-action is running. A synchronizer nested inside a child-action runs its
+   * child-actions in sequence, as the pool threads may all be waiting for their children.
+   */
+  private static final ThreadLocal<Boolean> runningOnPool = new ThreadLocal<Boolean>();
+
   /** is there something to be done before spawning thread for child-actions? */
   Action initialAction;
 
@@ -50,6 +77,18 @@ private static final Logger actionLogger = LoggerFactory.getLogger(Synchronizer.
   /** */
   Action[] actions;
 
+  /**
+   * number of seconds to wait for the child-actions to complete. Child-actions that are still
+   * running are cancelled after this time, and this action fails. 0 means no time-out.
+   */
+  int timeoutSeconds;
+
+  /** db access required by this action, as determined by its actions */
+  private DbAccessType dbAccess = DbAccessType.NONE;
+
+  /** schema of the service, for connections to be opened for read-only child-actions */
+  private String schemaName;
+
   /*
    * (non-Javadoc)
    *
@@ -72,34 +111,41 @@ private static final Logger actionLogger = LoggerFactory.getLogger(Synchronizer.
       }
     }
 
-    actionLogger.info("Going to create child-actions in prallel.");
-
-    Thread[] threads = new Thread[this.actions.length];
+    /*
+     * each child works on its own copy of the context. We need a copy of the context as it is now
+     * to find out what they have changed
+     */
+    ServiceContext forkedFrom = ctx.copyForWorker();
+    ServiceContext[] contexts = new ServiceContext[this.actions.length];
     AsynchWorker[] workers = new AsynchWorker[this.actions.length];
-    int i = 0;
-    for (Action action : this.actions) {
-      AsynchWorker worker = new AsynchWorker(ctx, action, driver);
-      workers[i] = worker;
-      Thread thread = Application.createThread(worker);
-      threads[i] = thread;
-      thread.start();
-      i++;
+    for (int i = 0; i < this.actions.length; i++) {
+      contexts[i] = ctx.copyForWorker();
+      workers[i] = new AsynchWorker(contexts[i], this.actions[i], driver);
     }
 
-    actionLogger.info("Parallel actions created. Waiting for all of them to finish their job.");
-
-    for (Thread thread : threads) {
-      try {
-        if (thread.isAlive()) {
-          thread.join();
-        }
-      } catch (InterruptedException e) {
-
-    	  actionLogger.info("One of the threads got interrupted for Synchronizer " + this.actionName);
+    if (runningOnPool.get() != null) {
+      actionLogger.info(
+          "Synchronizer {} is nested inside a parallel action. Its child-actions are run in sequence.",
+          this.actionName);
+      for (AsynchWorker worker : workers) {
+        worker.run();
+      }
+    } else if (ctx.hasSingleThreadedResources()) {
+      actionLogger.info(
+          "Service uses a reader, writer or jms session that can not be shared across threads. Child-actions of Synchronizer {} are run in sequence.",
+          this.actionName);
+      for (AsynchWorker worker : workers) {
+        worker.run();
       }
+    } else {
+      actionLogger.info("Going to create child-actions in prallel.");
+      this.runInParallel(workers);
+      actionLogger.info("All child-actions returned");
     }
 
-    actionLogger.info("All child-actions returned");
+    for (ServiceContext childCtx : contexts) {
+      ctx.mergeFromWorker(childCtx, forkedFrom);
+    }
 
     if (this.finalAction != null) {
       return this.finalAction.act(ctx, driver);
@@ -107,6 +153,103 @@ private static final Logger actionLogger = LoggerFactory.getLogger(Synchronizer.
     return Value.VALUE_TRUE;
   }
 
+  private void runInParallel(AsynchWorker[] workers) {
+    ExecutorService executor = Application.getParallelActionExecutor();
+    List<AsynchWorker> pooled = new ArrayList<AsynchWorker>(workers.length);
+    List<Future<?>> futures = new ArrayList<Future<?>>(workers.length);
+    long deadline = 0;
+    if (this.timeoutSeconds > 0) {
+      deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.timeoutSeconds);
+    }
+    boolean allDone = false;
+    try {
+      for (AsynchWorker worker : workers) {
+        if (worker.needsParentConnection() == false) {
+          pooled.add(worker);
+          futures.add(executor.submit(worker));
+        }
+      }
+
+      actionLogger.info(
+          "{} child-actions submitted to run in parallel. Waiting for all of them to finish their job.",
+          futures.size());
+      /*
+       * connection of the parent can not be used by several threads at the same time
+       */
+      for (AsynchWorker worker : workers) {
+        if (worker.needsParentConnection()) {
+          worker.run();
+        }
+      }
+
+      for (Future<?> future : futures) {
+        if (deadline == 0) {
+          future.get();
+        } else {
+          future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+      }
+      allDone = true;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ApplicationError) {
+        throw (ApplicationError) cause;
+      }
+      throw new ApplicationError(e, "Child-action of Synchronizer " + this.actionName + " failed");
+    } catch (TimeoutException e) {
+      throw new ApplicationError(
+          "Child-actions of Synchronizer "
+              + this.actionName
+              + " did not complete in "
+              + this.timeoutSeconds
+              + " seconds, and are cancelled.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApplicationError(
+          e, "Synchronizer " + this.actionName + " interrupted while waiting for its child-actions");
+    } finally {
+      if (allDone == false) {
+        cancelAll(pooled, futures);
+      }
+    }
+  }
+
+  /**
+   * stop child-actions that are still running, and wait for them to stop, so that none of them is
+   * working with this context after we return
+   */
+  private static void cancelAll(List<AsynchWorker> workers, List<Future<?>> futures) {
+    for (AsynchWorker worker : workers) {
+      worker.cancel();
+    }
+    boolean interrupted = false;
+    for (Future<?> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException | CancellationException e) {
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.simplity.tp.Action#getDataAccessType()
+   */
+  @Override
+  public DbAccessType getDataAccessType() {
+    return this.dbAccess;
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -115,22 +258,45 @@ private static final Logger actionLogger = LoggerFactory.getLogger(Synchronizer.
   @Override
   public void getReady(int idx, Service service) {
     super.getReady(idx, service);
+    this.schemaName = service.schemaName;
     if (this.initialAction != null) {
       this.initialAction.getReady(0, service);
+      this.addAccess(this.initialAction);
     }
     if (this.finalAction != null) {
       this.finalAction.getReady(0, service);
+      this.addAccess(this.finalAction);
     }
     int i = 0;
     for (Action action : this.actions) {
       action.getReady(i++, service);
+      this.addAccess(action);
     }
   }
 
-  class AsynchWorker implements Runnable {
+  private void addAccess(Action action) {
+    DbAccessType access = action.getDataAccessType();
+    if (access == null || access == DbAccessType.NONE || this.dbAccess == DbAccessType.READ_WRITE) {
+      return;
+    }
+    if (access == DbAccessType.READ_ONLY) {
+      this.dbAccess = access;
+    } else {
+      /*
+       * anything other than none/read_only would mean read-write for us
+       */
+      this.dbAccess = DbAccessType.READ_WRITE;
+    }
+  }
+
+  class AsynchWorker implements Runnable, DbClientInterface {
     private final ServiceContext ctx;
     private final Action action;
     private final DbDriver driver;
+    /** thread on which this is running. null if it is not running */
+    private Thread runner;
+    /** set if this is not to be run, or is to be stopped */
+    private boolean cancelled;
 
     AsynchWorker(ServiceContext ctx, Action action, DbDriver driver) {
       this.ctx = ctx;
@@ -145,7 +311,59 @@ private static final Logger actionLogger = LoggerFactory.getLogger(Synchronizer.
      */
     @Override
     public void run() {
-      this.action.act(this.ctx, this.driver);
+      synchronized (this) {
+        if (this.cancelled) {
+          return;
+        }
+        this.runner = Thread.currentThread();
+      }
+      Boolean wasOnPool = runningOnPool.get();
+      runningOnPool.set(Boolean.TRUE);
+      try {
+        if (this.driver != null && this.action.getDataAccessType() == DbAccessType.READ_ONLY) {
+          /*
+           * connection of the parent can not be used by several threads at the same time
+           */
+          DbDriver.workWithDriver(this, DbAccessType.READ_ONLY, Synchronizer.this.schemaName);
+        } else {
+          this.action.act(this.ctx, this.driver);
+        }
+      } finally {
+        if (wasOnPool == null) {
+          runningOnPool.remove();
+        }
+        synchronized (this) {
+          this.runner = null;
+        }
+      }
+    }
+
+    /** @return true if this child-action has to use the connection of the parent */
+    boolean needsParentConnection() {
+      if (this.driver == null) {
+        return false;
+      }
+      DbAccessType access = this.action.getDataAccessType();
+      return access != null && access != DbAccessType.NONE && access != DbAccessType.READ_ONLY;
+    }
+
+    /** do not run this, or interrupt it if it is running */
+    synchronized void cancel() {
+      this.cancelled = true;
+      if (this.runner != null) {
+        this.runner.interrupt();
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.simplity.kernel.db.DbClientInterface#workWithDriver(org.simplity.kernel.db.DbDriver)
+     */
+    @Override
+    public boolean workWithDriver(DbDriver branchDriver) {
+      this.action.act(this.ctx, branchDriver);
+      return true;
     }
   }
 }
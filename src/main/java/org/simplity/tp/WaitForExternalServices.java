@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017 simplity.org
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.simplity.tp;
+
+import org.simplity.kernel.value.Value;
+import org.simplity.service.ServiceContext;
+
+/**
+ * wait for the external service calls that this service has sent to the
+ * background, and get their data into the service context. Returns true if all
+ * the calls succeeded, false otherwise.
+ *
+ * @author simplity.org
+ *
+ */
+public class WaitForExternalServices extends Action {
+
+	/**
+	 * number of seconds to wait for the calls to complete. Calls that are still
+	 * running are cancelled after this time, and this action fails. 0 means no
+	 * time-out.
+	 */
+	int timeoutSeconds;
+
+	@Override
+	protected Value doAct(ServiceContext ctx) {
+		if (BackgroundCalls.join(ctx, this.actionName, this.timeoutSeconds)) {
+			return Value.VALUE_TRUE;
+		}
+		return Value.VALUE_FALSE;
+	}
+}